@@ -108,7 +108,7 @@ public abstract class XScrollLocalLoader extends XImageViewLocalLoader
     @Override
     public void onScroll() {
         XLog.d(TAG, "onScroll()");
-        mSerialMgr.stop();
+        mSerialMgr.pause();
     }
 
     @Override
@@ -123,6 +123,10 @@ public abstract class XScrollLocalLoader extends XImageViewLocalLoader
         mSerialMgr.stopAndReset();
     }
 
+    /**
+     * 基于XBaseSerialMgr实现的线性本地加载执行器。
+     * 滑动时用pause()暂停，不cancel当前任务。
+     */
     private class SerialTaskMgr extends XBaseSerialMgr {
         @Override
         public String getTaskId(AsyncTask task) {
@@ -133,34 +137,6 @@ public abstract class XScrollLocalLoader extends XImageViewLocalLoader
         public void notifyTaskFinished(AsyncTask task) {
             super.notifyTaskFinished(task);
         }
-
-        /**
-         * 启动，将标记设置为启动
-         */
-        public void setWorking() {
-            mIsWorking = true;
-        }
-
-        /**
-         * 根据当前标记，尝试启动。但不改变当前标记。
-         */
-        public void tryStart() {
-            if (!mIsWorking)
-                return;
-
-            mNextTask = mTobeExecuted.peek();
-            if (mNextTask != null &&
-                    mNextTask.getStatus() == AsyncTask.Status.PENDING)
-                mNextTask.execute(null);
-        }
-
-        /**
-         * 覆盖stop方法，停止时并不cancel当前任务，只是设置一个标记。
-         */
-        @Override
-        public void stop() {
-            mIsWorking = false;
-        }
     }
 
     /**
@@ -143,7 +143,7 @@ public abstract class XScrollRemoteLoader extends XImageViewRemoteLoader
     @Override
     public void onScroll() {
         XLog.d(TAG, "onScroll().");
-        mSerialDownloadMgr.stop();
+        mSerialDownloadMgr.pause();
         mScrollLocalLoader.onScroll();
     }
 
@@ -162,52 +162,19 @@ public abstract class XScrollRemoteLoader extends XImageViewRemoteLoader
     }
 
     /**
-     * 基于XBaseSerialMgr实现的线性图片下载执行器
+     * 基于XBaseSerialMgr实现的线性图片下载执行器。
+     * 滑动时用pause()暂停，不cancel当前任务。
      */
     private class SerialDownloadMgr extends XBaseSerialMgr {
         @Override
         public String getTaskId(AsyncTask task) {
-            return null;
+            return null;// 每个下载task都是独立的
         }
 
         @Override
         public void notifyTaskFinished(AsyncTask task) {
             super.notifyTaskFinished(task);
         }
-
-        /**
-         * 启动，将标记设置为启动
-         */
-        public void setWorking() {
-            XLog.d(TAG, "setWorking().");
-            mIsWorking = true;
-        }
-
-        /**
-         * 根据当前标记，尝试启动。但不改变当前标记。
-         */
-        public void tryStart() {
-            XLog.d(TAG, "tryStart(). 0");
-            if (!mIsWorking)
-                return;
-
-            XLog.d(TAG, "tryStart(). 1");
-            mNextTask = mTobeExecuted.peek();
-            if (mNextTask != null &&
-                    mNextTask.getStatus() == AsyncTask.Status.PENDING) {
-                XLog.d(TAG, "tryStart(). 2");
-                mNextTask.execute(null);
-            }
-        }
-
-        /**
-         * 覆盖stop方法，停止时并不cancel当前任务，只是设置一个标记。
-         */
-        @Override
-        public void stop() {
-            XLog.d(TAG, "stop().");
-            mIsWorking = false;
-        }
     }
 
     /**
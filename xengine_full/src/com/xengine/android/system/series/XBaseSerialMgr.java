@@ -1,14 +1,23 @@
 package com.xengine.android.system.series;
 
 import android.os.AsyncTask;
+import com.xengine.android.toolkit.taskmgr.serial.XSerialEngine;
 import com.xengine.android.utils.XLog;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 
 /**
  * 线性执行类的基础实现类（针对AsyncTask）。
  * 封装了线性下载任务，以及相关操作。
+ * 等待队列、按id去重和执行位置都由XSerialEngine管理(与toolkit的XSerialMgrImpl共用)，本类只负责驱动AsyncTask：
+ * 1.去重和按id删除都是O(1)；
+ * 2.每个时刻最多只有一个任务占用执行位置，执行中的任务不在等待队列里；
+ * 3.删除或停止正在执行的任务时，立即cancel该任务并释放执行位置，马上启动下一个，
+ *   被cancel的task之后在onCancelled()里回调notifyTaskFinished()会被忽略；
+ * 4.stop()会cancel当前任务，pause()只标记暂停，当前任务执行完后不再继续下一个。
+ *   只有stop()和pause()会清除运行状态，队列空了不会清除，之后添加的任务调用tryStart()即可执行。
+ * 所有操作都在XSerialEngine中同步。
+ * TIP API 11以下被cancel的task的doInBackground()会继续执行完，可能与下一个task同时执行一段时间
  * @see XWrapperSerialMgr 扩展了几个包装接口的线性执行类
  * Created with IntelliJ IDEA.
  * User: tujun
@@ -19,98 +28,100 @@ import java.util.LinkedList;
 public abstract class XBaseSerialMgr implements XSerial<AsyncTask> {
     private static final String TAG = XBaseSerialMgr.class.getSimpleName();
 
-    protected AsyncTask mNextTask;
-    protected LinkedList<AsyncTask> mTobeExecuted;
-    protected boolean mIsWorking;
+    private final XSerialEngine<AsyncTask> mEngine;// 线性执行引擎
 
     public XBaseSerialMgr() {
-        mTobeExecuted = new LinkedList<AsyncTask>();
-        mIsWorking = false;
-    }
+        mEngine = new XSerialEngine<AsyncTask>(new XSerialEngine.Driver<AsyncTask>() {
+            @Override
+            public String getId(AsyncTask task) {
+                return getTaskId(task);
+            }
 
-    /**
-     * 判断是否包含某任务
-     * @param id
-     * @return
-     */
-    private boolean containsTask(String id) {
-        // id为null，则认为不包含此任务
-        if (id == null)
-            return false;
-
-        Iterator<AsyncTask> it = mTobeExecuted.iterator();
-        while (it.hasNext()) {
-            String taskId = getTaskId(it.next());
-            if (taskId != null && taskId.equals(id))
+            @Override
+            public boolean launch(AsyncTask task) {
+                // 已经执行过的task(不是PENDING状态)无法再次执行，直接丢弃
+                if (task.getStatus() != AsyncTask.Status.PENDING)
+                    return false;
+                XLog.d(TAG, "scheduleNext execute," + task);
+                // 原始类型上execute()会传入Object[]，子类的doInBackground(Void...)会抛ClassCastException
+                task.execute((Object[]) null);
                 return true;
-        }
-        return false;
+            }
+
+            @Override
+            public void cancel(AsyncTask task) {
+                task.cancel(true);
+            }
+        });
     }
 
     @Override
-    public synchronized boolean addNewTask(AsyncTask task) {
-        if (containsTask(getTaskId(task)))// 判断是否重复
-            return false;
-
-        mTobeExecuted.offer(task);
-        return true;
+    public boolean addNewTask(AsyncTask task) {
+        return mEngine.add(task);
     }
 
     @Override
     public void removeTask(String taskId) {
-        if (taskId == null)
-            return;
-
-        Iterator<AsyncTask> it = mTobeExecuted.iterator();
-        while (it.hasNext()) {
-            AsyncTask task = it.next();
-            if (taskId.equals(getTaskId(task))) {
-                removeTask(task);
-                return;
-            }
-        }
+        removeTask(mEngine.get(taskId));
     }
 
     @Override
     public void removeTask(AsyncTask task) {
-        mTobeExecuted.remove(task);
-        if (mNextTask == task) {
-            mNextTask = findNextTask();
-            task.cancel(true);
-        }
+        mEngine.remove(task);
     }
 
     @Override
     public void start() {
-        mIsWorking = true;
+        mEngine.start();
+    }
+
+    /**
+     * 标记为运行状态，但不启动任务。
+     * @see #tryStart()
+     */
+    public void setWorking() {
+        mEngine.setWorking();
+    }
 
-        mNextTask = findNextTask();
-        if (mNextTask != null &&
-                mNextTask.getStatus() == AsyncTask.Status.PENDING)
-            mNextTask.execute(null);
+    /**
+     * 根据当前标记，尝试启动。但不改变当前标记。
+     */
+    public void tryStart() {
+        mEngine.tryStart();
     }
 
     @Override
     public void stop() {
-        if (mNextTask != null)
-            mNextTask.cancel(true);
-        mNextTask = null;
-        mIsWorking = false;
+        mEngine.stop();
+    }
+
+    /**
+     * 暂停任务队列的执行。
+     * 与stop()不同，当前正在执行的任务不会被cancel，
+     * 只是在它结束后不再继续执行下一个任务。
+     */
+    public void pause() {
+        mEngine.pause();
     }
 
     @Override
     public void stopAndReset() {
-        stop();
-        Iterator<AsyncTask> it = mTobeExecuted.iterator();
-        while (it.hasNext()) {
-            it.next().cancel(true);
-        }
-        mTobeExecuted.clear();
+        mEngine.stop();
+        List<AsyncTask> tasks = mEngine.clear();
+        for (AsyncTask task : tasks)
+            task.cancel(true);
     }
 
     @Override
     public AsyncTask findNextTask() {
-        return mTobeExecuted.peek();
+        return mEngine.peek();
+    }
+
+    /**
+     * @return 返回未结束的任务数量(包括正在执行的)
+     */
+    public int getTaskCount() {
+        return mEngine.size();
     }
 
     /**
@@ -118,27 +129,8 @@ public abstract class XBaseSerialMgr implements XSerial<AsyncTask> {
      * task在结束时回调此函数(onPostExecuted()或onCancel()里)
      * @param task 已结束的task
      */
-    protected synchronized void notifyTaskFinished(AsyncTask task) {
-        // 只要结束就从队列里删除（无论是cancel的还是正常结束的）
-        mTobeExecuted.remove(task);
-
-        // 如果已经标记停止，则什么都不做
-        if (!mIsWorking)
-            return;
-
-        // 如果task是当前执行的mNextTask,则寻找下一个任务
-        if (task == mNextTask) {
-            XLog.d(TAG, "notifyTaskFinished task == mNextTask, " + task);
-            mNextTask = findNextTask();
-        }
-
-        if (mNextTask != null) {
-            XLog.d(TAG, "notifyTaskFinished mNextTask!=null," + mNextTask);
-            if (mNextTask.getStatus() == AsyncTask.Status.PENDING)
-                mNextTask.execute(null);// 执行下一个任务
-        } else {
-            XLog.d(TAG, "notifyTaskFinished mNextTask==null");
-            mIsWorking = false;// 没有任务，标记结束
-        }
+    protected void notifyTaskFinished(AsyncTask task) {
+        if (!mEngine.finished(task))
+            XLog.d(TAG, "notifyTaskFinished task != running task, " + task);
     }
 }
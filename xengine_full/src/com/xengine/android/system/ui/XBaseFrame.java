@@ -31,6 +31,10 @@ import com.xengine.android.system.mobile.XAndroidMobileMgr;
 import com.xengine.android.system.mobile.XMobileMgr;
 import com.xengine.android.system.ssm.XAndroidSSM;
 import com.xengine.android.system.ssm.XSystemStateManager;
+import com.xengine.android.toolkit.startup.XBaseInitStage;
+import com.xengine.android.toolkit.startup.XInitPipeline;
+import com.xengine.android.toolkit.startup.XInitPipelineImpl;
+import com.xengine.android.toolkit.startup.XInitReport;
 import com.xengine.android.utils.XLog;
 
 import java.util.ArrayList;
@@ -43,6 +47,16 @@ public abstract class XBaseFrame extends Activity implements XUIFrame {
 
     private static final String TAG = "UIFrame";
 
+    /**
+     * 内置初始化阶段的名称，子类在addInitStages()中添加的阶段可以依赖这些阶段
+     */
+    public static final String STAGE_SCREEN = "screen";
+    public static final String STAGE_GRAPHICS = "graphics";
+    public static final String STAGE_AUDIO = "audio";
+    public static final String STAGE_FILE = "file";
+    public static final String STAGE_IMAGE_PROCESSOR = "imageProcessor";
+    public static final String STAGE_MOBILE = "mobile";
+
     /**
      * 所有组件的容器根
      */
@@ -73,6 +87,11 @@ public abstract class XBaseFrame extends Activity implements XUIFrame {
      */
     private XMobileMgr mobileMgr;
 
+    /**
+     * 启动时各初始化阶段的耗时报告
+     */
+    private XInitReport initReport;
+
     /**
      * 窗口中已经添加的图层
      */
@@ -127,20 +146,55 @@ public abstract class XBaseFrame extends Activity implements XUIFrame {
         root = new RelativeLayout(this);
         setContentView(root);
 
-        // 初始化各辅助模块
+        // 初始化各辅助模块（按依赖关系并行执行，必须在UI线程的阶段留在UI线程）
         ssm = XAndroidSSM.getInstance();
-        graphics = new XAndroidGraphics(this);
-        audio = new XAndroidAudio(this);
-        screen = new XAndroidScreen(this);
-
-        XFileMgr fileMgr = XAndroidFileMgr.getInstance();
-        if (TextUtils.isEmpty(fileMgr.getRootName()))
-            fileMgr.setRootName(getString(R.string.app_name));
-        fileMgr.setDir(XFileMgr.FILE_TYPE_TMP, "tmp", true);
-        fileMgr.setDir(XFileMgr.FILE_TYPE_PHOTO, "photo", true);
-        XAndroidImageProcessor.getInstance().init(screen.getScreenWidth(),
-                screen.getScreenHeight(), fileMgr.getDir(XFileMgr.FILE_TYPE_TMP));
-        mobileMgr = new XAndroidMobileMgr(this);
+        XInitPipeline pipeline = new XInitPipelineImpl();
+        pipeline.addStage(new XBaseInitStage(STAGE_SCREEN, true) {
+            @Override
+            public void run() {
+                screen = new XAndroidScreen(XBaseFrame.this);
+            }
+        });
+        pipeline.addStage(new XBaseInitStage(STAGE_GRAPHICS, false) {
+            @Override
+            public void run() {
+                graphics = new XAndroidGraphics(XBaseFrame.this);
+            }
+        });
+        pipeline.addStage(new XBaseInitStage(STAGE_AUDIO, false) {
+            @Override
+            public void run() {
+                audio = new XAndroidAudio(XBaseFrame.this);
+            }
+        });
+        pipeline.addStage(new XBaseInitStage(STAGE_FILE, false) {
+            @Override
+            public void run() {
+                XFileMgr fileMgr = XAndroidFileMgr.getInstance();
+                if (TextUtils.isEmpty(fileMgr.getRootName()))
+                    fileMgr.setRootName(getString(R.string.app_name));
+                fileMgr.setDir(XFileMgr.FILE_TYPE_TMP, "tmp", true);
+                fileMgr.setDir(XFileMgr.FILE_TYPE_PHOTO, "photo", true);
+            }
+        });
+        pipeline.addStage(new XBaseInitStage(STAGE_IMAGE_PROCESSOR, false,
+                STAGE_SCREEN, STAGE_FILE) {
+            @Override
+            public void run() {
+                XAndroidImageProcessor.getInstance().init(screen.getScreenWidth(),
+                        screen.getScreenHeight(),
+                        XAndroidFileMgr.getInstance().getDir(XFileMgr.FILE_TYPE_TMP));
+            }
+        });
+        pipeline.addStage(new XBaseInitStage(STAGE_MOBILE, true, STAGE_FILE) {
+            @Override
+            public void run() {
+                mobileMgr = new XAndroidMobileMgr(XBaseFrame.this);
+            }
+        });
+        addInitStages(pipeline);
+        initReport = pipeline.execute();
+        XLog.d(TAG, "Init modules: " + initReport);
 
         // 用户自定义初始化（）
         init(this);
@@ -153,6 +207,21 @@ public abstract class XBaseFrame extends Activity implements XUIFrame {
         changeFrameState(XUIFrameState.CREATED);
     }
 
+    /**
+     * 添加自定义的初始化阶段，与内置阶段一起并行执行（在init()之前完成）。
+     * TIP 子类可覆盖此方法
+     * @param pipeline 初始化流水线
+     * @see #STAGE_FILE
+     */
+    protected void addInitStages(XInitPipeline pipeline) {}
+
+    /**
+     * 返回启动时各初始化阶段的耗时报告（包含关键路径）
+     */
+    public XInitReport getInitReport() {
+        return initReport;
+    }
+
     @Override
     public void setImageViewPic(ImageView view, String picPath){
         Bitmap pic = graphics().getBitmap(picPath);
@@ -1,13 +1,30 @@
 package com.xengine.android.data.cache;
 
 
-import java.util.HashMap;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * 数据仓库
+ * 支持内存预算：按最近访问顺序记录所有数据源，估算每个数据源占用的内存，
+ * 超过预算时把最久没用的可换出数据源(XWithSpill)写入数据库并释放内存，
+ * 下一次getSource()时再从数据库加载。默认不限制内存。
+ * 应用应在Application的onLowMemory()/onTrimMemory()中调用本类的同名方法。
+ * 每个数据源的命中/加载次数和加载耗时见getStats()。
+ * @see com.xengine.android.data.cache.XWithSpill
  */
 public class DefaultDataRepo implements XDataRepository {
 
+    public static final long NO_BUDGET = Long.MAX_VALUE;// 不限制内存
+    public static final long DEFAULT_ITEM_MEMORY_SIZE = 256;// 不可换出的数据源每条数据估算占用的内存(字节)
+
+    // 与ComponentCallbacks2中的常量一致(API 14才有该接口)
+    public static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    public static final int TRIM_MEMORY_MODERATE = 60;
+
     private static class SingletonHolder {
         final static DefaultDataRepo INSTANCE = new DefaultDataRepo();
     }
@@ -16,28 +33,235 @@ public class DefaultDataRepo implements XDataRepository {
         return SingletonHolder.INSTANCE;
     }
 
-    private HashMap<String, XDataSource> map;
+    private LinkedHashMap<String, Entry> map;// 按最近访问顺序排列
+    private long mMemoryBudget;// 内存预算(字节)
+
     private DefaultDataRepo(){
-        map = new HashMap<String, XDataSource>();
+        map = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        mMemoryBudget = NO_BUDGET;
     }
 
     @Override
-    public void registerDataSource(XDataSource source) {
+    public synchronized void registerDataSource(XDataSource source) {
         if (!map.containsKey(source.getSourceName()))
-            map.put(source.getSourceName(), source);
+            map.put(source.getSourceName(), new Entry(source));
     }
 
     @Override
-    public void unregisterDataSource(XDataSource source) {
+    public synchronized void unregisterDataSource(XDataSource source) {
         map.remove(source.getSourceName());
     }
 
+    /**
+     * 获取数据源。如果数据源已被换出，会在当前线程从数据库重新加载。
+     */
     @Override
     public XDataSource getSource(String sourceName) {
-        return map.get(sourceName);
+        Entry entry;
+        synchronized (this) {
+            entry = map.get(sourceName);
+        }
+        if (entry == null)
+            return null;
+        entry.ensureLoaded();
+        trimToBudget(getMemoryBudget(), entry);
+        return entry.source;
     }
 
-    public boolean isEmpty() {
+    public synchronized boolean isEmpty() {
         return map.isEmpty();
     }
+
+    /**
+     * 设置内存预算。超过预算时换出最久没用的数据源。
+     * @param bytes 内存预算(字节)，NO_BUDGET表示不限制
+     */
+    public void setMemoryBudget(long bytes) {
+        synchronized (this) {
+            mMemoryBudget = bytes;
+        }
+        trimToBudget(bytes, null);
+    }
+
+    public synchronized long getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    /**
+     * @return 返回所有数据源估算占用的内存(字节)
+     */
+    public long getMemorySize() {
+        long total = 0;
+        for (Entry entry : getEntries())
+            total += entry.getMemorySize();
+        return total;
+    }
+
+    /**
+     * 系统内存不足，换出所有可换出的数据源。
+     */
+    public void onLowMemory() {
+        trimToBudget(0, null);
+    }
+
+    /**
+     * 系统要求释放内存。
+     * 内存紧张或界面不可见时只保留一半的内存预算，更严重时换出所有可换出的数据源。
+     * @param level ComponentCallbacks2中的TRIM_MEMORY_XXX
+     */
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            trimToBudget(0, null);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            long budget = Math.min(getMemoryBudget(), getMemorySize());
+            trimToBudget(budget / 2, null);
+        }
+    }
+
+    /**
+     * @param sourceName 数据源名称
+     * @return 返回数据源的统计信息;没有注册返回null
+     */
+    public Stats getStats(String sourceName) {
+        // TIP map.get()会改变访问顺序，所以遍历查找
+        for (Entry entry : getEntries()) {
+            if (entry.source.getSourceName().equals(sourceName))
+                return entry.getStats();
+        }
+        return null;
+    }
+
+    /**
+     * @return 返回所有数据源的统计信息(按最久没用到最近使用排列)
+     */
+    public List<Stats> getAllStats() {
+        List<Entry> entries = getEntries();
+        List<Stats> result = new ArrayList<Stats>(entries.size());
+        for (Entry entry : entries)
+            result.add(entry.getStats());
+        return result;
+    }
+
+    private synchronized List<Entry> getEntries() {
+        return new ArrayList<Entry>(map.values());
+    }
+
+    /**
+     * 按最久没用的顺序换出数据源，直到总内存不超过预算。
+     * 数据库读写都不在仓库的锁内进行。
+     * @param budget 内存预算(字节)
+     * @param keep 不换出的数据源(刚被访问的)，可为null
+     */
+    private void trimToBudget(long budget, Entry keep) {
+        if (budget == NO_BUDGET)
+            return;
+        List<Entry> entries = getEntries();
+        long total = 0;
+        long[] sizes = new long[entries.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = entries.get(i).getMemorySize();
+            total += sizes[i];
+        }
+        for (int i = 0; i < sizes.length && total > budget; i++) {
+            Entry entry = entries.get(i);
+            if (entry == keep || sizes[i] == 0)
+                continue;
+            if (entry.spill())
+                total -= sizes[i];
+        }
+    }
+
+    /**
+     * 数据源的统计信息(快照)。
+     */
+    public static final class Stats {
+        public final String sourceName;// 数据源名称
+        public final long memorySize;// 估算占用的内存(字节)
+        public final boolean spilled;// 当前是否被换出
+        public final int hitCount;// getSource()时数据在内存中的次数
+        public final int missCount;// getSource()时需要从数据库加载的次数
+        public final int spillCount;// 被换出的次数
+        public final long totalLoadMillis;// 重新加载的总耗时(毫秒)
+        public final long lastLoadMillis;// 最近一次重新加载的耗时(毫秒)
+
+        Stats(String sourceName, long memorySize, boolean spilled, int hitCount, int missCount,
+              int spillCount, long totalLoadMillis, long lastLoadMillis) {
+            this.sourceName = sourceName;
+            this.memorySize = memorySize;
+            this.spilled = spilled;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.spillCount = spillCount;
+            this.totalLoadMillis = totalLoadMillis;
+            this.lastLoadMillis = lastLoadMillis;
+        }
+
+        /**
+         * @return 返回命中率(0~1)，没有访问过返回0
+         */
+        public float getHitRate() {
+            int total = hitCount + missCount;
+            return total == 0 ? 0 : (float) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return sourceName + "{memory=" + memorySize + ", spilled=" + spilled
+                    + ", hit=" + hitCount + ", miss=" + missCount + ", spill=" + spillCount
+                    + ", load=" + totalLoadMillis + "ms, lastLoad=" + lastLoadMillis + "ms}";
+        }
+    }
+
+    /**
+     * 仓库中的一个数据源。换出和加载都在本对象的锁内进行。
+     */
+    private static final class Entry {
+        final XDataSource source;
+        private int mHitCount;
+        private int mMissCount;
+        private int mSpillCount;
+        private long mTotalLoadMillis;
+        private long mLastLoadMillis;
+
+        Entry(XDataSource source) {
+            this.source = source;
+        }
+
+        long getMemorySize() {
+            if (source instanceof XWithSpill)
+                return ((XWithSpill) source).getMemorySize();
+            if (source instanceof XAdapterDataSource)
+                return ((XAdapterDataSource) source).size() * DEFAULT_ITEM_MEMORY_SIZE;
+            return 0;
+        }
+
+        synchronized void ensureLoaded() {
+            if (!(source instanceof XWithSpill) || !((XWithSpill) source).isSpilled()
+                    || !(source instanceof XWithDatabase)) {
+                mHitCount++;
+                return;
+            }
+            mMissCount++;
+            long start = SystemClock.uptimeMillis();
+            ((XWithDatabase) source).loadFromDatabase();
+            mLastLoadMillis = SystemClock.uptimeMillis() - start;
+            mTotalLoadMillis += mLastLoadMillis;
+        }
+
+        synchronized boolean spill() {
+            if (!(source instanceof XWithSpill))
+                return false;
+            XWithSpill spillable = (XWithSpill) source;
+            if (spillable.isSpilled() || !spillable.spill())
+                return false;
+            mSpillCount++;
+            return true;
+        }
+
+        synchronized Stats getStats() {
+            boolean spilled = source instanceof XWithSpill && ((XWithSpill) source).isSpilled();
+            return new Stats(source.getSourceName(), getMemorySize(), spilled, mHitCount,
+                    mMissCount, mSpillCount, mTotalLoadMillis, mLastLoadMillis);
+        }
+    }
 }
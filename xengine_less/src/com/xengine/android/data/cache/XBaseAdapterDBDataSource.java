@@ -1,13 +1,16 @@
 package com.xengine.android.data.cache;
 
-import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import com.xengine.android.data.db.XBatchWriter;
 import com.xengine.android.data.db.XDBTable;
 import com.xengine.android.data.db.XSQLiteHelper;
 
+import java.util.List;
+
 /**
  * 继承自XBaseAdapterDataSource的带数据库支持的数据源抽象类。
+ * 支持换出(spill())：写入数据库后释放内存，由数据仓库在内存不足时调用。
  * Created by 赵之韵.
  * Email: ttxzmorln@163.com
  * Date: 12-3-8
@@ -15,67 +18,136 @@ import com.xengine.android.data.db.XSQLiteHelper;
  * @see com.xengine.android.data.cache.XBaseAdapterDataSource
  */
 public abstract class XBaseAdapterDBDataSource<T>
-        extends XBaseAdapterDataSource<T> implements XWithDatabase<T> {
+        extends XBaseAdapterDataSource<T> implements XWithDatabase<T>, XWithSpill {
+
+    public static final long DEFAULT_ITEM_MEMORY_SIZE = 256;// 默认每条数据估算占用的内存(字节)
+
+    private boolean mSpilled;// 是否已被换出到数据库
 
+    /**
+     * 把所有数据追加写入数据库(在一个事务中，使用预编译语句)。
+     */
     @Override
     public boolean addToDatabase() {
-        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
-        XDBTable<T> table = getDatabaseTable();
-        if (!dbHelper.isTableExist(table))
-            dbHelper.createTable(table);
-
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        if (db == null)
-            return false;
-        for (int i = 0; i < size(); i++) {
-            ContentValues cv = table.getContentValues(get(i));
-            db.insert(table.getName(), null, cv);
-        }
-        db.close();
-        return true;
+        return writeAll(false);
     }
 
+    /**
+     * 用所有数据覆盖数据表(在一个事务中先清空再写入，失败时数据表保持原样)。
+     */
     @Override
     public boolean saveToDatabase() {
-        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
-        XDBTable<T> table = getDatabaseTable();
-        if (dbHelper.isTableExist(table))
-            dbHelper.dropTable(table);
-        dbHelper.createTable(table);
+        return writeAll(true);
+    }
+
+    /**
+     * 估算的每条数据占用的内存(字节)，用于getMemorySize()。
+     * TIP 数据较大的子类应覆盖此方法
+     */
+    protected long getItemMemorySize() {
+        return DEFAULT_ITEM_MEMORY_SIZE;
+    }
+
+    @Override
+    public long getMemorySize() {
+        return size() * getItemMemorySize();
+    }
 
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        if (db == null)
+    @Override
+    public synchronized boolean spill() {
+        if (mSpilled)
+            return true;
+        if (hasDataChangeListeners())
+            return false;// 可能绑定着Adapter，不通知就清空会让ListView报错
+        if (!writeAll(true))
             return false;
-        for (int i = 0; i < size(); i++) {
-            ContentValues cv = table.getContentValues(get(i));
-            db.insert(table.getName(), null, cv);
+        boolean isAutoNotify = mIsAutoNotify;
+        mIsAutoNotify = false;
+        try {
+            clear();
+        } finally {
+            mIsAutoNotify = isAutoNotify;
         }
-        db.close();
+        mSpilled = true;
         return true;
     }
 
+    @Override
+    public synchronized boolean isSpilled() {
+        return mSpilled;
+    }
+
     @Override
     public boolean loadFromDatabase() {
         XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
         XDBTable<T> table = getDatabaseTable();
         dbHelper.createIfNotExist(table);
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        if (db == null)
+        SQLiteDatabase db = dbHelper.acquireDatabase();
+        if (db == null) {
+            dbHelper.releaseDatabase();
             return false;
+        }
 
-        clear();
-        Cursor cur = db.rawQuery("SELECT * FROM " + table.getName(), null);
-        if (cur.moveToFirst()) {
-            while (!cur.isAfterLast()) {
-                T item = table.getFilledInstance(cur);
-//                add(item);// 太低效
-                mItemList.add(item);
-                cur.moveToNext();
+        Cursor cur = null;
+        try {
+            clear();
+            cur = db.rawQuery("SELECT * FROM " + table.getName(), null);
+            if (cur.moveToFirst()) {
+                while (!cur.isAfterLast()) {
+                    T item = table.getFilledInstance(cur);
+//                    add(item);// 太低效
+                    mItemList.add(item);
+                    cur.moveToNext();
+                }
             }
+            markModified();
+            synchronized (this) {
+                mSpilled = false;
+            }
+            return true;
+        } finally {
+            if (cur != null)
+                cur.close();
+            dbHelper.releaseDatabase();
         }
-        cur.close();
-        db.close();
-        return true;
     }
 
+    /**
+     * 在一个事务中写入所有数据。
+     * @param overwrite true表示先清空数据表
+     */
+    private boolean writeAll(boolean overwrite) {
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        XDBTable<T> table = getDatabaseTable();
+        dbHelper.createIfNotExist(table);
+        SQLiteDatabase db = dbHelper.acquireDatabase();
+        if (db == null) {
+            dbHelper.releaseDatabase();
+            return false;
+        }
+
+        List<T> items;
+        synchronized (this) {
+            items = copyAll();
+        }
+        XBatchWriter writer = new XBatchWriter(db, table.getName());
+        dbHelper.beginWrite(table);
+        db.beginTransaction();
+        try {
+            if (overwrite)
+                writer.deleteAll();
+            for (T item : items)
+                writer.insert(table.getContentValues(item));
+            db.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            writer.close();
+            db.endTransaction();
+            dbHelper.endWrite(table);
+            dbHelper.releaseDatabase();
+        }
+    }
 }
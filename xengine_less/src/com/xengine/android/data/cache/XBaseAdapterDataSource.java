@@ -8,11 +8,14 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 实现XAdapterDataSource接口的数据源抽象类。
+ * 支持只读快照：所有修改都会递增版本号，UI线程可通过getSnapshot()无锁读取一致的数据。
+ * TIP 子类直接修改mItemList后，应调用markModified()
  * Created by 赵之韵.
  * Date: 11-12-17
  * Time: 上午1:01
  */
-public abstract class XBaseAdapterDataSource<T> implements XAdapterDataSource<T> {
+public abstract class XBaseAdapterDataSource<T>
+        implements XAdapterDataSource<T>, XWithSnapshot<T> {
 
     /**
      * 实际的对象列表。
@@ -29,15 +32,22 @@ public abstract class XBaseAdapterDataSource<T> implements XAdapterDataSource<T>
      */
     protected boolean mIsAutoNotify;
 
+    /**
+     * 版本号和快照
+     */
+    private final XSnapshotPublisher<T> mSnapshots;
+
     public XBaseAdapterDataSource() {
         mItemList = new ArrayList<T>();
         mListeners = new CopyOnWriteArrayList<XDataChangeListener<T>>();
         mIsAutoNotify = true;
+        mSnapshots = new XSnapshotPublisher<T>();
     }
 
     @Override
-    public void sort(Comparator<T> comparator) {
+    public synchronized void sort(Comparator<T> comparator) {
         Collections.sort(mItemList, comparator);
+        markModified();
     }
 
     @Override
@@ -54,6 +64,7 @@ public abstract class XBaseAdapterDataSource<T> implements XAdapterDataSource<T>
     public synchronized void add(T item) {
         if (!mItemList.contains(item)) {
             mItemList.add(item);
+            markModified();
             if (mIsAutoNotify)
                 notifyAddItem(item);
         }
@@ -68,6 +79,7 @@ public abstract class XBaseAdapterDataSource<T> implements XAdapterDataSource<T>
             if(!mItemList.contains(item))
                 mItemList.add(item);
         }
+        markModified();
         if (mIsAutoNotify)
             notifyAddItems(items);
     }
@@ -83,6 +95,7 @@ public abstract class XBaseAdapterDataSource<T> implements XAdapterDataSource<T>
             return;
 
         T item = mItemList.remove(index);
+        markModified();
         if (mIsAutoNotify)
             notifyDeleteItem(item);
     }
@@ -90,6 +103,7 @@ public abstract class XBaseAdapterDataSource<T> implements XAdapterDataSource<T>
     @Override
     public synchronized void delete(T item) {
         if (mItemList.remove(item)) {
+            markModified();
             if (mIsAutoNotify)
                 notifyDeleteItem(item);
         }
@@ -98,6 +112,7 @@ public abstract class XBaseAdapterDataSource<T> implements XAdapterDataSource<T>
     @Override
     public synchronized void deleteAll(List<T> items) {
         if (mItemList.removeAll(items)) {
+            markModified();
             if (mIsAutoNotify)
                 notifyDeleteItems(items);
         }
@@ -125,10 +140,18 @@ public abstract class XBaseAdapterDataSource<T> implements XAdapterDataSource<T>
     public synchronized void clear() {
         List<T> copyItems = new ArrayList<T>(mItemList);
         mItemList.clear();
+        markModified();
         if (mIsAutoNotify)
             notifyDeleteItems(copyItems);
     }
 
+    /**
+     * @return 有注册的数据变化监听器返回true
+     */
+    protected boolean hasDataChangeListeners() {
+        return !mListeners.isEmpty();
+    }
+
     @Override
     public void registerDataChangeListener(XDataChangeListener<T> listener) {
         if (!mListeners.contains(listener))
@@ -167,6 +190,28 @@ public abstract class XBaseAdapterDataSource<T> implements XAdapterDataSource<T>
             listener.onDeleteAll(items);
     }
 
+    @Override
+    public XDataSnapshot<T> getSnapshot() {
+        XDataSnapshot<T> snapshot = mSnapshots.peek();
+        if (snapshot != null)
+            return snapshot;
+        synchronized (this) {
+            return mSnapshots.publish(mItemList);
+        }
+    }
+
+    @Override
+    public long getVersion() {
+        return mSnapshots.getVersion();
+    }
+
+    /**
+     * 标记数据发生了变化(版本号递增，旧快照失效)。
+     */
+    protected synchronized void markModified() {
+        mSnapshots.markModified();
+    }
+
     @Override
     public void setAutoNotifyListeners(boolean isAuto) {
         this.mIsAutoNotify = isAuto;
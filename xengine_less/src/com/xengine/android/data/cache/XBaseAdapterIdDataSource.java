@@ -1,18 +1,35 @@
 package com.xengine.android.data.cache;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 基于Id唯一标识每个数据的数据源抽象类。
+ * 除了对象列表，还维护一个id到元素槽号的哈希索引，按id的查找、判重都是O(1)。
+ * 槽号是元素加入时分配的稳定编号(见XPositionTree)，删除中间的元素不改变其他元素的槽号，
+ * 所以添加、替换、删除都原地更新索引(删除为O(log N))，不需要重建(id重复时也一样，见XSlotIndex);
+ * 只有排序等会打乱顺序的操作才标记索引失效，下一次按id查找时再用O(N)重建一次。
+ * 子类直接修改mItemList后，应调用invalidateIndex()；只在末尾添加的，可改用appendItem()。
+ * 支持只读快照：所有修改都会递增版本号，UI线程可通过getSnapshot()无锁读取一致的数据。
+ * 支持细粒度变化通知：注册XDataChangeSetListener的监听者会收到插入/删除/移动/变化的坐标范围，
+ * 一帧内的连续变化合并成一次回调。
+ * 支持异步排序(sortAsync())：数据量大时在后台线程池中并行排序，新的请求会取消旧的请求。
  * Created by jasontujun.
  * Date: 11-12-17
  * Time: 上午1:01
  */
-public abstract class XBaseAdapterIdDataSource<T> implements XAdapterDataSource<T>, XWithId<T> {
+public abstract class XBaseAdapterIdDataSource<T>
+        implements XAdapterDataSource<T>, XWithId<T>, XWithSnapshot<T> {
 
     /**
      * 实际的对象列表。
@@ -29,15 +46,60 @@ public abstract class XBaseAdapterIdDataSource<T> implements XAdapterDataSource<
      */
     protected boolean mIsAutoNotify;
 
+    /**
+     * id到元素槽号的索引
+     */
+    private final XSlotIndex mIndexById;
+
+    /**
+     * 索引是否已失效
+     */
+    private boolean mIndexDirty;
+
+    /**
+     * 槽号和坐标的换算(其长度与mItemList长度不一致时，说明列表被直接修改过)
+     */
+    private final XPositionTree mPositions;
+
+    /**
+     * 版本号和快照
+     */
+    private final XSnapshotPublisher<T> mSnapshots;
+
+    /**
+     * 细粒度变化的收集和分发
+     */
+    private final XChangeSetBatcher<T> mChangeSets;
+
+    private final AtomicInteger mAsyncRequests;// 异步请求计数(用于取消旧的请求)
+    private volatile int mParallelThreshold;// 并行排序的阈值
+    private volatile Executor mAsyncDispatcher;// 发布异步结果的线程(为null时为主线程)
+
     protected XBaseAdapterIdDataSource() {
         mItemList = new ArrayList<T>();
+        mIndexById = new XSlotIndex();
+        mIndexDirty = false;
+        mPositions = new XPositionTree();
+        mSnapshots = new XSnapshotPublisher<T>();
+        mChangeSets = new XChangeSetBatcher<T>(this);
+        mAsyncRequests = new AtomicInteger();
+        mParallelThreshold = XParallel.DEFAULT_THRESHOLD;
         mListeners = new CopyOnWriteArrayList<XDataChangeListener<T>>();
         mIsAutoNotify = true;
     }
 
     @Override
-    public void sort(Comparator<T> comparator) {
+    public synchronized void sort(Comparator<T> comparator) {
+        cancelAsync();// 还没完成的异步排序不能再覆盖这次的结果
+        applySort(comparator);
+    }
+
+    private void applySort(Comparator<T> comparator) {
+        Object[] before = isRecording() ? mItemList.toArray() : null;
         Collections.sort(mItemList, comparator);
+        invalidateIndex();
+        if (before != null)
+            recordMoves(before);
     }
 
     @Override
@@ -66,13 +128,13 @@ public abstract class XBaseAdapterIdDataSource<T> implements XAdapterDataSource<
 
         int index = getIndexById(getId(item));
         if (index == -1) {
-            mItemList.add(item);
+            appendItem(item);
             if (mIsAutoNotify)
                 notifyAddItem(item);
         } else {
             replace(index, item);
             if (mIsAutoNotify)
-                notifyDataChanged();
+                notifyChange();
         }
     }
 
@@ -81,11 +143,12 @@ public abstract class XBaseAdapterIdDataSource<T> implements XAdapterDataSource<
         if (items == null || items.size() == 0)
             return;
 
+        mItemList.ensureCapacity(mItemList.size() + items.size());
         for (int i = 0; i<items.size(); i++) {
             T item = items.get(i);
             int index = getIndexById(getId(item));
             if (index == -1) {
-                mItemList.add(item);
+                appendItem(item);
             } else {
                 replace(index, item);
             }
@@ -94,6 +157,74 @@ public abstract class XBaseAdapterIdDataSource<T> implements XAdapterDataSource<
             notifyAddItems(items);
     }
 
+    /**
+     * 用新的列表整体替换数据源中的数据(如从服务器刷新整个列表)。
+     * 新列表中键(getKey())重复的数据只保留第一个。
+     * 细粒度监听者收到的变化由Myers差分算法计算(按键匹配，键相同但不equals的记为变化)，
+     * 只有真正增删改的数据需要重新绑定；差异太大时退化为整体刷新。
+     * @param items 新的数据列表
+     */
+    public synchronized void replaceAll(List<T> items) {
+        ArrayList<T> newItems = new ArrayList<T>(items == null ? 0 : items.size());
+        HashMap<String, Boolean> seen = new HashMap<String, Boolean>();
+        if (items != null) {
+            for (T item : items) {
+                if (item != null && seen.put(getKey(item), Boolean.TRUE) == null)
+                    newItems.add(item);
+            }
+        }
+
+        if (isRecording()) {
+            final List<T> oldItems = mItemList;
+            final List<T> finalItems = newItems;
+            String[] oldIds = new String[oldItems.size()];
+            for (int i = 0; i < oldIds.length; i++)
+                oldIds[i] = getKey(oldItems.get(i));
+            String[] newIds = new String[finalItems.size()];
+            for (int i = 0; i < newIds.length; i++)
+                newIds[i] = getKey(finalItems.get(i));
+            XDataChangeSet.Builder diff = new XDataChangeSet.Builder();
+            boolean success = XListDiff.diff(oldIds, newIds, new XListDiff.ContentComparator() {
+                @Override
+                public boolean isSameContent(int oldPosition, int newPosition) {
+                    T oldItem = oldItems.get(oldPosition);
+                    T newItem = finalItems.get(newPosition);
+                    return oldItem == newItem || oldItem.equals(newItem);
+                }
+            }, diff);
+            if (success)
+                mChangeSets.apply(diff.build(0, 0));
+            else
+                mChangeSets.reset();
+        }
+
+        // 只把真正增删改的数据通知给子类
+        HashMap<String, T> oldById = new HashMap<String, T>();
+        for (T oldItem : mItemList)
+            oldById.put(getKey(oldItem), oldItem);
+        for (T newItem : newItems) {
+            T oldItem = oldById.remove(getKey(newItem));
+            if (oldItem == null || (oldItem != newItem && !oldItem.equals(newItem)))
+                onItemStored(newItem);
+        }
+        for (T oldItem : oldById.values())
+            onItemDeleted(oldItem);
+
+        mItemList.clear();
+        mItemList.addAll(newItems);
+        invalidateIndex();
+        if (mIsAutoNotify)
+            notifyChange();
+    }
+
+    /**
+     * 返回在整个数据源中唯一标识数据的键，用于replaceAll()去重和匹配新旧数据。
+     * 默认就是getId();id只在某个范围内唯一的子类(如按用户名分类)应覆盖此方法。
+     */
+    protected String getKey(T item) {
+        return getId(item);
+    }
+
     @Override
     public boolean isEmpty() {
         return mItemList.isEmpty();
@@ -112,24 +243,43 @@ public abstract class XBaseAdapterIdDataSource<T> implements XAdapterDataSource<
             return;
 
         T item = mItemList.remove(index);
+        onItemRemoved(index, item);
         if (mIsAutoNotify)
             notifyDeleteItem(item);
     }
 
     @Override
     public synchronized void delete(T item) {
-        if (mItemList.remove(item)) {
-            if (mIsAutoNotify)
-                notifyDeleteItem(item);
-        }
+        int index = indexOf(item);
+        if (index != -1)
+            delete(index);
     }
 
+    /**
+     * 删除一堆元素：与items中任一元素equals的元素都被删除(与ArrayList.removeAll()相同)。
+     * 相等的元素按id查找(equals的元素id也相同)，标记后一次遍历压缩列表，
+     * 复杂度为O(M + 第一个被删除的元素之后的元素数)。
+     * @param items 要删除的元素
+     */
     @Override
     public synchronized void deleteAll(List<T> items) {
-        if (mItemList.removeAll(items)) {
-            if (mIsAutoNotify)
-                notifyDeleteItems(items);
+        if (items == null || items.size() == 0)
+            return;
+
+        BitSet marked = new BitSet(mItemList.size());
+        ensureIndex();
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            if (item == null)
+                continue;
+            List<Integer> slots = mIndexById.slots(getId(item));
+            for (int j = 0; j < slots.size(); j++) {
+                int index = mPositions.position(slots.get(j));
+                if (mItemList.get(index).equals(item))
+                    marked.set(index);
+            }
         }
+        deleteMarked(marked, items);
     }
 
     @Override
@@ -147,7 +297,14 @@ public abstract class XBaseAdapterIdDataSource<T> implements XAdapterDataSource<
     }
 
     @Override
-    public int indexOf(T item) {
+    public synchronized int indexOf(T item) {
+        if (item == null)
+            return -1;
+
+        // 先按id定位，再用equals确认
+        int index = getIndexById(getId(item));
+        if (index != -1 && item.equals(mItemList.get(index)))
+            return index;
         return mItemList.indexOf(item);
     }
 
@@ -156,14 +313,7 @@ public abstract class XBaseAdapterIdDataSource<T> implements XAdapterDataSource<
         if (item == null)
             return false;
 
-        final String id = getId(item);
-        for (int i = 0; i<size(); i++) {
-            T tmp = get(i);
-            if (getId(tmp).equals(id)) {
-                return true;
-            }
-        }
-        return false;
+        return getIndexById(getId(item)) != -1;
     }
 
     /**
@@ -176,25 +326,127 @@ public abstract class XBaseAdapterIdDataSource<T> implements XAdapterDataSource<
 
     @Override
     public synchronized void clear() {
+        if (isRecording())
+            mChangeSets.remove(0, mItemList.size());
         List<T> copyItems = new ArrayList<T>(mItemList);
         mItemList.clear();
+        invalidateIndex();
+        onItemsCleared();
         if (mIsAutoNotify)
             notifyDeleteItems(copyItems);
     }
 
+    /**
+     * @return 有注册的数据变化监听器(包括细粒度的)返回true
+     */
+    protected boolean hasDataChangeListeners() {
+        return !mListeners.isEmpty() || mChangeSets.hasListeners();
+    }
+
+    /**
+     * 注册数据变化的监听器。
+     * 如果是XDataChangeSetListener，则只回调其onChangeSet()。
+     * @param listener 数据变化监听器
+     */
     @Override
     public void registerDataChangeListener(XDataChangeListener<T> listener) {
+        if (listener instanceof XDataChangeSetListener) {
+            mChangeSets.addListener((XDataChangeSetListener<T>) listener);
+            return;
+        }
         if (!mListeners.contains(listener))
             mListeners.add(listener);
     }
 
     @Override
     public void unregisterDataChangeListener(XDataChangeListener<T> listener) {
+        if (listener instanceof XDataChangeSetListener)
+            mChangeSets.removeListener((XDataChangeSetListener<T>) listener);
         mListeners.remove(listener);
     }
 
+    /**
+     * 设置细粒度变化的分发器。
+     * 默认在主线程的下一次消息循环中分发(一帧内的变化合并成一次回调)。
+     * @param dispatcher 分发器，为null则恢复默认
+     */
+    public void setChangeSetDispatcher(Executor dispatcher) {
+        mChangeSets.setDispatcher(dispatcher);
+    }
+
+    /**
+     * 在后台线程中排序，排完后在主线程中一次性替换列表，并通知监听者。
+     * 数据量不小于并行阈值时分段并行排序，否则顺序排序。
+     * 还没完成的上一个异步请求会被取消；
+     * 排序期间数据源被修改过的，改为在主线程中同步排序。
+     * TIP 排序器会在多个线程中同时调用，必须是线程安全的
+     * @param comparator 排序器
+     */
+    public void sortAsync(final Comparator<T> comparator) {
+        final XParallel.Request request = XParallel.Request.next(mAsyncRequests);
+        XParallel.getCoordinator().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCancelled())
+                    return;
+                final Object[] items;
+                final long version;
+                synchronized (XBaseAdapterIdDataSource.this) {
+                    items = mItemList.toArray();
+                    version = getVersion();
+                }
+                try {
+                    XParallel.sort(items, comparator, mParallelThreshold, request);
+                } catch (CancellationException e) {
+                    return;
+                }
+                getAsyncDispatcher().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        publishSorted(request, comparator, items, version);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 取消还没完成的异步请求。
+     * 同步排序时会自动调用，避免旧的异步结果覆盖新的排序。
+     */
+    public void cancelAsync() {
+        mAsyncRequests.incrementAndGet();
+    }
+
+    /**
+     * 设置并行排序的阈值，数据量小于阈值时顺序排序。
+     */
+    public void setParallelThreshold(int threshold) {
+        mParallelThreshold = threshold;
+    }
+
+    /**
+     * 设置发布异步结果的线程。默认为主线程。
+     * @param dispatcher 分发器，为null则恢复默认
+     */
+    public void setAsyncDispatcher(Executor dispatcher) {
+        mAsyncDispatcher = dispatcher;
+    }
+
+    /**
+     * 通知数据发生了整体变化。
+     * 细粒度监听者会收到一个需要整体刷新的变化集。
+     */
     @Override
     public void notifyDataChanged() {
+        notifyChange();
+        mChangeSets.reset();
+    }
+
+    /**
+     * 通知普通监听者数据发生了变化(细粒度监听者由具体的变化通知)。
+     */
+    protected void notifyChange() {
         for (XDataChangeListener<T> listener: mListeners) {
             listener.onChange();
         }
@@ -227,19 +479,311 @@ public abstract class XBaseAdapterIdDataSource<T> implements XAdapterDataSource<
      * @param newItem
      */
     @Override
-    public void replace(int index, T newItem) {
-        mItemList.set(index, newItem);
+    public synchronized void replace(int index, T newItem) {
+        T oldItem = mItemList.set(index, newItem);
+        mSnapshots.markModified();
+        if (isRecording())
+            mChangeSets.change(index, 1);
+        String oldId = getId(oldItem);
+        String newId = getId(newItem);
+        if (!oldId.equals(newId))
+            onItemDeleted(oldItem);
+        onItemStored(newItem);
+        if (isIndexValid()) {
+            int slot = mPositions.slotAt(index);
+            if (!oldId.equals(newId)) {
+                mIndexById.remove(oldId, slot);
+                mIndexById.add(newId, slot);
+            }
+            onSlotUnindexed(oldItem, slot);
+            onSlotIndexed(newItem, slot);
+        }
     }
 
     @Override
-    public int getIndexById(String id) {
-        for (int i = 0; i<size(); i++) {
-            T tmp = get(i);
-            if (getId(tmp).equals(id)) {
-                return i;
+    public synchronized int getIndexById(String id) {
+        if (id == null)
+            return -1;
+
+        ensureIndex();
+        int i = positionOf(mIndexById.first(id));
+        if (i == -1)
+            return -1;
+        // 校验命中的坐标，防止子类绕过索引修改了列表
+        if (i < mItemList.size() && id.equals(getId(mItemList.get(i))))
+            return i;
+        markIndexDirty();// 只是修复索引，数据没有变化，不递增版本号
+        ensureIndex();
+        return positionOf(mIndexById.first(id));
+    }
+
+    /**
+     * 标记id索引失效，下一次按id查找时重建。
+     * TIP 子类直接修改了mItemList(非末尾添加)后必须调用此方法
+     */
+    protected synchronized void invalidateIndex() {
+        markIndexDirty();
+        mSnapshots.markModified();
+    }
+
+    /**
+     * 只标记索引失效，不递增版本号(数据没有变化，如发现索引与列表不一致时)。
+     */
+    void markIndexDirty() {
+        mIndexDirty = true;
+    }
+
+    /**
+     * 在列表末尾添加元素，并同步更新索引。
+     * TIP 子类有自己的索引时可覆盖此方法(需调用super)
+     */
+    protected void appendItem(T item) {
+        boolean valid = isIndexValid();
+        mItemList.add(item);
+        mSnapshots.markModified();
+        if (isRecording())
+            mChangeSets.insert(mItemList.size() - 1, 1);
+        onItemStored(item);
+        if (valid) {
+            int slot = mPositions.append();
+            mIndexById.add(getId(item), slot);
+            onSlotIndexed(item, slot);
+        } else {
+            markIndexDirty();
+        }
+    }
+
+    /**
+     * 数据被添加或替换后回调(在同步块内)。
+     * TIP 子类可覆盖此方法跟踪数据的变化(如增量持久化)，默认不做任何事
+     * @param item 添加或替换后的数据
+     */
+    protected void onItemStored(T item) {
+    }
+
+    /**
+     * 数据被删除后回调(在同步块内)。
+     * @param item 被删除的数据
+     * @see #onItemStored(Object)
+     */
+    protected void onItemDeleted(T item) {
+    }
+
+    /**
+     * 数据源被清空后回调(在同步块内)。
+     * @see #onItemStored(Object)
+     */
+    protected void onItemsCleared() {
+    }
+
+    /**
+     * 删除某个坐标的元素后原地更新索引(O(log N))。
+     */
+    private void onItemRemoved(int index, T item) {
+        mSnapshots.markModified();
+        if (isRecording())
+            mChangeSets.remove(index, 1);
+        onItemDeleted(item);
+        boolean wasValid = !mIndexDirty && mPositions.size() == mItemList.size() + 1;
+        if (wasValid) {
+            int slot = mPositions.slotAt(index);
+            mPositions.remove(slot);
+            unindexItem(item, slot);
+            if (mPositions.isSparse())
+                markIndexDirty();// 空槽太多，下次查找时重新编号
+        } else {
+            markIndexDirty();
+        }
+    }
+
+    /**
+     * 从索引中去掉已删除的元素。
+     */
+    private void unindexItem(T item, int slot) {
+        mIndexById.remove(getId(item), slot);
+        onSlotUnindexed(item, slot);
+    }
+
+    /**
+     * 删除所有被标记坐标的元素，并通知监听者。
+     * @param marked 要删除的坐标
+     * @param items 通知给监听者的元素
+     */
+    void deleteMarked(BitSet marked, List<T> items) {
+        if (marked.isEmpty())
+            return;
+
+        compact(marked);
+        if (mIsAutoNotify)
+            notifyDeleteItems(items);
+    }
+
+    /**
+     * 一次遍历删除所有被标记坐标的元素，保持剩余元素的相对顺序。
+     * @param marked 要删除的坐标
+     */
+    private void compact(BitSet marked) {
+        if (isRecording()) {
+            // 按坐标从小到大删除，后面的坐标要减去已删除的数量
+            int removed = 0;
+            for (int i = marked.nextSetBit(0); i >= 0; i = marked.nextSetBit(i + 1))
+                mChangeSets.remove(i - removed++, 1);
+        }
+        boolean valid = isIndexValid();
+        int count = marked.cardinality();
+        int[] slots = new int[count];
+        List<T> items = new ArrayList<T>(count);
+        int k = 0;
+        for (int i = marked.nextSetBit(0); i >= 0; i = marked.nextSetBit(i + 1)) {
+            T item = mItemList.get(i);
+            onItemDeleted(item);
+            if (valid)
+                slots[k++] = mPositions.slotAt(i);// 删除前换算，之后坐标会变
+            items.add(item);
+        }
+        int size = mItemList.size();
+        int write = marked.nextSetBit(0);
+        for (int read = write + 1; read < size; read++) {
+            if (!marked.get(read))
+                mItemList.set(write++, mItemList.get(read));
+        }
+        mItemList.subList(write, size).clear();
+        mSnapshots.markModified();
+        if (valid) {
+            // 其他元素的槽号不变，只需从索引中去掉被删除的元素
+            for (int j = count - 1; j >= 0; j--) {
+                mPositions.remove(slots[j]);
+                unindexItem(items.get(j), slots[j]);
             }
+            if (mPositions.isSparse())
+                markIndexDirty();
+        } else {
+            markIndexDirty();
+        }
+    }
+
+
+    private Executor getAsyncDispatcher() {
+        Executor dispatcher = mAsyncDispatcher;
+        return dispatcher != null ? dispatcher : XParallel.getMainDispatcher();
+    }
+
+    /**
+     * 发布异步排序的结果。
+     * @param version 开始排序时的版本号
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized void publishSorted(XParallel.Request request, Comparator<T> comparator,
+                                            Object[] sorted, long version) {
+        if (request.isCancelled())
+            return;
+        if (version != getVersion()) {
+            applySort(comparator);// 排序期间被修改过，结果已经过时
+        } else {
+            Object[] before = isRecording() ? mItemList.toArray() : null;
+            mItemList.clear();
+            mItemList.addAll((List<T>) Arrays.asList(sorted));
+            invalidateIndex();
+            if (before != null)
+                recordMoves(before);
         }
-        return -1;
+        if (mIsAutoNotify)
+            notifyChange();
+    }
+
+    /**
+     * @return 需要记录细粒度变化返回true;否则返回false
+     */
+    private boolean isRecording() {
+        return mIsAutoNotify && mChangeSets.hasListeners();
+    }
+
+    /**
+     * 记录排序造成的移动。移动太多时记为整体刷新。
+     * @param before 排序前的数据
+     */
+    private void recordMoves(Object[] before) {
+        IdentityHashMap<Object, Integer> oldPositions = new IdentityHashMap<Object, Integer>();
+        for (int i = 0; i < before.length; i++)
+            oldPositions.put(before[i], i);
+        if (oldPositions.size() != before.length) {// 同一个对象出现了多次
+            mChangeSets.reset();
+            return;
+        }
+        int[] positions = new int[mItemList.size()];
+        for (int i = 0; i < positions.length; i++)
+            positions[i] = oldPositions.get(mItemList.get(i));
+        XDataChangeSet.Builder moves = new XDataChangeSet.Builder();
+        if (XListDiff.moves(positions, moves))
+            mChangeSets.apply(moves.build(0, 0));
+        else
+            mChangeSets.reset();
+    }
+
+    /**
+     * @return 索引与当前列表一致返回true;否则返回false
+     */
+    private boolean isIndexValid() {
+        return !mIndexDirty && mPositions.size() == mItemList.size();
+    }
+
+    /**
+     * 如果索引失效，则用O(N)重建。
+     */
+    void ensureIndex() {
+        if (isIndexValid())
+            return;
+
+        mIndexById.clear();
+        mPositions.reset(mItemList.size());
+        onIndexReset();
+        for (int i = 0; i < mItemList.size(); i++) {
+            T item = mItemList.get(i);
+            mIndexById.add(getId(item), i);// 重新编号后槽号就是坐标
+            onSlotIndexed(item, i);
+        }
+        mIndexDirty = false;
+    }
+
+    /**
+     * @return 返回某个槽的元素在列表中的坐标;槽号无效或元素已删除时返回-1
+     */
+    int positionOf(int slot) {
+        return mPositions.isLive(slot) ? mPositions.position(slot) : -1;
+    }
+
+    /**
+     * 索引重建前回调，子类应清空自己基于槽号的索引。
+     * 以下三个回调只在索引有效时调用，子类据此原地维护自己的索引。
+     */
+    void onIndexReset() {
+    }
+
+    /**
+     * 某个槽的元素加入索引后回调(添加、替换、重建索引)。
+     */
+    void onSlotIndexed(T item, int slot) {
+    }
+
+    /**
+     * 某个槽的元素离开索引后回调(删除、替换)。
+     */
+    void onSlotUnindexed(T item, int slot) {
+    }
+
+    @Override
+    public XDataSnapshot<T> getSnapshot() {
+        XDataSnapshot<T> snapshot = mSnapshots.peek();
+        if (snapshot != null)
+            return snapshot;
+        synchronized (this) {
+            return mSnapshots.publish(mItemList);
+        }
+    }
+
+    @Override
+    public long getVersion() {
+        return mSnapshots.getVersion();
     }
 
     @Override
@@ -1,80 +1,211 @@
 package com.xengine.android.data.cache;
 
-import android.content.ContentValues;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-import com.xengine.android.data.db.XDBTable;
-import com.xengine.android.data.db.XSQLiteHelper;
+import java.util.List;
 
 /**
  * 继承自XBaseAdapterIdUsernameDataSource的带数据库支持的数据源抽象类。
+ * 支持延迟写入(setWriteBehind())：只把变化的数据在后台批量写入数据库。
+ * 支持换出(spill())：写入数据库后释放内存，由数据仓库在内存不足时调用。
+ * 支持变更日志(setChangeLogEnabled())：记录本地的变化，与服务器增量同步。
+ * 持久化的实现与XBaseAdapterIdDBDataSource共用(见XDBSourceSupport)，本类只提供按用户名和id的键。
  * Created by jasontujun.
  * Date: 11-12-17
  * Time: 上午1:01
  * @see com.xengine.android.data.cache.XBaseAdapterIdUsernameDataSource
  */
 public abstract class XBaseAdapterIdUsernameDBDataSource<T>
-        extends XBaseAdapterIdUsernameDataSource<T> implements XWithDatabase<T> {
+        extends XBaseAdapterIdUsernameDataSource<T> implements XWithDatabase<T>, XWithSpill,
+        XWithChangeLog<T> {
 
+    public static final long DEFAULT_ITEM_MEMORY_SIZE = 256;// 默认每条数据估算占用的内存(字节)
+
+    /**
+     * 持久化的实现(整表读写、延迟写入、换出、变更日志)
+     */
+    private final XDBSourceSupport<T> mSupport = new XDBSourceSupport<T>(this,
+            new XDBSourceSupport.Keys<T>() {
+                @Override
+                public String[] getKeyColumns() {
+                    String usernameColumn = getUsernameColumn();
+                    String idColumn = getIdColumn();
+                    if (usernameColumn == null || idColumn == null)
+                        return null;// id在不同用户名下可以重复，只按id删除会删掉其他用户的数据
+                    return new String[] {usernameColumn, idColumn};
+                }
+
+                @Override
+                public String[] getKey(T item) {
+                    return new String[] {XBaseAdapterIdUsernameDBDataSource.this.getUsername(item),
+                            getId(item)};
+                }
+
+                @Override
+                public String[] getKey(String username, String id) {
+                    return new String[] {username, id};
+                }
+
+                @Override
+                public String getUsername(T item) {
+                    return XBaseAdapterIdUsernameDBDataSource.this.getUsername(item);
+                }
+
+                @Override
+                public T find(String username, String id) {
+                    return getByUsernameId(username, id);
+                }
+
+                @Override
+                public void delete(String username, String id) {
+                    deleteByUsernameId(username, id);
+                }
+            });
+
+    /**
+     * 返回数据表中标识数据的字段名(与getId()的值对应)，与getUsernameColumn()一起用于增量写入。
+     * 默认返回null，此时延迟写入每次都整表重写，也不能开启变更日志。
+     * TIP 子类应覆盖此方法
+     */
+    protected String getIdColumn() {
+        return null;
+    }
+
+    /**
+     * 返回数据表中保存用户名的字段名(与getUsername()的值对应)，与getIdColumn()一起用于增量写入。
+     * 默认返回null，此时延迟写入每次都整表重写，也不能开启变更日志。
+     * TIP 子类应覆盖此方法
+     */
+    protected String getUsernameColumn() {
+        return null;
+    }
+
+    /**
+     * 开启或关闭延迟写入。
+     * 开启后，添加/替换/删除的数据会被记录下来，延迟一段时间后在后台线程中批量写入数据库，
+     * 不需要再调用saveToDatabase()。
+     * @param enabled true表示开启;false表示关闭(已记录的变化仍可用flush()写入)
+     * @param delayMillis 第一次变化后延迟多久写入(毫秒)
+     */
+    public void setWriteBehind(boolean enabled, long delayMillis) {
+        mSupport.setWriteBehind(enabled, delayMillis);
+    }
+
+    /**
+     * 开启或关闭延迟写入(使用默认的延迟时间)。
+     * @see #setWriteBehind(boolean, long)
+     */
+    public void setWriteBehind(boolean enabled) {
+        setWriteBehind(enabled, XWriteBehind.DEFAULT_DELAY);
+    }
+
+    /**
+     * 在当前线程立即写入所有还没写入的变化。
+     * @return 成功返回true;否则返回false
+     */
+    public boolean flush() {
+        return mSupport.flush();
+    }
+
+    /**
+     * 开启或关闭变更日志。
+     * 开启后，添加/替换/删除/清空都会分配序号记录到数据库中(后台批量写入)，
+     * 用getChangesSince()取出上次同步后的变化上传，用applyRemoteChanges()应用服务器的变化。
+     * 关闭时先写入还没写入的日志，已有的日志保留，再次开启时接着记录。
+     * @param enabled true表示开启;false表示关闭
+     * @throws IllegalStateException 开启时没有指定键字段(getIdColumn()或getUsernameColumn()返回null)
+     */
+    public void setChangeLogEnabled(boolean enabled) {
+        mSupport.setChangeLogEnabled(enabled);
+    }
+
+    @Override
+    public long getLastSeq() {
+        return mSupport.getLastSeq();
+    }
+
+    @Override
+    public long getRemoteSeq() {
+        return mSupport.getRemoteSeq();
+    }
+
+    /**
+     * 返回序号大于seq的所有本地变化。添加和替换的变化带有数据当前的内容，
+     * 已换出时按键从数据库读取这些数据(不加载整个数据源)。
+     * @throws IllegalStateException 没有调用setChangeLogEnabled()开启变更日志
+     */
+    @Override
+    public List<XDataChange<T>> getChangesSince(long seq) {
+        return mSupport.getChangesSince(seq);
+    }
+
+    /**
+     * 应用服务器的变化，应用完后只通知一次。
+     * 先在一个事务中只写入变化的键和服务器序号，成功后再应用到内存(已换出时只写数据库)，
+     * 写入的行数与变化数成正比，与数据总量无关。
+     * @throws IllegalStateException 没有调用setChangeLogEnabled()开启变更日志
+     * @throws android.database.SQLException 写入数据库失败，内存和数据库都没有变化，可以重试
+     */
+    @Override
+    public int applyRemoteChanges(List<XDataChange<T>> changes) {
+        return mSupport.applyRemoteChanges(changes);
+    }
+
+    @Override
+    protected void onItemStored(T item) {
+        mSupport.onItemStored(item);
+    }
+
+    @Override
+    protected void onItemDeleted(T item) {
+        mSupport.onItemDeleted(item);
+    }
+
+    @Override
+    protected void onItemsCleared() {
+        mSupport.onItemsCleared();
+    }
+
+    /**
+     * 把所有数据追加写入数据库(在一个事务中，使用预编译语句)。
+     */
     @Override
     public boolean addToDatabase() {
-        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
-        XDBTable<T> table = getDatabaseTable();
-        if (!dbHelper.isTableExist(table))
-            dbHelper.createTable(table);
-
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        if (db == null)
-            return false;
-        for (int i = 0; i < size(); i++) {
-            ContentValues cv = table.getContentValues(get(i));
-            db.insert(table.getName(), null, cv);
-        }
-        db.close();
-        return true;
+        return mSupport.writeAll(false);
     }
 
+    /**
+     * 用所有数据覆盖数据表(在一个事务中先清空再写入，失败时数据表保持原样)。
+     * 还没写入的延迟变化已包含在本次写入中，成功后丢弃，失败时保留。
+     */
     @Override
     public boolean saveToDatabase() {
-        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
-        XDBTable<T> table = getDatabaseTable();
-        if (dbHelper.isTableExist(table))
-            dbHelper.dropTable(table);
-        dbHelper.createTable(table);
+        return mSupport.writeAll(true);
+    }
+
+    /**
+     * 估算的每条数据占用的内存(字节)，用于getMemorySize()。
+     * TIP 数据较大的子类应覆盖此方法
+     */
+    protected long getItemMemorySize() {
+        return DEFAULT_ITEM_MEMORY_SIZE;
+    }
 
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        if (db == null)
-            return false;
+    @Override
+    public long getMemorySize() {
+        return size() * getItemMemorySize();
+    }
+
+    @Override
+    public boolean spill() {
+        return mSupport.spill();
+    }
 
-        for (int i = 0; i < size(); i++) {
-            ContentValues cv = table.getContentValues(get(i));
-            db.insert(table.getName(), null, cv);
-        }
-        db.close();
-        return true;
+    @Override
+    public boolean isSpilled() {
+        return mSupport.isSpilled();
     }
 
     @Override
     public boolean loadFromDatabase() {
-        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
-        XDBTable<T> table = getDatabaseTable();
-        dbHelper.createIfNotExist(table);
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        if (db == null)
-            return false;
-
-        clear();
-        Cursor cur = db.rawQuery("SELECT * FROM " + table.getName(), null);
-        if (cur.moveToFirst()) {
-            while (!cur.isAfterLast()) {
-                T item = table.getFilledInstance(cur);
-//                add(item);// 太低效
-                mItemList.add(item);
-                cur.moveToNext();
-            }
-        }
-        cur.close();
-        db.close();
-        return true;
+        return mSupport.loadFromDatabase();
     }
 }
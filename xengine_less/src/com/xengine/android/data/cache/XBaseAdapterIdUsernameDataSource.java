@@ -1,10 +1,17 @@
 package com.xengine.android.data.cache;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
 /**
  * 基于UserName分类、基于Id唯一标识每个数据的数据源抽象类。
+ * 在id索引之外，再按用户名把元素分区，每个分区记录该用户所有元素的槽号，
+ * 以及(用户名,id)到槽号的复合索引：
+ * 按(用户名,id)查找是O(1)，按用户名取出或删除全部元素是O(k)(k为该用户的元素数)。
+ * 分区随id索引原地更新(添加、替换、删除都不需要重建)，只在id索引重建时一起重建。
  * Created by jasontujun.
  * Date: 11-12-17
  * Time: 上午1:01
@@ -12,15 +19,26 @@ import java.util.List;
 public abstract class XBaseAdapterIdUsernameDataSource<T>
         extends XBaseAdapterIdDataSource<T> implements XWithUsername<T> {
 
-    public int getIndexByUsernameId(String username, String id) {
-        for (int i = 0; i < size(); i++) {
-            T tmp = get(i);
-            if (getUsername(tmp).equals(username) &&
-                    getId(tmp).equals(id)) {
-                return i;
-            }
-        }
-        return -1;
+    /**
+     * 用户名到分区的索引
+     */
+    private final HashMap<String, Partition> mPartitions;
+
+    protected XBaseAdapterIdUsernameDataSource() {
+        super();
+        mPartitions = new HashMap<String, Partition>();
+    }
+
+    public synchronized int getIndexByUsernameId(String username, String id) {
+        if (id == null)
+            return -1;
+
+        int index = findIndexByUsernameId(username, id);
+        if (index == -1 || isAt(index, username, id))
+            return index;
+        // 校验失败，说明子类绕过索引修改了列表
+        markIndexDirty();
+        return findIndexByUsernameId(username, id);
     }
 
     @Override
@@ -30,13 +48,13 @@ public abstract class XBaseAdapterIdUsernameDataSource<T>
 
         int index = getIndexByUsernameId(getUsername(item), getId(item));
         if (index == -1) {
-            mItemList.add(item);
+            appendItem(item);
             if (mIsAutoNotify)
                 notifyAddItem(item);
         } else {
             replace(index, item);
             if (mIsAutoNotify)
-                notifyDataChanged();
+                notifyChange();
         }
     }
 
@@ -45,10 +63,11 @@ public abstract class XBaseAdapterIdUsernameDataSource<T>
         if (items == null || items.size() == 0)
             return;
 
+        mItemList.ensureCapacity(mItemList.size() + items.size());
         for (T item : items) {
             int index = getIndexByUsernameId(getUsername(item), getId(item));
             if (index == -1) {
-                mItemList.add(item);
+                appendItem(item);
             } else {
                 replace(index, item);
             }
@@ -64,14 +83,11 @@ public abstract class XBaseAdapterIdUsernameDataSource<T>
      * @return
      */
     @Override
-    public List<T> getByUsername(String username) {
-        List<T> result = new ArrayList<T>();
-        for (int i = 0; i<size(); i++) {
-            T item = get(i);
-            if (getUsername(item).equals(username)) {
-                result.add(item);
-            }
-        }
+    public synchronized List<T> getByUsername(String username) {
+        int[] positions = getPositionsByUsername(username);
+        List<T> result = new ArrayList<T>(positions.length);
+        for (int position : positions)
+            result.add(mItemList.get(position));
         return result;
     }
 
@@ -90,13 +106,23 @@ public abstract class XBaseAdapterIdUsernameDataSource<T>
     }
 
     /**
-     * 根据用户名删除一堆元素
+     * 根据用户名删除一堆元素。
+     * 从分区中O(k)取出坐标，一次遍历压缩列表，并原地更新索引中这k个元素。
      * @param username
      */
     @Override
     public synchronized void deleteByUsername(String username) {
-        List<T> result = getByUsername(username);
-        deleteAll(result);
+        int[] positions = getPositionsByUsername(username);
+        if (positions.length == 0)
+            return;
+
+        BitSet marked = new BitSet(mItemList.size());
+        List<T> result = new ArrayList<T>(positions.length);
+        for (int position : positions) {
+            marked.set(position);
+            result.add(mItemList.get(position));
+        }
+        deleteMarked(marked, result);
     }
 
 
@@ -128,4 +154,136 @@ public abstract class XBaseAdapterIdUsernameDataSource<T>
         }
         deleteAll(result);
     }
+
+    /**
+     * 键由用户名和id组成(id在不同用户名下可以重复)。
+     * 用户名带长度前缀，保证不同的(用户名, id)得到不同的键。
+     */
+    @Override
+    protected String getKey(T item) {
+        String username = getUsername(item);
+        String id = getId(item);
+        return username == null ? "n:" + id : username.length() + ":" + username + id;
+    }
+
+    @Override
+    public synchronized int indexOf(T item) {
+        if (item == null)
+            return -1;
+
+        // 不同用户下可能有相同id，所以用复合索引定位
+        int index = getIndexByUsernameId(getUsername(item), getId(item));
+        if (index != -1 && item.equals(mItemList.get(index)))
+            return index;
+        return mItemList.indexOf(item);
+    }
+
+    @Override
+    public boolean contains(T item) {
+        if (item == null)
+            return false;
+
+        return getIndexByUsernameId(getUsername(item), getId(item)) != -1;
+    }
+
+    @Override
+    void onIndexReset() {
+        mPartitions.clear();
+    }
+
+    /**
+     * 把某个槽的元素加入其用户名的分区。
+     * 通常是按槽号递增的顺序加入，此时为O(1)。
+     */
+    @Override
+    void onSlotIndexed(T item, int slot) {
+        String username = getUsername(item);
+        Partition partition = mPartitions.get(username);
+        if (partition == null) {
+            partition = new Partition();
+            mPartitions.put(username, partition);
+        }
+        int i = Collections.binarySearch(partition.slots, slot);
+        if (i < 0)
+            partition.slots.add(-i - 1, slot);
+        partition.indexById.add(getId(item), slot);
+    }
+
+    /**
+     * 把某个槽的元素移出其用户名的分区(O(log k)查找)。
+     */
+    @Override
+    void onSlotUnindexed(T item, int slot) {
+        String username = getUsername(item);
+        Partition partition = mPartitions.get(username);
+        if (partition == null)
+            return;
+        int i = Collections.binarySearch(partition.slots, slot);
+        if (i >= 0)
+            partition.slots.remove(i);
+        partition.indexById.remove(getId(item), slot);
+        if (partition.slots.isEmpty())
+            mPartitions.remove(username);
+    }
+
+    private int findIndexByUsernameId(String username, String id) {
+        ensureIndex();
+        Partition partition = mPartitions.get(username);
+        if (partition == null)
+            return -1;
+        return positionOf(partition.indexById.first(id));
+    }
+
+    /**
+     * 取出分区中所有元素的坐标(有序)。
+     * 校验失败时(子类绕过索引修改了列表)修复索引后重新取出。
+     */
+    private int[] getPositionsByUsername(String username) {
+        int[] positions = collectPositions(username);
+        if (positions == null) {
+            markIndexDirty();
+            positions = collectPositions(username);
+        }
+        return positions;
+    }
+
+    /**
+     * @return 分区与列表不一致时返回null
+     */
+    private int[] collectPositions(String username) {
+        ensureIndex();
+        Partition partition = mPartitions.get(username);
+        if (partition == null)
+            return new int[0];
+
+        int[] positions = new int[partition.slots.size()];
+        for (int i = 0; i < positions.length; i++) {
+            int position = positionOf(partition.slots.get(i));
+            if (position == -1 || position >= mItemList.size())
+                return null;
+            if (!equals(username, getUsername(mItemList.get(position))))
+                return null;
+            positions[i] = position;
+        }
+        return positions;
+    }
+
+    private boolean isAt(int index, String username, String id) {
+        if (index >= mItemList.size())
+            return false;
+        T item = mItemList.get(index);
+        return id.equals(getId(item)) && equals(username, getUsername(item));
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * 某个用户名下所有元素的索引。
+     */
+    private static final class Partition {
+        final ArrayList<Integer> slots = new ArrayList<Integer>();// 所有元素的槽号(有序)
+        final XSlotIndex indexById = new XSlotIndex();// id到槽号
+    }
 }
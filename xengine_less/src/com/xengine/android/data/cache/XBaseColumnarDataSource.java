@@ -0,0 +1,750 @@
+package com.xengine.android.data.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 按列存储的数据源抽象类(用于数据量大、以读为主的列表)。
+ * 与XBaseAdapterDataSource在ArrayList中保存每个对象不同，本类把每个字段存在一个基本类型数组中：
+ * 1.子类在initiateColumns()中用addIntColumn()/addLongColumn()/addDoubleColumn()/addStringColumn()
+ *   声明字段，在writeColumns()中把对象拆到各列，在readColumns()中由各列还原出对象；
+ * 2.字符串列默认使用字典编码，每行只保存一个int，相同的字符串只存一份；
+ *   几乎没有重复值的列(如id)用addStringColumn(false)直接保存字符串，省去字典的开销；
+ * 3.列表的顺序由一个坐标排列(int数组)表示，排序只重排这个数组，不移动数据；
+ *   sortBy()直接比较基本类型的列，不需要还原对象；
+ * 4.get()时才还原对象，最近还原的若干个对象会被缓存；
+ * 5.删除只做标记，被删除的行超过一半时再一次性压缩。
+ * TIP 同一坐标两次get()不保证返回同一个对象；add()不判重；
+ * initiateColumns()在构造函数中调用，保存列号的字段不能有初始值(否则会被覆盖)
+ */
+public abstract class XBaseColumnarDataSource<T> implements XAdapterDataSource<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int VIEW_CACHE_SIZE = 64;// 缓存的还原对象数
+    private static final int MIN_COMPACT_ROWS = 64;// 被删除的行少于这个数时不压缩
+
+    private final ArrayList<Column> mColumns;// 所有列
+    private final Row mRow;// 读写某一行的访问器
+    private int mRowCount;// 已使用的物理行数(包括被删除的)
+    private int mCapacity;// 每列数组的容量
+    private int[] mOrder;// 逻辑坐标 -> 物理行
+    private int mSize;// 逻辑行数
+    private final LinkedHashMap<Integer, T> mViews;// 最近还原的对象(物理行 -> 对象)
+
+    /**
+     * 数据变化监听器
+     */
+    protected List<XDataChangeListener<T>> mListeners;
+
+    /**
+     * 自动通知监听者
+     */
+    protected boolean mIsAutoNotify;
+
+    public XBaseColumnarDataSource() {
+        mColumns = new ArrayList<Column>();
+        mRow = new Row();
+        mCapacity = INITIAL_CAPACITY;
+        mOrder = new int[INITIAL_CAPACITY];
+        mViews = new LinkedHashMap<Integer, T>(VIEW_CACHE_SIZE + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                return size() > VIEW_CACHE_SIZE;
+            }
+        };
+        mListeners = new CopyOnWriteArrayList<XDataChangeListener<T>>();
+        mIsAutoNotify = true;
+        initiateColumns();
+    }
+
+    /**
+     * 初始化列，在本函数中通过addXxxColumn()来声明列，并保存返回的列号。
+     */
+    protected abstract void initiateColumns();
+
+    /**
+     * 把对象的字段写入一行。
+     * @param item 对象
+     * @param row 要写入的行
+     */
+    protected abstract void writeColumns(T item, Row row);
+
+    /**
+     * 由一行的数据还原出对象。
+     * @param row 要读取的行
+     */
+    protected abstract T readColumns(Row row);
+
+    protected final int addIntColumn() {
+        return addColumn(new IntColumn(mCapacity));
+    }
+
+    protected final int addLongColumn() {
+        return addColumn(new LongColumn(mCapacity));
+    }
+
+    protected final int addDoubleColumn() {
+        return addColumn(new DoubleColumn(mCapacity));
+    }
+
+    protected final int addStringColumn() {
+        return addStringColumn(true);
+    }
+
+    /**
+     * @param dictionary true表示字典编码(适合重复值多的列，如分类);
+     *                   false表示直接保存字符串(适合几乎不重复的列，如id)
+     */
+    protected final int addStringColumn(boolean dictionary) {
+        return addColumn(dictionary ? new DictionaryStringColumn(mCapacity)
+                : new PlainStringColumn(mCapacity));
+    }
+
+    private int addColumn(Column column) {
+        if (mRowCount > 0)
+            throw new IllegalStateException("Columns must be added before any row.");
+        mColumns.add(column);
+        return mColumns.size() - 1;
+    }
+
+    @Override
+    public synchronized T get(int index) {
+        checkIndex(index);
+        int physical = mOrder[index];
+        T item = mViews.get(physical);
+        if (item == null) {
+            mRow.mPhysical = physical;
+            item = readColumns(mRow);
+            mViews.put(physical, item);
+        }
+        return item;
+    }
+
+    /**
+     * 直接读取某一行的数据，不还原对象。
+     * TIP 返回的访问器是共用的，只能在同步块内使用，如:
+     * synchronized (source) { Row row = source.getRow(i); ... }
+     * @param index 逻辑坐标
+     */
+    public synchronized Row getRow(int index) {
+        checkIndex(index);
+        mRow.mPhysical = mOrder[index];
+        return mRow;
+    }
+
+    @Override
+    public synchronized int size() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    @Override
+    public synchronized void add(T item) {
+        if (item == null)
+            return;
+        appendRow(item);
+        if (mIsAutoNotify)
+            notifyAddItem(item);
+    }
+
+    @Override
+    public synchronized void addAll(List<T> items) {
+        if (items == null)
+            return;
+        ensureCapacity(mRowCount + items.size());
+        for (T item : items) {
+            if (item != null)
+                appendRow(item);
+        }
+        if (mIsAutoNotify)
+            notifyAddItems(items);
+    }
+
+    @Override
+    public synchronized void delete(int index) {
+        checkIndex(index);
+        T item = get(index);
+        removeAt(index);
+        compactIfNeeded();
+        if (mIsAutoNotify)
+            notifyDeleteItem(item);
+    }
+
+    @Override
+    public synchronized void delete(T item) {
+        int index = indexOf(item);
+        if (index != -1)
+            delete(index);
+    }
+
+    @Override
+    public synchronized void deleteAll(List<T> items) {
+        if (items == null)
+            return;
+        for (T item : items) {
+            int index = indexOf(item);
+            if (index != -1)
+                removeAt(index);
+        }
+        compactIfNeeded();
+        if (mIsAutoNotify)
+            notifyDeleteItems(items);
+    }
+
+    /**
+     * 返回数据的坐标。TIP 需要逐个还原对象比较(O(N))
+     */
+    @Override
+    public synchronized int indexOf(T item) {
+        if (item == null)
+            return -1;
+        for (int i = 0; i < mSize; i++) {
+            if (item.equals(get(i)))
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized boolean contains(T item) {
+        return indexOf(item) != -1;
+    }
+
+    @Override
+    public synchronized void clear() {
+        List<T> copyItems = mIsAutoNotify ? copyAll() : null;
+        for (Column column : mColumns)
+            column.clear();
+        mRowCount = 0;
+        mSize = 0;
+        mViews.clear();
+        if (mIsAutoNotify)
+            notifyDeleteItems(copyItems);
+    }
+
+    /**
+     * 用Comparator排序。需要还原所有对象，排序后只重排坐标。
+     * 能按列排序时应使用sortBy()。
+     */
+    @Override
+    public synchronized void sort(final Comparator<T> comparator) {
+        final Object[] items = new Object[mRowCount];
+        for (int i = 0; i < mSize; i++) {
+            mRow.mPhysical = mOrder[i];
+            items[mOrder[i]] = readColumns(mRow);
+        }
+        sortOrder(new RowComparator() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public int compare(int rowA, int rowB) {
+                return comparator.compare((T) items[rowA], (T) items[rowB]);
+            }
+        });
+    }
+
+    /**
+     * 按某一列排序，直接比较列中的基本类型值(字符串列按字典序，null排在最前)。
+     * 排序是稳定的，多列排序时先按次要的列排，再按主要的列排。
+     * @param column 列号
+     * @param ascending true表示升序;false表示降序
+     */
+    public synchronized void sortBy(int column, final boolean ascending) {
+        final Column col = mColumns.get(column);
+        col.prepareCompare();
+        sortOrder(new RowComparator() {
+            @Override
+            public int compare(int rowA, int rowB) {
+                int result = col.compare(rowA, rowB);
+                return ascending ? result : -result;
+            }
+        });
+    }
+
+    @Override
+    public synchronized List<T> copyAll() {
+        List<T> result = new ArrayList<T>(mSize);
+        for (int i = 0; i < mSize; i++)
+            result.add(get(i));
+        return result;
+    }
+
+    @Override
+    public void notifyDataChanged() {
+        for (XDataChangeListener<T> listener: mListeners) {
+            listener.onChange();
+        }
+    }
+
+    @Override
+    public void registerDataChangeListener(XDataChangeListener<T> listener) {
+        if (!mListeners.contains(listener))
+            mListeners.add(listener);
+    }
+
+    @Override
+    public void unregisterDataChangeListener(XDataChangeListener<T> listener) {
+        mListeners.remove(listener);
+    }
+
+    @Override
+    public void setAutoNotifyListeners(boolean isAuto) {
+        mIsAutoNotify = isAuto;
+    }
+
+    protected void notifyAddItem(T item) {
+        for (XDataChangeListener<T> listener: mListeners) {
+            listener.onAdd(item);
+        }
+    }
+
+    protected void notifyAddItems(List<T> items) {
+        for (XDataChangeListener<T> listener: mListeners) {
+            listener.onAddAll(items);
+        }
+    }
+
+    protected void notifyDeleteItem(T item) {
+        for (XDataChangeListener<T> listener: mListeners) {
+            listener.onDelete(item);
+        }
+    }
+
+    protected void notifyDeleteItems(List<T> items) {
+        for (XDataChangeListener<T> listener: mListeners) {
+            listener.onDeleteAll(items);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("Invalid index " + index + ", size is " + mSize);
+    }
+
+    private void appendRow(T item) {
+        ensureCapacity(mRowCount + 1);
+        int physical = mRowCount++;
+        mRow.mPhysical = physical;
+        writeColumns(item, mRow);
+        mOrder[mSize++] = physical;
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= mCapacity)
+            return;
+        int capacity = Math.max(rows, mCapacity + (mCapacity >> 1));
+        for (Column column : mColumns)
+            column.resize(capacity);
+        mOrder = copyOf(mOrder, capacity);
+        mCapacity = capacity;
+    }
+
+    /**
+     * 从坐标排列中删除(物理行在压缩时才回收)。
+     */
+    private void removeAt(int index) {
+        int physical = mOrder[index];
+        System.arraycopy(mOrder, index + 1, mOrder, index, mSize - index - 1);
+        mSize--;
+        mViews.remove(physical);
+    }
+
+    /**
+     * 被删除的行超过一半时，压缩所有列(保持坐标排列中的顺序)。
+     */
+    private void compactIfNeeded() {
+        int deleted = mRowCount - mSize;
+        if (deleted < MIN_COMPACT_ROWS || deleted < mSize)
+            return;
+        int[] kept = new int[mSize];
+        System.arraycopy(mOrder, 0, kept, 0, mSize);
+        for (Column column : mColumns)
+            column.compact(kept);
+        for (int i = 0; i < mSize; i++)
+            mOrder[i] = i;
+        mRowCount = mSize;
+        mViews.clear();
+    }
+
+    /**
+     * 对坐标排列做稳定的归并排序。
+     */
+    private void sortOrder(RowComparator comparator) {
+        if (mSize < 2)
+            return;
+        int[] src = copyOf(mOrder, mSize);
+        int[] dest = copyOf(mOrder, mSize);
+        mergeSort(src, dest, 0, mSize, comparator);
+        System.arraycopy(dest, 0, mOrder, 0, mSize);
+    }
+
+    private static void mergeSort(int[] src, int[] dest, int low, int high, RowComparator c) {
+        int length = high - low;
+        if (length < 8) {// 小区间用插入排序
+            for (int i = low + 1; i < high; i++) {
+                int value = dest[i];
+                int j = i - 1;
+                while (j >= low && c.compare(dest[j], value) > 0) {
+                    dest[j + 1] = dest[j];
+                    j--;
+                }
+                dest[j + 1] = value;
+            }
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid, c);
+        mergeSort(dest, src, mid, high, c);
+        if (c.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, length);
+            return;
+        }
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || (p < mid && c.compare(src[p], src[q]) <= 0))
+                dest[i] = src[p++];
+            else
+                dest[i] = src[q++];
+        }
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+        return result;
+    }
+
+    private static long[] copyOf(long[] array, int length) {
+        long[] result = new long[length];
+        System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+        return result;
+    }
+
+    private static double[] copyOf(double[] array, int length) {
+        double[] result = new double[length];
+        System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+        return result;
+    }
+
+    private interface RowComparator {
+        int compare(int rowA, int rowB);
+    }
+
+    /**
+     * 某一行的访问器，用于在writeColumns()/readColumns()中读写各列。
+     */
+    public final class Row {
+        private int mPhysical;// 物理行
+
+        private Row() {}
+
+        public int getInt(int column) {
+            return ((IntColumn) mColumns.get(column)).mValues[mPhysical];
+        }
+
+        public long getLong(int column) {
+            return ((LongColumn) mColumns.get(column)).mValues[mPhysical];
+        }
+
+        public double getDouble(int column) {
+            return ((DoubleColumn) mColumns.get(column)).mValues[mPhysical];
+        }
+
+        public String getString(int column) {
+            return ((StringColumn) mColumns.get(column)).get(mPhysical);
+        }
+
+        public void setInt(int column, int value) {
+            ((IntColumn) mColumns.get(column)).mValues[mPhysical] = value;
+        }
+
+        public void setLong(int column, long value) {
+            ((LongColumn) mColumns.get(column)).mValues[mPhysical] = value;
+        }
+
+        public void setDouble(int column, double value) {
+            ((DoubleColumn) mColumns.get(column)).mValues[mPhysical] = value;
+        }
+
+        public void setString(int column, String value) {
+            ((StringColumn) mColumns.get(column)).set(mPhysical, value);
+        }
+    }
+
+    /**
+     * 一列数据
+     */
+    private static abstract class Column {
+        abstract void resize(int capacity);
+
+        /**
+         * 只保留kept中的物理行，按kept的顺序排列
+         */
+        abstract void compact(int[] kept);
+
+        abstract void clear();
+
+        void prepareCompare() {
+        }
+
+        abstract int compare(int rowA, int rowB);
+    }
+
+    private static final class IntColumn extends Column {
+        int[] mValues;
+
+        IntColumn(int capacity) {
+            mValues = new int[capacity];
+        }
+
+        @Override
+        void resize(int capacity) {
+            mValues = copyOf(mValues, capacity);
+        }
+
+        @Override
+        void compact(int[] kept) {
+            int[] values = new int[mValues.length];
+            for (int i = 0; i < kept.length; i++)
+                values[i] = mValues[kept[i]];
+            mValues = values;
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(mValues, 0);
+        }
+
+        @Override
+        int compare(int rowA, int rowB) {
+            int a = mValues[rowA], b = mValues[rowB];
+            return a < b ? -1 : (a == b ? 0 : 1);
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        long[] mValues;
+
+        LongColumn(int capacity) {
+            mValues = new long[capacity];
+        }
+
+        @Override
+        void resize(int capacity) {
+            mValues = copyOf(mValues, capacity);
+        }
+
+        @Override
+        void compact(int[] kept) {
+            long[] values = new long[mValues.length];
+            for (int i = 0; i < kept.length; i++)
+                values[i] = mValues[kept[i]];
+            mValues = values;
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(mValues, 0);
+        }
+
+        @Override
+        int compare(int rowA, int rowB) {
+            long a = mValues[rowA], b = mValues[rowB];
+            return a < b ? -1 : (a == b ? 0 : 1);
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        double[] mValues;
+
+        DoubleColumn(int capacity) {
+            mValues = new double[capacity];
+        }
+
+        @Override
+        void resize(int capacity) {
+            mValues = copyOf(mValues, capacity);
+        }
+
+        @Override
+        void compact(int[] kept) {
+            double[] values = new double[mValues.length];
+            for (int i = 0; i < kept.length; i++)
+                values[i] = mValues[kept[i]];
+            mValues = values;
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(mValues, 0);
+        }
+
+        @Override
+        int compare(int rowA, int rowB) {
+            return Double.compare(mValues[rowA], mValues[rowB]);
+        }
+    }
+
+    private static abstract class StringColumn extends Column {
+        abstract String get(int row);
+
+        abstract void set(int row, String value);
+    }
+
+    /**
+     * 直接保存字符串的列(null排在最前)。
+     */
+    private static final class PlainStringColumn extends StringColumn {
+        String[] mValues;
+
+        PlainStringColumn(int capacity) {
+            mValues = new String[capacity];
+        }
+
+        @Override
+        String get(int row) {
+            return mValues[row];
+        }
+
+        @Override
+        void set(int row, String value) {
+            mValues[row] = value;
+        }
+
+        @Override
+        void resize(int capacity) {
+            String[] values = new String[capacity];
+            System.arraycopy(mValues, 0, values, 0, Math.min(mValues.length, capacity));
+            mValues = values;
+        }
+
+        @Override
+        void compact(int[] kept) {
+            String[] values = new String[mValues.length];
+            for (int i = 0; i < kept.length; i++)
+                values[i] = mValues[kept[i]];
+            mValues = values;
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(mValues, null);
+        }
+
+        @Override
+        int compare(int rowA, int rowB) {
+            String a = mValues[rowA], b = mValues[rowB];
+            if (a == null)
+                return b == null ? 0 : -1;
+            return b == null ? 1 : a.compareTo(b);
+        }
+    }
+
+    /**
+     * 字典编码的字符串列。每行保存字符串在字典中的编号，-1表示null。
+     */
+    private static final class DictionaryStringColumn extends StringColumn {
+        int[] mCodes;
+        ArrayList<String> mDictionary;// 编号 -> 字符串
+        HashMap<String, Integer> mCodeOf;// 字符串 -> 编号
+        int[] mRanks;// 编号 -> 字典序的名次(排序前计算)
+
+        DictionaryStringColumn(int capacity) {
+            mCodes = new int[capacity];
+            mDictionary = new ArrayList<String>();
+            mCodeOf = new HashMap<String, Integer>();
+        }
+
+        @Override
+        String get(int row) {
+            int code = mCodes[row];
+            return code < 0 ? null : mDictionary.get(code);
+        }
+
+        @Override
+        void set(int row, String value) {
+            if (value == null) {
+                mCodes[row] = -1;
+                return;
+            }
+            Integer code = mCodeOf.get(value);
+            if (code == null) {
+                code = mDictionary.size();
+                mDictionary.add(value);
+                mCodeOf.put(value, code);
+                mRanks = null;
+            }
+            mCodes[row] = code;
+        }
+
+        @Override
+        void resize(int capacity) {
+            mCodes = copyOf(mCodes, capacity);
+        }
+
+        @Override
+        void compact(int[] kept) {
+            // 重建字典，去掉不再使用的字符串
+            int[] codes = new int[mCodes.length];
+            ArrayList<String> dictionary = new ArrayList<String>();
+            HashMap<String, Integer> codeOf = new HashMap<String, Integer>();
+            int[] remap = new int[mDictionary.size()];
+            Arrays.fill(remap, -1);
+            for (int i = 0; i < kept.length; i++) {
+                int code = mCodes[kept[i]];
+                if (code >= 0 && remap[code] == -1) {
+                    remap[code] = dictionary.size();
+                    dictionary.add(mDictionary.get(code));
+                    codeOf.put(mDictionary.get(code), remap[code]);
+                }
+                codes[i] = code < 0 ? -1 : remap[code];
+            }
+            mCodes = codes;
+            mDictionary = dictionary;
+            mCodeOf = codeOf;
+            mRanks = null;
+        }
+
+        @Override
+        void clear() {
+            mDictionary.clear();
+            mCodeOf.clear();
+            mRanks = null;
+        }
+
+        @Override
+        void prepareCompare() {
+            if (mRanks != null)
+                return;
+            // 字典中的字符串各不相同，排序一次后比较名次即可
+            Integer[] codes = new Integer[mDictionary.size()];
+            for (int i = 0; i < codes.length; i++)
+                codes[i] = i;
+            Arrays.sort(codes, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return mDictionary.get(a).compareTo(mDictionary.get(b));
+                }
+            });
+            mRanks = new int[codes.length];
+            for (int i = 0; i < codes.length; i++)
+                mRanks[codes[i]] = i;
+        }
+
+        @Override
+        int compare(int rowA, int rowB) {
+            int a = mCodes[rowA], b = mCodes[rowB];
+            int rankA = a < 0 ? -1 : mRanks[a];
+            int rankB = b < 0 ? -1 : mRanks[b];
+            return rankA < rankB ? -1 : (rankA == rankB ? 0 : 1);
+        }
+    }
+}
@@ -1,15 +1,36 @@
 package com.xengine.android.data.cache;
 
+import com.xengine.android.toolkit.filter.XBulkFilter;
 import com.xengine.android.toolkit.filter.XFilter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 基于Id唯一标识每个数据的带过滤功能的数据源抽象类。
+ * 过滤结果(mCache)是增量维护的：
+ * 1.mPassed记录每个id当前在过滤结果中的对象，判断是否通过过滤是O(1)；
+ * 2.有排序器且过滤结果已按其排序时，新增元素用二分查找插入到对应位置，
+ *   批量新增时先对新元素排序再与过滤结果归并；
+ *   删除时用二分查找定位，批量删除一次遍历压缩；
+ * 3.narrowFilter()/widenFilter()只重新检查当前在(或不在)过滤结果中的元素，
+ *   并只修改过滤结果发生变化的元素(适用于边输入边搜索)。
+ * 原始列表和过滤结果都维护id到坐标的索引，采用延迟修复。
+ * 支持过滤结果的只读快照：过滤结果每次变化都会递增版本号。
+ * 支持异步过滤(setFilterAsync())：数据量大时在后台线程池中并行排序和过滤，
+ * 完成后在主线程一次性替换过滤结果；新的请求(如用户又输入了字符)会取消旧的请求。
+ * 支持全文检索(setTextIndex()、setSearchQuery())：为声明的文本字段维护倒排索引，
+ * 搜索时直接从索引得到按相关度排列的id，再据此重建过滤结果，不需要逐个检查元素。
  * Created by 赵之韵.
  * Modified by jasontujun
  * Email: ttxzmorln@163.com
@@ -17,7 +38,11 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * Time: 下午11:43
  */
 public abstract class XBaseFilteredAdapterIdSource<T>
-        implements XFilteredAdapterDataSource<T>, XWithId<T> {
+        implements XFilteredAdapterDataSource<T>, XWithId<T>, XWithSnapshot<T> {
+
+    private static final int SCOPE_ALL = 0;// 重新检查所有元素
+    private static final int SCOPE_PASSED = 1;// 只检查在过滤结果中的元素
+    private static final int SCOPE_FAILED = 2;// 只检查不在过滤结果中的元素
 
     protected XFilter<T> mFilter;
     protected ArrayList<T> mItemList;
@@ -31,56 +56,247 @@ public abstract class XBaseFilteredAdapterIdSource<T>
      */
     protected boolean isAutoNotify;
 
+    private final HashMap<String, T> mPassed;// id到其在过滤结果中的对象
+    private final HashMap<String, Integer> mOriginIndex;// id到原始列表坐标的索引
+    private final HashMap<String, Integer> mCacheIndex;// id到过滤结果坐标的索引
+    private boolean mOriginIndexDirty;// 原始列表索引是否失效
+    private int mOriginIndexedSize;// 原始列表索引对应的列表长度
+    private boolean mCacheIndexDirty;// 过滤结果索引是否失效
+    private int mCacheIndexedSize;// 过滤结果索引对应的列表长度
+    private boolean mCacheSorted;// 过滤结果是否按mComparator有序
+    private final XSnapshotPublisher<T> mSnapshots;// 过滤结果的版本号和快照
+    private int mOriginModCount;// 原始列表的修改次数(用于判断异步结果是否过时)
+    private final AtomicInteger mAsyncRequests;// 异步请求计数(用于取消旧的请求)
+    private volatile int mParallelThreshold;// 并行排序和过滤的阈值
+    private volatile Executor mAsyncDispatcher;// 发布异步结果的线程(为null时为主线程)
+    private XTextIndex<T> mTextIndex;// 全文检索的倒排索引(为null时不支持搜索)
+
     public XBaseFilteredAdapterIdSource() {
         mItemList = new ArrayList<T>();
         mCache = new ArrayList<T>();
         mListeners = new CopyOnWriteArrayList<XDataChangeListener<T>>();
         mOriginListeners = new CopyOnWriteArrayList<XDataChangeListener<T>>();
         isAutoNotify = true;
+        mPassed = new HashMap<String, T>();
+        mOriginIndex = new HashMap<String, Integer>();
+        mCacheIndex = new HashMap<String, Integer>();
+        mCacheSorted = false;
+        mSnapshots = new XSnapshotPublisher<T>();
+        mOriginModCount = 0;
+        mAsyncRequests = new AtomicInteger();
+        mParallelThreshold = XParallel.DEFAULT_THRESHOLD;
         doFilter();
     }
 
     @Override
-    public void sort(Comparator<T> comparator) {
+    public synchronized void sort(Comparator<T> comparator) {
+        cancelAsync();// 还没完成的异步请求不能再覆盖这次的结果
         mComparator = comparator;
         Collections.sort(mCache, comparator);
+        mCacheSorted = comparator != null;
+        mCacheIndexDirty = true;
+        mSnapshots.markModified();
         if (isAutoNotify)
             notifyCacheDataChanged();
     }
 
     @Override
-    public void sortOrigin(Comparator<T> comparator) {
+    public synchronized void sortOrigin(Comparator<T> comparator) {
+        cancelAsync();
         mComparator = comparator;
         Collections.sort(mItemList, comparator);
+        mCacheSorted = mCache.size() <= 1;
+        mOriginIndexDirty = true;
+        mOriginModCount++;
         if (isAutoNotify)
             notifyOriginDataChanged();
     }
 
     @Override
-    public void setFilter(XFilter<T> filter) {
+    public synchronized void setFilter(XFilter<T> filter) {
+        cancelAsync();
         this.mFilter = filter;
         doFilter();
     }
 
+    /**
+     * 设置一个比当前过滤器更严格的过滤器(如搜索词后追加了字符)。
+     * 只重新检查当前在过滤结果中的元素，并只删除不再通过的元素。
+     * @param filter 新的过滤器，必须只会比当前过滤器过滤掉更多元素
+     */
+    public synchronized void narrowFilter(XFilter<T> filter) {
+        cancelAsync();
+        this.mFilter = filter;
+        refilter(SCOPE_PASSED);
+    }
+
+    /**
+     * 设置一个比当前过滤器更宽松的过滤器(如搜索词删除了字符)。
+     * 只重新检查当前不在过滤结果中的元素，并只加入新通过的元素。
+     * @param filter 新的过滤器，必须只会比当前过滤器保留更多元素
+     */
+    public synchronized void widenFilter(XFilter<T> filter) {
+        cancelAsync();
+        this.mFilter = filter;
+        refilter(SCOPE_FAILED);
+    }
+
     @Override
     public XFilter<T> getFilter() {
         return mFilter;
     }
 
+    /**
+     * 重新检查所有元素，并按排序器重新排序原始列表(原始列表已基本有序时排序接近O(N))。
+     * 过滤结果按原始列表的顺序重建，只通知一次数据变化。
+     */
     @Override
-    public void doFilter() {
-        mCache.clear();
-        if (mFilter == null)
-            mCache.addAll(mItemList);
-        else
-            mCache.addAll(mFilter.doFilter(mItemList));
+    public synchronized void doFilter() {
         if (mComparator != null) {
-            Collections.sort(mCache, mComparator);
             Collections.sort(mItemList, mComparator);
+            mOriginIndexDirty = true;
+            mOriginModCount++;
+        }
+        refilter(SCOPE_ALL);
+    }
+
+    /**
+     * 异步设置过滤器(保持当前的排序器)。
+     * @see #setFilterAsync(XFilter, Comparator)
+     */
+    public void setFilterAsync(XFilter<T> filter) {
+        Comparator<T> comparator;
+        synchronized (this) {
+            comparator = mComparator;
         }
+        setFilterAsync(filter, comparator);
+    }
 
+    /**
+     * 异步设置过滤器和排序器，效果与依次调用sortOrigin()和setFilter()相同。
+     * 在后台线程中排序原始列表并检查所有元素(数据量不小于并行阈值时分段并行)，
+     * 完成后在主线程中一次性替换原始列表和过滤结果，只通知一次数据变化。
+     * 还没完成的上一个异步请求会被取消(适用于边输入边搜索)；
+     * 计算期间原始列表被修改过的，改为在主线程中同步过滤。
+     * TIP 过滤器和排序器会在多个线程中同时调用，必须是线程安全的
+     * @param filter 过滤器，为null表示不过滤
+     * @param comparator 排序器，为null表示不排序
+     */
+    public void setFilterAsync(final XFilter<T> filter, final Comparator<T> comparator) {
+        final XParallel.Request request = XParallel.Request.next(mAsyncRequests);
+        XParallel.getCoordinator().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCancelled())
+                    return;
+                final Object[] items;
+                final int modCount;
+                synchronized (XBaseFilteredAdapterIdSource.this) {
+                    items = mItemList.toArray();
+                    modCount = mOriginModCount;
+                }
+                final HashMap<String, T> passed = new HashMap<String, T>();
+                final ArrayList<T> cache = new ArrayList<T>();
+                try {
+                    int threshold = mParallelThreshold;
+                    if (comparator != null)
+                        XParallel.sort(items, comparator, threshold, request);
+                    @SuppressWarnings("unchecked")
+                    List<T> origin = (List<T>) Arrays.asList(items);
+                    Object[] results = new Object[items.length];
+                    XParallel.filter(origin, filter, results, threshold, request);
+                    for (int i = 0; i < results.length; i++) {
+                        @SuppressWarnings("unchecked")
+                        T result = (T) results[i];
+                        if (result != null && passed.put(getId(origin.get(i)), result) == null)
+                            cache.add(result);
+                    }
+                } catch (CancellationException e) {
+                    return;
+                }
+                getAsyncDispatcher().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        publishFiltered(request, filter, comparator, items, modCount, passed, cache);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 取消还没完成的异步请求。
+     * 同步设置过滤器、排序器或查询串时会自动调用，避免旧的异步结果覆盖新的设置。
+     */
+    public void cancelAsync() {
+        mAsyncRequests.incrementAndGet();
+    }
+
+    /**
+     * 设置并行排序和过滤的阈值，数据量小于阈值时顺序执行。
+     */
+    public void setParallelThreshold(int threshold) {
+        mParallelThreshold = threshold;
+    }
+
+    /**
+     * 设置发布异步结果的线程。默认为主线程。
+     * @param dispatcher 分发器，为null则恢复默认
+     */
+    public void setAsyncDispatcher(Executor dispatcher) {
+        mAsyncDispatcher = dispatcher;
+    }
+
+    /**
+     * 开启全文检索，为原始列表中所有元素声明的文本字段建立倒排索引。
+     * 之后原始列表的修改会同步更新索引。
+     * @param fields 需要索引的文本字段，为null表示关闭全文检索
+     */
+    public synchronized void setTextIndex(XTextIndex.TextFields<T> fields) {
+        if (fields == null) {
+            mTextIndex = null;
+            return;
+        }
+        mTextIndex = new XTextIndex<T>(fields);
+        for (T item : mItemList)
+            mTextIndex.put(getId(item), item);
+    }
+
+    /**
+     * 用全文检索的结果作为过滤结果，按相关度从高到低排列。
+     * 之后新增或替换的元素用等价的过滤器(XTextIndex.newFilter())检查，追加到过滤结果末尾。
+     * TIP 之后调用doFilter()或sort()会按原始列表顺序或排序器重新排列，不再按相关度
+     * @param query 查询串，为空表示不过滤
+     * @return 返回命中的id，按相关度从高到低排列
+     * @throws IllegalStateException 没有调用setTextIndex()开启全文检索
+     */
+    public synchronized List<String> setSearchQuery(String query) {
+        if (mTextIndex == null)
+            throw new IllegalStateException("Text index is not enabled.");
+        cancelAsync();
+        if (XTextIndex.tokenize(query).isEmpty()) {
+            setFilter(null);
+            return new ArrayList<String>();
+        }
+        List<String> ids = mTextIndex.search(query);
+        mFilter = mTextIndex.newFilter(query);
+        mPassed.clear();
+        mCache.clear();
+        mCache.ensureCapacity(ids.size());
+        for (String id : ids) {
+            int originIndex = getOriginIndexOf(id);
+            if (originIndex == -1)
+                continue;
+            T item = mItemList.get(originIndex);
+            mPassed.put(id, item);
+            mCache.add(item);
+        }
+        mCacheSorted = mCache.size() <= 1;
+        mCacheIndexDirty = true;
+        mSnapshots.markModified();
         if (isAutoNotify)
-            notifyDataChanged();
+            notifyCacheDataChanged();
+        return ids;
     }
 
     @Override
@@ -93,7 +309,7 @@ public abstract class XBaseFilteredAdapterIdSource<T>
     }
 
     @Override
-    public T getById(String id) {
+    public synchronized T getById(String id) {
         int originIndex = getOriginIndexOf(id);
         if (originIndex != -1)
             return mItemList.get(originIndex);
@@ -117,15 +333,16 @@ public abstract class XBaseFilteredAdapterIdSource<T>
         if (item == null)
             return;
 
-        int originIndex = getOriginIndexOf(getId(item));
+        String id = getId(item);
+        int originIndex = getOriginIndexOf(id);
         if (originIndex == -1) {
-            mItemList.add(item);
+            appendOrigin(item);
             if (isAutoNotify)
                 notifyAddOriginItem(item);
 
-            T result = (mFilter != null) ? mFilter.doFilter(item) : item;
+            T result = evaluate(item);
             if (result != null) {
-                mCache.add(result);
+                insertIntoCache(id, result);
                 if (isAutoNotify)
                     notifyAddItem(item);
             }
@@ -134,15 +351,30 @@ public abstract class XBaseFilteredAdapterIdSource<T>
             if (isAutoNotify)
                 notifyOriginDataChanged();
 
-            T result = (mFilter != null) ? mFilter.doFilter(item) : item;
-            if (result != null && getIndexById(getId(item)) == -1) {
-                mCache.add(result);
+            T old = mPassed.get(id);
+            T result = evaluate(item);
+            if (old != null) {
+                removeFromCache(id, old);
+                if (result != null) {
+                    insertIntoCache(id, result);
+                    if (isAutoNotify)
+                        notifyCacheDataChanged();
+                } else if (isAutoNotify) {
+                    notifyDeleteItem(old);
+                }
+            } else if (result != null) {
+                insertIntoCache(id, result);
                 if (isAutoNotify)
                     notifyAddItem(item);
             }
         }
     }
 
+    /**
+     * 批量添加。
+     * 新通过过滤的元素先收集起来，最后一次性合并进过滤结果；
+     * 替换后不再通过过滤的旧元素一次遍历删除。
+     */
     @Override
     public synchronized void addAll(List<T> items) {
         if (items == null || items.size() == 0)
@@ -150,34 +382,48 @@ public abstract class XBaseFilteredAdapterIdSource<T>
 
         ArrayList<T> addedToOrigin = new ArrayList<T>();
         ArrayList<T> addedToCache = new ArrayList<T>();
+        ArrayList<T> toInsert = new ArrayList<T>();
+        IdentityHashMap<T, Boolean> toRemove = new IdentityHashMap<T, Boolean>();
+        boolean cacheChanged = false;
 
+        mItemList.ensureCapacity(mItemList.size() + items.size());
         for(T item: items) {
-            int originIndex = getOriginIndexOf(getId(item));
+            String id = getId(item);
+            int originIndex = getOriginIndexOf(id);
+            T result = evaluate(item);
             if (originIndex == -1) {
-                mItemList.add(item);
+                appendOrigin(item);
                 addedToOrigin.add(item);
-
-                T result = (mFilter != null) ? mFilter.doFilter(item) : item;
                 if (result != null) {
-                    mCache.add(result);
+                    toInsert.add(result);
+                    mPassed.put(id, result);
                     addedToCache.add(item);
                 }
             } else {
                 replace(originIndex, item);
-
-                T result = (mFilter != null) ? mFilter.doFilter(item) : item;
+                T old = mPassed.remove(id);
+                if (old != null) {
+                    if (!removeIdentity(toInsert, old))// 同一批次里重复的id
+                        toRemove.put(old, Boolean.TRUE);
+                    cacheChanged = true;
+                }
                 if (result != null) {
-                    int index = getIndexById(getId(item));
-                    if (index == -1) {
-                        mCache.add(result);
+                    toInsert.add(result);
+                    mPassed.put(id, result);
+                    if (old == null)
                         addedToCache.add(item);
-                    }
                 }
             }
         }
+        if (!toRemove.isEmpty())
+            compactCache(toRemove);
+        mergeIntoCache(toInsert);
+
         if (isAutoNotify) {
             notifyAddOriginItems(addedToOrigin);
             notifyAddItems(addedToCache);
+            if (cacheChanged)
+                notifyCacheDataChanged();
         }
     }
 
@@ -195,8 +441,23 @@ public abstract class XBaseFilteredAdapterIdSource<T>
 
     @Override
     public synchronized void delete(T item) {
-        boolean originDeleted = mItemList.remove(item);
-        boolean cacheDeleted = mCache.remove(item);
+        if (item == null)
+            return;
+
+        String id = getId(item);
+        boolean originDeleted = false;
+        boolean cacheDeleted = false;
+        int originIndex = getOriginIndexOf(id);
+        T stored = mPassed.get(id);
+        if (originIndex != -1 &&
+                (item.equals(mItemList.get(originIndex)) || stored == item)) {
+            removeOrigin(originIndex);
+            originDeleted = true;
+            if (stored != null) {
+                removeFromCache(id, stored);
+                cacheDeleted = true;
+            }
+        }
         if (isAutoNotify) {
             if (originDeleted)
                 notifyDeleteOriginItem(item);
@@ -215,11 +476,39 @@ public abstract class XBaseFilteredAdapterIdSource<T>
             delete(item);
     }
 
+    /**
+     * 批量删除。
+     * 先按id标记要删除的坐标，再对原始列表和过滤结果各做一次遍历压缩，复杂度O(N+M)。
+     */
     @Override
     public synchronized void deleteAll(List<T> items) {
+        if (items == null || items.size() == 0)
+            return;
+
         List<T> copyDeleted = new ArrayList<T>(items);
-        boolean originDeleted = mItemList.removeAll(copyDeleted);
-        boolean cacheDeleted = mCache.removeAll(copyDeleted);
+        BitSet originMarked = new BitSet(mItemList.size());
+        IdentityHashMap<T, Boolean> cacheMarked = new IdentityHashMap<T, Boolean>();
+        for (T item : copyDeleted) {
+            if (item == null)
+                continue;
+            String id = getId(item);
+            int originIndex = getOriginIndexOf(id);
+            T stored = mPassed.get(id);
+            if (originIndex != -1 &&
+                    (item.equals(mItemList.get(originIndex)) || stored == item)) {
+                originMarked.set(originIndex);
+                if (stored != null) {
+                    mPassed.remove(id);
+                    cacheMarked.put(stored, Boolean.TRUE);
+                }
+            }
+        }
+        boolean originDeleted = !originMarked.isEmpty();
+        boolean cacheDeleted = !cacheMarked.isEmpty();
+        if (originDeleted)
+            compactOrigin(originMarked);
+        if (cacheDeleted)
+            compactCache(cacheMarked);
         if (isAutoNotify) {
             if (originDeleted)
                 notifyDeleteOriginItems(copyDeleted);
@@ -299,16 +588,30 @@ public abstract class XBaseFilteredAdapterIdSource<T>
     }
 
     @Override
-    public int indexOf(T item) {
-        return mCache.indexOf(item);
+    public synchronized int indexOf(T item) {
+        if (item == null)
+            return -1;
+
+        String id = getId(item);
+        T stored = mPassed.get(id);
+        if (stored == null || !item.equals(stored))
+            return -1;
+        return locateInCache(id, stored);
     }
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
         List<T> copyCache = new ArrayList<T>(mCache);
         List<T> copyItems = new ArrayList<T>(mItemList);
         mCache.clear();
         mItemList.clear();
+        mOriginModCount++;
+        mPassed.clear();
+        if (mTextIndex != null)
+            mTextIndex.clear();
+        mOriginIndexDirty = true;
+        mCacheIndexDirty = true;
+        mSnapshots.markModified();
         if (isAutoNotify) {
             notifyDeleteOriginItems(copyItems);
             notifyDeleteItems(copyCache);
@@ -316,8 +619,12 @@ public abstract class XBaseFilteredAdapterIdSource<T>
     }
 
     @Override
-    public boolean contains(T item) {
-        return mCache.contains(item);
+    public synchronized boolean contains(T item) {
+        if (item == null)
+            return false;
+
+        T stored = mPassed.get(getId(item));
+        return stored != null && item.equals(stored);
     }
 
     @Override
@@ -355,33 +662,473 @@ public abstract class XBaseFilteredAdapterIdSource<T>
      * @param newItem 新加的数据
      */
     @Override
-    public void replace(int index, T newItem) {
-        mItemList.set(index, newItem);
+    public synchronized void replace(int index, T newItem) {
+        T oldItem = mItemList.set(index, newItem);
+        mOriginModCount++;
+        if (!getId(oldItem).equals(getId(newItem)))
+            mOriginIndexDirty = true;
+        if (mTextIndex != null) {
+            mTextIndex.remove(getId(oldItem));
+            mTextIndex.put(getId(newItem), newItem);
+        }
     }
 
     @Override
-    public int getIndexById(String id) {
-        for (int i = 0; i<size(); i++) {
-            T tmp = get(i);
-            if (getId(tmp).equals(id)) {
-                return i;
+    public synchronized int getIndexById(String id) {
+        if (id == null)
+            return -1;
+
+        T stored = mPassed.get(id);
+        return stored == null ? -1 : locateInCache(id, stored);
+    }
+
+    public synchronized int getOriginIndexOf(String id) {
+        if (id == null)
+            return -1;
+
+        ensureOriginIndex();
+        Integer index = mOriginIndex.get(id);
+        if (index != null && index < mItemList.size()
+                && id.equals(getId(mItemList.get(index))))
+            return index;
+        if (index == null && mOriginIndexedSize == mItemList.size())
+            return -1;
+        // 校验失败，说明子类绕过索引修改了列表
+        mOriginIndexDirty = true;
+        ensureOriginIndex();
+        index = mOriginIndex.get(id);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return 返回过滤结果当前的只读快照
+     */
+    @Override
+    public XDataSnapshot<T> getSnapshot() {
+        XDataSnapshot<T> snapshot = mSnapshots.peek();
+        if (snapshot != null)
+            return snapshot;
+        synchronized (this) {
+            return mSnapshots.publish(mCache);
+        }
+    }
+
+    /**
+     * @return 返回过滤结果的版本号
+     */
+    @Override
+    public long getVersion() {
+        return mSnapshots.getVersion();
+    }
+
+    @Override
+    public void setAutoNotifyListeners(boolean isAuto) {
+        this.isAutoNotify = isAuto;
+    }
+
+    private Executor getAsyncDispatcher() {
+        Executor dispatcher = mAsyncDispatcher;
+        return dispatcher != null ? dispatcher : XParallel.getMainDispatcher();
+    }
+
+    /**
+     * 发布异步过滤的结果。
+     * @param origin 排序后的原始列表
+     * @param modCount 开始计算时原始列表的修改次数
+     * @param passed 通过过滤的id到其结果的映射
+     * @param cache 按原始列表顺序排列的过滤结果
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized void publishFiltered(XParallel.Request request, XFilter<T> filter,
+                                              Comparator<T> comparator, Object[] origin,
+                                              int modCount, HashMap<String, T> passed,
+                                              ArrayList<T> cache) {
+        if (request.isCancelled())
+            return;
+        mFilter = filter;
+        mComparator = comparator;
+        if (modCount != mOriginModCount) {
+            doFilter();// 计算期间原始列表被修改过，结果已经过时
+            return;
+        }
+        if (comparator != null) {
+            mItemList.clear();
+            mItemList.addAll((List<T>) Arrays.asList(origin));
+            mOriginIndexDirty = true;
+            mOriginModCount++;
+        }
+        mPassed.clear();
+        mPassed.putAll(passed);
+        mCache.clear();
+        mCache.addAll(cache);
+        mCacheSorted = mComparator != null || mCache.size() <= 1;
+        mCacheIndexDirty = true;
+        mSnapshots.markModified();
+        if (isAutoNotify)
+            notifyDataChanged();
+    }
+
+    /**
+     * 用当前过滤器检查单个元素。
+     * @return 通过则返回放入过滤结果的对象;否则返回null
+     */
+    private T evaluate(T item) {
+        return (mFilter != null) ? mFilter.doFilter(item) : item;
+    }
+
+    /**
+     * 重新检查指定范围内的元素，只修改过滤结果发生变化的元素。
+     * @param scope 检查范围
+     */
+    private void refilter(int scope) {
+        // 1.取出要检查的元素
+        List<T> candidates;
+        if (scope == SCOPE_ALL) {
+            candidates = mItemList;
+        } else if (scope == SCOPE_PASSED) {
+            candidates = new ArrayList<T>(mCache.size());
+            for (T stored : mCache) {
+                int originIndex = getOriginIndexOf(getId(stored));
+                if (originIndex != -1)
+                    candidates.add(mItemList.get(originIndex));
+            }
+        } else {
+            candidates = new ArrayList<T>(mItemList.size() - mPassed.size());
+            for (T item : mItemList) {
+                if (!mPassed.containsKey(getId(item)))
+                    candidates.add(item);
             }
         }
-        return -1;
+
+        // 2.检查元素，支持批量过滤时一次得到所有结果
+        BitSet bulkResult = null;
+        if (mFilter instanceof XBulkFilter) {
+            bulkResult = new BitSet(candidates.size());
+            ((XBulkFilter<T>) mFilter).doFilter(candidates, bulkResult);
+        }
+        ArrayList<T> toInsert = new ArrayList<T>();
+        IdentityHashMap<T, Boolean> toRemove = new IdentityHashMap<T, Boolean>();
+        for (int i = 0; i < candidates.size(); i++) {
+            T item = candidates.get(i);
+            T result;
+            if (mFilter == null)
+                result = item;
+            else if (bulkResult != null)
+                result = bulkResult.get(i) ? item : null;
+            else
+                result = mFilter.doFilter(item);
+            String id = getId(item);
+            T old = mPassed.get(id);
+            if (old == result)
+                continue;// 过滤结果没变
+            if (old != null)
+                toRemove.put(old, Boolean.TRUE);
+            if (result != null) {
+                toInsert.add(result);
+                mPassed.put(id, result);
+            } else {
+                mPassed.remove(id);
+            }
+        }
+
+        // 3.只修改变化的部分
+        boolean changed = !toRemove.isEmpty() || !toInsert.isEmpty();
+        if (scope == SCOPE_ALL) {
+            // 原始列表可能被重新排序过，按原始列表顺序重建过滤结果(不再调用过滤器)
+            rebuildCacheInOriginOrder();
+        } else if (!toInsert.isEmpty() && !(mComparator != null && mCacheSorted)) {
+            // 过滤结果无序时，新通过的元素要按原始列表的顺序放入
+            rebuildCacheInOriginOrder();
+        } else {
+            if (!toRemove.isEmpty())
+                compactCache(toRemove);
+            mergeIntoCache(toInsert);
+        }
+
+        if (isAutoNotify && (changed || scope == SCOPE_ALL)) {
+            if (scope == SCOPE_ALL)
+                notifyDataChanged();
+            else
+                notifyCacheDataChanged();
+        }
     }
 
-    public int getOriginIndexOf(String id) {
-        for (int i = 0; i<sizeOrigin(); i++) {
-            T tmp = getOrigin(i);
-            if (getId(tmp).equals(id)) {
-                return i;
+    /**
+     * 按引用从列表中删除一个对象。
+     * @return 删除成功返回true;否则返回false
+     */
+    private static <T> boolean removeIdentity(List<T> list, T target) {
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i) == target) {
+                list.remove(i);
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * 按原始列表的顺序，用mPassed重建过滤结果。
+     */
+    private void rebuildCacheInOriginOrder() {
+        mCache.clear();
+        mCache.ensureCapacity(mPassed.size());
+        for (T item : mItemList) {
+            T stored = mPassed.get(getId(item));
+            if (stored != null)
+                mCache.add(stored);
+        }
+        // 原始列表有排序器时是有序的，过滤结果也就有序
+        mCacheSorted = mComparator != null || mCache.size() <= 1;
+        mCacheIndexDirty = true;
+        mSnapshots.markModified();
+    }
+
+    /**
+     * 把单个通过过滤的对象放入过滤结果。
+     * 过滤结果有序时二分插入(相等元素之后)，否则追加到末尾。
+     */
+    private void insertIntoCache(String id, T stored) {
+        mPassed.put(id, stored);
+        if (mComparator != null && mCacheSorted) {
+            int position = upperBound(stored);
+            if (position < mCache.size()) {
+                mCache.add(position, stored);
+                mCacheIndexDirty = true;
+                mSnapshots.markModified();
+                return;
+            }
+        }
+        boolean valid = isCacheIndexValid();
+        mCache.add(stored);
+        mSnapshots.markModified();
+        if (valid) {
+            mCacheIndex.put(id, mCache.size() - 1);
+            mCacheIndexedSize = mCache.size();
+        } else {
+            mCacheIndexDirty = true;
+        }
+        if (mComparator == null)
+            mCacheSorted = false;
+    }
+
+    /**
+     * 把一批通过过滤的对象放入过滤结果。
+     * 过滤结果有序时，先对这批对象排序再归并，复杂度O(n + m*log(m))；否则追加到末尾。
+     */
+    private void mergeIntoCache(ArrayList<T> toInsert) {
+        if (toInsert.size() == 0)
+            return;
+        if (toInsert.size() == 1) {
+            T stored = toInsert.get(0);
+            insertIntoCache(getId(stored), stored);
+            return;
+        }
+
+        if (mComparator != null && mCacheSorted) {
+            Collections.sort(toInsert, mComparator);
+            ArrayList<T> merged = new ArrayList<T>(mCache.size() + toInsert.size());
+            int i = 0, j = 0;
+            while (i < mCache.size() && j < toInsert.size()) {
+                // 相等时原有元素在前，与逐个二分插入的结果一致
+                if (mComparator.compare(toInsert.get(j), mCache.get(i)) < 0)
+                    merged.add(toInsert.get(j++));
+                else
+                    merged.add(mCache.get(i++));
+            }
+            while (i < mCache.size())
+                merged.add(mCache.get(i++));
+            while (j < toInsert.size())
+                merged.add(toInsert.get(j++));
+            mCache.clear();
+            mCache.addAll(merged);
+        } else {
+            mCache.addAll(toInsert);
+            if (mComparator == null)
+                mCacheSorted = false;
+        }
+        mCacheIndexDirty = true;
+        mSnapshots.markModified();
+    }
+
+    /**
+     * 从过滤结果中删除单个对象。
+     */
+    private void removeFromCache(String id, T stored) {
+        mPassed.remove(id);
+        int position = locateInCache(id, stored);
+        if (position == -1)
+            return;
+        mCache.remove(position);
+        mSnapshots.markModified();
+        if (position == mCache.size() && isCacheIndexValidAfterRemove()) {
+            mCacheIndex.remove(id);
+            mCacheIndexedSize = mCache.size();
+        } else {
+            mCacheIndexDirty = true;
+        }
+    }
+
+    /**
+     * 一次遍历删除过滤结果中所有被标记的对象，保持剩余对象的相对顺序。
+     */
+    private void compactCache(IdentityHashMap<T, Boolean> marked) {
+        int write = 0;
+        for (int read = 0; read < mCache.size(); read++) {
+            T stored = mCache.get(read);
+            if (!marked.containsKey(stored))
+                mCache.set(write++, stored);
+        }
+        mCache.subList(write, mCache.size()).clear();
+        mCacheIndexDirty = true;
+        mSnapshots.markModified();
+    }
+
+    /**
+     * 定位某个对象在过滤结果中的坐标。
+     * 过滤结果有序时二分查找，否则查id索引。
+     */
+    private int locateInCache(String id, T stored) {
+        if (mComparator != null && mCacheSorted) {
+            int low = lowerBound(stored);
+            for (int i = low; i < mCache.size(); i++) {
+                T tmp = mCache.get(i);
+                if (tmp == stored)
+                    return i;
+                if (mComparator.compare(tmp, stored) != 0)
+                    break;
+            }
+        }
+        ensureCacheIndex();
+        Integer position = mCacheIndex.get(id);
+        if (position != null && position < mCache.size() && mCache.get(position) == stored)
+            return position;
+        // 兜底：线性查找
+        for (int i = 0; i < mCache.size(); i++) {
+            if (mCache.get(i) == stored)
+                return i;
+        }
         return -1;
     }
 
-    @Override
-    public void setAutoNotifyListeners(boolean isAuto) {
-        this.isAutoNotify = isAuto;
+    /**
+     * @return 第一个不小于stored的坐标
+     */
+    private int lowerBound(T stored) {
+        int low = 0, high = mCache.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mComparator.compare(mCache.get(mid), stored) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return 第一个大于stored的坐标
+     */
+    private int upperBound(T stored) {
+        int low = 0, high = mCache.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mComparator.compare(mCache.get(mid), stored) <= 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private boolean isCacheIndexValid() {
+        return !mCacheIndexDirty && mCacheIndexedSize == mCache.size();
+    }
+
+    private boolean isCacheIndexValidAfterRemove() {
+        return !mCacheIndexDirty && mCacheIndexedSize == mCache.size() + 1;
+    }
+
+    private void ensureCacheIndex() {
+        if (isCacheIndexValid())
+            return;
+
+        mCacheIndex.clear();
+        for (int i = 0; i < mCache.size(); i++)
+            mCacheIndex.put(getId(mCache.get(i)), i);
+        mCacheIndexDirty = false;
+        mCacheIndexedSize = mCache.size();
+    }
+
+    /**
+     * 在原始列表末尾添加元素，并同步更新索引。
+     */
+    private void appendOrigin(T item) {
+        boolean valid = isOriginIndexValid();
+        mItemList.add(item);
+        mOriginModCount++;
+        if (mTextIndex != null)
+            mTextIndex.put(getId(item), item);
+        if (valid) {
+            mOriginIndex.put(getId(item), mItemList.size() - 1);
+            mOriginIndexedSize = mItemList.size();
+        } else {
+            mOriginIndexDirty = true;
+        }
+    }
+
+    /**
+     * 删除原始列表中某个坐标的元素。
+     * 删除的是最后一个元素时直接更新索引，否则标记索引失效。
+     */
+    private void removeOrigin(int index) {
+        boolean valid = isOriginIndexValid();
+        T item = mItemList.remove(index);
+        mOriginModCount++;
+        if (mTextIndex != null)
+            mTextIndex.remove(getId(item));
+        if (valid && index == mItemList.size()) {
+            mOriginIndex.remove(getId(item));
+            mOriginIndexedSize = mItemList.size();
+        } else {
+            mOriginIndexDirty = true;
+        }
+    }
+
+    /**
+     * 一次遍历删除原始列表中所有被标记坐标的元素。
+     */
+    private void compactOrigin(BitSet marked) {
+        int size = mItemList.size();
+        if (mTextIndex != null) {
+            for (int i = marked.nextSetBit(0); i >= 0; i = marked.nextSetBit(i + 1))
+                mTextIndex.remove(getId(mItemList.get(i)));
+        }
+        int write = marked.nextSetBit(0);
+        for (int read = write + 1; read < size; read++) {
+            if (!marked.get(read))
+                mItemList.set(write++, mItemList.get(read));
+        }
+        mItemList.subList(write, size).clear();
+        mOriginIndexDirty = true;
+        mOriginModCount++;
+    }
+
+    private boolean isOriginIndexValid() {
+        return !mOriginIndexDirty && mOriginIndexedSize == mItemList.size();
+    }
+
+    private void ensureOriginIndex() {
+        if (isOriginIndexValid())
+            return;
+
+        mOriginIndex.clear();
+        for (int i = 0; i < mItemList.size(); i++) {
+            String id = getId(mItemList.get(i));
+            if (!mOriginIndex.containsKey(id))
+                mOriginIndex.put(id, i);
+        }
+        mOriginIndexDirty = false;
+        mOriginIndexedSize = mItemList.size();
     }
 }
@@ -1,5 +1,6 @@
 package com.xengine.android.data.cache;
 
+import com.xengine.android.toolkit.filter.XBulkFilter;
 import com.xengine.android.toolkit.filter.XFilter;
 
 import java.util.ArrayList;
@@ -72,6 +73,8 @@ public abstract class XBaseFilteredAdapterSource<T>
         mCache.clear();
         if (mFilter == null)
             mCache.addAll(mItemList);
+        else if (mFilter instanceof XBulkFilter)// 直接写入mCache，不分配中间列表
+            ((XBulkFilter<T>) mFilter).doFilter(mItemList, mCache);
         else
             mCache.addAll(mFilter.doFilter(mItemList));
         if (mComparator != null) {
@@ -0,0 +1,800 @@
+package com.xengine.android.data.cache;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.xengine.android.data.db.XDBTable;
+import com.xengine.android.data.db.XSQLiteHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 分页加载的数据库数据源抽象类。
+ * 与XBaseAdapterIdDBDataSource把整张表读入内存不同，本类只在内存中保留若干页数据：
+ * 1.size()通过SELECT COUNT(*)获得，不需要读出所有数据；
+ * 2.get(index)时按需同步加载index所在的页，并在后台线程预取前后相邻的页；
+ *   每页记下最后一条数据的rowid，前一页加载过时用键集分页(WHERE 排序键 > 前一页末尾 LIMIT n)，
+ *   只读这一页的数据，与页的位置无关；前一页没加载过(如直接跳到中间)时才用LIMIT/OFFSET，
+ *   OFFSET需要SQLite逐行跳过前面所有的数据，越往后越慢；
+ * 3.内存中最多保留getMaxPages()页，超过时淘汰最久没被访问的页(LRU)；
+ * 4.增删操作直接写数据库，然后丢弃所有缓存的页和数量，下次访问时重新加载；
+ * 5.数据本来就在数据库中，换出(spill())只是丢弃缓存的页，不需要重新加载。
+ * 数据的顺序由getOrderBy()或getKeysetColumns()决定(默认按rowid)；
+ * 也可以用sort()按Comparator排序，此时内存中保留排好序的所有rowid，按rowid加载每页。
+ * TIP 表中必须有一列能唯一标识数据(getIdColumn())，用于删除和判断是否存在。
+ * TIP 需要rowid，不支持WITHOUT ROWID的表
+ * @see com.xengine.android.data.cache.XBaseAdapterIdDBDataSource
+ */
+public abstract class XBasePagedDBDataSource<T>
+        implements XAdapterDataSource<T>, XWithSpill {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;// 默认每页数量
+    public static final int DEFAULT_MAX_PAGES = 8;// 默认最多缓存的页数
+    public static final int DEFAULT_PREFETCH_PAGES = 1;// 默认前后各预取的页数
+    public static final long DEFAULT_ITEM_MEMORY_SIZE = 256;// 默认每条数据估算占用的内存(字节)
+
+    private static final int UNKNOWN_COUNT = -1;
+    private static final String ROWID_ALIAS = "_xpaged_rowid";// 查询结果中rowid的列名
+
+    /**
+     * 所有分页数据源共用的预取线程(单线程，按提交顺序加载)
+     */
+    private static ExecutorService sPrefetchExecutor;
+
+    private static synchronized Executor getDefaultPrefetchExecutor() {
+        if (sPrefetchExecutor == null) {
+            sPrefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "XPagedPrefetch");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return sPrefetchExecutor;
+    }
+
+    private final int mPageSize;// 每页数量
+    private final int mMaxPages;// 最多缓存的页数
+    private final LinkedHashMap<Integer, List<T>> mPages;// 缓存的页(按访问顺序排列)
+    private int mCount;// 数据总数(UNKNOWN_COUNT表示需要重新查询)
+    private int mGeneration;// 每次数据变化后递增，丢弃变化前开始加载的页
+    private int mLastPage;// 最近一次访问的页
+    private int mPrefetchPages;// 前后各预取的页数
+    private Executor mPrefetchExecutor;// 预取线程
+    private final ArrayList<Integer> mPrefetching;// 已提交预取但还没加载完的页
+    private final HashMap<Integer, Long> mPageEnds;// 加载过的页 -> 最后一条数据的rowid(键集分页的起点)
+    private Comparator<T> mComparator;// sort()设置的排序器，为null表示按数据库排序
+    private long[] mSortedRowIds;// 按mComparator排好序的所有rowid，为null表示还没排序
+
+    /**
+     * 数据变化监听器
+     */
+    protected List<XDataChangeListener<T>> mListeners;
+
+    /**
+     * 自动通知监听者
+     */
+    protected boolean mIsAutoNotify;
+
+    public XBasePagedDBDataSource() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * @param pageSize 每页数量
+     * @param maxPages 内存中最多缓存的页数(至少为1)
+     */
+    public XBasePagedDBDataSource(int pageSize, int maxPages) {
+        if (pageSize <= 0 || maxPages <= 0)
+            throw new IllegalArgumentException("pageSize and maxPages must be positive.");
+        mPageSize = pageSize;
+        mMaxPages = maxPages;
+        mPages = new LinkedHashMap<Integer, List<T>>(maxPages + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                return size() > mMaxPages;
+            }
+        };
+        mCount = UNKNOWN_COUNT;
+        mGeneration = 0;
+        mLastPage = 0;
+        mPrefetchPages = DEFAULT_PREFETCH_PAGES;
+        mPrefetching = new ArrayList<Integer>();
+        mPageEnds = new HashMap<Integer, Long>();
+        mListeners = new CopyOnWriteArrayList<XDataChangeListener<T>>();
+        mIsAutoNotify = true;
+    }
+
+    /**
+     * 返回对应的数据表
+     */
+    public abstract XDBTable<T> getDatabaseTable();
+
+    /**
+     * 返回能唯一标识数据的列名
+     */
+    public abstract String getIdColumn();
+
+    /**
+     * 返回数据的id(即getIdColumn()列的值)
+     */
+    public abstract String getId(T item);
+
+    /**
+     * 返回排序的ORDER BY子句(不含ORDER BY)，默认按插入顺序。
+     * 为了分页稳定，排序结果必须是确定的(如最后加上rowid)。
+     * TIP 覆盖此方法后只能用OFFSET分页，用键集分页请覆盖getKeysetColumns()
+     */
+    protected String getOrderBy() {
+        return "rowid";
+    }
+
+    /**
+     * 返回键集分页的排序列，每项为列名，可加" DESC"表示降序(如"time DESC")，
+     * rowid会自动作为最后一个排序列。返回非null时按这些列排序，不再使用getOrderBy()。
+     * 默认在getOrderBy()没被覆盖时返回空数组(只按rowid)，否则返回null(用OFFSET分页)。
+     * TIP 排序列不能有NULL值(与NULL比较的结果不确定)，否则会漏掉数据;
+     * 应为排序列建立索引(如XBaseDBTable.addIndex())，否则每页仍要扫描前面的数据
+     */
+    protected String[] getKeysetColumns() {
+        return "rowid".equals(getOrderBy()) ? new String[0] : null;
+    }
+
+    /**
+     * 返回过滤数据的WHERE子句(不含WHERE)，默认为null表示不过滤。
+     */
+    protected String getSelection() {
+        return null;
+    }
+
+    /**
+     * 返回getSelection()中的参数
+     */
+    protected String[] getSelectionArgs() {
+        return null;
+    }
+
+    /**
+     * 设置前后各预取的页数。0表示不预取。
+     */
+    public synchronized void setPrefetchPages(int prefetchPages) {
+        mPrefetchPages = Math.max(0, prefetchPages);
+    }
+
+    /**
+     * 设置预取的线程。为null则使用默认的共用后台线程。
+     */
+    public synchronized void setPrefetchExecutor(Executor executor) {
+        mPrefetchExecutor = executor;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    public int getMaxPages() {
+        return mMaxPages;
+    }
+
+    /**
+     * @return 返回当前缓存在内存中的页数
+     */
+    public synchronized int getCachedPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * 获取数据。如果所在的页不在内存中，会在当前线程同步加载该页。
+     * @param index 数据项的索引
+     */
+    @Override
+    public T get(int index) {
+        if (index < 0)
+            throw new IndexOutOfBoundsException("Invalid index " + index);
+        int page = index / mPageSize;
+        int offset = index % mPageSize;
+        List<T> items;
+        int generation;
+        synchronized (this) {
+            mLastPage = page;
+            items = mPages.get(page);
+            generation = mGeneration;
+        }
+        if (items == null) {
+            items = loadPage(page, generation);
+            synchronized (this) {
+                if (generation == mGeneration)
+                    mPages.put(page, items);
+            }
+        }
+        prefetchAround(page);
+        if (offset >= items.size())
+            throw new IndexOutOfBoundsException("Invalid index " + index + ", size is " + size());
+        return items.get(offset);
+    }
+
+    /**
+     * 返回数据总数。第一次调用或数据变化后会查询数据库(SELECT COUNT(*))。
+     */
+    @Override
+    public int size() {
+        long[] sorted = getSortedRowIds();
+        if (sorted != null)
+            return sorted.length;
+        int generation;
+        synchronized (this) {
+            if (mCount != UNKNOWN_COUNT)
+                return mCount;
+            generation = mGeneration;
+        }
+        int count = queryCount();
+        synchronized (this) {
+            if (generation == mGeneration)
+                mCount = count;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void add(T item) {
+        if (item == null)
+            return;
+        if (writeItems(Collections.singletonList(item), true) && mIsAutoNotify)
+            notifyAddItem(item);
+    }
+
+    @Override
+    public void addAll(List<T> items) {
+        if (items == null || items.isEmpty())
+            return;
+        if (writeItems(items, true) && mIsAutoNotify)
+            notifyAddItems(items);
+    }
+
+    @Override
+    public void delete(int index) {
+        delete(get(index));
+    }
+
+    @Override
+    public void delete(T item) {
+        if (item == null)
+            return;
+        if (writeItems(Collections.singletonList(item), false) && mIsAutoNotify)
+            notifyDeleteItem(item);
+    }
+
+    @Override
+    public void deleteAll(List<T> items) {
+        if (items == null || items.isEmpty())
+            return;
+        if (writeItems(items, false) && mIsAutoNotify)
+            notifyDeleteItems(items);
+    }
+
+    /**
+     * 返回数据的坐标。只在内存中已缓存的页里查找，不在缓存中返回-1。
+     */
+    @Override
+    public synchronized int indexOf(T item) {
+        if (item == null)
+            return -1;
+        String id = getId(item);
+        for (Map.Entry<Integer, List<T>> entry : mPages.entrySet()) {
+            List<T> items = entry.getValue();
+            for (int i = 0; i < items.size(); i++) {
+                if (id.equals(getId(items.get(i))))
+                    return entry.getKey() * mPageSize + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 判断数据库中是否存在id相同的数据(不加载任何页)。
+     */
+    @Override
+    public boolean contains(T item) {
+        if (item == null)
+            return false;
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        XDBTable<T> table = getDatabaseTable();
+        String where = getIdColumn() + " = ?";
+        String selection = getSelection();
+        if (selection != null)
+            where = where + " AND (" + selection + ")";
+        try {
+            dbHelper.createIfNotExist(table);
+            return dbHelper.exists(table, where, concat(new String[]{getId(item)}, getSelectionArgs()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public void clear() {
+        XDBTable<T> table = getDatabaseTable();
+        SQLiteDatabase db = acquireDatabase();
+        XSQLiteHelper.getInstance().beginWrite(table);
+        try {
+            if (db != null)
+                db.delete(table.getName(), getSelection(), getSelectionArgs());
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            XSQLiteHelper.getInstance().endWrite(table);
+            releaseDatabase();
+        }
+        if (db == null)
+            return;
+        invalidate();
+        if (mIsAutoNotify)
+            notifyDataChanged();
+    }
+
+    /**
+     * 按comparator排序。数据库不能按Java的排序器排序，所以读出所有数据排序一次，
+     * 内存中只保留排好序的rowid(每条8字节)，之后每页按rowid从数据库加载。
+     * 排序器一直有效，数据变化后在下次访问时重新排序。
+     * TIP 排序时会把满足条件的数据全部读入内存(排完即释放)，数据量很大时应尽量用getKeysetColumns()排序
+     * @param comparator 排序器，为null表示恢复按数据库排序
+     */
+    @Override
+    public void sort(Comparator<T> comparator) {
+        synchronized (this) {
+            mComparator = comparator;
+        }
+        invalidate();
+        getSortedRowIds();
+        if (mIsAutoNotify)
+            notifyDataChanged();
+    }
+
+    /**
+     * 复制所有数据。TIP 会把满足条件的数据全部读入内存。
+     */
+    @Override
+    public List<T> copyAll() {
+        Comparator<T> comparator;
+        synchronized (this) {
+            comparator = mComparator;
+        }
+        List<T> result = queryItems(null, null, getDatabaseOrderBy(), null, null);
+        if (comparator != null)
+            Collections.sort(result, comparator);
+        return result;
+    }
+
+    /**
+     * 丢弃所有缓存的页和数量(以及sort()排好的顺序)，下次访问时重新从数据库加载。
+     * 在数据源之外修改了数据表后应调用此方法。
+     */
+    public synchronized void invalidate() {
+        mGeneration++;
+        mCount = UNKNOWN_COUNT;
+        mPages.clear();
+        mPageEnds.clear();
+        mSortedRowIds = null;
+    }
+
+    /**
+     * 估算的每条数据占用的内存(字节)，用于getMemorySize()。
+     * TIP 数据较大的子类应覆盖此方法
+     */
+    protected long getItemMemorySize() {
+        return DEFAULT_ITEM_MEMORY_SIZE;
+    }
+
+    @Override
+    public long getMemorySize() {
+        long items = 0;
+        long rowIds = 0;
+        synchronized (this) {
+            for (List<T> page : mPages.values())
+                items += page.size();
+            if (mSortedRowIds != null)
+                rowIds = mSortedRowIds.length;
+        }
+        return items * getItemMemorySize() + rowIds * 8;
+    }
+
+    /**
+     * 丢弃所有缓存的页(数据都在数据库中，不需要写入)。
+     */
+    @Override
+    public synchronized boolean spill() {
+        mPages.clear();
+        return true;
+    }
+
+    /**
+     * @return 总是返回false(缓存的页会按需重新加载)
+     */
+    @Override
+    public boolean isSpilled() {
+        return false;
+    }
+
+    @Override
+    public void notifyDataChanged() {
+        for (XDataChangeListener<T> listener: mListeners) {
+            listener.onChange();
+        }
+    }
+
+    @Override
+    public void registerDataChangeListener(XDataChangeListener<T> listener) {
+        if (!mListeners.contains(listener))
+            mListeners.add(listener);
+    }
+
+    @Override
+    public void unregisterDataChangeListener(XDataChangeListener<T> listener) {
+        mListeners.remove(listener);
+    }
+
+    @Override
+    public void setAutoNotifyListeners(boolean isAuto) {
+        mIsAutoNotify = isAuto;
+    }
+
+    protected void notifyAddItem(T item) {
+        for (XDataChangeListener<T> listener: mListeners) {
+            listener.onAdd(item);
+        }
+    }
+
+    protected void notifyAddItems(List<T> items) {
+        for (XDataChangeListener<T> listener: mListeners) {
+            listener.onAddAll(items);
+        }
+    }
+
+    protected void notifyDeleteItem(T item) {
+        for (XDataChangeListener<T> listener: mListeners) {
+            listener.onDelete(item);
+        }
+    }
+
+    protected void notifyDeleteItems(List<T> items) {
+        for (XDataChangeListener<T> listener: mListeners) {
+            listener.onDeleteAll(items);
+        }
+    }
+
+    /**
+     * 租用数据库连接，用完后必须调用releaseDatabase()。
+     * 连接由XSQLiteHelper统一管理，这里不关闭。
+     */
+    protected SQLiteDatabase acquireDatabase() {
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        dbHelper.createIfNotExist(getDatabaseTable());
+        return dbHelper.acquireDatabase();
+    }
+
+    protected void releaseDatabase() {
+        XSQLiteHelper.getInstance().releaseDatabase();
+    }
+
+    /**
+     * 在后台线程预取page前后的页。
+     * 轮到执行时如果该页已被加载、数据已变化或已远离当前访问的页，则放弃。
+     */
+    private void prefetchAround(int page) {
+        Executor executor;
+        synchronized (this) {
+            // 只能缓存一页时，预取的页会挤掉当前页
+            if (mPrefetchPages == 0 || mMaxPages == 1)
+                return;
+            executor = mPrefetchExecutor != null ? mPrefetchExecutor : getDefaultPrefetchExecutor();
+        }
+        int lastPage = (size() - 1) / mPageSize;
+        // 先预取后面的页(列表通常向下滑动)
+        for (int distance = 1; distance <= mPrefetchPages; distance++) {
+            schedulePrefetch(executor, page + distance, lastPage);
+            schedulePrefetch(executor, page - distance, lastPage);
+        }
+    }
+
+    private void schedulePrefetch(Executor executor, final int page, int lastPage) {
+        if (page < 0 || page > lastPage)
+            return;
+        final int generation;
+        synchronized (this) {
+            if (mPages.containsKey(page) || mPrefetching.contains(page))
+                return;
+            mPrefetching.add(page);
+            generation = mGeneration;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (XBasePagedDBDataSource.this) {
+                        if (generation != mGeneration
+                                || Math.abs(page - mLastPage) > mPrefetchPages
+                                || mPages.containsKey(page))
+                            return;
+                    }
+                    List<T> items = loadPage(page, generation);
+                    synchronized (XBasePagedDBDataSource.this) {
+                        if (generation == mGeneration
+                                && Math.abs(page - mLastPage) <= mPrefetchPages
+                                && !mPages.containsKey(page)) {
+                            // 先刷新当前页的访问顺序，防止被预取的页挤掉
+                            mPages.get(mLastPage);
+                            mPages.put(page, items);
+                        }
+                    }
+                } finally {
+                    synchronized (XBasePagedDBDataSource.this) {
+                        mPrefetching.remove(Integer.valueOf(page));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 从数据库加载一页数据(不修改缓存的页，只记下该页末尾的rowid)。
+     * @param generation 开始加载时的数据版本，数据已变化则不记录
+     */
+    private List<T> loadPage(int page, int generation) {
+        long[] sorted = getSortedRowIds();
+        if (sorted != null)
+            return loadSortedPage(sorted, page);
+
+        String[] keyset = getKeysetColumns();
+        Long after = null;
+        if (keyset != null && page > 0) {
+            synchronized (this) {
+                if (generation == mGeneration)
+                    after = mPageEnds.get(page - 1);
+            }
+        }
+        List<Long> rowIds = keyset != null ? new ArrayList<Long>(mPageSize) : null;
+        List<T> items;
+        if (after != null) {
+            String[] args = new String[keyset.length == 0 ? 1 : keyset.length * 2 + 2];
+            Arrays.fill(args, String.valueOf(after));
+            items = queryItems(getKeysetSelection(keyset), args,
+                    getDatabaseOrderBy(), String.valueOf(mPageSize), rowIds);
+        } else {
+            items = queryItems(null, null, getDatabaseOrderBy(),
+                    (long) page * mPageSize + "," + mPageSize, rowIds);
+        }
+        if (rowIds != null && !rowIds.isEmpty()) {
+            synchronized (this) {
+                if (generation == mGeneration)
+                    mPageEnds.put(page, rowIds.get(rowIds.size() - 1));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 按sort()排好的rowid加载一页数据。
+     */
+    private List<T> loadSortedPage(long[] sorted, int page) {
+        int from = Math.min(sorted.length, page * mPageSize);
+        int to = Math.min(sorted.length, from + mPageSize);
+        if (from == to)
+            return new ArrayList<T>();
+        StringBuilder where = new StringBuilder("rowid IN (");
+        for (int i = from; i < to; i++) {
+            if (i > from)
+                where.append(',');
+            where.append(sorted[i]);
+        }
+        where.append(')');
+        List<Long> rowIds = new ArrayList<Long>(to - from);
+        List<T> items = queryItems(where.toString(), null, null, null, rowIds);
+        HashMap<Long, T> byRowId = new HashMap<Long, T>();
+        for (int i = 0; i < items.size(); i++)
+            byRowId.put(rowIds.get(i), items.get(i));
+        List<T> result = new ArrayList<T>(to - from);
+        for (int i = from; i < to; i++) {
+            T item = byRowId.get(sorted[i]);
+            if (item != null)
+                result.add(item);// 在数据源之外被删除的数据直接跳过
+        }
+        return result;
+    }
+
+    /**
+     * 设置了排序器时返回排好序的所有rowid(数据变化后重新排序);否则返回null。
+     */
+    private long[] getSortedRowIds() {
+        Comparator<T> comparator;
+        int generation;
+        synchronized (this) {
+            if (mComparator == null || mSortedRowIds != null)
+                return mSortedRowIds;
+            comparator = mComparator;
+            generation = mGeneration;
+        }
+        List<Long> rowIds = new ArrayList<Long>();
+        final List<T> items = queryItems(null, null, getDatabaseOrderBy(), null, rowIds);
+        final Comparator<T> itemComparator = comparator;
+        Integer[] order = new Integer[items.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return itemComparator.compare(items.get(a), items.get(b));
+            }
+        });
+        long[] sorted = new long[order.length];
+        for (int i = 0; i < order.length; i++)
+            sorted[i] = rowIds.get(order[i]);
+        synchronized (this) {
+            if (generation == mGeneration && comparator == mComparator)
+                mSortedRowIds = sorted;
+        }
+        return sorted;
+    }
+
+    /**
+     * 数据库中的排序：键集分页时按排序列和rowid，否则按getOrderBy()。
+     */
+    private String getDatabaseOrderBy() {
+        String[] keyset = getKeysetColumns();
+        if (keyset == null)
+            return getOrderBy();
+        StringBuilder orderBy = new StringBuilder();
+        for (String column : keyset)
+            orderBy.append(column).append(", ");
+        return orderBy.append("rowid").toString();
+    }
+
+    /**
+     * 键集分页的条件：排在rowid为?的数据之后。
+     * 对排序列c1..cn展开为 c1 > v1 OR (c1 = v1 AND (... OR (cn = vn AND rowid > ?)))，
+     * 降序的列用 < ;再在最前面加上 c1 >= v1，让SQLite能用c1上的索引直接定位。
+     * vi用子查询从该行读取，不需要把值读到Java层再绑定，避免类型和精度问题。
+     * 所有参数都是同一个rowid，没有排序列时1个，否则2n+2个。
+     */
+    private String getKeysetSelection(String[] keyset) {
+        String tableName = getDatabaseTable().getName();
+        String where = "rowid > ?";
+        for (int i = keyset.length - 1; i >= 0; i--) {
+            String[] parts = keyset[i].trim().split("\\s+");
+            String column = parts[0];
+            boolean desc = parts.length > 1 && "DESC".equals(parts[1].toUpperCase(Locale.US));
+            String value = "(SELECT " + column + " FROM " + tableName + " WHERE rowid = ?)";
+            where = column + (desc ? " < " : " > ") + value
+                    + " OR (" + column + " = " + value + " AND (" + where + "))";
+            if (i == 0)
+                where = column + (desc ? " <= " : " >= ") + value + " AND (" + where + ")";
+        }
+        return where;
+    }
+
+    /**
+     * 查询满足getSelection()的数据。
+     * @param where 附加的条件(与getSelection()取AND)，可为null
+     * @param whereArgs where中的参数
+     * @param orderBy ORDER BY子句，可为null
+     * @param limit LIMIT子句，可为null
+     * @param rowIds 不为null时，按顺序输出每条数据的rowid
+     */
+    private List<T> queryItems(String where, String[] whereArgs, String orderBy,
+                               String limit, List<Long> rowIds) {
+        List<T> result = new ArrayList<T>();
+        XDBTable<T> table = getDatabaseTable();
+        SQLiteDatabase db = acquireDatabase();
+        if (db == null) {
+            releaseDatabase();
+            return result;
+        }
+        String selection = getSelection();
+        String[] selectionArgs = getSelectionArgs();
+        if (where != null) {
+            selection = selection == null ? where : "(" + selection + ") AND (" + where + ")";
+            selectionArgs = selectionArgs == null ? whereArgs
+                    : whereArgs == null ? selectionArgs : concat(selectionArgs, whereArgs);
+        }
+        String[] columns = rowIds == null ? null : new String[] {"*", "rowid AS " + ROWID_ALIAS};
+        Cursor cur = null;
+        try {
+            cur = db.query(table.getName(), columns, selection, selectionArgs,
+                    null, null, orderBy, limit);
+            int rowIdIndex = rowIds == null ? -1 : cur.getColumnIndex(ROWID_ALIAS);
+            while (cur.moveToNext()) {
+                result.add(table.getFilledInstance(cur));
+                if (rowIds != null)
+                    rowIds.add(cur.getLong(rowIdIndex));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cur != null)
+                cur.close();
+            releaseDatabase();
+        }
+        return result;
+    }
+
+    private int queryCount() {
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        XDBTable<T> table = getDatabaseTable();
+        try {
+            dbHelper.createIfNotExist(table);
+            return (int) dbHelper.count(table, getSelection(), getSelectionArgs());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * 在一个事务中写入或删除数据，成功后丢弃缓存。
+     * 写入时先删除id相同的旧数据，保证id唯一。
+     * @param items 数据
+     * @param insert true表示写入;false表示删除
+     * @return 成功返回true;否则返回false
+     */
+    private boolean writeItems(List<T> items, boolean insert) {
+        XDBTable<T> table = getDatabaseTable();
+        SQLiteDatabase db = acquireDatabase();
+        if (db == null) {
+            releaseDatabase();
+            return false;
+        }
+        String where = getIdColumn() + " = ?";
+        boolean success = false;
+        XSQLiteHelper.getInstance().beginWrite(table);
+        db.beginTransaction();
+        try {
+            for (T item : items) {
+                db.delete(table.getName(), where, new String[]{getId(item)});
+                if (insert) {
+                    ContentValues cv = table.getContentValues(item);
+                    db.insert(table.getName(), null, cv);
+                }
+            }
+            db.setTransactionSuccessful();
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            db.endTransaction();
+            XSQLiteHelper.getInstance().endWrite(table);
+            releaseDatabase();
+        }
+        invalidate();
+        return success;
+    }
+
+    private static String[] concat(String[] first, String[] second) {
+        if (second == null || second.length == 0)
+            return first;
+        String[] result = new String[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,293 @@
+package com.xengine.android.data.cache;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import com.xengine.android.data.db.XSQLiteHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据源的变更日志(包内使用)。
+ * 每次变化分配一个递增的序号，按id合并(同一id只保留最后一次变化)，
+ * 延迟一段时间后在后台写线程(与XWriteBehind共用)中用一个事务写入数据库。
+ * 所有数据源的日志在同一张表中，按数据源名称区分;
+ * 表中每个(数据源, 用户名, id)只有一行(不按用户名分类的数据源用户名为空串)，清空时删除该数据源的所有行并写入一条清空记录，
+ * 所以日志的大小与数据量成正比，不会无限增长，查询某个序号之后的变化只读取变化的行。
+ * 锁的顺序：写锁 -> 数据源 -> 本对象。
+ */
+final class XChangeLog {
+
+    private static final String LOG_TABLE = "x_change_log";// 变更日志表
+    private static final String META_TABLE = "x_change_meta";// 记录已应用的服务器序号
+    private static final String NONE = "";// 清空记录的id，以及没有用户名时的用户名
+    private static final long DELAY = 300;// 延迟写入的时间(毫秒)
+
+    /**
+     * 一条还没写入或从数据库读出的记录
+     */
+    static final class Record {
+        final long seq;
+        final int op;
+        final String username;// 没有用户名时为null
+        final String id;// 清空记录为null
+
+        Record(long seq, int op, String username, String id) {
+            this.seq = seq;
+            this.op = op;
+            this.username = username;
+            this.id = id;
+        }
+    }
+
+    private final String mSource;// 数据源名称
+    private final Object mWriteLock;// 保证同一时刻只有一个批次在写
+    private final Runnable mFlushRunnable;// 后台写入任务
+    private LinkedHashMap<List<String>, Record> mPending;// 还没写入的变化(按用户名和id)
+    private long mPendingClearSeq;// 还没写入的清空记录的序号，0表示没有
+    private long mLastSeq;// 最后分配的序号，-1表示还没从数据库读取
+    private long mRemoteSeq;// 已应用的服务器序号，-1表示还没从数据库读取
+    private boolean mSuspended;// 暂停记录(如从数据库加载、应用服务器变化时)
+    private boolean mScheduled;// 是否已经提交了写入任务
+
+    XChangeLog(String source) {
+        mSource = source;
+        mWriteLock = new Object();
+        mPending = new LinkedHashMap<List<String>, Record>();
+        mPendingClearSeq = 0;
+        mLastSeq = -1;
+        mRemoteSeq = -1;
+        mSuspended = false;
+        mScheduled = false;
+        mFlushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+    }
+
+    synchronized void setSuspended(boolean suspended) {
+        mSuspended = suspended;
+    }
+
+    /**
+     * @param username 用户名，不按用户名分类的数据源为null
+     * @param id 数据的id
+     * @param op XDataChange.OP_UPSERT或OP_DELETE
+     */
+    synchronized void record(String username, String id, int op) {
+        if (mSuspended || id == null)
+            return;
+        long seq = nextSeq();
+        List<String> key = Arrays.asList(username == null ? NONE : username, id);
+        mPending.remove(key);// 保持按序号排列
+        mPending.put(key, new Record(seq, op, username, id));
+        schedule();
+    }
+
+    synchronized void recordClear() {
+        if (mSuspended)
+            return;
+        mPending.clear();
+        mPendingClearSeq = nextSeq();
+        schedule();
+    }
+
+    synchronized long getLastSeq() {
+        ensureLoaded();
+        return Math.max(0, mLastSeq);
+    }
+
+    synchronized long getRemoteSeq() {
+        ensureLoaded();
+        return Math.max(0, mRemoteSeq);
+    }
+
+    /**
+     * 在调用者的事务中写入已应用的服务器序号(与服务器的变化一起提交)，提交后再调用setRemoteSeq()。
+     */
+    void writeRemoteSeq(SQLiteDatabase db, long seq) {
+        ensureTables(db);
+        db.execSQL("INSERT OR REPLACE INTO " + META_TABLE + " (source, remote_seq) VALUES (?, ?)",
+                new Object[] {mSource, seq});
+    }
+
+    /**
+     * 记下已写入数据库的服务器序号。
+     */
+    synchronized void setRemoteSeq(long seq) {
+        ensureLoaded();
+        mRemoteSeq = seq;
+    }
+
+    /**
+     * 返回序号大于seq的所有变化(先写入还没写入的变化)。
+     */
+    List<Record> since(long seq) {
+        List<Record> result = new ArrayList<Record>();
+        if (!flush())
+            return result;
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        SQLiteDatabase db = dbHelper.acquireDatabase();
+        Cursor cur = null;
+        try {
+            ensureTables(db);
+            cur = db.rawQuery("SELECT seq, op, username, item_id FROM " + LOG_TABLE
+                    + " WHERE source = ? AND seq > ? ORDER BY seq",
+                    new String[] {mSource, String.valueOf(seq)});
+            while (cur.moveToNext()) {
+                int op = cur.getInt(1);
+                String username = cur.getString(2);
+                result.add(new Record(cur.getLong(0), op, NONE.equals(username) ? null : username,
+                        op == XDataChange.OP_CLEAR ? null : cur.getString(3)));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cur != null)
+                cur.close();
+            dbHelper.releaseDatabase();
+        }
+        return result;
+    }
+
+    /**
+     * 在当前线程立即写入所有还没写入的变化。
+     * @return 写入成功(或没有需要写入的)返回true;否则返回false
+     */
+    boolean flush() {
+        synchronized (mWriteLock) {
+            LinkedHashMap<List<String>, Record> pending;
+            long clearSeq;
+            synchronized (this) {
+                mScheduled = false;
+                if (mPendingClearSeq == 0 && mPending.isEmpty())
+                    return true;
+                pending = mPending;
+                clearSeq = mPendingClearSeq;
+                mPending = new LinkedHashMap<List<String>, Record>();
+                mPendingClearSeq = 0;
+            }
+            boolean success = write(pending, clearSeq);
+            if (!success) {
+                synchronized (this) {
+                    restore(pending, clearSeq);
+                }
+            }
+            return success;
+        }
+    }
+
+    private long nextSeq() {
+        ensureLoaded();
+        return ++mLastSeq;
+    }
+
+    private void schedule() {
+        if (mScheduled)
+            return;
+        mScheduled = true;
+        XWriteBehind.getWriter().schedule(mFlushRunnable, DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 从数据库读取最后的序号和已应用的服务器序号。
+     */
+    private void ensureLoaded() {
+        if (mLastSeq >= 0 && mRemoteSeq >= 0)
+            return;
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        SQLiteDatabase db = dbHelper.acquireDatabase();
+        try {
+            ensureTables(db);
+            if (mLastSeq < 0)
+                mLastSeq = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(seq), 0) FROM "
+                        + LOG_TABLE + " WHERE source = ?", new String[] {mSource});
+            if (mRemoteSeq < 0)
+                mRemoteSeq = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(remote_seq), 0) FROM "
+                        + META_TABLE + " WHERE source = ?", new String[] {mSource});
+        } finally {
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    private static void ensureTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + LOG_TABLE + " (source TEXT NOT NULL, "
+                + "username TEXT NOT NULL, item_id TEXT NOT NULL, op INTEGER NOT NULL, "
+                + "seq INTEGER NOT NULL, PRIMARY KEY (source, username, item_id))");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + LOG_TABLE + "_seq ON "
+                + LOG_TABLE + " (source, seq)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + META_TABLE + " (source TEXT PRIMARY KEY, "
+                + "remote_seq INTEGER NOT NULL)");
+    }
+
+    private boolean write(LinkedHashMap<List<String>, Record> pending, long clearSeq) {
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        SQLiteDatabase db;
+        try {
+            db = dbHelper.acquireDatabase();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        SQLiteStatement statement = null;
+        db.beginTransaction();
+        try {
+            ensureTables(db);
+            statement = db.compileStatement("INSERT OR REPLACE INTO " + LOG_TABLE
+                    + " (source, username, item_id, op, seq) VALUES (?, ?, ?, ?, ?)");
+            if (clearSeq != 0) {
+                db.execSQL("DELETE FROM " + LOG_TABLE + " WHERE source = ?", new Object[] {mSource});
+                bindAndExecute(statement, NONE, NONE, XDataChange.OP_CLEAR, clearSeq);
+            }
+            for (Map.Entry<List<String>, Record> entry : pending.entrySet())
+                bindAndExecute(statement, entry.getKey().get(0), entry.getKey().get(1),
+                        entry.getValue().op, entry.getValue().seq);
+            db.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (statement != null)
+                statement.close();
+            db.endTransaction();
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    private void bindAndExecute(SQLiteStatement statement, String username, String id,
+                                int op, long seq) {
+        statement.clearBindings();
+        statement.bindString(1, mSource);
+        statement.bindString(2, username);
+        statement.bindString(3, id);
+        statement.bindLong(4, op);
+        statement.bindLong(5, seq);
+        statement.execute();
+    }
+
+    /**
+     * 把写入失败的记录放回去(已被新的变化覆盖的除外)。
+     */
+    private void restore(LinkedHashMap<List<String>, Record> pending, long clearSeq) {
+        if (mPendingClearSeq != 0)
+            return;// 之后又清空了，失败的记录都没意义了
+        LinkedHashMap<List<String>, Record> merged = new LinkedHashMap<List<String>, Record>();
+        for (Map.Entry<List<String>, Record> entry : pending.entrySet()) {
+            if (!mPending.containsKey(entry.getKey()))
+                merged.put(entry.getKey(), entry.getValue());
+        }
+        merged.putAll(mPending);
+        mPending = merged;
+        mPendingClearSeq = clearSeq;
+        schedule();
+    }
+}
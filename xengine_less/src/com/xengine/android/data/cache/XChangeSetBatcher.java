@@ -0,0 +1,164 @@
+package com.xengine.android.data.cache;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * 收集数据源的变化并批量分发给XDataChangeSetListener(包内使用)。
+ * 第一次记录变化时向分发器提交一次分发任务，分发前记录的所有变化合并成一个变化集。
+ * 默认的分发器是主线程的Handler，所以一次消息循环(约一帧)内的变化只回调一次。
+ * 没有注册监听者时不记录任何变化。
+ */
+final class XChangeSetBatcher<T> {
+
+    private final List<XDataChangeSetListener<T>> mListeners;// 变化集监听者
+    private final XWithSnapshot<T> mSource;// 用于读取版本号的数据源
+    private final Runnable mDeliverRunnable;// 分发任务
+    private volatile Executor mDispatcher;// 分发器(为null时延迟创建主线程分发器)
+    private XDataChangeSet.Builder mPending;// 还没分发的变化
+    private long mDeliveredVersion;// 上一次分发时数据源的版本号
+    private boolean mScheduled;// 是否已经提交了分发任务
+
+    XChangeSetBatcher(XWithSnapshot<T> source) {
+        mListeners = new CopyOnWriteArrayList<XDataChangeSetListener<T>>();
+        mSource = source;
+        mPending = new XDataChangeSet.Builder();
+        mDeliveredVersion = source.getVersion();
+        mScheduled = false;
+        mDeliverRunnable = new Runnable() {
+            @Override
+            public void run() {
+                deliver();
+            }
+        };
+    }
+
+    void addListener(XDataChangeSetListener<T> listener) {
+        if (!mListeners.contains(listener))
+            mListeners.add(listener);
+    }
+
+    void removeListener(XDataChangeSetListener<T> listener) {
+        mListeners.remove(listener);
+    }
+
+    boolean hasListeners() {
+        return !mListeners.isEmpty();
+    }
+
+    /**
+     * 设置分发器。
+     * @param dispatcher 分发器，为null则使用主线程的Handler
+     */
+    void setDispatcher(Executor dispatcher) {
+        mDispatcher = dispatcher;
+    }
+
+    synchronized void insert(int position, int count) {
+        if (!hasListeners())
+            return;
+        mPending.insert(position, count);
+        schedule();
+    }
+
+    synchronized void remove(int position, int count) {
+        if (!hasListeners())
+            return;
+        mPending.remove(position, count);
+        schedule();
+    }
+
+    synchronized void move(int fromPosition, int toPosition) {
+        if (!hasListeners())
+            return;
+        mPending.move(fromPosition, toPosition);
+        schedule();
+    }
+
+    synchronized void change(int position, int count) {
+        if (!hasListeners())
+            return;
+        mPending.change(position, count);
+        schedule();
+    }
+
+    /**
+     * 按顺序记录一组变化。
+     * @param changes 变化集(版本号会被忽略)
+     */
+    synchronized void apply(XDataChangeSet changes) {
+        if (!hasListeners() || changes.isEmpty())
+            return;
+        if (changes.isReset()) {
+            mPending.reset();
+        } else {
+            for (int i = 0; i < changes.getOpCount(); i++) {
+                switch (changes.getType(i)) {
+                    case XDataChangeSet.TYPE_INSERT:
+                        mPending.insert(changes.getPosition(i), changes.getItemCount(i));
+                        break;
+                    case XDataChangeSet.TYPE_REMOVE:
+                        mPending.remove(changes.getPosition(i), changes.getItemCount(i));
+                        break;
+                    case XDataChangeSet.TYPE_MOVE:
+                        mPending.move(changes.getPosition(i), changes.getToPosition(i));
+                        break;
+                    default:
+                        mPending.change(changes.getPosition(i), changes.getItemCount(i));
+                        break;
+                }
+            }
+        }
+        schedule();
+    }
+
+    synchronized void reset() {
+        if (!hasListeners())
+            return;
+        mPending.reset();
+        schedule();
+    }
+
+    private void schedule() {
+        if (mScheduled || mPending.isEmpty())
+            return;
+        mScheduled = true;
+        Executor dispatcher = mDispatcher;
+        if (dispatcher == null) {
+            dispatcher = new MainThreadDispatcher();
+            mDispatcher = dispatcher;
+        }
+        dispatcher.execute(mDeliverRunnable);
+    }
+
+    private void deliver() {
+        XDataChangeSet changes;
+        synchronized (this) {
+            mScheduled = false;
+            if (mPending.isEmpty())
+                return;
+            long version = mSource.getVersion();
+            changes = mPending.build(mDeliveredVersion, version);
+            mPending = new XDataChangeSet.Builder();
+            mDeliveredVersion = version;
+        }
+        for (XDataChangeSetListener<T> listener : mListeners)
+            listener.onChangeSet(changes);
+    }
+
+    /**
+     * 在主线程的下一次消息循环中执行。
+     */
+    private static final class MainThreadDispatcher implements Executor {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            mHandler.post(command);
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.xengine.android.data.cache;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.xengine.android.data.db.XBatchWriter;
+import com.xengine.android.data.db.XDBTable;
+import com.xengine.android.data.db.XSQLiteHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 带数据库支持的Id数据源共用的持久化实现(包内使用)：
+ * 整表读写、延迟写入、换出和变更日志。
+ * XBaseAdapterIdDBDataSource和XBaseAdapterIdUsernameDBDataSource只是标识数据的键不同
+ * (id，或用户名和id)，键相关的部分由Keys提供，其余逻辑都在本类中。
+ * 数据源的状态(是否换出、变更日志)用数据源对象加锁，锁的顺序与XWriteBehind相同：
+ * 写锁 -> 数据源 -> XWriteBehind/XChangeLog。
+ * @see com.xengine.android.data.cache.XBaseAdapterIdDBDataSource
+ * @see com.xengine.android.data.cache.XBaseAdapterIdUsernameDBDataSource
+ */
+final class XDBSourceSupport<T> implements XWriteBehind.Store<T> {
+
+    /**
+     * 数据源中与键相关的操作。
+     */
+    interface Keys<T> {
+        /**
+         * @return 返回唯一标识数据的字段名(一个或多个);返回null表示不能增量写入
+         */
+        String[] getKeyColumns();
+
+        /**
+         * @return 返回数据在getKeyColumns()各字段上的值
+         */
+        String[] getKey(T item);
+
+        /**
+         * @return 返回变更日志中的用户名和id在getKeyColumns()各字段上的值
+         */
+        String[] getKey(String username, String id);
+
+        /**
+         * @return 返回变更日志中记录的用户名;不按用户名分类的数据源返回null
+         */
+        String getUsername(T item);
+
+        /**
+         * 按变更日志中的用户名和id查找数据(在数据源的同步块内调用)。
+         */
+        T find(String username, String id);
+
+        /**
+         * 按变更日志中的用户名和id删除数据(在数据源的同步块内调用)。
+         */
+        void delete(String username, String id);
+    }
+
+    private final XBaseAdapterIdDataSource<T> mSource;// 数据源
+    private final XWithDatabase<T> mDatabase;// 数据源的数据表
+    private final Keys<T> mKeys;// 键相关的操作
+    private final XWriteBehind<T> mWriteBehind;// 延迟写入
+    private boolean mSpilled;// 是否已被换出到数据库
+    private XChangeLog mChangeLog;// 变更日志，没有开启时为null
+
+    <S extends XBaseAdapterIdDataSource<T> & XWithDatabase<T>> XDBSourceSupport(S source, Keys<T> keys) {
+        mSource = source;
+        mDatabase = source;
+        mKeys = keys;
+        mWriteBehind = new XWriteBehind<T>(this);
+    }
+
+    @Override
+    public XDBTable<T> getDatabaseTable() {
+        return mDatabase.getDatabaseTable();
+    }
+
+    @Override
+    public String[] getKeyColumns() {
+        return mKeys.getKeyColumns();
+    }
+
+    @Override
+    public String[] getKey(T item) {
+        return mKeys.getKey(item);
+    }
+
+    @Override
+    public List<T> copyAll() {
+        synchronized (mSource) {
+            return mSource.copyAll();
+        }
+    }
+
+    // ---------------- 延迟写入 ----------------
+
+    void setWriteBehind(boolean enabled, long delayMillis) {
+        mWriteBehind.setEnabled(enabled, delayMillis);
+    }
+
+    boolean flush() {
+        return mWriteBehind.flush();
+    }
+
+    // ---------------- 变更日志 ----------------
+
+    void setChangeLogEnabled(boolean enabled) {
+        if (enabled)
+            requireKeyColumns();
+        XChangeLog changeLog;
+        synchronized (mSource) {
+            changeLog = mChangeLog;
+            if (enabled == (changeLog != null))
+                return;
+            mChangeLog = enabled ? new XChangeLog(mSource.getSourceName()) : null;
+            if (enabled)
+                changeLog = mChangeLog;
+        }
+        if (enabled)
+            changeLog.getLastSeq();// 预先读取序号，避免在加锁的修改中访问数据库
+        else
+            changeLog.flush();
+    }
+
+    long getLastSeq() {
+        return getChangeLog().getLastSeq();
+    }
+
+    long getRemoteSeq() {
+        return getChangeLog().getRemoteSeq();
+    }
+
+    List<XDataChange<T>> getChangesSince(long seq) {
+        XChangeLog changeLog = getChangeLog();
+        List<XChangeLog.Record> records = changeLog.since(seq);
+        List<XDataChange<T>> result = new ArrayList<XDataChange<T>>(records.size());
+        boolean spilled;
+        synchronized (mSource) {
+            spilled = mSpilled;
+            if (!spilled) {
+                for (XChangeLog.Record record : records)
+                    addChange(result, record, record.op == XDataChange.OP_UPSERT
+                            ? mKeys.find(record.username, record.id) : null);
+            }
+        }
+        if (spilled) {
+            // 换出时数据都在数据库中，只按键读取变化的数据，不加载整个数据源
+            for (XChangeLog.Record record : records)
+                addChange(result, record, record.op == XDataChange.OP_UPSERT
+                        ? queryByKey(mKeys.getKey(record.username, record.id)) : null);
+        }
+        return result;
+    }
+
+    private void addChange(List<XDataChange<T>> result, XChangeLog.Record record, T item) {
+        // 读出日志后数据又被删除了，跳过(删除会出现在下一次同步中)
+        if (record.op == XDataChange.OP_UPSERT && item == null)
+            return;
+        result.add(new XDataChange<T>(record.seq, record.op, record.username, record.id, item));
+    }
+
+    /**
+     * 按键从数据表中读取一条数据(键字段上有唯一索引时只检查一行)。
+     * @return 返回找到的数据;没有返回null
+     */
+    private T queryByKey(String[] key) {
+        String[] keyColumns = requireKeyColumns();
+        StringBuilder selection = new StringBuilder();
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0)
+                selection.append(" AND ");
+            selection.append(keyColumns[i]).append(" = ?");
+        }
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        XDBTable<T> table = getDatabaseTable();
+        dbHelper.createIfNotExist(table);
+        SQLiteDatabase db = dbHelper.acquireDatabase();
+        Cursor cur = null;
+        try {
+            cur = db.query(table.getName(), null, selection.toString(), key,
+                    null, null, null, "1");
+            return cur.moveToNext() ? table.getFilledInstance(cur) : null;
+        } finally {
+            if (cur != null)
+                cur.close();
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    /**
+     * 先在一个事务中把变化写入数据库(只写变化的键，并记下服务器序号)，成功后再应用到内存。
+     * 换出时只写数据库，下次加载时读出。
+     */
+    int applyRemoteChanges(List<XDataChange<T>> changes) {
+        XChangeLog changeLog = getChangeLog();
+        String[] keyColumns = requireKeyColumns();
+        long remoteSeq = changeLog.getRemoteSeq();
+        List<XDataChange<T>> applied = new ArrayList<XDataChange<T>>();
+        long maxSeq = remoteSeq;
+        for (XDataChange<T> change : changes) {
+            if (change.seq <= remoteSeq)
+                continue;// 已经应用过
+            applied.add(change);
+            maxSeq = Math.max(maxSeq, change.seq);
+        }
+        if (applied.isEmpty())
+            return 0;
+
+        boolean isAutoNotify;
+        synchronized (mWriteBehind.getWriteLock()) {
+            writeRemoteChanges(applied, keyColumns, changeLog, maxSeq);
+            changeLog.setRemoteSeq(maxSeq);
+
+            boolean cleared = false;
+            List<String[]> keys = new ArrayList<String[]>(applied.size());
+            synchronized (mSource) {
+                isAutoNotify = mSource.mIsAutoNotify;
+                if (!mSpilled) {
+                    mSource.mIsAutoNotify = false;
+                    mWriteBehind.setSuspended(true);// 已经写入数据库
+                    changeLog.setSuspended(true);// 服务器的变化不需要再上传
+                    try {
+                        for (XDataChange<T> change : applied) {
+                            switch (change.op) {
+                                case XDataChange.OP_UPSERT:
+                                    mSource.add(change.item);
+                                    break;
+                                case XDataChange.OP_DELETE:
+                                    mKeys.delete(change.username, change.id);
+                                    break;
+                                case XDataChange.OP_CLEAR:
+                                    mSource.clear();
+                                    break;
+                            }
+                        }
+                    } finally {
+                        changeLog.setSuspended(false);
+                        mWriteBehind.setSuspended(false);
+                        mSource.mIsAutoNotify = isAutoNotify;
+                    }
+                } else {
+                    isAutoNotify = false;// 换出时内存中没有数据，不需要通知
+                }
+                // 这些键已经是服务器的内容，还没写入的本地旧内容不能再写回
+                for (XDataChange<T> change : applied) {
+                    if (change.op == XDataChange.OP_CLEAR)
+                        cleared = true;
+                    else
+                        keys.add(keyOf(change));
+                }
+                mWriteBehind.discard(keys, cleared);
+            }
+        }
+        if (isAutoNotify)
+            mSource.notifyDataChanged();
+        return applied.size();
+    }
+
+    private String[] keyOf(XDataChange<T> change) {
+        return change.op == XDataChange.OP_UPSERT
+                ? mKeys.getKey(change.item) : mKeys.getKey(change.username, change.id);
+    }
+
+    /**
+     * 在一个事务中写入服务器的变化和服务器序号。
+     * @throws android.database.SQLException 写入失败，事务回滚
+     */
+    private void writeRemoteChanges(List<XDataChange<T>> changes, String[] keyColumns,
+                                    XChangeLog changeLog, long remoteSeq) {
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        XDBTable<T> table = getDatabaseTable();
+        dbHelper.createIfNotExist(table);
+        SQLiteDatabase db = dbHelper.acquireDatabase();
+        XBatchWriter writer = new XBatchWriter(db, table.getName());
+        dbHelper.beginWrite(table);
+        db.beginTransaction();
+        try {
+            for (XDataChange<T> change : changes) {
+                switch (change.op) {
+                    case XDataChange.OP_UPSERT:
+                        writer.deleteBy(keyColumns, keyOf(change));
+                        writer.insert(table.getContentValues(change.item));
+                        break;
+                    case XDataChange.OP_DELETE:
+                        writer.deleteBy(keyColumns, keyOf(change));
+                        break;
+                    case XDataChange.OP_CLEAR:
+                        writer.deleteAll();
+                        break;
+                }
+            }
+            changeLog.writeRemoteSeq(db, remoteSeq);
+            db.setTransactionSuccessful();
+        } finally {
+            writer.close();
+            db.endTransaction();
+            dbHelper.endWrite(table);
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    private String[] requireKeyColumns() {
+        String[] keyColumns = mKeys.getKeyColumns();
+        if (keyColumns == null)
+            throw new IllegalStateException("Change log needs key columns of "
+                    + mSource.getSourceName() + ".");
+        return keyColumns;
+    }
+
+    private XChangeLog getChangeLog() {
+        synchronized (mSource) {
+            if (mChangeLog == null)
+                throw new IllegalStateException("Change log is not enabled.");
+            return mChangeLog;
+        }
+    }
+
+    // ---------------- 数据源的回调(在数据源的同步块内) ----------------
+
+    void onItemStored(T item) {
+        mWriteBehind.stored(item);
+        if (mChangeLog != null)
+            mChangeLog.record(mKeys.getUsername(item), mSource.getId(item), XDataChange.OP_UPSERT);
+    }
+
+    void onItemDeleted(T item) {
+        mWriteBehind.deleted(item);
+        if (mChangeLog != null)
+            mChangeLog.record(mKeys.getUsername(item), mSource.getId(item), XDataChange.OP_DELETE);
+    }
+
+    void onItemsCleared() {
+        mWriteBehind.cleared();
+        if (mChangeLog != null)
+            mChangeLog.recordClear();
+    }
+
+    // ---------------- 换出 ----------------
+
+    boolean spill() {
+        synchronized (mWriteBehind.getWriteLock()) {
+            synchronized (mSource) {
+                if (mSpilled)
+                    return true;
+                if (mSource.hasDataChangeListeners())
+                    return false;// 可能绑定着Adapter，不通知就清空会让ListView报错
+                if (!writeAll(true))
+                    return false;
+                boolean isAutoNotify = mSource.mIsAutoNotify;
+                mSource.mIsAutoNotify = false;
+                mWriteBehind.setSuspended(true);// 已经整表写入，清空不需要再写回
+                if (mChangeLog != null)
+                    mChangeLog.setSuspended(true);// 换出不是数据的变化
+                try {
+                    mSource.clear();
+                } finally {
+                    if (mChangeLog != null)
+                        mChangeLog.setSuspended(false);
+                    mWriteBehind.setSuspended(false);
+                    mSource.mIsAutoNotify = isAutoNotify;
+                }
+                mSpilled = true;
+                return true;
+            }
+        }
+    }
+
+    boolean isSpilled() {
+        synchronized (mSource) {
+            return mSpilled;
+        }
+    }
+
+    // ---------------- 整表读写 ----------------
+
+    boolean loadFromDatabase() {
+        // 先写入还没写入的变化，再从数据库加载
+        if (mWriteBehind.isEnabled())
+            mWriteBehind.flush();
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        XDBTable<T> table = getDatabaseTable();
+        dbHelper.createIfNotExist(table);
+        SQLiteDatabase db = dbHelper.acquireDatabase();
+        if (db == null) {
+            dbHelper.releaseDatabase();
+            return false;
+        }
+
+        Cursor cur = null;
+        try {
+            cur = db.rawQuery("SELECT * FROM " + table.getName(), null);
+            synchronized (mSource) {
+                mWriteBehind.setSuspended(true);// 加载的数据不需要再写回数据库
+                if (mChangeLog != null)
+                    mChangeLog.setSuspended(true);// 加载也不是数据的变化
+                try {
+                    mSource.clear();
+                    while (cur.moveToNext()) {
+                        mSource.appendItem(table.getFilledInstance(cur));// 只追加并更新索引，不判重
+                    }
+                } finally {
+                    if (mChangeLog != null)
+                        mChangeLog.setSuspended(false);
+                    mWriteBehind.setSuspended(false);
+                }
+                mSpilled = false;
+            }
+            return true;
+        } finally {
+            if (cur != null)
+                cur.close();
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    /**
+     * 在一个事务中写入所有数据。
+     * 覆盖写入时，还没写入的延迟变化已包含在本次写入中，成功后丢弃;失败时放回，之后照常写入。
+     * TIP 数据库连接由XSQLiteHelper管理，这里只租用，不关闭
+     * @param overwrite true表示先清空数据表
+     */
+    boolean writeAll(boolean overwrite) {
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        XDBTable<T> table = getDatabaseTable();
+        dbHelper.createIfNotExist(table);
+        SQLiteDatabase db = dbHelper.acquireDatabase();
+        if (db == null) {
+            dbHelper.releaseDatabase();
+            return false;
+        }
+
+        synchronized (mWriteBehind.getWriteLock()) {
+            List<T> items;
+            XWriteBehind.Batch<T> pending = null;
+            synchronized (mSource) {
+                items = mSource.copyAll();
+                if (overwrite)
+                    pending = mWriteBehind.takePending();
+            }
+            boolean success = false;
+            XBatchWriter writer = new XBatchWriter(db, table.getName());
+            dbHelper.beginWrite(table);
+            db.beginTransaction();
+            try {
+                if (overwrite)
+                    writer.deleteAll();
+                for (T item : items)
+                    writer.insert(table.getContentValues(item));
+                db.setTransactionSuccessful();
+                success = true;
+                return true;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return false;
+            } finally {
+                writer.close();
+                db.endTransaction();
+                dbHelper.endWrite(table);
+                dbHelper.releaseDatabase();
+                if (!success && pending != null)
+                    mWriteBehind.restore(pending);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.xengine.android.data.cache;
+
+/**
+ * 变更日志中的一条变化。
+ * 同一个id只保留最后一次变化，所以一条变化代表该id从上次同步到现在的最终结果。
+ * @see com.xengine.android.data.cache.XWithChangeLog
+ */
+public final class XDataChange<T> {
+
+    public static final int OP_UPSERT = 1;// 添加或替换
+    public static final int OP_DELETE = 2;// 删除
+    public static final int OP_CLEAR = 3;// 清空(之前的所有数据都被删除)
+
+    public final long seq;// 序号(同一个数据源内递增)
+    public final int op;// 变化类型
+    public final String username;// 数据的用户名(只有按用户名分类的数据源才有，否则为null)
+    public final String id;// 数据的id(OP_CLEAR时为null)
+    public final T item;// OP_UPSERT时为数据当前的内容;其他为null
+
+    public XDataChange(long seq, int op, String username, String id, T item) {
+        this.seq = seq;
+        this.op = op;
+        this.username = username;
+        this.id = id;
+        this.item = item;
+    }
+
+    public XDataChange(long seq, int op, String id, T item) {
+        this(seq, op, null, id, item);
+    }
+
+    public static <T> XDataChange<T> upsert(long seq, String id, T item) {
+        return new XDataChange<T>(seq, OP_UPSERT, id, item);
+    }
+
+    public static <T> XDataChange<T> delete(long seq, String id) {
+        return new XDataChange<T>(seq, OP_DELETE, id, null);
+    }
+
+    public static <T> XDataChange<T> delete(long seq, String username, String id) {
+        return new XDataChange<T>(seq, OP_DELETE, username, id, null);
+    }
+
+    public static <T> XDataChange<T> clear(long seq) {
+        return new XDataChange<T>(seq, OP_CLEAR, null, null);
+    }
+
+    @Override
+    public String toString() {
+        String name = op == OP_UPSERT ? "upsert" : op == OP_DELETE ? "delete" : "clear";
+        return "#" + seq + " " + name + (username == null ? "" : " " + username + "/")
+                + (id == null ? "" : username == null ? " " + id : id);
+    }
+}
@@ -0,0 +1,252 @@
+package com.xengine.android.data.cache;
+
+/**
+ * 数据源的一组细粒度变化。
+ * 由按顺序排列的若干操作组成，每个操作的坐标都是相对于执行完前面所有操作之后的列表，
+ * 监听者按顺序应用这些操作，就能从旧列表得到新列表(与RecyclerView的notifyItemXxx顺序一致)。
+ * 如果isReset()为true，说明变化太多或无法描述，监听者应整体刷新。
+ * @see com.xengine.android.data.cache.XDataChangeSetListener
+ */
+public final class XDataChangeSet {
+
+    public static final int TYPE_INSERT = 1;// 插入了一段数据
+    public static final int TYPE_REMOVE = 2;// 删除了一段数据
+    public static final int TYPE_MOVE = 3;// 移动了一个数据
+    public static final int TYPE_CHANGE = 4;// 一段数据的内容变化了(位置不变)
+
+    private static final int OP_SIZE = 3;// 每个操作占用的int数:类型、坐标、数量(移动时为目标坐标)
+
+    private final int[] mOps;// 所有操作
+    private final int mOpCount;// 操作的数量
+    private final boolean mReset;// 是否需要整体刷新
+    private final long mFromVersion;// 变化前数据源的版本号
+    private final long mToVersion;// 变化后数据源的版本号
+
+    private XDataChangeSet(int[] ops, int opCount, boolean reset,
+                           long fromVersion, long toVersion) {
+        mOps = ops;
+        mOpCount = opCount;
+        mReset = reset;
+        mFromVersion = fromVersion;
+        mToVersion = toVersion;
+    }
+
+    /**
+     * @return 需要整体刷新返回true;否则返回false
+     */
+    public boolean isReset() {
+        return mReset;
+    }
+
+    /**
+     * @return 没有任何变化返回true;否则返回false
+     */
+    public boolean isEmpty() {
+        return !mReset && mOpCount == 0;
+    }
+
+    /**
+     * @return 返回操作的数量(整体刷新时为0)
+     */
+    public int getOpCount() {
+        return mOpCount;
+    }
+
+    /**
+     * @param i 第i个操作
+     * @return 返回操作类型
+     * @see #TYPE_INSERT
+     * @see #TYPE_REMOVE
+     * @see #TYPE_MOVE
+     * @see #TYPE_CHANGE
+     */
+    public int getType(int i) {
+        return mOps[i * OP_SIZE];
+    }
+
+    /**
+     * @param i 第i个操作
+     * @return 返回操作的起始坐标(移动时为移动前的坐标)
+     */
+    public int getPosition(int i) {
+        return mOps[i * OP_SIZE + 1];
+    }
+
+    /**
+     * @param i 第i个操作
+     * @return 返回操作涉及的数据数量(移动时为1)
+     */
+    public int getItemCount(int i) {
+        return getType(i) == TYPE_MOVE ? 1 : mOps[i * OP_SIZE + 2];
+    }
+
+    /**
+     * @param i 第i个操作(必须是移动操作)
+     * @return 返回移动后的坐标
+     */
+    public int getToPosition(int i) {
+        if (getType(i) != TYPE_MOVE)
+            throw new IllegalStateException("Op " + i + " is not a move.");
+        return mOps[i * OP_SIZE + 2];
+    }
+
+    /**
+     * @return 返回变化前数据源的版本号
+     */
+    public long getFromVersion() {
+        return mFromVersion;
+    }
+
+    /**
+     * @return 返回变化后数据源的版本号
+     */
+    public long getToVersion() {
+        return mToVersion;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("XDataChangeSet{v")
+                .append(mFromVersion).append("->").append(mToVersion);
+        if (mReset)
+            return sb.append(", reset}").toString();
+        for (int i = 0; i < mOpCount; i++) {
+            sb.append(", ");
+            switch (getType(i)) {
+                case TYPE_INSERT:
+                    sb.append("+");
+                    break;
+                case TYPE_REMOVE:
+                    sb.append("-");
+                    break;
+                case TYPE_MOVE:
+                    sb.append("~").append(getPosition(i)).append(">").append(getToPosition(i));
+                    continue;
+                default:
+                    sb.append("*");
+                    break;
+            }
+            sb.append(getPosition(i)).append("x").append(getItemCount(i));
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 按顺序记录变化的构造器。
+     * 相邻且连续的同类操作会合并成一个；操作数超过上限时退化为整体刷新。
+     */
+    public static final class Builder {
+
+        private static final int MAX_OPS = 256;// 超过这么多操作，整体刷新更划算
+
+        private int[] mOps;
+        private int mOpCount;
+        private boolean mReset;
+
+        public Builder() {
+            mOps = new int[8 * OP_SIZE];
+            mOpCount = 0;
+            mReset = false;
+        }
+
+        public Builder insert(int position, int count) {
+            if (count <= 0 || mReset)
+                return this;
+            int last = mOpCount - 1;
+            if (last >= 0 && getType(last) == TYPE_INSERT) {
+                int start = mOps[last * OP_SIZE + 1];
+                int lastCount = mOps[last * OP_SIZE + 2];
+                // 插入位置在上一段插入的范围内，合并成一段
+                if (position >= start && position <= start + lastCount) {
+                    mOps[last * OP_SIZE + 2] = lastCount + count;
+                    return this;
+                }
+            }
+            return append(TYPE_INSERT, position, count);
+        }
+
+        public Builder remove(int position, int count) {
+            if (count <= 0 || mReset)
+                return this;
+            int last = mOpCount - 1;
+            if (last >= 0 && getType(last) == TYPE_REMOVE) {
+                int start = mOps[last * OP_SIZE + 1];
+                int lastCount = mOps[last * OP_SIZE + 2];
+                if (position == start) {// 继续删除后面的
+                    mOps[last * OP_SIZE + 2] = lastCount + count;
+                    return this;
+                }
+                if (position + count == start) {// 继续删除前面的
+                    mOps[last * OP_SIZE + 1] = position;
+                    mOps[last * OP_SIZE + 2] = lastCount + count;
+                    return this;
+                }
+            }
+            return append(TYPE_REMOVE, position, count);
+        }
+
+        public Builder move(int fromPosition, int toPosition) {
+            if (fromPosition == toPosition || mReset)
+                return this;
+            return append(TYPE_MOVE, fromPosition, toPosition);
+        }
+
+        public Builder change(int position, int count) {
+            if (count <= 0 || mReset)
+                return this;
+            int last = mOpCount - 1;
+            if (last >= 0 && getType(last) == TYPE_CHANGE) {
+                int start = mOps[last * OP_SIZE + 1];
+                int end = start + mOps[last * OP_SIZE + 2];
+                // 与上一段变化重叠或相邻，合并成一段
+                if (position <= end && position + count >= start) {
+                    int newStart = Math.min(start, position);
+                    int newEnd = Math.max(end, position + count);
+                    mOps[last * OP_SIZE + 1] = newStart;
+                    mOps[last * OP_SIZE + 2] = newEnd - newStart;
+                    return this;
+                }
+            }
+            return append(TYPE_CHANGE, position, count);
+        }
+
+        /**
+         * 标记为需要整体刷新，之前和之后记录的操作都会被丢弃。
+         */
+        public Builder reset() {
+            mReset = true;
+            mOpCount = 0;
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return !mReset && mOpCount == 0;
+        }
+
+        public XDataChangeSet build(long fromVersion, long toVersion) {
+            int[] ops = new int[mOpCount * OP_SIZE];
+            System.arraycopy(mOps, 0, ops, 0, ops.length);
+            return new XDataChangeSet(ops, mOpCount, mReset, fromVersion, toVersion);
+        }
+
+        private int getType(int i) {
+            return mOps[i * OP_SIZE];
+        }
+
+        private Builder append(int type, int position, int value) {
+            if (mOpCount >= MAX_OPS)
+                return reset();
+            if ((mOpCount + 1) * OP_SIZE > mOps.length) {
+                int[] newOps = new int[mOps.length * 2];
+                System.arraycopy(mOps, 0, newOps, 0, mOps.length);
+                mOps = newOps;
+            }
+            int offset = mOpCount * OP_SIZE;
+            mOps[offset] = type;
+            mOps[offset + 1] = position;
+            mOps[offset + 2] = value;
+            mOpCount++;
+            return this;
+        }
+    }
+}
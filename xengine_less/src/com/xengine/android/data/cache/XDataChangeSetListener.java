@@ -0,0 +1,20 @@
+package com.xengine.android.data.cache;
+
+/**
+ * 接收细粒度变化的数据监听器。
+ * 向支持变化集的数据源(如XBaseAdapterIdDataSource)注册时，
+ * 只会收到onChangeSet()回调，不再收到父接口的onChange()/onAdd()等回调；
+ * 一段时间内(默认为主线程的一次消息循环，约一帧)的连续变化会合并成一次回调。
+ * 向不支持变化集的数据源注册时，仍按父接口的方式回调。
+ * @see com.xengine.android.data.cache.XDataChangeSet
+ */
+public interface XDataChangeSetListener<T> extends XDataChangeListener<T> {
+
+    /**
+     * 数据源发生了一组变化。
+     * 回调时数据源可能已经又发生了新的变化(会在下一次回调中通知)，
+     * 可通过changes.getToVersion()与数据源快照的版本号比较。
+     * @param changes 按顺序排列的变化
+     */
+    void onChangeSet(XDataChangeSet changes);
+}
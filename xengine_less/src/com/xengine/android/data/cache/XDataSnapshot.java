@@ -0,0 +1,68 @@
+package com.xengine.android.data.cache;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 数据源在某个版本时的只读快照。
+ * 快照创建后不会再变化，可以在任意线程无锁读取，
+ * 同一个快照上多次调用size()和get()得到的数据总是一致的。
+ * @see com.xengine.android.data.cache.XWithSnapshot
+ */
+public final class XDataSnapshot<T> {
+
+    private final Object[] mItems;// 快照中的数据项
+    private final long mVersion;// 快照对应的数据源版本号
+    private List<T> mListView;// 只读的列表视图(延迟创建)
+
+    XDataSnapshot(Object[] items, long version) {
+        mItems = items;
+        mVersion = version;
+    }
+
+    /**
+     * @return 返回快照对应的数据源版本号。
+     * 两个快照版本号相同，则内容相同(可用于跳过无变化的刷新)。
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    public int size() {
+        return mItems.length;
+    }
+
+    public boolean isEmpty() {
+        return mItems.length == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) mItems[index];
+    }
+
+    /**
+     * @return 返回快照的只读列表视图(不复制数据)
+     */
+    public List<T> asList() {
+        List<T> listView = mListView;
+        if (listView == null) {
+            listView = new SnapshotList();
+            mListView = listView;
+        }
+        return listView;
+    }
+
+    private class SnapshotList extends AbstractList<T> implements RandomAccess {
+        @Override
+        public T get(int index) {
+            return XDataSnapshot.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return mItems.length;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.xengine.android.data.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 计算两个列表之间变化的工具类(包内使用)。
+ * 1.diff():用Myers差分算法(先去掉相同的前缀和后缀)计算最少的插入/删除，
+ *   id相同但内容不同的数据记为变化；
+ * 2.moves():计算重新排序后最少的移动操作(不在最长递增子序列中的数据才需要移动)。
+ * 编辑距离或移动次数超过上限时放弃计算，由调用者整体刷新。
+ */
+final class XListDiff {
+
+    static final int MAX_EDIT_DISTANCE = 512;// 最大编辑距离(保存的中间状态为O(D^2))
+    static final int MAX_MOVES = 64;// 最大移动次数(每次移动是O(N))
+
+    private XListDiff() {}
+
+    /**
+     * 判断新旧列表中id相同的两个数据内容是否相同。
+     */
+    interface ContentComparator {
+        /**
+         * @param oldPosition 旧列表中的坐标
+         * @param newPosition 新列表中的坐标
+         * @return 内容相同返回true;否则返回false
+         */
+        boolean isSameContent(int oldPosition, int newPosition);
+    }
+
+    /**
+     * 计算从旧列表变为新列表的操作，按顺序写入out。
+     * @param oldIds 旧列表中数据的id
+     * @param newIds 新列表中数据的id
+     * @param comparator 内容比较器
+     * @param out 输出的操作
+     * @return 计算成功返回true;编辑距离超过上限返回false(out中可能有部分操作)
+     */
+    static boolean diff(String[] oldIds, String[] newIds,
+                        ContentComparator comparator, XDataChangeSet.Builder out) {
+        int oldSize = oldIds.length;
+        int newSize = newIds.length;
+        // 相同的前缀
+        int prefix = 0;
+        while (prefix < oldSize && prefix < newSize
+                && oldIds[prefix].equals(newIds[prefix]))
+            prefix++;
+        // 相同的后缀
+        int suffix = 0;
+        while (suffix < oldSize - prefix && suffix < newSize - prefix
+                && oldIds[oldSize - 1 - suffix].equals(newIds[newSize - 1 - suffix]))
+            suffix++;
+
+        int n = oldSize - prefix - suffix;
+        int m = newSize - prefix - suffix;
+        int[] edits = n + m == 0 ? new int[0] : shortestEdit(oldIds, newIds, prefix, n, m);
+        if (edits == null)
+            return false;
+
+        for (int i = 0; i < prefix; i++) {
+            if (!comparator.isSameContent(i, i))
+                out.change(i, 1);
+        }
+        int position = prefix;
+        int x = 0, y = 0;
+        for (int i = 0; i < edits.length; i++) {
+            switch (edits[i]) {
+                case EDIT_KEEP:
+                    if (!comparator.isSameContent(prefix + x, prefix + y))
+                        out.change(position, 1);
+                    position++;
+                    x++;
+                    y++;
+                    break;
+                case EDIT_DELETE:
+                    out.remove(position, 1);
+                    x++;
+                    break;
+                default:
+                    out.insert(position, 1);
+                    position++;
+                    y++;
+                    break;
+            }
+        }
+        for (int i = 0; i < suffix; i++) {
+            if (!comparator.isSameContent(oldSize - suffix + i, newSize - suffix + i))
+                out.change(position + i, 1);
+        }
+        return true;
+    }
+
+    /**
+     * 计算重新排序后的移动操作，按顺序写入out。
+     * @param oldPositions 新顺序中每个数据在旧列表中的坐标(必须是0~N-1的一个排列)
+     * @param out 输出的操作
+     * @return 计算成功返回true;移动次数超过上限返回false
+     */
+    static boolean moves(int[] oldPositions, XDataChangeSet.Builder out) {
+        int size = oldPositions.length;
+        boolean[] stay = longestIncreasing(oldPositions);
+        int moveCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (!stay[i])
+                moveCount++;
+        }
+        if (moveCount == 0)
+            return true;
+        if (moveCount > MAX_MOVES)
+            return false;
+
+        // 模拟移动过程：按新顺序把每个要移动的数据放到它在新顺序中前一个数据的后面
+        int[] current = new int[size];
+        for (int i = 0; i < size; i++)
+            current[i] = i;
+        for (int k = 0; k < size; k++) {
+            if (stay[k])
+                continue;
+            int element = oldPositions[k];
+            int from = indexOf(current, element);
+            System.arraycopy(current, from + 1, current, from, size - from - 1);
+            int to = k == 0 ? 0 : indexOf(current, oldPositions[k - 1]) + 1;
+            System.arraycopy(current, to, current, to + 1, size - to - 1);
+            current[to] = element;
+            out.move(from, to);
+        }
+        return true;
+    }
+
+    private static final int EDIT_KEEP = 0;
+    private static final int EDIT_DELETE = 1;
+    private static final int EDIT_INSERT = 2;
+
+    /**
+     * Myers算法计算最短编辑路径。
+     * @return 返回按顺序排列的编辑操作;超过最大编辑距离返回null
+     */
+    private static int[] shortestEdit(String[] a, String[] b, int offset, int n, int m) {
+        int max = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int[] v = new int[2 * max + 3];
+        int center = max + 1;
+        List<int[]> trace = new ArrayList<int[]>();
+        int found = -1;
+        for (int d = 0; d <= max && found == -1; d++) {
+            // 保存上一步的v[-(d-1)..(d-1)]，用于回溯
+            int[] saved = new int[Math.max(2 * d - 1, 0)];
+            if (d > 0)
+                System.arraycopy(v, center - (d - 1), saved, 0, saved.length);
+            trace.add(saved);
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (d == 0)
+                    x = 0;
+                else if (k == -d || (k != d && v[center + k - 1] < v[center + k + 1]))
+                    x = v[center + k + 1];// 向下:插入
+                else
+                    x = v[center + k - 1] + 1;// 向右:删除
+                int y = x - k;
+                while (x < n && y < m && a[offset + x].equals(b[offset + y])) {
+                    x++;
+                    y++;
+                }
+                v[center + k] = x;
+                if (x >= n && y >= m) {
+                    found = d;
+                    break;
+                }
+            }
+        }
+        if (found == -1)
+            return null;
+
+        // 回溯(从终点倒推到起点)
+        int[] reversed = new int[(n + m + found) / 2];// keep数 + 编辑数
+        int length = 0;
+        int x = n, y = m;
+        for (int d = found; d > 0; d--) {
+            int[] saved = trace.get(d);
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && saved[k - 1 + d - 1] < saved[k + 1 + d - 1]))
+                prevK = k + 1;
+            else
+                prevK = k - 1;
+            int prevX = saved[prevK + d - 1];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                reversed[length++] = EDIT_KEEP;
+                x--;
+                y--;
+            }
+            reversed[length++] = x == prevX ? EDIT_INSERT : EDIT_DELETE;
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            reversed[length++] = EDIT_KEEP;
+            x--;
+            y--;
+        }
+        int[] edits = new int[length];
+        for (int i = 0; i < length; i++)
+            edits[i] = reversed[length - 1 - i];
+        return edits;
+    }
+
+    /**
+     * 求最长递增子序列(patience sorting，O(N*logN))。
+     * @return 返回每个坐标是否在最长递增子序列中
+     */
+    private static boolean[] longestIncreasing(int[] values) {
+        int size = values.length;
+        int[] tails = new int[size];// tails[i]:长度为i+1的递增子序列的最小结尾(存坐标)
+        int[] prev = new int[size];// 子序列中的前一个坐标
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            int low = 0, high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < values[i])
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            prev[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length)
+                length++;
+        }
+        boolean[] result = new boolean[size];
+        for (int i = length > 0 ? tails[length - 1] : -1; i != -1; i = prev[i])
+            result[i] = true;
+        return result;
+    }
+
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value)
+                return i;
+        }
+        return -1;
+    }
+}
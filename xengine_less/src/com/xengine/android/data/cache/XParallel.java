@@ -0,0 +1,313 @@
+package com.xengine.android.data.cache;
+
+import android.os.Handler;
+import android.os.Looper;
+import com.xengine.android.toolkit.filter.XBulkFilter;
+import com.xengine.android.toolkit.filter.XFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 数据源的并行排序和过滤(包内使用)。
+ * 数据量不小于阈值时，把数组分成与CPU核数相同的段，在线程池中分别排序/过滤，
+ * 排序后再两两归并(每轮的归并也是并行的)；数据量小于阈值时在当前线程顺序执行。
+ * 排序是稳定的(与Collections.sort()结果一致)。
+ * 计算过程中定期检查是否被取消，被取消时抛出CancellationException。
+ * TIP 过滤器和排序器会在多个线程中同时调用，必须是线程安全的(无状态的)
+ */
+final class XParallel {
+
+    public static final int DEFAULT_THRESHOLD = 50000;// 默认的并行阈值
+
+    private static final int CHECK_INTERVAL = 4096;// 每比较/过滤这么多次检查一次是否被取消
+
+    private static ExecutorService sPool;// 并行计算的线程池(线程数为CPU核数)
+    private static ExecutorService sCoordinator;// 发起异步请求的线程(单线程)
+    private static Executor sMainDispatcher;// 在主线程发布结果
+
+    private XParallel() {}
+
+    /**
+     * 可取消的请求。发起新请求时，之前的请求自动被取消。
+     */
+    static final class Request {
+        private final AtomicInteger mCurrent;
+        private final int mGeneration;
+
+        private Request(AtomicInteger current, int generation) {
+            mCurrent = current;
+            mGeneration = generation;
+        }
+
+        /**
+         * 发起一个新请求(同时取消之前由同一计数器发起的请求)。
+         * @param current 请求计数器
+         */
+        static Request next(AtomicInteger current) {
+            return new Request(current, current.incrementAndGet());
+        }
+
+        boolean isCancelled() {
+            return mCurrent.get() != mGeneration;
+        }
+
+        void throwIfCancelled() {
+            if (isCancelled())
+                throw new CancellationException();
+        }
+    }
+
+    private static synchronized ExecutorService getPool() {
+        if (sPool == null)
+            sPool = Executors.newFixedThreadPool(getParallelism(), new NamedThreadFactory("XParallel"));
+        return sPool;
+    }
+
+    static synchronized Executor getCoordinator() {
+        if (sCoordinator == null)
+            sCoordinator = Executors.newSingleThreadExecutor(new NamedThreadFactory("XParallelRequest"));
+        return sCoordinator;
+    }
+
+    static synchronized Executor getMainDispatcher() {
+        if (sMainDispatcher == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            sMainDispatcher = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return sMainDispatcher;
+    }
+
+    static int getParallelism() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 稳定排序。
+     * @param items 要排序的数组(原地排序)
+     * @param comparator 排序器
+     * @param threshold 并行阈值
+     * @param request 所属的请求，可为null
+     * @throws CancellationException 请求被取消
+     */
+    @SuppressWarnings("unchecked")
+    static <T> void sort(Object[] items, final Comparator<? super T> comparator,
+                         int threshold, final Request request) {
+        int chunks = getChunkCount(items.length, threshold);
+        if (chunks == 1) {
+            Arrays.sort((T[]) items, new CancellableComparator<T>(comparator, request));
+            return;
+        }
+
+        // 1.分段排序
+        final T[] array = (T[]) items;
+        final int[] bounds = getBounds(items.length, chunks);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            final int from = bounds[i], to = bounds[i + 1];
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    Arrays.sort(array, from, to, new CancellableComparator<T>(comparator, request));
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+
+        // 2.两两归并，直到只剩一段
+        Object[] src = items;
+        Object[] dest = new Object[items.length];
+        int[] runs = bounds;
+        while (runs.length > 2) {
+            final Object[] from = src, to = dest;
+            final int[] current = runs;
+            int runCount = current.length - 1;
+            int[] next = new int[(runCount + 1) / 2 + 1];
+            tasks.clear();
+            for (int i = 0; i < runCount; i += 2) {
+                final int low = current[i];
+                final int mid = current[Math.min(i + 1, runCount)];
+                final int high = current[Math.min(i + 2, runCount)];
+                next[i / 2] = low;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        merge((T[]) from, (T[]) to, low, mid, high, comparator, request);
+                        return null;
+                    }
+                });
+            }
+            next[next.length - 1] = items.length;
+            invokeAll(tasks);
+            runs = next;
+            src = to;
+            dest = from;
+        }
+        if (src != items)
+            System.arraycopy(src, 0, items, 0, items.length);
+    }
+
+    /**
+     * 过滤。
+     * @param items 要过滤的数据
+     * @param filter 过滤器，为null表示全部通过
+     * @param out 输出，out[i]为items.get(i)的过滤结果(不通过为null)
+     * @param threshold 并行阈值
+     * @param request 所属的请求，可为null
+     * @throws CancellationException 请求被取消
+     */
+    static <T> void filter(final List<T> items, final XFilter<T> filter, final Object[] out,
+                           int threshold, final Request request) {
+        int chunks = getChunkCount(items.size(), threshold);
+        if (chunks == 1) {
+            filterRange(items, filter, out, 0, items.size(), request);
+            return;
+        }
+        int[] bounds = getBounds(items.size(), chunks);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            final int from = bounds[i], to = bounds[i + 1];
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    filterRange(items, filter, out, from, to, request);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    private static <T> void filterRange(List<T> items, XFilter<T> filter, Object[] out,
+                                        int from, int to, Request request) {
+        if (filter instanceof XBulkFilter) {
+            List<T> range = items.subList(from, to);
+            BitSet passed = new BitSet(to - from);
+            ((XBulkFilter<T>) filter).doFilter(range, passed);
+            for (int i = from; i < to; i++)
+                out[i] = passed.get(i - from) ? items.get(i) : null;
+            if (request != null)
+                request.throwIfCancelled();
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            T item = items.get(i);
+            out[i] = filter == null ? item : filter.doFilter(item);
+            if (request != null && (i - from) % CHECK_INTERVAL == 0)
+                request.throwIfCancelled();
+        }
+    }
+
+    /**
+     * 归并src中相邻的两段有序区间[low, mid)和[mid, high)到dest(相等时取前一段，保证稳定)。
+     */
+    private static <T> void merge(T[] src, T[] dest, int low, int mid, int high,
+                                  Comparator<? super T> comparator, Request request) {
+        int p = low, q = mid;
+        for (int i = low; i < high; i++) {
+            if (q >= high || (p < mid && comparator.compare(src[p], src[q]) <= 0))
+                dest[i] = src[p++];
+            else
+                dest[i] = src[q++];
+            if (request != null && (i - low) % CHECK_INTERVAL == 0)
+                request.throwIfCancelled();
+        }
+    }
+
+    private static int getChunkCount(int size, int threshold) {
+        if (size < Math.max(2, threshold))
+            return 1;
+        return Math.max(1, Math.min(getParallelism(), size / 2));
+    }
+
+    private static int[] getBounds(int size, int chunks) {
+        int[] bounds = new int[chunks + 1];
+        for (int i = 0; i <= chunks; i++)
+            bounds[i] = (int) ((long) size * i / chunks);
+        return bounds;
+    }
+
+    /**
+     * 并行执行所有任务，等待全部结束。
+     * @throws CancellationException 任务被取消或当前线程被中断
+     */
+    private static void invokeAll(List<Callable<Void>> tasks) {
+        List<Future<Void>> futures;
+        try {
+            futures = getPool().invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * 定期检查请求是否被取消的排序器
+     */
+    private static final class CancellableComparator<T> implements Comparator<T> {
+        private final Comparator<? super T> mComparator;
+        private final Request mRequest;
+        private int mCount;
+
+        CancellableComparator(Comparator<? super T> comparator, Request request) {
+            mComparator = comparator;
+            mRequest = request;
+        }
+
+        @Override
+        public int compare(T a, T b) {
+            if (mRequest != null && ++mCount % CHECK_INTERVAL == 0)
+                mRequest.throwIfCancelled();
+            return mComparator.compare(a, b);
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, mName + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
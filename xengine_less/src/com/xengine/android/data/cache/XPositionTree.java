@@ -0,0 +1,145 @@
+package com.xengine.android.data.cache;
+
+import java.util.Arrays;
+
+/**
+ * 列表元素的稳定编号(包内使用)。
+ * 每个元素加入列表时分配一个只增不减的槽号，索引中记录槽号而不是坐标：
+ * 删除元素只把它的槽标记为空(树状数组，O(log S))，其他元素的槽号不变，索引也不用修改。
+ * 槽号和坐标的换算：坐标 = 槽号之前的非空槽数;没有空槽时槽号就是坐标(O(1))。
+ * 空槽太多时(isSparse())由使用者用reset()重新编号。
+ * 非线程安全。
+ */
+final class XPositionTree {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] mTree;// 树状数组(下标从1开始)，记录非空槽的个数
+    private boolean[] mLive;// 每个槽是否非空
+    private int mSlotCount;// 已分配的槽数
+    private int mLiveCount;// 非空槽数(即列表长度)
+
+    XPositionTree() {
+        mTree = new int[MIN_CAPACITY + 1];
+        mLive = new boolean[MIN_CAPACITY];
+        mSlotCount = 0;
+        mLiveCount = 0;
+    }
+
+    /**
+     * 重新编号：坐标0到count-1的元素依次使用槽号0到count-1。
+     */
+    void reset(int count) {
+        if (mLive.length < count) {
+            int capacity = Math.max(MIN_CAPACITY, count + (count >> 1));
+            mTree = new int[capacity + 1];
+            mLive = new boolean[capacity];
+        }
+        Arrays.fill(mLive, 0, mLive.length, false);
+        Arrays.fill(mLive, 0, count, true);
+        mSlotCount = count;
+        mLiveCount = count;
+        build();
+    }
+
+    /**
+     * 在列表末尾加入一个元素。
+     * @return 返回分配给它的槽号
+     */
+    int append() {
+        if (mSlotCount == mLive.length) {
+            mLive = Arrays.copyOf(mLive, mLive.length * 2);
+            mTree = new int[mLive.length + 1];
+            build();
+        }
+        int slot = mSlotCount++;
+        mLive[slot] = true;
+        mLiveCount++;
+        // 新节点覆盖(i - lowbit(i), i]，其中只有它自己是新的，其余的和由前缀和相减得到
+        int i = slot + 1;
+        mTree[i] = 1 + prefix(i - 1) - prefix(i - (i & -i));
+        return slot;
+    }
+
+    /**
+     * 删除某个槽的元素(槽号不再使用)。
+     */
+    void remove(int slot) {
+        if (!mLive[slot])
+            return;
+        mLive[slot] = false;
+        mLiveCount--;
+        for (int i = slot + 1; i <= mSlotCount; i += i & -i)
+            mTree[i]--;
+    }
+
+    boolean isLive(int slot) {
+        return slot >= 0 && slot < mSlotCount && mLive[slot];
+    }
+
+    /**
+     * @return 返回槽中元素在列表中的坐标
+     */
+    int position(int slot) {
+        if (mLiveCount == mSlotCount)
+            return slot;
+        return prefix(slot);
+    }
+
+    /**
+     * @return 返回列表中某个坐标的元素所在的槽号
+     */
+    int slotAt(int position) {
+        if (mLiveCount == mSlotCount)
+            return position;
+        // 在树状数组上二分，找到前缀和恰好为position+1的槽
+        int i = 0;
+        int remaining = position + 1;
+        for (int step = Integer.highestOneBit(mSlotCount); step > 0; step >>= 1) {
+            int next = i + step;
+            if (next <= mSlotCount && mTree[next] < remaining) {
+                i = next;
+                remaining -= mTree[next];
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return 返回非空槽数(即列表长度)
+     */
+    int size() {
+        return mLiveCount;
+    }
+
+    /**
+     * @return 空槽比非空槽还多时返回true，此时应重新编号
+     */
+    boolean isSparse() {
+        int holes = mSlotCount - mLiveCount;
+        return holes > MIN_CAPACITY && holes > mLiveCount;
+    }
+
+    /**
+     * 返回槽号小于slot的非空槽数。
+     */
+    private int prefix(int slot) {
+        int sum = 0;
+        for (int i = slot; i > 0; i -= i & -i)
+            sum += mTree[i];
+        return sum;
+    }
+
+    /**
+     * 按mLive用O(S)重建树状数组。
+     */
+    private void build() {
+        Arrays.fill(mTree, 0);
+        for (int i = 1; i <= mSlotCount; i++) {
+            mTree[i] += mLive[i - 1] ? 1 : 0;
+            int parent = i + (i & -i);
+            if (parent <= mSlotCount)
+                mTree[parent] += mTree[i];
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.xengine.android.data.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 键到元素槽号(见XPositionTree)的索引(包内使用)。
+ * 每个键记录槽号最小(即列表中最靠前)的元素；同一个键有多个元素时，
+ * 另外按槽号顺序记录它的所有槽号，删除最靠前的元素后直接得到下一个，不需要重建索引。
+ * 非线程安全。
+ */
+final class XSlotIndex {
+
+    private final HashMap<String, Integer> mFirst;// 键 -> 最小的槽号
+    private final HashMap<String, ArrayList<Integer>> mDuplicates;// 有多个元素的键 -> 所有槽号(有序)
+
+    XSlotIndex() {
+        mFirst = new HashMap<String, Integer>();
+        mDuplicates = new HashMap<String, ArrayList<Integer>>();
+    }
+
+    void clear() {
+        mFirst.clear();
+        mDuplicates.clear();
+    }
+
+    /**
+     * 记录某个槽的元素。按槽号递增的顺序加入时为O(1)。
+     */
+    void add(String key, int slot) {
+        Integer first = mFirst.get(key);
+        if (first == null) {
+            mFirst.put(key, slot);
+            return;
+        }
+        ArrayList<Integer> slots = mDuplicates.get(key);
+        if (slots == null) {
+            slots = new ArrayList<Integer>(2);
+            slots.add(first);
+            mDuplicates.put(key, slots);
+        }
+        int i = Collections.binarySearch(slots, slot);
+        if (i >= 0)
+            return;
+        slots.add(-i - 1, slot);
+        mFirst.put(key, slots.get(0));
+    }
+
+    /**
+     * 去掉某个槽的元素。
+     */
+    void remove(String key, int slot) {
+        ArrayList<Integer> slots = mDuplicates.get(key);
+        if (slots == null) {
+            Integer first = mFirst.get(key);
+            if (first != null && first == slot)
+                mFirst.remove(key);
+            return;
+        }
+        int i = Collections.binarySearch(slots, slot);
+        if (i < 0)
+            return;
+        slots.remove(i);
+        mFirst.put(key, slots.get(0));
+        if (slots.size() == 1)
+            mDuplicates.remove(key);
+    }
+
+    /**
+     * @return 返回键对应的最小槽号;没有则返回-1
+     */
+    int first(String key) {
+        Integer first = mFirst.get(key);
+        return first == null ? -1 : first;
+    }
+
+    /**
+     * @return 返回键对应的所有槽号(有序，不可修改)
+     */
+    List<Integer> slots(String key) {
+        ArrayList<Integer> slots = mDuplicates.get(key);
+        if (slots != null)
+            return Collections.unmodifiableList(slots);
+        Integer first = mFirst.get(key);
+        return first == null ? Collections.<Integer>emptyList() : Collections.singletonList(first);
+    }
+}
@@ -0,0 +1,47 @@
+package com.xengine.android.data.cache;
+
+import java.util.List;
+
+/**
+ * 管理数据源的版本号和快照(包内使用)。
+ * markModified()和publish()需要在数据源的锁内调用，
+ * getVersion()和peek()可以在任意线程无锁调用。
+ */
+final class XSnapshotPublisher<T> {
+
+    private volatile long mVersion;// 当前版本号
+    private volatile XDataSnapshot<T> mSnapshot;// 当前版本的快照(数据变化后为null)
+
+    /**
+     * 数据发生变化，版本号递增，丢弃旧快照。
+     */
+    void markModified() {
+        mVersion++;
+        mSnapshot = null;
+    }
+
+    long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return 返回当前版本已发布的快照;没有则返回null
+     */
+    XDataSnapshot<T> peek() {
+        return mSnapshot;
+    }
+
+    /**
+     * 如果当前版本还没有快照，则复制数据发布一个新快照。
+     * @param items 数据源的当前数据
+     * @return 返回当前版本的快照
+     */
+    XDataSnapshot<T> publish(List<T> items) {
+        XDataSnapshot<T> snapshot = mSnapshot;
+        if (snapshot == null) {
+            snapshot = new XDataSnapshot<T>(items.toArray(), mVersion);
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+}
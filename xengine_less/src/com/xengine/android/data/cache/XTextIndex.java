@@ -0,0 +1,492 @@
+package com.xengine.android.data.cache;
+
+import com.xengine.android.toolkit.filter.XFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * 数据的全文检索倒排索引(内存中)。
+ * 对每个数据声明的文本字段分词，记录每个词出现在哪些数据中：
+ * 1.字母和数字按连续的一段作为一个词(转为小写);
+ * 2.中日韩等文字每个字、以及每相邻两个字作为一个词(单字和二元分词)。
+ * 查询时对查询串同样分词，每个词按前缀匹配索引中的词，所有词都匹配的数据才算命中(AND)。
+ * 命中的数据按相关度排序：词越少见(出现在越少的数据中)、出现次数越多，得分越高;
+ * 完全匹配的词比前缀匹配的得分高。
+ * 查询时先处理命中记录最少的词得到候选集，之后的词只在候选集上求交(候选集很小时二分查找倒排表)，
+ * 候选集为空时立即结束，所以耗时取决于命中的记录数，而不是索引的数据总量。
+ * 修改和删除数据时旧记录只标记为失效，失效记录多于有效记录时整体压缩。
+ * TIP 与String.contains()不同，字母和数字只按词的前缀匹配(如"ell"不能匹配"hello")
+ */
+public class XTextIndex<T> {
+
+    private static final int MIN_COMPACT_SIZE = 1024;// 失效记录少于这个数时不压缩
+    private static final float PREFIX_WEIGHT = 0.5f;// 前缀匹配的得分比例
+
+    /**
+     * 声明数据中需要索引的文本字段
+     */
+    public interface TextFields<T> {
+        /**
+         * @return 返回数据的所有文本字段(可包含null)
+         */
+        String[] getTexts(T item);
+    }
+
+    private final TextFields<T> mFields;// 文本字段
+    private final TreeMap<String, Posting> mTerms;// 词 -> 出现该词的记录
+    private final HashMap<String, Integer> mDocOfId;// 数据id -> 当前有效的记录号
+    private String[] mDocIds;// 记录号 -> 数据id(失效的记录为null)
+    private String[][] mDocTerms;// 记录号 -> 该记录包含的词(用于压缩)
+    private int[][] mDocTermCounts;// 记录号 -> 每个词出现的次数
+    private int mDocCount;// 已分配的记录数(包括失效的)
+    private int mDeadCount;// 失效的记录数
+
+    public XTextIndex(TextFields<T> fields) {
+        mFields = fields;
+        mTerms = new TreeMap<String, Posting>();
+        mDocOfId = new HashMap<String, Integer>();
+        mDocIds = new String[16];
+        mDocTerms = new String[16][];
+        mDocTermCounts = new int[16][];
+        mDocCount = 0;
+        mDeadCount = 0;
+    }
+
+    /**
+     * 索引数据。id已经存在时替换旧的记录。
+     * @param id 数据的id
+     * @param item 数据
+     */
+    public synchronized void put(String id, T item) {
+        removeDoc(id);
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        String[] texts = mFields.getTexts(item);
+        if (texts != null) {
+            for (String text : texts) {
+                for (String token : tokenize(text)) {
+                    Integer count = counts.get(token);
+                    counts.put(token, count == null ? 1 : count + 1);
+                }
+            }
+        }
+        addDoc(id, counts);
+    }
+
+    /**
+     * 删除数据的索引。
+     * @param id 数据的id
+     */
+    public synchronized void remove(String id) {
+        removeDoc(id);
+        compactIfNeeded();
+    }
+
+    public synchronized void clear() {
+        mTerms.clear();
+        mDocOfId.clear();
+        mDocIds = new String[16];
+        mDocTerms = new String[16][];
+        mDocTermCounts = new int[16][];
+        mDocCount = 0;
+        mDeadCount = 0;
+    }
+
+    /**
+     * @return 返回索引的数据条数
+     */
+    public synchronized int size() {
+        return mDocOfId.size();
+    }
+
+    /**
+     * 查询。
+     * @param query 查询串
+     * @return 返回命中的数据id，按相关度从高到低排列(相同时先索引的在前);查询串为空时返回空列表
+     */
+    public synchronized List<String> search(String query) {
+        List<String> tokens = getQueryTokens(query);
+        if (tokens.isEmpty() || mDocOfId.isEmpty())
+            return new ArrayList<String>();
+
+        // 每个词前缀匹配到的倒排表，按记录总数从少到多处理
+        int live = mDocOfId.size();
+        Match[] matches = new Match[tokens.size()];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = match(tokens.get(i), live);
+            if (matches[i].total == 0)
+                return new ArrayList<String>();
+        }
+        Arrays.sort(matches);
+
+        // 候选记录(记录号递增)及其得分
+        long[] packed = collect(matches[0]);
+        int[] docs = new int[packed.length];
+        float[] scores = new float[packed.length];
+        int size = mergeByDoc(packed, docs, scores);
+        for (int i = 1; i < matches.length && size > 0; i++) {
+            Match match = matches[i];
+            if ((long) size * match.postings.length * 8 < match.total)
+                size = probe(match, docs, scores, size);
+            else
+                size = intersect(collect(match), docs, scores, size);
+        }
+
+        // 按得分从高到低排序(相同时记录号小的在前)。得分都是正数，浮点数的位表示与大小顺序一致
+        long[] ranked = new long[size];
+        for (int i = 0; i < size; i++)
+            ranked[i] = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(scores[i])) << 32) | docs[i];
+        Arrays.sort(ranked);
+        List<String> result = new ArrayList<String>(size);
+        for (long entry : ranked)
+            result.add(mDocIds[(int) entry]);
+        return result;
+    }
+
+    /**
+     * 判断单个数据是否匹配查询(不使用索引，直接对数据分词)。
+     */
+    public boolean matches(T item, String query) {
+        List<String> tokens = getQueryTokens(query);
+        if (tokens.isEmpty())
+            return true;
+        HashSet<String> itemTokens = new HashSet<String>();
+        String[] texts = mFields.getTexts(item);
+        if (texts != null) {
+            for (String text : texts)
+                itemTokens.addAll(tokenize(text));
+        }
+        for (String token : tokens) {
+            boolean found = false;
+            for (String itemToken : itemTokens) {
+                if (itemToken.startsWith(token)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 返回与查询等价的过滤器(逐个数据判断，用于新增的数据)。
+     */
+    public XFilter<T> newFilter(final String query) {
+        return new XFilter<T>() {
+            @Override
+            public T doFilter(T source) {
+                return matches(source, query) ? source : null;
+            }
+
+            @Override
+            public List<T> doFilter(List<T> source) {
+                List<T> result = new ArrayList<T>();
+                for (T item : source) {
+                    if (matches(item, query))
+                        result.add(item);
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * 找出前缀匹配查询词的所有倒排表，并计算每个倒排表的权重。
+     */
+    private Match match(String token, int live) {
+        SortedMap<String, Posting> matched = mTerms.subMap(token, token + Character.MAX_VALUE);
+        Posting[] postings = new Posting[matched.size()];
+        float[] weights = new float[postings.length];
+        int total = 0;
+        int i = 0;
+        for (Map.Entry<String, Posting> entry : matched.entrySet()) {
+            Posting posting = entry.getValue();
+            float weight = (float) Math.log(1.0 + (double) live / Math.max(1, posting.size));
+            if (!entry.getKey().equals(token))
+                weight *= PREFIX_WEIGHT;
+            postings[i] = posting;
+            weights[i] = weight;
+            total += posting.size;
+            i++;
+        }
+        return new Match(postings, weights, total);
+    }
+
+    /**
+     * 取出匹配的所有有效记录，按记录号排序。
+     * @return 每项高32位为记录号，低32位为该记录在一个倒排表中的得分(浮点数的位表示)
+     */
+    private long[] collect(Match match) {
+        long[] packed = new long[match.total];
+        int length = 0;
+        for (int i = 0; i < match.postings.length; i++) {
+            Posting posting = match.postings[i];
+            for (int j = 0; j < posting.size; j++) {
+                int doc = posting.docs[j];
+                if (mDocIds[doc] == null)
+                    continue;// 失效的记录
+                float score = match.weights[i] * posting.counts[j];
+                packed[length++] = ((long) doc << 32) | (Float.floatToIntBits(score) & 0xffffffffL);
+            }
+        }
+        if (length < packed.length) {
+            long[] trimmed = new long[length];
+            System.arraycopy(packed, 0, trimmed, 0, length);
+            packed = trimmed;
+        }
+        if (match.postings.length > 1)
+            Arrays.sort(packed);// 只有一个倒排表时本来就是按记录号递增的
+        return packed;
+    }
+
+    /**
+     * 合并collect()结果中相同记录的得分。
+     * @return 返回合并后的记录数
+     */
+    private static int mergeByDoc(long[] packed, int[] docs, float[] scores) {
+        int size = 0;
+        for (long entry : packed) {
+            int doc = (int) (entry >>> 32);
+            float score = Float.intBitsToFloat((int) entry);
+            if (size > 0 && docs[size - 1] == doc) {
+                scores[size - 1] += score;
+            } else {
+                docs[size] = doc;
+                scores[size] = score;
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 候选记录与collect()的结果求交，并累加得分(原地修改)。
+     * @return 返回剩下的候选记录数
+     */
+    private static int intersect(long[] packed, int[] docs, float[] scores, int size) {
+        int result = 0;
+        int p = 0;
+        for (int i = 0; i < size; i++) {
+            int doc = docs[i];
+            while (p < packed.length && (int) (packed[p] >>> 32) < doc)
+                p++;
+            float score = 0;
+            boolean found = false;
+            while (p < packed.length && (int) (packed[p] >>> 32) == doc) {
+                score += Float.intBitsToFloat((int) packed[p]);
+                found = true;
+                p++;
+            }
+            if (found) {
+                docs[result] = doc;
+                scores[result] = scores[i] + score;
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 候选记录很少时，逐个在倒排表中二分查找，并累加得分(原地修改)。
+     * @return 返回剩下的候选记录数
+     */
+    private static int probe(Match match, int[] docs, float[] scores, int size) {
+        int result = 0;
+        for (int i = 0; i < size; i++) {
+            int doc = docs[i];
+            float score = 0;
+            boolean found = false;
+            for (int j = 0; j < match.postings.length; j++) {
+                Posting posting = match.postings[j];
+                int index = Arrays.binarySearch(posting.docs, 0, posting.size, doc);
+                if (index >= 0) {
+                    score += match.weights[j] * posting.counts[index];
+                    found = true;
+                }
+            }
+            if (found) {
+                docs[result] = doc;
+                scores[result] = scores[i] + score;
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 查询串分词，去掉重复的词和是其他词前缀的词(不影响命中结果)。
+     */
+    private static List<String> getQueryTokens(String query) {
+        List<String> tokens = tokenize(query);
+        List<String> result = new ArrayList<String>(tokens.size());
+        for (String token : tokens) {
+            boolean redundant = false;
+            for (String other : tokens) {
+                if (other.length() > token.length() && other.startsWith(token)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant && !result.contains(token))
+                result.add(token);
+        }
+        return result;
+    }
+
+    /**
+     * 分词：字母和数字的连续一段为一个词;表意文字输出单字和相邻两字。
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<String>();
+        if (text == null)
+            return tokens;
+        String lower = text.toLowerCase(Locale.US);
+        int length = lower.length();
+        int start = -1;// 当前字母数字段的起点
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? lower.charAt(i) : ' ';
+            boolean ideographic = isIdeographic(c);
+            if (!ideographic && Character.isLetterOrDigit(c)) {
+                if (start < 0)
+                    start = i;
+                continue;
+            }
+            if (start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+            if (ideographic) {
+                tokens.add(String.valueOf(c));
+                if (i + 1 < length && isIdeographic(lower.charAt(i + 1)))
+                    tokens.add(lower.substring(i, i + 2));
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isIdeographic(char c) {
+        return c >= '⺀' && c <= '鿿' || c >= '가' && c <= '힯'
+                || c >= '豈' && c <= '﫿';
+    }
+
+    private void addDoc(String id, HashMap<String, Integer> counts) {
+        if (mDocCount == mDocIds.length) {
+            int capacity = mDocCount * 2;
+            mDocIds = copyOf(mDocIds, capacity);
+            String[][] terms = new String[capacity][];
+            System.arraycopy(mDocTerms, 0, terms, 0, mDocCount);
+            mDocTerms = terms;
+            int[][] termCounts = new int[capacity][];
+            System.arraycopy(mDocTermCounts, 0, termCounts, 0, mDocCount);
+            mDocTermCounts = termCounts;
+        }
+        int doc = mDocCount++;
+        String[] terms = new String[counts.size()];
+        int[] termCounts = new int[counts.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Posting posting = mTerms.get(entry.getKey());
+            if (posting == null) {
+                posting = new Posting();
+                mTerms.put(entry.getKey(), posting);
+            }
+            posting.add(doc, entry.getValue());
+            terms[i] = entry.getKey();
+            termCounts[i] = entry.getValue();
+            i++;
+        }
+        mDocIds[doc] = id;
+        mDocTerms[doc] = terms;
+        mDocTermCounts[doc] = termCounts;
+        mDocOfId.put(id, doc);
+    }
+
+    private void removeDoc(String id) {
+        Integer doc = mDocOfId.remove(id);
+        if (doc == null)
+            return;
+        mDocIds[doc] = null;
+        mDocTerms[doc] = null;
+        mDocTermCounts[doc] = null;
+        mDeadCount++;
+    }
+
+    /**
+     * 失效记录多于有效记录时，按有效记录重建倒排表。
+     */
+    private void compactIfNeeded() {
+        if (mDeadCount < MIN_COMPACT_SIZE || mDeadCount <= mDocOfId.size())
+            return;
+        String[] ids = mDocIds;
+        String[][] docTerms = mDocTerms;
+        int[][] docTermCounts = mDocTermCounts;
+        int count = mDocCount;
+        clear();
+        for (int doc = 0; doc < count; doc++) {
+            if (ids[doc] == null)
+                continue;
+            HashMap<String, Integer> counts = new HashMap<String, Integer>();
+            for (int i = 0; i < docTerms[doc].length; i++)
+                counts.put(docTerms[doc][i], docTermCounts[doc][i]);
+            addDoc(ids[doc], counts);
+        }
+    }
+
+    private static String[] copyOf(String[] array, int length) {
+        String[] result = new String[length];
+        System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+        return result;
+    }
+
+    /**
+     * 一个查询词前缀匹配到的所有倒排表
+     */
+    private static final class Match implements Comparable<Match> {
+        final Posting[] postings;
+        final float[] weights;// 每个倒排表的权重
+        final int total;// 记录总数(包括失效的)
+
+        Match(Posting[] postings, float[] weights, int total) {
+            this.postings = postings;
+            this.weights = weights;
+            this.total = total;
+        }
+
+        @Override
+        public int compareTo(Match another) {
+            return total < another.total ? -1 : (total == another.total ? 0 : 1);
+        }
+    }
+
+    /**
+     * 一个词的倒排记录(记录号递增排列)
+     */
+    private static final class Posting {
+        int[] docs = new int[4];
+        int[] counts = new int[4];
+        int size;
+
+        void add(int doc, int count) {
+            if (size == docs.length) {
+                int[] newDocs = new int[size * 2];
+                int[] newCounts = new int[size * 2];
+                System.arraycopy(docs, 0, newDocs, 0, size);
+                System.arraycopy(counts, 0, newCounts, 0, size);
+                docs = newDocs;
+                counts = newCounts;
+            }
+            docs[size] = doc;
+            counts[size] = count;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.xengine.android.data.cache;
+
+import java.util.List;
+
+/**
+ * 记录变更日志、支持增量同步的数据源。
+ * 本地的每次添加/替换/删除/清空都分配一个递增的序号，并持久化到数据库，
+ * 与服务器同步时只需要交换上次同步之后的变化(与变化数成正比，而不是与数据总量成正比)：
+ * 1.上传：getChangesSince(上次上传的序号)，上传成功后记下getLastSeq();
+ * 2.下载：applyRemoteChanges(服务器的变化)，重复应用同一批变化没有副作用。
+ * @see com.xengine.android.data.cache.XDataChange
+ */
+public interface XWithChangeLog<T> {
+
+    /**
+     * @return 返回本地最后一次变化的序号;没有变化返回0
+     */
+    long getLastSeq();
+
+    /**
+     * 返回序号大于seq的所有本地变化(按序号排列，同一个id只有最后一次变化)。
+     * @param seq 上次同步到的序号，0表示全部
+     */
+    List<XDataChange<T>> getChangesSince(long seq);
+
+    /**
+     * 应用服务器的变化(不会再记录到本地的变更日志中)。
+     * 序号不大于getRemoteSeq()的变化已经应用过，会被跳过，所以可以安全地重试。
+     * @param changes 按序号排列的变化
+     * @return 返回实际应用的变化数
+     */
+    int applyRemoteChanges(List<XDataChange<T>> changes);
+
+    /**
+     * @return 返回已应用的服务器变化的最大序号;没有应用过返回0
+     */
+    long getRemoteSeq();
+}
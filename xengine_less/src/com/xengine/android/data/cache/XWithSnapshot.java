@@ -0,0 +1,24 @@
+package com.xengine.android.data.cache;
+
+/**
+ * 支持只读快照的数据源。
+ * 写操作只标记数据源的版本变化，写之后第一次获取快照时复制一次数据(O(N))，
+ * 之后在数据再次变化前，获取快照和读取快照都不需要加锁。
+ * @see com.xengine.android.data.cache.XDataSnapshot
+ */
+public interface XWithSnapshot<T> {
+
+    /**
+     * 获取数据源当前的只读快照。
+     * 适合UI线程在一次刷新里多次读取size()和get()的场景，读到的数据总是一致的。
+     * @return 返回当前版本的快照，数据没有变化时返回的是同一个快照对象
+     */
+    XDataSnapshot<T> getSnapshot();
+
+    /**
+     * 数据源的版本号，每次数据变化都会递增。
+     * 与之前记录的版本号相同，则说明数据没有变化，可以跳过刷新。
+     * @return 返回当前版本号
+     */
+    long getVersion();
+}
@@ -0,0 +1,30 @@
+package com.xengine.android.data.cache;
+
+/**
+ * 可以把数据换出到数据库、释放内存的数据源。
+ * 被换出后数据源为空，调用XWithDatabase.loadFromDatabase()重新加载。
+ * 数据仓库(DefaultDataRepo)在内存不足时会换出最久没用的数据源，
+ * 下一次getSource()时再自动加载。
+ * 换出可能发生在任何线程，而且不通知监听者，
+ * 所以注册了数据变化监听器(如绑定了Adapter)的数据源不会被换出，注销后才可以。
+ * TIP 被换出后不要再通过之前持有的引用修改数据源，应重新从数据仓库获取
+ * @see com.xengine.android.data.cache.DefaultDataRepo
+ */
+public interface XWithSpill {
+
+    /**
+     * 估算数据源当前占用的内存(字节)。
+     */
+    long getMemorySize();
+
+    /**
+     * 把所有数据写入数据库，然后从内存中释放。
+     * @return 成功返回true;有数据变化监听器或写入失败返回false(数据仍在内存中)
+     */
+    boolean spill();
+
+    /**
+     * @return 已被换出且还没重新加载返回true;否则返回false
+     */
+    boolean isSpilled();
+}
@@ -0,0 +1,324 @@
+package com.xengine.android.data.cache;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.xengine.android.data.db.XBatchWriter;
+import com.xengine.android.data.db.XDBTable;
+import com.xengine.android.data.db.XSQLiteHelper;
+import com.xengine.android.utils.XLog;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据源的延迟写入(write-behind)持久化(包内使用)。
+ * 记录数据源中被添加/替换/删除的数据(按键合并，同一键只保留最后一次变化)，
+ * 键由一个或多个字段组成(如按用户名分类的数据源为(用户名, id))，
+ * 第一次变化后延迟一段时间，在后台写线程中用一个事务批量写入数据库；
+ * 写入使用XBatchWriter的预编译语句，每行只绑定参数。
+ * 一个批次是原子的：任何一行写入失败(包括违反约束)都会回滚整个事务，
+ * 没被新变化覆盖的记录放回去，下一次写入的延迟按连续失败次数加倍(最多MAX_RETRY_DELAY)，成功后恢复。
+ * TIP 违反约束的数据重试也不会成功，会一直留在待写入的记录中(不会丢失)，直到数据被修正或删除
+ * 没有指定键字段时无法增量写入，每次写入都整表重写(仍在一个事务中)。
+ * 锁的顺序：写锁 -> 数据源 -> 本对象。
+ */
+final class XWriteBehind<T> {
+
+    public static final long DEFAULT_DELAY = 300;// 默认的延迟写入时间(毫秒)
+
+    private static final String TAG = XWriteBehind.class.getSimpleName();
+
+    private static final long MAX_RETRY_DELAY = 60 * 1000;// 失败重试的最大延迟(毫秒)
+
+    /**
+     * 所有数据源共用的后台写线程(单线程，写入顺序与提交顺序一致)
+     */
+    private static ScheduledExecutorService sWriter;
+
+    static synchronized ScheduledExecutorService getWriter() {
+        if (sWriter == null) {
+            sWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "XWriteBehind");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sWriter;
+    }
+
+    /**
+     * 持久化的目标(由数据源提供)。
+     */
+    interface Store<T> {
+        XDBTable<T> getDatabaseTable();
+
+        /**
+         * @return 返回唯一标识数据的字段名(一个或多个);返回null表示不能增量写入
+         */
+        String[] getKeyColumns();
+
+        /**
+         * @return 返回数据在getKeyColumns()各字段上的值
+         */
+        String[] getKey(T item);
+
+        List<T> copyAll();
+    }
+
+    private final Store<T> mStore;// 持久化的目标
+    private final Object mWriteLock;// 保证同一时刻只有一个批次在写
+    private final Runnable mFlushRunnable;// 后台写入任务
+    private LinkedHashMap<List<String>, T> mStored;// 需要写入的数据(按键)
+    private LinkedHashSet<List<String>> mDeleted;// 需要删除的键
+    private boolean mCleared;// 是否需要先清空数据表
+    private boolean mEnabled;// 是否开启延迟写入
+    private boolean mSuspended;// 暂停记录(如从数据库加载时)
+    private boolean mScheduled;// 是否已经提交了写入任务
+    private long mDelay;// 延迟写入的时间(毫秒)
+    private int mFailures;// 连续写入失败的次数
+
+    XWriteBehind(Store<T> store) {
+        mStore = store;
+        mWriteLock = new Object();
+        mStored = new LinkedHashMap<List<String>, T>();
+        mDeleted = new LinkedHashSet<List<String>>();
+        mCleared = false;
+        mEnabled = false;
+        mSuspended = false;
+        mScheduled = false;
+        mDelay = DEFAULT_DELAY;
+        mFlushRunnable = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+    }
+
+    synchronized void setEnabled(boolean enabled, long delayMillis) {
+        mEnabled = enabled;
+        mDelay = Math.max(0, delayMillis);
+        if (enabled)
+            schedule();
+    }
+
+    synchronized boolean isEnabled() {
+        return mEnabled;
+    }
+
+    synchronized void setSuspended(boolean suspended) {
+        mSuspended = suspended;
+    }
+
+    synchronized void stored(T item) {
+        if (!isTracking())
+            return;
+        List<String> key = getKey(item);
+        mDeleted.remove(key);
+        mStored.put(key, item);
+        schedule();
+    }
+
+    synchronized void deleted(T item) {
+        if (!isTracking())
+            return;
+        List<String> key = getKey(item);
+        mStored.remove(key);
+        mDeleted.add(key);
+        schedule();
+    }
+
+    synchronized void cleared() {
+        if (!isTracking())
+            return;
+        mStored.clear();
+        mDeleted.clear();
+        mCleared = true;
+        schedule();
+    }
+
+    /**
+     * 取出所有还没写入的记录(整表保存之前，与复制数据在同一个数据源同步块中调用)。
+     * 保存成功后丢弃返回的记录;失败时用restore()放回，之后照常延迟写入。
+     */
+    synchronized Batch<T> takePending() {
+        Batch<T> batch = new Batch<T>(mStored, mDeleted, mCleared);
+        mStored = new LinkedHashMap<List<String>, T>();
+        mDeleted = new LinkedHashSet<List<String>>();
+        mCleared = false;
+        return batch;
+    }
+
+    /**
+     * 把takePending()取出的记录放回去(已被新的变化覆盖的除外)。
+     */
+    synchronized void restore(Batch<T> batch) {
+        if (mCleared)
+            return;// 之后又清空了，取出的记录都没意义了
+        for (List<String> key : batch.deleted) {
+            if (!mStored.containsKey(key))
+                mDeleted.add(key);
+        }
+        for (Map.Entry<List<String>, T> entry : batch.stored.entrySet()) {
+            if (!mStored.containsKey(entry.getKey()) && !mDeleted.contains(entry.getKey()))
+                mStored.put(entry.getKey(), entry.getValue());
+        }
+        mCleared = batch.cleared;
+        schedule();
+    }
+
+    /**
+     * 丢弃已经由别处写入数据库的键的记录(如应用服务器的变化后)。
+     * @param keys 已写入的键
+     * @param cleared true表示数据表已被清空，丢弃所有记录
+     */
+    synchronized void discard(List<String[]> keys, boolean cleared) {
+        if (cleared) {
+            mStored.clear();
+            mDeleted.clear();
+            mCleared = false;
+            return;
+        }
+        for (String[] key : keys) {
+            List<String> list = Arrays.asList(key);
+            mStored.remove(list);
+            mDeleted.remove(list);
+        }
+    }
+
+    /**
+     * 返回整表保存时使用的写锁。持有写锁期间后台不会写入。
+     */
+    Object getWriteLock() {
+        return mWriteLock;
+    }
+
+    /**
+     * 在当前线程立即写入所有记录。
+     * @return 写入成功(或没有需要写入的)返回true;否则返回false
+     */
+    boolean flush() {
+        synchronized (mWriteLock) {
+            Batch<T> batch;
+            synchronized (this) {
+                mScheduled = false;
+                if (!mCleared && mStored.isEmpty() && mDeleted.isEmpty())
+                    return true;
+                batch = takePending();
+            }
+            boolean success = write(batch);
+            synchronized (this) {
+                if (success) {
+                    mFailures = 0;
+                } else {
+                    mFailures++;
+                    restore(batch);
+                }
+            }
+            return success;
+        }
+    }
+
+    private boolean isTracking() {
+        return mEnabled && !mSuspended;
+    }
+
+    private List<String> getKey(T item) {
+        return Arrays.asList(mStore.getKey(item));
+    }
+
+    private void schedule() {
+        if (!mEnabled || mScheduled)
+            return;
+        if (!mCleared && mStored.isEmpty() && mDeleted.isEmpty())
+            return;
+        mScheduled = true;
+        long delay = mDelay;
+        for (int i = 0; i < mFailures && delay < MAX_RETRY_DELAY; i++)
+            delay = Math.max(1, delay) * 2;// 连续失败时加倍延迟
+        getWriter().schedule(mFlushRunnable, Math.min(delay, MAX_RETRY_DELAY), TimeUnit.MILLISECONDS);
+    }
+
+    private boolean write(Batch<T> batch) {
+        XDBTable<T> table = mStore.getDatabaseTable();
+        String[] keyColumns = mStore.getKeyColumns();
+        // 没有键字段，只能整表重写(先取出记录再复制数据，之后的变化会在下一次重写)
+        List<T> rewrite = keyColumns == null ? mStore.copyAll() : null;
+
+        XSQLiteHelper dbHelper = XSQLiteHelper.getInstance();
+        SQLiteDatabase db;
+        try {
+            dbHelper.createIfNotExist(table);
+            db = dbHelper.acquireDatabase();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (db == null) {
+            dbHelper.releaseDatabase();
+            return false;
+        }
+
+        XBatchWriter writer = new XBatchWriter(db, table.getName());
+        dbHelper.beginWrite(table);
+        db.beginTransaction();
+        try {
+            if (rewrite != null) {
+                writer.deleteAll();
+                for (T item : rewrite)
+                    writer.insert(table.getContentValues(item));
+            } else {
+                if (batch.cleared)
+                    writer.deleteAll();
+                for (List<String> key : batch.deleted)
+                    writer.deleteBy(keyColumns, toArray(key));
+                for (Map.Entry<List<String>, T> entry : batch.stored.entrySet()) {
+                    if (!batch.cleared)
+                        writer.deleteBy(keyColumns, toArray(entry.getKey()));
+                    writer.insert(table.getContentValues(entry.getValue()));
+                }
+            }
+            db.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            // 整个事务回滚，删除的旧行也会恢复，记录由flush()放回
+            XLog.e(TAG, "write behind of " + table.getName() + " failed: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        } finally {
+            writer.close();
+            db.endTransaction();
+            dbHelper.endWrite(table);
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    private static String[] toArray(List<String> key) {
+        return key.toArray(new String[key.size()]);
+    }
+
+    /**
+     * 一次写入的记录
+     */
+    static final class Batch<T> {
+        final LinkedHashMap<List<String>, T> stored;
+        final LinkedHashSet<List<String>> deleted;
+        final boolean cleared;
+
+        Batch(LinkedHashMap<List<String>, T> stored, LinkedHashSet<List<String>> deleted,
+              boolean cleared) {
+            this.stored = stored;
+            this.deleted = deleted;
+            this.cleared = cleared;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.xengine.android.data.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * 声明式绑定字段的数据表。
+ * 在initiateColumns()中用bindColumn()声明字段及其与属性的绑定(XColumnBinding)，
+ * getContentValues()和getFilledInstance()由本类根据绑定实现，不需要手写，也不使用反射：
+ * 1.ContentValues按字段数预先分配容量;
+ * 2.字段在cursor中的位置按cursor的字段列表缓存，
+ *   同一次查询的所有行只按字段名查找一次(而不是每行每个字段都查找);
+ * 3.批量写入(XUpsertWriter)时直接把属性绑定到编译好的语句上，不创建ContentValues。
+ * cursor中没有的字段(如只查询了部分字段)不填充。
+ */
+public abstract class XBaseBoundDBTable<T> extends XBaseDBTable<T> {
+
+    /**
+     * TIP 父类构造函数中就会调用initiateColumns()，此时子类的字段还没有初始化，
+     * 所以这里不能写初始值，在bindColumn()中创建
+     */
+    private ArrayList<String> mBoundColumns;// 绑定的字段名
+    private ArrayList<XColumnBinding<T>> mBindings;// 每个字段的绑定
+    private volatile IndexCache mIndexCache;// 最近一次使用的字段位置
+
+    /**
+     * 创建一个新的空实例，用于getFilledInstance()。
+     */
+    protected abstract T newInstance();
+
+    /**
+     * 添加字段，并绑定到模型的属性。在initiateColumns()中调用。
+     * @param colName 字段的名称
+     * @param type 字段的类型
+     * @param constraint 约束，可为null
+     * @param binding 字段与属性的绑定
+     */
+    public synchronized void bindColumn(String colName, XSQLiteDataType type,
+                                        XSQLiteConstraint constraint, XColumnBinding<T> binding) {
+        if (binding == null)
+            throw new NullPointerException("Column binding can not be null.");
+        addColumn(colName, type, constraint);
+        if (mBindings == null) {
+            mBoundColumns = new ArrayList<String>();
+            mBindings = new ArrayList<XColumnBinding<T>>();
+        }
+        mBoundColumns.add(colName);
+        mBindings.add(binding);
+        mIndexCache = null;
+    }
+
+    @Override
+    public ContentValues getContentValues(T instance) {
+        ArrayList<String> columns = mBoundColumns;
+        ArrayList<XColumnBinding<T>> bindings = mBindings;
+        if (bindings == null)
+            return new ContentValues();
+        int size = bindings.size();
+        ContentValues values = new ContentValues(size);
+        for (int i = 0; i < size; i++)
+            bindings.get(i).put(instance, values, columns.get(i));
+        return values;
+    }
+
+    @Override
+    public T getFilledInstance(Cursor cursor) {
+        T instance = newInstance();
+        ArrayList<XColumnBinding<T>> bindings = mBindings;
+        if (bindings == null)
+            return instance;
+        int[] indexes = getColumnIndexes(cursor);
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] >= 0)
+                bindings.get(i).fill(instance, cursor, indexes[i]);
+        }
+        return instance;
+    }
+
+    /**
+     * 返回所有绑定了属性的字段名(与bindStatement()绑定参数的顺序一致)
+     */
+    public String[] getBoundColumns() {
+        ArrayList<String> columns = mBoundColumns;
+        if (columns == null)
+            return new String[0];
+        return columns.toArray(new String[columns.size()]);
+    }
+
+    /**
+     * 把实例的属性按getBoundColumns()的顺序绑定到语句的参数1~n上(不创建ContentValues)。
+     * @param instance 模型的实例
+     * @param statement 编译好的语句
+     */
+    public void bindStatement(T instance, SQLiteStatement statement) {
+        ArrayList<XColumnBinding<T>> bindings = mBindings;
+        if (bindings == null)
+            return;
+        for (int i = 0; i < bindings.size(); i++)
+            bindings.get(i).bind(instance, statement, i + 1);
+    }
+
+    /**
+     * 返回每个绑定字段在cursor中的位置(没有的为-1)。
+     * 字段列表与上次相同时复用上次的结果(一般同一个cursor每次返回同一个数组)。
+     */
+    private int[] getColumnIndexes(Cursor cursor) {
+        String[] names = cursor.getColumnNames();
+        IndexCache cache = mIndexCache;
+        if (cache != null && (cache.names == names || Arrays.equals(cache.names, names)))
+            return cache.indexes;
+
+        ArrayList<String> columns = mBoundColumns;
+        int[] indexes = new int[columns.size()];
+        for (int i = 0; i < indexes.length; i++)
+            indexes[i] = cursor.getColumnIndex(columns.get(i));
+        mIndexCache = new IndexCache(names, indexes);
+        return indexes;
+    }
+
+    /**
+     * 字段名数组与对应的字段位置(不可变，可在多线程间共享)
+     */
+    private static final class IndexCache {
+        final String[] names;
+        final int[] indexes;
+
+        IndexCache(String[] names, int[] indexes) {
+            this.names = names;
+            this.indexes = indexes;
+        }
+    }
+}
@@ -2,11 +2,18 @@ package com.xengine.android.data.db;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * 继承BaseDBTable实现自定义数据表。
  * 在自定义数据表中应当以字符串常量的形式定义数据表中的字段名。
  * 在initiate函数中调用addColumn(name, type)方法将字段加入数据表中。
+ * 还可以在initiate函数中：
+ * 1.调用addIndex()声明索引(建表时一起创建);
+ * 2.调用setPrimaryKey()声明主键(可以是多个字段的联合主键)，此时不再自动添加_id字段;
+ * 3.调用setWithoutRowId()建立WITHOUT ROWID表(必须声明主键，SQLite 3.8.2即API 21以上才支持)。
  * Created by 赵之韵.
  * Date: 11-12-15
  * Time: 下午8:18
@@ -35,6 +42,26 @@ public abstract class XBaseDBTable<T> implements XDBTable<T> {
      */
     private HashMap<String, XSQLiteConstraint> constraints = new HashMap<String, XSQLiteConstraint>();
 
+    /**
+     * 主键字段，为null表示使用自动添加的_id字段作为主键
+     */
+    private String[] primaryKey;
+
+    /**
+     * 是否为WITHOUT ROWID表
+     */
+    private boolean withoutRowId;
+
+    /**
+     * 声明的索引(索引名 -> 索引的字段)
+     */
+    private LinkedHashMap<String, String[]> indexes = new LinkedHashMap<String, String[]>();
+
+    /**
+     * 唯一索引的名称
+     */
+    private HashSet<String> uniqueIndexes = new HashSet<String>();
+
     /**
      * 初始化字段，在本函数中通过addColumn(name, type)来增加字段。
      */
@@ -42,12 +69,20 @@ public abstract class XBaseDBTable<T> implements XDBTable<T> {
 
     @Override
     public synchronized String createTableString() {
+        if(withoutRowId && primaryKey == null) {
+            throw new IllegalStateException("WITHOUT ROWID table must declare a primary key.");
+        }
         StringBuilder buf = new StringBuilder();
         buf.append("CREATE TABLE ")
                 .append(getName())
-                .append(" ")
-                .append("(_id " + XSQLiteDataType.INTEGER + " PRIMARY KEY, ");
-        for(int i = 0; i < columns.size() - 1; i++) {
+                .append(" (");
+        if(primaryKey == null) {
+            buf.append("_id " + XSQLiteDataType.INTEGER + " PRIMARY KEY, ");
+        }
+        for(int i = 0; i < columns.size(); i++) {
+            if(i > 0) {
+                buf.append(", ");
+            }
             buf.append(columns.get(i))
                     .append(" ")
                     .append(types.get(i))
@@ -56,18 +91,88 @@ public abstract class XBaseDBTable<T> implements XDBTable<T> {
             if(constraint != null) {
                 buf.append(constraint.toString().toUpperCase());
             }
-            buf.append(", ");
         }
-        int last = columns.size() - 1;
-        buf.append(columns.get(last))
-                .append(" ")
-                .append(types.get(last))
-                .append(" ");
-        XSQLiteConstraint constraint = constraints.get(columns.get(last));
-        if(constraint != null) {
-            buf.append(constraint.toString().toUpperCase());
+        if(primaryKey != null) {
+            buf.append(", PRIMARY KEY (")
+                    .append(join(primaryKey))
+                    .append(")");
+        }
+        buf.append(")");
+        if(withoutRowId) {
+            buf.append(" WITHOUT ROWID");
+        }
+        buf.append(";");
+        return buf.toString();
+    }
+
+    /**
+     * 返回创建所有声明的索引的SQL语句(CREATE INDEX IF NOT EXISTS，可重复执行)。
+     * 由XSQLiteHelper在建表之后执行。
+     */
+    public synchronized String[] createIndexStrings() {
+        String[] result = new String[indexes.size()];
+        int i = 0;
+        for(Map.Entry<String, String[]> index : indexes.entrySet()) {
+            result[i++] = (uniqueIndexes.contains(index.getKey()) ? "CREATE UNIQUE INDEX" : "CREATE INDEX")
+                    + " IF NOT EXISTS " + index.getKey() + " ON " + getName()
+                    + " (" + join(index.getValue()) + ");";
+        }
+        return result;
+    }
+
+    /**
+     * 声明索引。
+     * @param indexName 索引名称(在整个数据库中唯一)
+     * @param indexColumns 索引的字段(联合索引按顺序排列)
+     * @param unique 是否为唯一索引
+     */
+    public synchronized void addIndex(String indexName, String[] indexColumns, boolean unique) {
+        if(indexName == null || indexColumns == null || indexColumns.length == 0) {
+            throw new NullPointerException("Index name or columns can not be null.");
+        }
+        indexes.put(indexName, indexColumns.clone());
+        if(unique) {
+            uniqueIndexes.add(indexName);
+        } else {
+            uniqueIndexes.remove(indexName);
+        }
+    }
+
+    /**
+     * 声明主键。声明后不再自动添加_id字段。
+     * @param keyColumns 主键的字段(多个字段为联合主键)
+     */
+    public synchronized void setPrimaryKey(String... keyColumns) {
+        if(keyColumns == null || keyColumns.length == 0) {
+            throw new NullPointerException("Primary key columns can not be null.");
+        }
+        primaryKey = keyColumns.clone();
+    }
+
+    /**
+     * @return 返回声明的主键字段;没有声明(使用_id字段)返回null
+     */
+    public synchronized String[] getPrimaryKey() {
+        return primaryKey == null ? null : primaryKey.clone();
+    }
+
+    /**
+     * 设置是否为WITHOUT ROWID表。
+     * 主键查询更快、占用空间更小，适合主键不是整数或是联合主键的表。
+     * TIP 必须同时声明主键;SQLite 3.8.2(API 21)以上才支持
+     */
+    public synchronized void setWithoutRowId(boolean withoutRowId) {
+        this.withoutRowId = withoutRowId;
+    }
+
+    private static String join(String[] names) {
+        StringBuilder buf = new StringBuilder();
+        for(int i = 0; i < names.length; i++) {
+            if(i > 0) {
+                buf.append(", ");
+            }
+            buf.append(names[i]);
         }
-        buf.append(");");
         return buf.toString();
     }
 
@@ -83,6 +188,25 @@ public abstract class XBaseDBTable<T> implements XDBTable<T> {
         }
     }
 
+    /**
+     * 返回字段的类型
+     * @param colName 字段的名称
+     * @return 没有这个字段返回null
+     */
+    public synchronized XSQLiteDataType getColumnType(String colName) {
+        int index = columns.indexOf(colName);
+        return index < 0 ? null : types.get(index);
+    }
+
+    /**
+     * 返回字段的约束
+     * @param colName 字段的名称
+     * @return 没有约束返回null
+     */
+    public synchronized XSQLiteConstraint getColumnConstraint(String colName) {
+        return constraints.get(colName);
+    }
+
     @Override
     public synchronized String[] getColumns() {
         String[] cols = new String[columns.size()];
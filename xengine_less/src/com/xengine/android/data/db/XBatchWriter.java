@@ -0,0 +1,187 @@
+package com.xengine.android.data.db;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 批量写数据表的工具类。
+ * 与db.insert()每次都重新拼SQL、编译语句不同，本类把编译好的语句按字段组合缓存起来，
+ * 之后每行只需要绑定参数再执行(字段组合相同的行不再拼SQL)。
+ * TIP 应在调用者开启的事务中使用(否则每行仍会单独提交)，用完后调用close()释放语句。
+ * 非线程安全。
+ */
+public final class XBatchWriter {
+
+    private final SQLiteDatabase mDb;// 数据库连接
+    private final String mTableName;// 表名
+    private final HashMap<String, SQLiteStatement> mStatements;// 编译好的语句(按SQL缓存)
+    private final HashMap<Set<String>, Insert> mInserts;// 插入语句(按字段组合缓存)
+    private Insert mLastInsert;// 上一次使用的插入语句
+
+    /**
+     * @param db 数据库连接
+     * @param tableName 表名
+     */
+    public XBatchWriter(SQLiteDatabase db, String tableName) {
+        mDb = db;
+        mTableName = tableName;
+        mStatements = new HashMap<String, SQLiteStatement>();
+        mInserts = new HashMap<Set<String>, Insert>();
+    }
+
+    /**
+     * 插入一行。
+     * @param values 字段和值
+     * @return 返回新行的rowid;失败返回-1
+     */
+    public long insert(ContentValues values) {
+        if (values.size() == 0)
+            return -1;
+        Insert insert = mLastInsert;
+        if (insert == null || !insert.matches(values)) {
+            // 字段组合与上一行不同(很少见)，才按字段集合查找
+            Set<String> columns = new HashSet<String>();
+            for (Map.Entry<String, Object> entry : values.valueSet())
+                columns.add(entry.getKey());
+            insert = mInserts.get(columns);
+            if (insert == null) {
+                insert = new Insert(columns.toArray(new String[columns.size()]));
+                mInserts.put(columns, insert);
+            }
+            mLastInsert = insert;
+        }
+        insert.statement.clearBindings();
+        for (int i = 0; i < insert.columns.length; i++)
+            bind(insert.statement, i + 1, values.get(insert.columns[i]));
+        return insert.statement.executeInsert();
+    }
+
+    /**
+     * 删除某个字段等于value的所有行。
+     * @param column 字段名
+     * @param value 字段值
+     */
+    public void deleteBy(String column, String value) {
+        SQLiteStatement statement = getStatement(
+                "DELETE FROM " + mTableName + " WHERE " + column + " = ?");
+        bind(statement, 1, value);
+        statement.execute();
+    }
+
+    /**
+     * 删除多个字段分别等于对应值的所有行(如复合键)。
+     * @param columns 字段名
+     * @param values 字段值(与columns一一对应，为null时匹配IS NULL)
+     */
+    public void deleteBy(String[] columns, String[] values) {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(mTableName).append(" WHERE ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0)
+                sql.append(" AND ");
+            sql.append(columns[i]).append(values[i] == null ? " IS NULL" : " = ?");
+        }
+        SQLiteStatement statement = getStatement(sql.toString());
+        int index = 1;
+        for (String value : values) {
+            if (value != null)
+                bind(statement, index++, value);
+        }
+        statement.execute();
+    }
+
+    /**
+     * 删除表中所有行。
+     */
+    public void deleteAll() {
+        getStatement("DELETE FROM " + mTableName).execute();
+    }
+
+    /**
+     * 释放所有编译好的语句。
+     */
+    public void close() {
+        for (SQLiteStatement statement : mStatements.values())
+            statement.close();
+        mStatements.clear();
+        for (Insert insert : mInserts.values())
+            insert.statement.close();
+        mInserts.clear();
+        mLastInsert = null;
+    }
+
+    private SQLiteStatement getStatement(String sql) {
+        SQLiteStatement statement = mStatements.get(sql);
+        if (statement == null) {
+            statement = mDb.compileStatement(sql);
+            mStatements.put(sql, statement);
+        } else {
+            statement.clearBindings();
+        }
+        return statement;
+    }
+
+    /**
+     * 一种字段组合的插入语句(参数按columns的顺序绑定)
+     */
+    private final class Insert {
+        final String[] columns;
+        final SQLiteStatement statement;
+
+        Insert(String[] columns) {
+            this.columns = columns;
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(mTableName).append(" (");
+            StringBuilder params = new StringBuilder();
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    sql.append(',');
+                    params.append(',');
+                }
+                sql.append(columns[i]);
+                params.append('?');
+            }
+            sql.append(") VALUES (").append(params).append(')');
+            statement = mDb.compileStatement(sql.toString());
+        }
+
+        /**
+         * @return values的字段组合与本语句相同返回true
+         */
+        boolean matches(ContentValues values) {
+            if (values.size() != columns.length)
+                return false;
+            for (String column : columns) {
+                if (!values.containsKey(column))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 按值的类型绑定参数(与ContentValues支持的类型一致)。
+     */
+    static void bind(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof String) {
+            statement.bindString(index, (String) value);
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+}
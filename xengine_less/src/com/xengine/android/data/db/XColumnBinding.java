@@ -0,0 +1,190 @@
+package com.xengine.android.data.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * 字段与模型属性之间的绑定(不使用反射)。
+ * 通常不直接实现本接口，而是继承TextBinding、IntBinding等，
+ * 只需实现属性的get/set，null值和类型转换由基类处理。
+ * @see com.xengine.android.data.db.XBaseBoundDBTable
+ */
+public interface XColumnBinding<T> {
+
+    /**
+     * 把实例的属性写入ContentValues。
+     * @param instance 模型的实例
+     * @param values 写入的目标
+     * @param column 字段名称
+     */
+    void put(T instance, ContentValues values, String column);
+
+    /**
+     * 从cursor的当前行读取字段，填到实例的属性中。
+     * @param instance 模型的实例
+     * @param cursor 数据库游标
+     * @param index 字段在cursor中的位置
+     */
+    void fill(T instance, Cursor cursor, int index);
+
+    /**
+     * 把实例的属性直接绑定到编译好的语句的参数上(不经过ContentValues)。
+     * @param instance 模型的实例
+     * @param statement 编译好的语句
+     * @param index 参数的位置(从1开始)
+     */
+    void bind(T instance, SQLiteStatement statement, int index);
+
+    /**
+     * 字符串属性
+     */
+    abstract class TextBinding<T> implements XColumnBinding<T> {
+        public abstract String get(T instance);
+
+        public abstract void set(T instance, String value);
+
+        @Override
+        public void put(T instance, ContentValues values, String column) {
+            values.put(column, get(instance));
+        }
+
+        @Override
+        public void fill(T instance, Cursor cursor, int index) {
+            set(instance, cursor.getString(index));
+        }
+
+        @Override
+        public void bind(T instance, SQLiteStatement statement, int index) {
+            String value = get(instance);
+            if (value == null)
+                statement.bindNull(index);
+            else
+                statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * int属性(数据库中为NULL时读出0)
+     */
+    abstract class IntBinding<T> implements XColumnBinding<T> {
+        public abstract int get(T instance);
+
+        public abstract void set(T instance, int value);
+
+        @Override
+        public void put(T instance, ContentValues values, String column) {
+            values.put(column, get(instance));
+        }
+
+        @Override
+        public void fill(T instance, Cursor cursor, int index) {
+            set(instance, cursor.getInt(index));
+        }
+
+        @Override
+        public void bind(T instance, SQLiteStatement statement, int index) {
+            statement.bindLong(index, get(instance));
+        }
+    }
+
+    /**
+     * long属性(数据库中为NULL时读出0)
+     */
+    abstract class LongBinding<T> implements XColumnBinding<T> {
+        public abstract long get(T instance);
+
+        public abstract void set(T instance, long value);
+
+        @Override
+        public void put(T instance, ContentValues values, String column) {
+            values.put(column, get(instance));
+        }
+
+        @Override
+        public void fill(T instance, Cursor cursor, int index) {
+            set(instance, cursor.getLong(index));
+        }
+
+        @Override
+        public void bind(T instance, SQLiteStatement statement, int index) {
+            statement.bindLong(index, get(instance));
+        }
+    }
+
+    /**
+     * double属性(数据库中为NULL时读出0)
+     */
+    abstract class DoubleBinding<T> implements XColumnBinding<T> {
+        public abstract double get(T instance);
+
+        public abstract void set(T instance, double value);
+
+        @Override
+        public void put(T instance, ContentValues values, String column) {
+            values.put(column, get(instance));
+        }
+
+        @Override
+        public void fill(T instance, Cursor cursor, int index) {
+            set(instance, cursor.getDouble(index));
+        }
+
+        @Override
+        public void bind(T instance, SQLiteStatement statement, int index) {
+            statement.bindDouble(index, get(instance));
+        }
+    }
+
+    /**
+     * boolean属性(数据库中存为0/1)
+     */
+    abstract class BoolBinding<T> implements XColumnBinding<T> {
+        public abstract boolean get(T instance);
+
+        public abstract void set(T instance, boolean value);
+
+        @Override
+        public void put(T instance, ContentValues values, String column) {
+            values.put(column, get(instance) ? 1 : 0);
+        }
+
+        @Override
+        public void fill(T instance, Cursor cursor, int index) {
+            set(instance, cursor.getInt(index) != 0);
+        }
+
+        @Override
+        public void bind(T instance, SQLiteStatement statement, int index) {
+            statement.bindLong(index, get(instance) ? 1 : 0);
+        }
+    }
+
+    /**
+     * 二进制属性
+     */
+    abstract class BlobBinding<T> implements XColumnBinding<T> {
+        public abstract byte[] get(T instance);
+
+        public abstract void set(T instance, byte[] value);
+
+        @Override
+        public void put(T instance, ContentValues values, String column) {
+            values.put(column, get(instance));
+        }
+
+        @Override
+        public void fill(T instance, Cursor cursor, int index) {
+            set(instance, cursor.isNull(index) ? null : cursor.getBlob(index));
+        }
+
+        @Override
+        public void bind(T instance, SQLiteStatement statement, int index) {
+            byte[] value = get(instance);
+            if (value == null)
+                statement.bindNull(index);
+            else
+                statement.bindBlob(index, value);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.xengine.android.data.db;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按批次读取cursor的迭代器。
+ * 每次next()只把接下来的batchSize行转换成实例，不会一次把整个结果集读到内存中。
+ * 用完后(或不再需要后面的数据时)调用close()关闭cursor。
+ * 非线程安全。
+ */
+public class XCursorBatchIterator<T> {
+
+    private final Cursor mCursor;// 查询结果
+    private final XDBTable<T> mTable;// 把每行转换成实例
+    private final int mBatchSize;// 每批的行数
+    private int mRowCount;// 已经读取的行数
+    private boolean mHasNext;// 是否还有下一行(cursor已经移动到该行)
+
+    /**
+     * @param cursor 查询结果
+     * @param table 数据表
+     * @param batchSize 每批的行数
+     */
+    public XCursorBatchIterator(Cursor cursor, XDBTable<T> table, int batchSize) {
+        mCursor = cursor;
+        mTable = table;
+        mBatchSize = Math.max(1, batchSize);
+        mRowCount = 0;
+        mHasNext = cursor.moveToFirst();
+    }
+
+    public boolean hasNext() {
+        return mHasNext;
+    }
+
+    /**
+     * 读取下一批数据(最多batchSize行)。
+     * @return 没有更多数据时返回空列表
+     */
+    public List<T> next() {
+        List<T> batch = new ArrayList<T>(mBatchSize);
+        while (mHasNext && batch.size() < mBatchSize) {
+            batch.add(mTable.getFilledInstance(mCursor));
+            mRowCount++;
+            mHasNext = mCursor.moveToNext();
+        }
+        return batch;
+    }
+
+    /**
+     * @return 返回已经读取的行数
+     */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public void close() {
+        mHasNext = false;
+        mCursor.close();
+    }
+}
@@ -0,0 +1,299 @@
+package com.xengine.android.data.db;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 查询结果缓存。
+ * 以SQL和绑定的参数为键，缓存已经读出的数据列表，按估算的内存大小限制总量，超出时淘汰最久没用的(LRU)。
+ * 每个结果记录它读取了哪些数据表，写某个表时(XSQLiteHelper.beginWrite()/endWrite())
+ * 只丢弃读取过该表的结果，其他表的结果不受影响。
+ * 每个表有一个版本号，开始和结束写入时都加一：查询前后版本号不同，
+ * 或查询时该表正在写入(事务还没提交)，查询结果就不进入缓存，避免缓存旧数据。
+ */
+public final class XQueryCache {
+
+    public static final long DEFAULT_BUDGET = 1024 * 1024;// 默认的内存上限(字节)
+    public static final long DEFAULT_ROW_SIZE = 256;// 默认每行数据估算占用的内存(字节)
+    private static final long ENTRY_OVERHEAD = 64;// 每个结果的额外开销(字节)
+
+    private final LinkedHashMap<Key, Entry> mEntries;// 缓存的结果(按访问顺序)
+    private final HashMap<String, Table> mTables;// 表名 -> 版本号和读取过该表的结果
+    private final HashMap<String, Long> mRowSizes;// 表名 -> 每行数据估算占用的内存
+    private long mBudget;// 内存上限(字节)
+    private long mSize;// 当前占用的内存(字节)
+    private long mHitCount;// 命中次数
+    private long mMissCount;// 没命中次数
+    private long mPutCount;// 放入缓存的次数
+    private long mEvictionCount;// 超出上限被淘汰的次数
+    private long mInvalidationCount;// 因为写表被丢弃的次数
+
+    XQueryCache() {
+        mEntries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+        mTables = new HashMap<String, Table>();
+        mRowSizes = new HashMap<String, Long>();
+        mBudget = DEFAULT_BUDGET;
+        mSize = 0;
+    }
+
+    /**
+     * 设置内存上限。为0时不缓存。
+     * @param bytes 字节数
+     */
+    public synchronized void setBudget(long bytes) {
+        mBudget = Math.max(0, bytes);
+        trimToBudget();
+    }
+
+    public synchronized long getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * 设置数据表每行数据估算占用的内存(默认为DEFAULT_ROW_SIZE)。
+     * TIP 数据较大的表应设置此值，否则缓存实际占用的内存会超出上限
+     * @param table 数据表
+     * @param bytes 字节数
+     */
+    public synchronized void setRowSize(XDBTable<?> table, long bytes) {
+        mRowSizes.put(table.getName(), Math.max(1, bytes));
+    }
+
+    /**
+     * 丢弃所有结果(统计数据保留)。
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        for (Table table : mTables.values())
+            table.keys.clear();
+        mSize = 0;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(mHitCount, mMissCount, mPutCount, mEvictionCount,
+                mInvalidationCount, mEntries.size(), mSize, mBudget);
+    }
+
+    public synchronized void resetStats() {
+        mHitCount = 0;
+        mMissCount = 0;
+        mPutCount = 0;
+        mEvictionCount = 0;
+        mInvalidationCount = 0;
+    }
+
+    /**
+     * 查找缓存的结果。
+     * @return 命中返回结果;否则返回null
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> List<T> get(Key key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return (List<T>) entry.result;
+    }
+
+    /**
+     * 查询前调用，记下所读表的版本。
+     * @return 返回版本号之和(版本号只增不减，和不变说明都没变);有表正在写入时返回-1
+     */
+    synchronized long stamp(String[] tableNames) {
+        long stamp = 0;
+        for (String name : tableNames) {
+            Table table = getTable(name);
+            if (table.writers > 0)
+                return -1;
+            stamp += table.version;
+        }
+        return stamp;
+    }
+
+    /**
+     * 查询后调用，查询期间所读的表都没有写入时放入缓存。
+     * 没有列出所读的表时不缓存(写任何表都无法让它失效)。
+     * @param stamp 查询前stamp()的返回值
+     */
+    synchronized void put(Key key, String[] tableNames, long stamp, List<?> result) {
+        if (tableNames.length == 0 || stamp < 0 || stamp(tableNames) != stamp)
+            return;
+        long rowSize = DEFAULT_ROW_SIZE;
+        Long rowSizeOfTable = mRowSizes.get(tableNames[0]);
+        if (rowSizeOfTable != null)
+            rowSize = rowSizeOfTable;
+        long size = ENTRY_OVERHEAD + key.sql.length() * 2 + result.size() * rowSize;
+        if (size > mBudget)
+            return;
+        removeEntry(key);
+        mEntries.put(key, new Entry(tableNames, result, size));
+        for (String name : tableNames)
+            getTable(name).keys.add(key);
+        mSize += size;
+        mPutCount++;
+        trimToBudget();
+    }
+
+    /**
+     * 开始写数据表：丢弃读取过该表的结果，并且在endWrite()之前不再缓存该表的查询结果。
+     */
+    synchronized void beginWrite(String tableName) {
+        Table table = getTable(tableName);
+        table.writers++;
+        table.version++;
+        invalidate(table);
+    }
+
+    /**
+     * 结束写数据表(事务已提交或回滚)。
+     */
+    synchronized void endWrite(String tableName) {
+        Table table = getTable(tableName);
+        if (table.writers > 0)
+            table.writers--;
+        table.version++;
+        invalidate(table);
+    }
+
+    private Table getTable(String name) {
+        Table table = mTables.get(name);
+        if (table == null) {
+            table = new Table();
+            mTables.put(name, table);
+        }
+        return table;
+    }
+
+    private void invalidate(Table table) {
+        if (table.keys.isEmpty())
+            return;
+        Key[] keys = table.keys.toArray(new Key[table.keys.size()]);
+        for (Key key : keys) {
+            if (removeEntry(key))
+                mInvalidationCount++;
+        }
+    }
+
+    private boolean removeEntry(Key key) {
+        Entry entry = mEntries.remove(key);
+        if (entry == null)
+            return false;
+        for (String name : entry.tableNames)
+            getTable(name).keys.remove(key);
+        mSize -= entry.size;
+        return true;
+    }
+
+    private void trimToBudget() {
+        Iterator<Map.Entry<Key, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mBudget && iterator.hasNext()) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            iterator.remove();
+            for (String name : eldest.getValue().tableNames)
+                getTable(name).keys.remove(eldest.getKey());
+            mSize -= eldest.getValue().size;
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * 缓存的键：SQL和绑定的参数(以及把行转为数据的表对象，不同的表对象得到的数据类型不同)
+     */
+    static final class Key {
+        final String sql;
+        final String[] args;
+        final XDBTable<?> mapper;
+        private final int mHash;
+
+        Key(String sql, String[] args, XDBTable<?> mapper) {
+            this.sql = sql;
+            this.args = args == null || args.length == 0 ? null : args.clone();
+            this.mapper = mapper;
+            mHash = 31 * (31 * sql.hashCode() + Arrays.hashCode(this.args))
+                    + System.identityHashCode(mapper);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return mHash == other.mHash && mapper == other.mapper && sql.equals(other.sql)
+                    && Arrays.equals(args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    private static final class Entry {
+        final String[] tableNames;// 读取的表
+        final List<?> result;// 结果(不可修改)
+        final long size;// 估算占用的内存
+
+        Entry(String[] tableNames, List<?> result, long size) {
+            this.tableNames = tableNames;
+            this.result = result;
+            this.size = size;
+        }
+    }
+
+    private static final class Table {
+        long version;// 版本号，开始和结束写入时加一
+        int writers;// 正在写入的次数
+        final HashSet<Key> keys = new HashSet<Key>();// 读取过该表的结果
+    }
+
+    /**
+     * 缓存的统计信息。
+     */
+    public static final class Stats {
+        public final long hitCount;// 命中次数
+        public final long missCount;// 没命中次数
+        public final long putCount;// 放入缓存的次数
+        public final long evictionCount;// 超出上限被淘汰的次数
+        public final long invalidationCount;// 因为写表被丢弃的次数
+        public final int entryCount;// 当前缓存的结果数
+        public final long size;// 当前占用的内存(字节，估算)
+        public final long budget;// 内存上限(字节)
+
+        Stats(long hitCount, long missCount, long putCount, long evictionCount,
+              long invalidationCount, int entryCount, long size, long budget) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.putCount = putCount;
+            this.evictionCount = evictionCount;
+            this.invalidationCount = invalidationCount;
+            this.entryCount = entryCount;
+            this.size = size;
+            this.budget = budget;
+        }
+
+        /**
+         * @return 返回命中率(0~1);还没有查询时返回0
+         */
+        public float getHitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0 : (float) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return "{hitRate=" + getHitRate() + ", hits=" + hitCount + ", misses=" + missCount
+                    + ", puts=" + putCount + ", evictions=" + evictionCount
+                    + ", invalidations=" + invalidationCount + ", entries=" + entryCount
+                    + ", size=" + size + "/" + budget + "}";
+        }
+    }
+}
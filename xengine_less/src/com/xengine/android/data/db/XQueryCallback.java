@@ -0,0 +1,29 @@
+package com.xengine.android.data.db;
+
+import java.util.List;
+
+/**
+ * 异步查询的回调。
+ * 所有回调都在同一个分发线程(默认主线程)中按顺序执行;
+ * 查询被取消后不再收到任何回调。
+ * @see com.xengine.android.data.db.XSQLiteHelper#queryAsync
+ */
+public interface XQueryCallback<T> {
+
+    /**
+     * 收到一批查询结果。
+     * @param batch 按查询顺序排列的一批数据
+     */
+    void onBatch(List<T> batch);
+
+    /**
+     * 查询结束(所有批次都已发送)。
+     * @param stats 本次查询的统计信息
+     */
+    void onComplete(XQueryTask.Stats stats);
+
+    /**
+     * 查询出错，之后不再有回调。
+     */
+    void onError(Exception e);
+}
@@ -0,0 +1,65 @@
+package com.xengine.android.data.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 查询计划检查工具(用于测试和调试)。
+ * 用EXPLAIN QUERY PLAN取得SQLite为查询选择的执行计划，
+ * 检查其中是否有全表扫描(没有使用索引的SCAN)。
+ * 例如在测试中：XQueryPlan.assertNoFullScan(db, "SELECT * FROM user WHERE uid = ?", args);
+ */
+public final class XQueryPlan {
+
+    private XQueryPlan() {}
+
+    /**
+     * 返回查询计划的每一步(EXPLAIN QUERY PLAN结果中的detail字段)。
+     * @param db 数据库
+     * @param sql 查询语句
+     * @param selectionArgs 绑定到?的参数(只用于生成计划，不会真正执行查询)
+     */
+    public static List<String> explain(SQLiteDatabase db, String sql, String[] selectionArgs) {
+        List<String> result = new ArrayList<String>();
+        Cursor cur = null;
+        try {
+            cur = db.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+            int detailIndex = cur.getColumnIndex("detail");
+            while (cur.moveToNext()) {
+                result.add(cur.getString(detailIndex));
+            }
+        } finally {
+            if (cur != null)
+                cur.close();
+        }
+        return result;
+    }
+
+    /**
+     * 返回查询计划中的全表扫描步骤。
+     * 全表扫描的步骤以"SCAN"开头且没有使用索引(如"SCAN TABLE user")，
+     * 使用索引的步骤为"SEARCH TABLE user USING INDEX ..."或"SCAN TABLE user USING COVERING INDEX ..."。
+     * @return 没有全表扫描返回空列表
+     */
+    public static List<String> findFullScans(SQLiteDatabase db, String sql, String[] selectionArgs) {
+        List<String> result = new ArrayList<String>();
+        for (String detail : explain(db, sql, selectionArgs)) {
+            if (detail != null && detail.startsWith("SCAN") && !detail.contains("INDEX"))
+                result.add(detail);
+        }
+        return result;
+    }
+
+    /**
+     * 查询中有全表扫描时抛出异常。
+     * @throws IllegalStateException 查询计划中有全表扫描
+     */
+    public static void assertNoFullScan(SQLiteDatabase db, String sql, String[] selectionArgs) {
+        List<String> scans = findFullScans(db, sql, selectionArgs);
+        if (!scans.isEmpty())
+            throw new IllegalStateException("Full table scan in query \"" + sql + "\": " + scans);
+    }
+}
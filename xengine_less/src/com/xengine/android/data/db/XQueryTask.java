@@ -0,0 +1,140 @@
+package com.xengine.android.data.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 一次异步查询。
+ * 在数据库线程中执行查询，用XCursorBatchIterator按批次读取结果，
+ * 每读完一批就发送到分发线程，不等整个结果集读完。
+ * 每批之间检查是否被取消，被取消后立即关闭cursor，已发出但还没执行的回调也会被丢弃。
+ */
+public final class XQueryTask<T> implements Runnable {
+
+    private final XSQLiteHelper mHelper;// 提供数据库连接
+    private final XDBTable<T> mTable;// 查询的数据表
+    private final String mSelection;// WHERE子句
+    private final String[] mSelectionArgs;// 绑定到?的参数
+    private final String mOrderBy;// ORDER BY子句
+    private final int mBatchSize;// 每批的行数
+    private final XQueryCallback<T> mCallback;// 回调
+    private final Executor mDispatcher;// 执行回调的线程
+    private final long mSubmitTime;// 提交的时间
+    private volatile boolean mCancelled;// 是否已取消
+
+    XQueryTask(XSQLiteHelper helper, XDBTable<T> table, String selection, String[] selectionArgs,
+               String orderBy, int batchSize, XQueryCallback<T> callback, Executor dispatcher) {
+        mHelper = helper;
+        mTable = table;
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+        mOrderBy = orderBy;
+        mBatchSize = batchSize;
+        mCallback = callback;
+        mDispatcher = dispatcher;
+        mSubmitTime = SystemClock.uptimeMillis();
+        mCancelled = false;
+    }
+
+    /**
+     * 取消查询。之后不会再收到任何回调。
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public void run() {
+        if (mCancelled)
+            return;
+        long start = SystemClock.uptimeMillis();
+        XCursorBatchIterator<T> iterator = null;
+        Cursor cur = null;
+        SQLiteDatabase db = mHelper.acquireDatabase();
+        try {
+            mHelper.createIfNotExist(mTable);
+            cur = db.query(mTable.getName(), null, mSelection, mSelectionArgs,
+                    null, null, mOrderBy);
+            iterator = new XCursorBatchIterator<T>(cur, mTable, mBatchSize);// 此时才真正执行查询
+            long queryMillis = SystemClock.uptimeMillis() - start;
+            int batchCount = 0;
+            while (iterator.hasNext()) {
+                if (mCancelled)
+                    return;
+                final List<T> batch = iterator.next();
+                batchCount++;
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        mCallback.onBatch(batch);
+                    }
+                });
+            }
+            final Stats stats = new Stats(iterator.getRowCount(), batchCount, start - mSubmitTime,
+                    queryMillis, SystemClock.uptimeMillis() - start);
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onComplete(stats);
+                }
+            });
+        } catch (final Exception e) {
+            e.printStackTrace();
+            dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.onError(e);
+                }
+            });
+        } finally {
+            if (iterator != null)
+                iterator.close();
+            else if (cur != null)
+                cur.close();
+            mHelper.releaseDatabase();
+        }
+    }
+
+    private void dispatch(final Runnable runnable) {
+        mDispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled)
+                    runnable.run();
+            }
+        });
+    }
+
+    /**
+     * 一次查询的统计信息。
+     */
+    public static final class Stats {
+        public final int rowCount;// 返回的行数
+        public final int batchCount;// 分成的批数
+        public final long waitMillis;// 在队列中等待的时间(毫秒)
+        public final long queryMillis;// 执行查询到第一批结果可读的时间(毫秒)
+        public final long totalMillis;// 在数据库线程中的总耗时(毫秒)
+
+        Stats(int rowCount, int batchCount, long waitMillis, long queryMillis, long totalMillis) {
+            this.rowCount = rowCount;
+            this.batchCount = batchCount;
+            this.waitMillis = waitMillis;
+            this.queryMillis = queryMillis;
+            this.totalMillis = totalMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "{rows=" + rowCount + ", batches=" + batchCount + ", wait=" + waitMillis
+                    + "ms, query=" + queryMillis + "ms, total=" + totalMillis + "ms}";
+        }
+    }
+}
@@ -2,14 +2,33 @@ package com.xengine.android.data.db;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * TODO 数据库管理帮助类
+ * 整个应用共用一个长期打开的数据库连接，不在每次操作后关闭
+ * (SQLiteOpenHelper会缓存打开的连接，反复打开/关闭的开销很大)。
+ * API 11以上开启WAL模式：读操作不阻塞写操作，
+ * 不同线程的读操作由系统的连接池分配只读连接并发执行。
+ * 需要在一段时间内持续使用连接的操作，用acquireDatabase()/releaseDatabase()租用连接，
+ * 租用期间调用close()不会真正关闭，等最后一个租用归还时才关闭。
+ * query()的结果缓存在XQueryCache中，写表的操作用beginWrite()/endWrite()标记，
+ * 只丢弃读取过被写的表的结果。
  * Created by 赵之韵.
  * Date: 11-12-7
  * Time: 下午5:02
@@ -25,6 +44,25 @@ public class XSQLiteHelper extends SQLiteOpenHelper{
         instance = new XSQLiteHelper(context, dbName, dbVersion);
     }
 
+    /**
+     * 执行异步查询的数据库线程(单线程，查询按提交顺序执行)
+     */
+    private static ExecutorService sQueryExecutor;
+
+    private static synchronized ExecutorService getQueryExecutor() {
+        if (sQueryExecutor == null) {
+            sQueryExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "XSQLiteQuery");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sQueryExecutor;
+    }
+
     /**
      * SQLite系统维护的表，记录数据库相关属性信息。
      */
@@ -36,9 +74,32 @@ public class XSQLiteHelper extends SQLiteOpenHelper{
     private static final String TABLE_NAME = "name";
 
     /**
-     * 缓存系统中已经创建的表的名称
+     * 系统表中记录对象类型的字段名称(table、index等)。
+     */
+    private static final String TABLE_TYPE = "type";
+
+    /**
+     * 批量upsert时每个事务写入的行数。
+     */
+    public static final int DEFAULT_UPSERT_CHUNK = 500;
+
+    /**
+     * 支持INSERT ... ON CONFLICT DO UPDATE的最低SQLite版本(3.24.0)。
+     */
+    private static final int UPSERT_SQLITE_VERSION = 3024000;
+
+    /**
+     * 缓存系统中已经创建的表的名称。
+     * 打开数据库时从sqlite_master中读取，创建/删除表时同步更新。
      */
-    private List<String> tables = new ArrayList<String>();
+    private Set<String> tables = new HashSet<String>();
+
+    private List<XDBTable> mRegisteredTables = new ArrayList<XDBTable>();// 升级时需要迁移的数据表
+    private int mLeaseCount;// 当前租用连接的次数
+    private boolean mCloseRequested;// 租用期间被要求关闭，最后一个租用归还时关闭
+    private int mSqliteVersion;// SQLite的版本号(如3.24.0为3024000)，0表示还没查询
+    private Executor mQueryDispatcher;// 执行异步查询回调的线程，null表示主线程
+    private final XQueryCache mQueryCache = new XQueryCache();// 查询结果缓存
 
     /**
      * 初始化SQLiteHelper类
@@ -55,36 +116,135 @@ public class XSQLiteHelper extends SQLiteOpenHelper{
         // 数据表的创建转移到createTable(table)中
     }
 
+    /**
+     * 升级数据库版本时，按注册的数据表声明的字段迁移已有的表，保留原有数据。
+     * 所有表的迁移在同一个事务中(由SQLiteOpenHelper开启)，
+     * 任何一个表迁移出错都会抛出异常并整体回滚，数据库版本号不变。
+     * @see com.xengine.android.data.db.XSQLiteMigration
+     */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // 暂且不进行升级的操作
+        List<XDBTable> registered;
+        synchronized (this) {
+            registered = new ArrayList<XDBTable>(mRegisteredTables);
+        }
+        for (XDBTable table : registered) {
+            XSQLiteMigration.migrate(sqLiteDatabase, table);
+        }
     }
 
     /**
-     * 查询数据库中是否已经存在name所对应的数据表，否则创建。
-     * @param table 数据表对象
+     * 注册数据表。数据库版本升级时，注册过的表会按声明的字段自动迁移。
+     * TIP 应在initiate()之后、第一次使用数据库之前注册所有的数据表
+     * @param table 数据表
      */
-    public boolean isTableExist(XDBTable table) {
-        // 直接查询内部缓存的名称，如果已经存在就没必要去查询数据库了。
-        if(tables.contains(table.getName())) {
-            return true;
+    public synchronized void registerTable(XDBTable table) {
+        for (XDBTable registered : mRegisteredTables) {
+            if (registered.getName().equals(table.getName()))
+                return;
         }
+        mRegisteredTables.add(table);
+    }
 
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        loadTables(db);
+        if (Build.VERSION.SDK_INT >= 11 && !db.isReadOnly()) {
+            try {
+                db.enableWriteAheadLogging();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 从sqlite_master读取所有数据表的名称，重建缓存。
+     */
+    private synchronized void loadTables(SQLiteDatabase db) {
+        tables.clear();
+        Cursor cur = null;
+        try {
+            cur = db.query(SYSTEM_TABLE, new String[] {TABLE_NAME},
+                    TABLE_TYPE + " = ?", new String[] {"table"}, null, null, null);
+            while (cur.moveToNext()) {
+                tables.add(cur.getString(0));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cur != null)
+                cur.close();
+        }
+    }
+
+    /**
+     * 租用数据库连接(引用计数)，用完后必须调用releaseDatabase()。
+     * 所有租用共用同一个长期打开的连接。
+     * @return 返回可读写的数据库连接
+     */
+    public synchronized SQLiteDatabase acquireDatabase() {
         SQLiteDatabase db = getWritableDatabase();
-        // TIP sqlite_master数据表是sqlite数据库维护的系统数据表
-        Cursor cur =
-                db.query(SYSTEM_TABLE, new String[] {TABLE_NAME},
-                        TABLE_NAME + " = " + "'" + table.getName() + "'",
-                        null, null, null, null);
-        if(cur.moveToFirst()) {
-            // 记得cursor使用之后一定要close
-            cur.close();
-            db.close();
-            return true;
-        }else {
-            cur.close();
-            db.close();
-            return false;
+        mLeaseCount++;
+        return db;
+    }
+
+    /**
+     * 归还acquireDatabase()租用的连接。
+     * 如果租用期间调用过close()，最后一个租用归还时关闭连接。
+     */
+    public synchronized void releaseDatabase() {
+        if (mLeaseCount > 0)
+            mLeaseCount--;
+        if (mLeaseCount == 0 && mCloseRequested) {
+            mCloseRequested = false;
+            super.close();
+        }
+    }
+
+    /**
+     * 关闭数据库连接。还有租用没有归还时，延迟到最后一个租用归还时关闭。
+     * TIP 一般不需要调用，连接在应用的整个生命周期内保持打开
+     */
+    @Override
+    public synchronized void close() {
+        if (mLeaseCount > 0) {
+            mCloseRequested = true;
+            return;
+        }
+        mCloseRequested = false;
+        super.close();
+    }
+
+    /**
+     * 查询数据库中是否已经存在name所对应的数据表。
+     * 打开数据库后只查内部缓存，不再访问数据库。
+     * @param table 数据表对象
+     */
+    public boolean isTableExist(XDBTable table) {
+        SQLiteDatabase db = acquireDatabase();// 保证数据库已打开(缓存已加载)
+        try {
+            synchronized (this) {
+                // 直接查询内部缓存的名称，如果已经存在就没必要去查询数据库了。
+                if(tables.contains(table.getName())) {
+                    return true;
+                }
+            }
+            // 缓存中没有时再确认一次(表可能是绕过本类创建的)
+            // TIP sqlite_master数据表是sqlite数据库维护的系统数据表
+            boolean exist = DatabaseUtils.longForQuery(db,
+                    "SELECT EXISTS(SELECT 1 FROM " + SYSTEM_TABLE + " WHERE "
+                            + TABLE_TYPE + " = 'table' AND " + TABLE_NAME + " = ?)",
+                    new String[] {table.getName()}) != 0;
+            if (exist) {
+                synchronized (this) {
+                    tables.add(table.getName());
+                }
+            }
+            return exist;
+        } finally {
+            releaseDatabase();
         }
     }
 
@@ -93,9 +253,27 @@ public class XSQLiteHelper extends SQLiteOpenHelper{
      * @param table 要创建的数据表
      */
     public void createTable(XDBTable table) {
-        SQLiteDatabase db = getWritableDatabase();
-        db.execSQL(table.createTableString());
-        db.close();
+        SQLiteDatabase db = acquireDatabase();
+        try {
+            db.execSQL(table.createTableString());
+            createIndexes(db, table);
+            synchronized (this) {
+                tables.add(table.getName());
+            }
+        } finally {
+            releaseDatabase();
+        }
+    }
+
+    /**
+     * 创建数据表声明的索引(已存在的索引跳过)
+     */
+    static void createIndexes(SQLiteDatabase db, XDBTable table) {
+        if (!(table instanceof XBaseDBTable))
+            return;
+        for (String sql : ((XBaseDBTable) table).createIndexStrings()) {
+            db.execSQL(sql);
+        }
     }
 
     /**
@@ -103,9 +281,20 @@ public class XSQLiteHelper extends SQLiteOpenHelper{
      * @param table 要删除的数据表对象
      */
     public void dropTable(XDBTable table) {
-        SQLiteDatabase db = getWritableDatabase();
-        db.execSQL("DROP TABLE " + table.getName());
-        db.close();
+        SQLiteDatabase db = acquireDatabase();
+        try {
+            beginWrite(table);
+            try {
+                db.execSQL("DROP TABLE " + table.getName());
+            } finally {
+                endWrite(table);
+            }
+            synchronized (this) {
+                tables.remove(table.getName());
+            }
+        } finally {
+            releaseDatabase();
+        }
     }
 
     /**
@@ -118,7 +307,7 @@ public class XSQLiteHelper extends SQLiteOpenHelper{
     }
 
     /**
-     * 数据表是否为空
+     * 数据表是否为空(只探测第一行，与表的大小无关)
      * @param table
      * @return
      */
@@ -126,13 +315,241 @@ public class XSQLiteHelper extends SQLiteOpenHelper{
         if(!isTableExist(table)) {
             return false;
         }
+        return !exists(table, null, null);
+    }
+
+    /**
+     * 数据表中是否存在满足条件的数据。
+     * 找到第一行就返回，不会遍历整张表。
+     * @param table 数据表
+     * @param selection WHERE子句(不含WHERE)，可用?占位;null表示不限制
+     * @param selectionArgs 绑定到?的参数
+     */
+    public boolean exists(XDBTable table, String selection, String[] selectionArgs) {
+        StringBuilder sql = new StringBuilder("SELECT EXISTS(SELECT 1 FROM ")
+                .append(table.getName());
+        if (selection != null)
+            sql.append(" WHERE ").append(selection);
+        sql.append(")");
+        return queryLong(sql.toString(), selectionArgs) != 0;
+    }
+
+    /**
+     * 返回数据表中满足条件的数据条数(COUNT(*)，不把数据读到Cursor中)。
+     * @param table 数据表
+     * @param selection WHERE子句(不含WHERE)，可用?占位;null表示不限制
+     * @param selectionArgs 绑定到?的参数
+     */
+    public long count(XDBTable table, String selection, String[] selectionArgs) {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM ")
+                .append(table.getName());
+        if (selection != null)
+            sql.append(" WHERE ").append(selection);
+        return queryLong(sql.toString(), selectionArgs);
+    }
+
+    /**
+     * 在数据库线程中异步查询，结果按批次发送给回调，不需要等整个结果集读完。
+     * @param table 数据表
+     * @param selection WHERE子句(不含WHERE)，可用?占位;null表示查询所有数据
+     * @param selectionArgs 绑定到?的参数
+     * @param orderBy ORDER BY子句(不含ORDER BY)，可为null
+     * @param batchSize 每批的行数
+     * @param callback 回调(在setQueryDispatcher()指定的线程中执行，默认为主线程)
+     * @return 返回查询任务，可用于取消查询
+     */
+    public <T> XQueryTask<T> queryAsync(XDBTable<T> table, String selection, String[] selectionArgs,
+                                        String orderBy, int batchSize, XQueryCallback<T> callback) {
+        XQueryTask<T> task = new XQueryTask<T>(this, table, selection, selectionArgs,
+                orderBy, batchSize, callback, getQueryDispatcher());
+        getQueryExecutor().execute(task);
+        return task;
+    }
+
+    /**
+     * 设置执行异步查询回调的线程。
+     * @param dispatcher 为null表示主线程
+     */
+    public synchronized void setQueryDispatcher(Executor dispatcher) {
+        mQueryDispatcher = dispatcher;
+    }
+
+    private synchronized Executor getQueryDispatcher() {
+        if (mQueryDispatcher == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            mQueryDispatcher = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return mQueryDispatcher;
+    }
+
+    /**
+     * 批量插入或更新数据，每DEFAULT_UPSERT_CHUNK行一个事务。
+     * @see #upsert(XDBTable, java.util.List, String[], int)
+     */
+    public <T> int upsert(XDBTable<T> table, List<T> items, String[] keyColumns) {
+        return upsert(table, items, keyColumns, DEFAULT_UPSERT_CHUNK);
+    }
+
+    /**
+     * 批量插入或更新数据。
+     * 整个批次只编译一条语句(见XUpsertWriter)，按chunkSize分成多个事务提交，
+     * 既避免每行一个事务，也避免一个大事务长时间占住数据库。
+     * TIP 整个批次不是原子的：某个事务出错时该事务回滚并抛出异常，之后的数据不再写入，
+     * 但之前已经提交的事务会保留。upsert是幂等的，出错后可以直接重试整个批次
+     * @param table 数据表
+     * @param items 数据
+     * @param keyColumns 唯一键字段(必须有对应的主键或唯一索引);为null时使用INSERT OR REPLACE
+     * @param chunkSize 每个事务写入的行数
+     * @return 返回写入的行数(即items的数量)
+     * @throws android.database.SQLException 写入出错(如违反约束)
+     */
+    public <T> int upsert(XDBTable<T> table, List<T> items, String[] keyColumns, int chunkSize) {
+        if (items == null || items.isEmpty())
+            return 0;
+        int chunk = Math.max(1, chunkSize);
+        createIfNotExist(table);
+        SQLiteDatabase db = acquireDatabase();
+        XUpsertWriter<T> writer = null;
+        beginWrite(table);
+        try {
+            writer = new XUpsertWriter<T>(db, table, keyColumns, supportsUpsert(db));
+            for (int from = 0; from < items.size(); from += chunk) {
+                int to = Math.min(items.size(), from + chunk);
+                db.beginTransaction();
+                try {
+                    writer.upsert(items, from, to);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            if (writer != null)
+                writer.close();
+            endWrite(table);
+            releaseDatabase();
+        }
+        return items.size();
+    }
+
+    /**
+     * 查询数据表，结果先从缓存中找，没有时再查数据库并放入缓存。
+     * TIP 返回的列表不可修改，其中的数据与其他调用者共享，不要修改
+     * @param table 数据表
+     * @param selection WHERE子句(不含WHERE)，可用?占位;null表示查询所有数据
+     * @param selectionArgs 绑定到?的参数
+     * @param orderBy ORDER BY子句(不含ORDER BY)，可为null
+     * @return 返回查询结果;出错时返回空列表(不缓存)
+     * @see com.xengine.android.data.db.XQueryCache
+     */
+    public <T> List<T> query(XDBTable<T> table, String selection, String[] selectionArgs,
+                             String orderBy) {
+        createIfNotExist(table);
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(table.getName());
+        if (selection != null)
+            sql.append(" WHERE ").append(selection);
+        if (orderBy != null)
+            sql.append(" ORDER BY ").append(orderBy);
+        return rawQuery(sql.toString(), selectionArgs, table, table.getName());
+    }
 
-        SQLiteDatabase db = getReadableDatabase();
-        Cursor cur = db.rawQuery("SELECT * FROM " + table.getName(), null);
-        boolean result = (cur.getCount() == 0);
+    /**
+     * 执行任意SELECT语句(如多表连接)，结果缓存在XQueryCache中。
+     * @param sql SELECT语句，可用?占位
+     * @param selectionArgs 绑定到?的参数
+     * @param mapper 用getFilledInstance()把每行转为数据
+     * @param tableNames 语句读取的所有表(写这些表时丢弃缓存的结果)，必须列全
+     * @return 返回查询结果;出错时返回空列表(不缓存)
+     * @throws IllegalArgumentException 没有列出读取的表
+     */
+    public <T> List<T> rawQuery(String sql, String[] selectionArgs, XDBTable<T> mapper,
+                                String... tableNames) {
+        if (tableNames == null || tableNames.length == 0)
+            throw new IllegalArgumentException("Tables read by the query must be listed.");
+        XQueryCache.Key key = new XQueryCache.Key(sql, selectionArgs, mapper);
+        List<T> cached = mQueryCache.get(key);
+        if (cached != null)
+            return cached;
 
-        cur.close();
-        db.close();
+        long stamp = mQueryCache.stamp(tableNames);
+        List<T> result = new ArrayList<T>();
+        SQLiteDatabase db = acquireDatabase();
+        Cursor cur = null;
+        try {
+            cur = db.rawQuery(sql, selectionArgs);
+            while (cur.moveToNext()) {
+                result.add(mapper.getFilledInstance(cur));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        } finally {
+            if (cur != null)
+                cur.close();
+            releaseDatabase();
+        }
+        result = Collections.unmodifiableList(result);
+        mQueryCache.put(key, tableNames.clone(), stamp, result);
         return result;
     }
+
+    /**
+     * 返回查询结果缓存(用于设置内存上限、查看命中率等)。
+     */
+    public XQueryCache getQueryCache() {
+        return mQueryCache;
+    }
+
+    /**
+     * 标记开始写数据表：丢弃读取过该表的缓存结果，写完前该表的查询结果不进入缓存。
+     * 绕过本类写表的代码必须在开启事务前调用，并在事务结束(endTransaction())后调用endWrite()。
+     * @param table 要写的数据表
+     */
+    public void beginWrite(XDBTable table) {
+        mQueryCache.beginWrite(table.getName());
+    }
+
+    /**
+     * 标记结束写数据表(事务已提交或回滚)。
+     * @param table 写完的数据表
+     * @see #beginWrite(XDBTable)
+     */
+    public void endWrite(XDBTable table) {
+        mQueryCache.endWrite(table.getName());
+    }
+
+    /**
+     * 数据库是否支持INSERT ... ON CONFLICT DO UPDATE语法(SQLite 3.24以上，约API 30)
+     */
+    private synchronized boolean supportsUpsert(SQLiteDatabase db) {
+        if (mSqliteVersion == 0) {
+            mSqliteVersion = -1;
+            try {
+                String[] parts = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null)
+                        .split("\\.");
+                int version = 0;
+                for (int i = 0; i < 3; i++) {
+                    version = version * 1000 + (i < parts.length ? Integer.parseInt(parts[i]) : 0);
+                }
+                mSqliteVersion = version;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return mSqliteVersion >= UPSERT_SQLITE_VERSION;
+    }
+
+    private long queryLong(String sql, String[] args) {
+        SQLiteDatabase db = acquireDatabase();
+        try {
+            return DatabaseUtils.longForQuery(db, sql, args);
+        } finally {
+            releaseDatabase();
+        }
+    }
 }
@@ -0,0 +1,165 @@
+package com.xengine.android.data.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 根据数据表声明的字段升级数据库中已有的表，保留原有数据。
+ * 用PRAGMA table_info读取表中实际的字段，与XDBTable声明的字段比较(字段名不区分大小写)：
+ * 1.只新增了字段，且新字段没有约束：逐个ALTER TABLE ADD COLUMN(只改表结构，与数据量无关);
+ * 2.删除了字段，或新字段有约束(UNIQUE、NOT NULL等不能用ALTER TABLE添加)：
+ *   把旧表改名，按声明重新建表，用一条INSERT ... SELECT复制共有字段的数据，再删除旧表。
+ *   数据复制完全在SQLite内部进行，不经过Java层。
+ * 如果数据无法复制到新表(如新增了没有默认值的NOT NULL字段)，直接抛出异常，
+ * 由调用者的事务整体回滚，旧表和数据保持原样，不会丢数据。
+ * 新旧表没有任何共有字段时，该表重建为空表。
+ * 最后创建数据表声明的、还不存在的索引。
+ * TIP 主键或WITHOUT ROWID的变化不会触发重建，只比较字段
+ * TIP 应在事务中调用(XSQLiteHelper.onUpgrade()本身就在事务中)，失败时整体回滚
+ */
+public final class XSQLiteMigration {
+
+    public static final int NONE = 0;// 表不存在或表结构一致，什么都不做
+    public static final int ALTERED = 1;// 用ALTER TABLE新增了字段
+    public static final int REBUILT = 2;// 重建了表，并复制了原有数据
+    public static final int RECREATED = 3;// 重建了表，没有共有字段，原有数据无法保留
+
+    private static final String ID_COLUMN = "_id";// XBaseDBTable自动添加的主键
+    private static final String OLD_SUFFIX = "_xmigrate_old";// 重建时旧表的临时后缀
+
+    private XSQLiteMigration() {}
+
+    /**
+     * 把数据库中的表升级为table声明的结构。
+     * @param db 数据库
+     * @param table 数据表
+     * @return 返回NONE、ALTERED、REBUILT或RECREATED
+     * @throws android.database.SQLException 升级失败(如数据无法复制到新表)，调用者应回滚事务
+     */
+    public static int migrate(SQLiteDatabase db, XDBTable table) {
+        int result = migrateColumns(db, table);
+        if (result != NONE || tableExists(db, table.getName()))
+            XSQLiteHelper.createIndexes(db, table);// 补上新声明的索引(重建的表也需要重新创建)
+        return result;
+    }
+
+    private static boolean tableExists(SQLiteDatabase db, String tableName) {
+        return !getTableColumns(db, tableName).isEmpty();
+    }
+
+    private static int migrateColumns(SQLiteDatabase db, XDBTable table) {
+        String name = table.getName();
+        LinkedHashMap<String, String> existing = getTableColumns(db, name);
+        if (existing.isEmpty())
+            return NONE;// 表不存在，使用时再创建
+        LinkedHashMap<String, String> declared = getDeclaredColumns(table);
+
+        List<String> added = new ArrayList<String>();
+        for (String key : declared.keySet()) {
+            if (!existing.containsKey(key))
+                added.add(declared.get(key));
+        }
+        boolean removed = false;
+        for (String key : existing.keySet()) {
+            if (!declared.containsKey(key)) {
+                removed = true;
+                break;
+            }
+        }
+        if (added.isEmpty() && !removed)
+            return NONE;
+
+        if (!removed && canAddColumns(table, added)) {
+            XBaseDBTable baseTable = (XBaseDBTable) table;
+            for (String column : added) {
+                db.execSQL("ALTER TABLE " + name + " ADD COLUMN "
+                        + column + " " + baseTable.getColumnType(column));
+            }
+            return ALTERED;
+        }
+        return rebuild(db, table, existing, declared);
+    }
+
+    /**
+     * 改名旧表 -> 重新建表 -> 复制共有字段 -> 删除旧表。
+     * 复制失败时异常直接抛出，不会删除旧表。
+     */
+    private static int rebuild(SQLiteDatabase db, XDBTable table,
+                               LinkedHashMap<String, String> existing,
+                               LinkedHashMap<String, String> declared) {
+        String name = table.getName();
+        String oldName = name + OLD_SUFFIX;
+        db.execSQL("DROP TABLE IF EXISTS " + oldName);
+        db.execSQL("ALTER TABLE " + name + " RENAME TO " + oldName);
+        db.execSQL(table.createTableString());
+
+        StringBuilder common = new StringBuilder();
+        for (String key : declared.keySet()) {
+            if (existing.containsKey(key)) {
+                if (common.length() > 0)
+                    common.append(", ");
+                common.append(declared.get(key));
+            }
+        }
+        int result = RECREATED;
+        if (common.length() > 0) {
+            db.execSQL("INSERT INTO " + name + " (" + common + ") SELECT "
+                    + common + " FROM " + oldName);
+            result = REBUILT;
+        }
+        db.execSQL("DROP TABLE " + oldName);
+        return result;
+    }
+
+    /**
+     * 新增的字段是否都能用ALTER TABLE ADD COLUMN添加(没有约束，且知道字段类型)
+     */
+    private static boolean canAddColumns(XDBTable table, List<String> added) {
+        if (!(table instanceof XBaseDBTable))
+            return false;
+        XBaseDBTable baseTable = (XBaseDBTable) table;
+        for (String column : added) {
+            if (baseTable.getColumnType(column) == null
+                    || baseTable.getColumnConstraint(column) != null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 返回数据表声明的字段(小写字段名 -> 字段名)
+     */
+    private static LinkedHashMap<String, String> getDeclaredColumns(XDBTable table) {
+        LinkedHashMap<String, String> result = new LinkedHashMap<String, String>();
+        if (table instanceof XBaseDBTable && ((XBaseDBTable) table).getPrimaryKey() == null)
+            result.put(ID_COLUMN, ID_COLUMN);
+        for (String column : table.getColumns())
+            result.put(column.toLowerCase(Locale.US), column);
+        return result;
+    }
+
+    /**
+     * 返回数据库中表的实际字段(小写字段名 -> 字段名);表不存在返回空
+     */
+    public static LinkedHashMap<String, String> getTableColumns(SQLiteDatabase db, String tableName) {
+        LinkedHashMap<String, String> result = new LinkedHashMap<String, String>();
+        Cursor cur = null;
+        try {
+            cur = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+            int nameIndex = cur.getColumnIndex("name");
+            while (cur.moveToNext()) {
+                String column = cur.getString(nameIndex);
+                result.put(column.toLowerCase(Locale.US), column);
+            }
+        } finally {
+            if (cur != null)
+                cur.close();
+        }
+        return result;
+    }
+}
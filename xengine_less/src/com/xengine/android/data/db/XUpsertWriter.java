@@ -0,0 +1,114 @@
+package com.xengine.android.data.db;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 批量插入或更新(upsert)数据表的工具类。
+ * 整个批次只编译一条语句，之后每行只绑定参数再执行：
+ * 1.数据库支持(SQLite 3.24以上)且指定了唯一键时，使用
+ *   INSERT ... ON CONFLICT (唯一键) DO UPDATE SET ...，已有的行原地更新(rowid不变);
+ * 2.否则使用INSERT OR REPLACE，冲突的旧行被删除后插入新行。
+ * 数据表是XBaseBoundDBTable时，属性直接绑定到语句上，不创建ContentValues;
+ * 否则通过getContentValues()取值，ContentValues中没有的字段写入NULL。
+ * TIP 应在调用者开启的事务中使用，用完后调用close()释放语句。一般直接用XSQLiteHelper.upsert()
+ * 非线程安全。
+ */
+public final class XUpsertWriter<T> {
+
+    private final XDBTable<T> mTable;// 数据表
+    private final String[] mColumns;// 写入的字段(与参数顺序一致)
+    private final SQLiteStatement mStatement;// 编译好的语句
+    private final boolean mBound;// 是否直接绑定属性
+
+    /**
+     * @param db 数据库连接
+     * @param table 数据表
+     * @param keyColumns 唯一键字段(必须有对应的主键或唯一索引);为null时使用INSERT OR REPLACE
+     * @param supportsUpsert 数据库是否支持ON CONFLICT DO UPDATE语法
+     */
+    public XUpsertWriter(SQLiteDatabase db, XDBTable<T> table, String[] keyColumns,
+                         boolean supportsUpsert) {
+        mTable = table;
+        String[] bound = table instanceof XBaseBoundDBTable
+                ? ((XBaseBoundDBTable<T>) table).getBoundColumns() : null;
+        mBound = bound != null && bound.length > 0;
+        mColumns = mBound ? bound : table.getColumns();
+        boolean onConflict = supportsUpsert && keyColumns != null && keyColumns.length > 0;
+        mStatement = db.compileStatement(buildSql(table.getName(), mColumns,
+                onConflict ? keyColumns : null));
+    }
+
+    /**
+     * 插入或更新一行。
+     */
+    public void upsert(T item) {
+        mStatement.clearBindings();
+        if (mBound) {
+            ((XBaseBoundDBTable<T>) mTable).bindStatement(item, mStatement);
+        } else {
+            ContentValues values = mTable.getContentValues(item);
+            for (int i = 0; i < mColumns.length; i++)
+                XBatchWriter.bind(mStatement, i + 1, values.get(mColumns[i]));
+        }
+        mStatement.execute();
+    }
+
+    /**
+     * 插入或更新items中[from, to)的所有行。
+     */
+    public void upsert(List<T> items, int from, int to) {
+        for (int i = from; i < to; i++)
+            upsert(items.get(i));
+    }
+
+    /**
+     * 释放编译好的语句。
+     */
+    public void close() {
+        mStatement.close();
+    }
+
+    private static String buildSql(String tableName, String[] columns, String[] keyColumns) {
+        StringBuilder sql = new StringBuilder(keyColumns == null ? "INSERT OR REPLACE INTO " : "INSERT INTO ")
+                .append(tableName).append(" (");
+        StringBuilder params = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(',');
+                params.append(',');
+            }
+            sql.append(columns[i]);
+            params.append('?');
+        }
+        sql.append(") VALUES (").append(params).append(')');
+        if (keyColumns == null)
+            return sql.toString();
+
+        sql.append(" ON CONFLICT (");
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0)
+                sql.append(',');
+            sql.append(keyColumns[i]);
+        }
+        sql.append(')');
+        List<String> keys = Arrays.asList(keyColumns);
+        StringBuilder updates = new StringBuilder();
+        for (String column : columns) {
+            if (keys.contains(column))
+                continue;
+            if (updates.length() > 0)
+                updates.append(',');
+            updates.append(column).append(" = excluded.").append(column);
+        }
+        if (updates.length() == 0)
+            sql.append(" DO NOTHING");// 只有唯一键字段，已存在时不需要更新
+        else
+            sql.append(" DO UPDATE SET ").append(updates);
+        return sql.toString();
+    }
+}
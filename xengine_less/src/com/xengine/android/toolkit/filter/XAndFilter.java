@@ -0,0 +1,127 @@
+package com.xengine.android.toolkit.filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * <pre>
+ * 组合过滤器：所有子过滤器都通过才算通过(与)。
+ * 构造时会展开嵌套的XAndFilter并去掉null，编译成一个扁平的过滤器数组。
+ * 子过滤器按顺序执行，后一个的输入是前一个的输出(过滤器可以转换数据)。
+ * 批量过滤时逐个子过滤器缩小候选集，后面的子过滤器只检查前面留下来的项目。
+ * </pre>
+ */
+public class XAndFilter<T> extends XBaseFilter<T> {
+
+    private final XFilter<T>[] mFilters;
+
+    public XAndFilter(XFilter<T> first, XFilter<T> second) {
+        this(pair(first, second));
+    }
+
+    /**
+     * @param filters 子过滤器(按顺序执行，null会被忽略)
+     */
+    public XAndFilter(List<XFilter<T>> filters) {
+        List<XFilter<T>> flat = new ArrayList<XFilter<T>>(filters.size());
+        for (XFilter<T> filter : filters) {
+            if (filter == null)
+                continue;
+            if (filter instanceof XAndFilter) {
+                for (XFilter<T> child : ((XAndFilter<T>) filter).mFilters)
+                    flat.add(child);
+            } else {
+                flat.add(filter);
+            }
+        }
+        mFilters = flat.toArray(XAndFilter.<T>newArray(flat.size()));
+    }
+
+    private static <T> List<XFilter<T>> pair(XFilter<T> first, XFilter<T> second) {
+        List<XFilter<T>> filters = new ArrayList<XFilter<T>>(2);
+        filters.add(first);
+        filters.add(second);
+        return filters;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> XFilter<T>[] newArray(int size) {
+        return new XFilter[size];
+    }
+
+    /**
+     * 依次执行子过滤器，后一个子过滤器的输入是前一个的输出。
+     * @return 有子过滤器过滤掉时返回null；否则返回最后一个子过滤器的输出
+     */
+    @Override
+    public T doFilter(T source) {
+        T result = source;
+        for (XFilter<T> filter : mFilters) {
+            result = filter.doFilter(result);
+            if (result == null)
+                return null;
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int doFilter(List<T> source, List<T> out) {
+        if (!(source instanceof RandomAccess))
+            return super.doFilter(source, out);
+
+        Object[] values = new Object[source.size()];
+        BitSet candidates = filter(source, values);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+            out.add((T) values[i]);
+        return candidates.cardinality();
+    }
+
+    @Override
+    public int doFilter(List<T> source, BitSet out) {
+        if (!(source instanceof RandomAccess))
+            return super.doFilter(source, out);
+
+        BitSet candidates = filter(source, new Object[source.size()]);
+        out.or(candidates);
+        return candidates.cardinality();
+    }
+
+    /**
+     * 逐个子过滤器缩小候选集，后面的子过滤器只检查前面留下来的项目。
+     * @param values 输出每个候选项目经过所有子过滤器后的值
+     * @return 返回通过所有子过滤器的项目
+     */
+    @SuppressWarnings("unchecked")
+    private BitSet filter(List<T> source, Object[] values) {
+        final int size = source.size();
+        BitSet candidates = new BitSet(size);
+        if (mFilters.length == 0) {
+            candidates.set(0, size);
+            for (int i = 0; i < size; i++)
+                values[i] = source.get(i);
+            return candidates;
+        }
+        XFilter<T> first = mFilters[0];
+        for (int i = 0; i < size; i++) {
+            T result = first.doFilter(source.get(i));
+            if (result != null) {
+                candidates.set(i);
+                values[i] = result;
+            }
+        }
+        for (int f = 1; f < mFilters.length && !candidates.isEmpty(); f++) {
+            XFilter<T> filter = mFilters[f];
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                T result = filter.doFilter((T) values[i]);
+                if (result == null)
+                    candidates.clear(i);
+                else
+                    values[i] = result;
+            }
+        }
+        return candidates;
+    }
+}
@@ -1,7 +1,10 @@
 package com.xengine.android.toolkit.filter;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Created with IntelliJ IDEA.
@@ -10,16 +13,78 @@ import java.util.List;
  * Time: 上午10:14
  * To change this template use File | Settings | File Templates.
  */
-public abstract class XBaseFilter<T> implements XFilter<T> {
+public abstract class XBaseFilter<T> implements XBulkFilter<T> {
     @Override
     public List<T> doFilter(List<T> source) {
-        List<T> result = new ArrayList<T>();
-        final int size = source.size();
-        for (int i = 0; i < size; i++) {
-            T data = doFilter(source.get(i));
-            if (data != null)
-                result.add(data);
-        }
+        List<T> result = new ArrayList<T>(source.size());
+        doFilter(source, result);
         return result;
     }
+
+    @Override
+    public int doFilter(List<T> source, List<T> out) {
+        int count = 0;
+        if (source instanceof RandomAccess) {
+            final int size = source.size();
+            for (int i = 0; i < size; i++) {
+                T data = doFilter(source.get(i));
+                if (data != null) {
+                    out.add(data);
+                    count++;
+                }
+            }
+        } else {
+            // LinkedList等不支持随机访问的列表，用迭代器避免O(n^2)
+            for (T item : source) {
+                T data = doFilter(item);
+                if (data != null) {
+                    out.add(data);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int doFilter(List<T> source, BitSet out) {
+        int count = 0;
+        if (source instanceof RandomAccess) {
+            final int size = source.size();
+            for (int i = 0; i < size; i++) {
+                if (doFilter(source.get(i)) != null) {
+                    out.set(i);
+                    count++;
+                }
+            }
+        } else {
+            Iterator<T> it = source.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                if (doFilter(it.next()) != null) {
+                    out.set(i);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 用任意过滤器批量过滤，结果写入BitSet。
+     * 如果是XBulkFilter，走批量接口；否则逐项调用doFilter(T)。
+     */
+    static <T> int doFilter(XFilter<T> filter, List<T> source, BitSet out) {
+        if (filter instanceof XBulkFilter)
+            return ((XBulkFilter<T>) filter).doFilter(source, out);
+
+        int count = 0;
+        Iterator<T> it = source.iterator();
+        for (int i = 0; it.hasNext(); i++) {
+            if (filter.doFilter(it.next()) != null) {
+                out.set(i);
+                count++;
+            }
+        }
+        return count;
+    }
 }
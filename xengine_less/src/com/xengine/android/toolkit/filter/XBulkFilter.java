@@ -0,0 +1,31 @@
+package com.xengine.android.toolkit.filter;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * <pre>
+ * 支持批量过滤的过滤器接口。
+ * 过滤结果写入调用者传入的容器，避免每次过滤都分配新的列表。
+ * </pre>
+ */
+public interface XBulkFilter<T> extends XFilter<T> {
+
+    /**
+     * 将源数据列表中符合过滤条件的项目追加到out中。
+     * （注意不要对输入的参数source进行修改）
+     * @param source 源数据
+     * @param out 输出结果(追加，不会清空)
+     * @return 返回符合条件的项目数
+     */
+    int doFilter(List<T> source, List<T> out);
+
+    /**
+     * 将源数据列表中符合过滤条件的项目在out中对应的位置1。
+     * 只会设置位，不会清除已有的位。
+     * @param source 源数据
+     * @param out 输出结果，第i位表示source.get(i)符合条件
+     * @return 返回符合条件的项目数
+     */
+    int doFilter(List<T> source, BitSet out);
+}
@@ -0,0 +1,50 @@
+package com.xengine.android.toolkit.filter;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * <pre>
+ * 取反过滤器：原过滤器过滤掉的项目通过，通过的项目被过滤掉(非)。
+ * </pre>
+ */
+public class XNotFilter<T> extends XBaseFilter<T> {
+
+    private final XFilter<T> mFilter;
+
+    public XNotFilter(XFilter<T> filter) {
+        if (filter == null)
+            throw new NullPointerException("Filter can not be null.");
+        mFilter = filter;
+    }
+
+    /**
+     * 对过滤器取反。如果本身是取反过滤器，直接返回原过滤器。
+     * @param filter 过滤器
+     * @return 返回取反后的过滤器
+     */
+    public static <T> XFilter<T> negate(XFilter<T> filter) {
+        if (filter instanceof XNotFilter)
+            return ((XNotFilter<T>) filter).mFilter;
+        return new XNotFilter<T>(filter);
+    }
+
+    @Override
+    public T doFilter(T source) {
+        return mFilter.doFilter(source) == null ? source : null;
+    }
+
+    @Override
+    public int doFilter(List<T> source, BitSet out) {
+        if (!(source instanceof RandomAccess))
+            return super.doFilter(source, out);
+
+        final int size = source.size();
+        BitSet bits = new BitSet(size);
+        doFilter(mFilter, source, bits);
+        bits.flip(0, size);
+        out.or(bits);
+        return bits.cardinality();
+    }
+}
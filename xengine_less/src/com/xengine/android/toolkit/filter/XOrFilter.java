@@ -0,0 +1,94 @@
+package com.xengine.android.toolkit.filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * <pre>
+ * 组合过滤器：任一子过滤器通过就算通过(或)。
+ * 构造时会展开嵌套的XOrFilter并去掉null，编译成一个扁平的过滤器数组。
+ * 批量过滤时，后面的子过滤器只检查前面还没通过的项目。
+ * </pre>
+ */
+public class XOrFilter<T> extends XBaseFilter<T> {
+
+    private final XFilter<T>[] mFilters;
+
+    public XOrFilter(XFilter<T> first, XFilter<T> second) {
+        this(pair(first, second));
+    }
+
+    /**
+     * @param filters 子过滤器(按顺序执行，null会被忽略)
+     */
+    public XOrFilter(List<XFilter<T>> filters) {
+        List<XFilter<T>> flat = new ArrayList<XFilter<T>>(filters.size());
+        for (XFilter<T> filter : filters) {
+            if (filter == null)
+                continue;
+            if (filter instanceof XOrFilter) {
+                for (XFilter<T> child : ((XOrFilter<T>) filter).mFilters)
+                    flat.add(child);
+            } else {
+                flat.add(filter);
+            }
+        }
+        mFilters = flat.toArray(XOrFilter.<T>newArray(flat.size()));
+    }
+
+    private static <T> List<XFilter<T>> pair(XFilter<T> first, XFilter<T> second) {
+        List<XFilter<T>> filters = new ArrayList<XFilter<T>>(2);
+        filters.add(first);
+        filters.add(second);
+        return filters;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> XFilter<T>[] newArray(int size) {
+        return new XFilter[size];
+    }
+
+    @Override
+    public T doFilter(T source) {
+        for (XFilter<T> filter : mFilters) {
+            if (filter.doFilter(source) != null)
+                return source;
+        }
+        return null;
+    }
+
+    @Override
+    public int doFilter(List<T> source, List<T> out) {
+        if (!(source instanceof RandomAccess))
+            return super.doFilter(source, out);
+
+        BitSet bits = new BitSet(source.size());
+        int count = doFilter(source, bits);
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+            out.add(source.get(i));
+        return count;
+    }
+
+    @Override
+    public int doFilter(List<T> source, BitSet out) {
+        if (!(source instanceof RandomAccess))
+            return super.doFilter(source, out);
+
+        final int size = source.size();
+        BitSet accepted = new BitSet(size);
+        if (mFilters.length > 0) {
+            doFilter(mFilters[0], source, accepted);
+            for (int f = 1; f < mFilters.length; f++) {
+                XFilter<T> filter = mFilters[f];
+                for (int i = accepted.nextClearBit(0); i < size; i = accepted.nextClearBit(i + 1)) {
+                    if (filter.doFilter(source.get(i)) != null)
+                        accepted.set(i);
+                }
+            }
+        }
+        out.or(accepted);
+        return accepted.cardinality();
+    }
+}
@@ -5,6 +5,8 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
 
+import java.util.concurrent.Executor;
+
 /**
  * <pre>
  * 后台Handler。即运行在非UI线程的Handler。
@@ -19,6 +21,7 @@ public class XDeamonHandler implements XHandler {
 
     private HandlerThread mDeamonThread;
     private Handler mDeamonHandler;
+    private XPriorityExecutor mExecutor;
 
     public XDeamonHandler(String name, Handler.Callback callback) {
         mDeamonThread = new HandlerThread(name);
@@ -40,6 +43,20 @@ public class XDeamonHandler implements XHandler {
         return mDeamonHandler;
     }
 
+    @Override
+    public synchronized XPriorityExecutor getExecutor() {
+        if (mExecutor == null) {
+            // 优先级队列的任务通过post()在后台线程上顺序执行
+            mExecutor = new XPriorityExecutorImpl(new Executor() {
+                @Override
+                public void execute(Runnable runnable) {
+                    mDeamonHandler.post(runnable);
+                }
+            });
+        }
+        return mExecutor;
+    }
+
     @Override
     public boolean isAlive() {
         return mDeamonThread.isAlive();
@@ -47,6 +64,10 @@ public class XDeamonHandler implements XHandler {
 
     @Override
     public boolean quit() {
+        synchronized (this) {
+            if (mExecutor != null)
+                mExecutor.shutdown();
+        }
         if (Build.VERSION.SDK_INT >= 18) {
             return mDeamonThread.quitSafely();
         } else {
@@ -16,6 +16,13 @@ public interface XHandler {
      */
     Handler getHandler();
 
+    /**
+     * 获取运行在该handler线程上的优先级执行器。
+     * 适合需要区分优先级、去重或丢弃的后台任务。
+     * @return 返回优先级执行器
+     */
+    XPriorityExecutor getExecutor();
+
     /**
      * @return 返回handler是否存活。
      */
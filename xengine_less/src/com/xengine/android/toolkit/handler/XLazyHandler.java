@@ -2,13 +2,16 @@ package com.xengine.android.toolkit.handler;
 
 import android.os.Handler;
 import android.os.Message;
-import com.xengine.android.toolkit.switcher.XBooleanSwitcher;
+import com.xengine.android.toolkit.switcher.XAtomicSwitcher;
+
+import java.util.LinkedList;
 
 /**
  * <pre>
  * 延迟响应处理的Handler。
  * 在没有调用startHandle()前，该Handler可以缓存所有发到该Handler的消息，
  * 并在调用startHandle()后开始顺序处理所有缓存的消息。
+ * 缓存期间后台线程不会被阻塞，getExecutor()提交的任务也会等到startHandle()后才执行。
  * 该类可以应用在Service中需要等待初始化后才能响应外部intent调用的情况下，
  * 作为缓存外部Intent请求的队列。
  * User: jasontujun
@@ -18,25 +21,62 @@ import com.xengine.android.toolkit.switcher.XBooleanSwitcher;
  */
 public class XLazyHandler implements XHandler {
 
-    private final XBooleanSwitcher mSwitcher;// 开关
+    private final XAtomicSwitcher mSwitcher;// 开关
+    private final LinkedList<Message> mPendingMessages;// 开关打开前缓存的消息(只在后台线程中访问)
+    private final Runnable mReplayRunnable;// 按顺序回放缓存的消息
+    private final Runnable mOnCallback;// 开关打开时的回调
+    private final Runnable mOffCallback;// 开关关闭时的回调
+    private Handler.Callback mOriginCallback;// 真正处理消息的callback
     private XDeamonHandler mDeamonHandler;// 后台Handler
 
     public XLazyHandler(String name, Handler.Callback callback) {
-        mSwitcher = new XBooleanSwitcher(false);
-        mDeamonHandler = new XDeamonHandler(name, new InnerCallback(callback));
+        this(name, callback, new XAtomicSwitcher(false));
     }
 
     /**
-     * 打开开关，开始处理消息(解除Handler中的阻塞等待状态)
+     * 多个XLazyHandler可以共用同一个开关，开关打开时一起开始处理消息。
+     * 开关之后被关闭的话，重新开始缓存消息并关闭闸门，直到再次打开。
+     * @param name 后台线程的名字
+     * @param callback 真正处理消息的callback
+     * @param switcher 开关
      */
-    public void startHandle() {
-        if (mSwitcher.isOn())
-            return;
+    public XLazyHandler(String name, Handler.Callback callback, XAtomicSwitcher switcher) {
+        mSwitcher = switcher;
+        mPendingMessages = new LinkedList<Message>();
+        mOriginCallback = callback;
+        mReplayRunnable = new Runnable() {
+            @Override
+            public void run() {
+                replayPendingMessages();
+            }
+        };
+        mDeamonHandler = new XDeamonHandler(name, new InnerCallback());
+        // 开关打开时，缓存的消息在后台线程的队首被顺序回放，再处理之后到达的消息；
+        // 同时打开优先级执行器的闸门。两种回调都只回调一次，所以每次都交替注册下一次的。
+        mOnCallback = new Runnable() {
+            @Override
+            public void run() {
+                mDeamonHandler.getHandler().postAtFrontOfQueue(mReplayRunnable);
+                mDeamonHandler.getExecutor().openGate();
+                mSwitcher.whenOff(mOffCallback);
+            }
+        };
+        mOffCallback = new Runnable() {
+            @Override
+            public void run() {
+                mDeamonHandler.getExecutor().closeGate();
+                mSwitcher.whenOn(mOnCallback);
+            }
+        };
+        // 开关关闭时立即关闭闸门并等待打开；否则等待关闭
+        mSwitcher.whenOff(mOffCallback);
+    }
 
-        synchronized (mSwitcher) {
-            mSwitcher.turnOn();
-            mSwitcher.notifyAll();
-        }
+    /**
+     * 打开开关，开始处理消息。
+     */
+    public void startHandle() {
+        mSwitcher.turnOn();
     }
 
     @Override
@@ -54,32 +94,43 @@ public class XLazyHandler implements XHandler {
         return mDeamonHandler.quit();
     }
 
+    @Override
+    public XPriorityExecutor getExecutor() {
+        return mDeamonHandler.getExecutor();
+    }
+
     /**
-     * 内部callback优先处理消息，处理过程中会阻塞的等待开关打开。
-     * 打开后会回调真正的callback去除处理消息。
+     * 在后台线程中顺序处理所有缓存的消息。
+     * 回放期间开关又被关闭的话，剩下的消息留到下一次打开时回放。
      */
-    private class InnerCallback implements Handler.Callback {
+    private void replayPendingMessages() {
+        Message message;
+        while (mSwitcher.isOn() && (message = mPendingMessages.poll()) != null) {
+            dispatchToOrigin(message);
+            message.recycle();
+        }
+    }
 
-        private Handler.Callback originCallback;
+    private boolean dispatchToOrigin(Message message) {
+        return mOriginCallback == null || mOriginCallback.handleMessage(message);
+    }
 
-        public InnerCallback(Handler.Callback originCallback) {
-            this.originCallback = originCallback;
-        }
+    /**
+     * 内部callback优先处理消息。
+     * 开关打开前(或还有缓存消息未回放时)，复制一份消息缓存起来并立即返回，
+     * 不会阻塞后台线程；否则回调真正的callback去处理消息。
+     */
+    private class InnerCallback implements Handler.Callback {
 
         @Override
         public boolean handleMessage(Message message) {
-            // 等待开关打开
-            synchronized (mSwitcher) {
-                try {
-                    while (!mSwitcher.isOn()) {
-                        mSwitcher.wait();
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            if (!mSwitcher.isOn() || !mPendingMessages.isEmpty()) {
+                // 原消息处理完会被Looper回收，所以缓存的是副本
+                mPendingMessages.offer(Message.obtain(message));
+                return true;
             }
             // 真正开始处理消息
-            return originCallback == null || originCallback.handleMessage(message);
+            return dispatchToOrigin(message);
         }
     }
 }
@@ -0,0 +1,100 @@
+package com.xengine.android.toolkit.handler;
+
+import java.util.concurrent.Executor;
+
+/**
+ * <pre>
+ * 带优先级的后台执行器接口。
+ * 1.任务按优先级通道执行，数值越小越优先(如关键初始化优先于预加载)；
+ *   同一优先级内按提交顺序执行；
+ * 2.带key提交的任务在等待期间不会重复排队(相同key只保留一个)，
+ *   重复提交更高优先级时，会提升已排队任务的优先级；
+ * 3.闸门关闭时，任务只缓存不执行，且不会阻塞执行线程；
+ *   闸门打开后，按优先级顺序执行缓存的任务。
+ * </pre>
+ */
+public interface XPriorityExecutor extends Executor {
+
+    int PRIORITY_CRITICAL = 0;// 关键任务(如启动必需的初始化)
+    int PRIORITY_NORMAL = 5;// 普通任务
+    int PRIORITY_PREFETCH = 10;// 预加载任务(可随时丢弃)
+
+    /**
+     * 以普通优先级提交任务。
+     * @param task 任务
+     * @throws java.util.concurrent.RejectedExecutionException 执行器已关闭
+     * @see #PRIORITY_NORMAL
+     */
+    @Override
+    void execute(Runnable task);
+
+    /**
+     * 以指定优先级提交任务。
+     * @param task 任务
+     * @param priority 优先级，数值越小越优先
+     * @return 提交成功返回true
+     * @throws java.util.concurrent.RejectedExecutionException 执行器已关闭
+     */
+    boolean execute(Runnable task, int priority);
+
+    /**
+     * 以指定优先级提交带key的任务(等待中的相同key任务不会重复排队)。
+     * @param key 任务的唯一标识，为null则不去重
+     * @param task 任务
+     * @param priority 优先级，数值越小越优先
+     * @return 任务被新加入队列返回true;已有相同key的任务在等待，返回false
+     * @throws java.util.concurrent.RejectedExecutionException 执行器已关闭
+     */
+    boolean execute(String key, Runnable task, int priority);
+
+    /**
+     * 指定key的任务是否还在等待执行。
+     * @param key 任务的唯一标识
+     * @return 在等待返回true;否则返回false
+     */
+    boolean isPending(String key);
+
+    /**
+     * 取消还在等待执行的指定key的任务。
+     * @param key 任务的唯一标识
+     * @return 取消成功返回true;否则返回false
+     */
+    boolean cancel(String key);
+
+    /**
+     * 丢弃某一优先级通道中所有还在等待的任务。
+     * @param priority 优先级
+     * @return 返回被丢弃的任务数量
+     */
+    int cancelPriority(int priority);
+
+    /**
+     * 丢弃所有还在等待的任务。
+     */
+    void cancelAll();
+
+    /**
+     * @return 返回还在等待执行的任务数量
+     */
+    int getPendingCount();
+
+    /**
+     * 打开闸门，开始按优先级执行缓存的任务。
+     */
+    void openGate();
+
+    /**
+     * 关闭闸门，之后提交的任务只缓存不执行(正在执行的任务不受影响)。
+     */
+    void closeGate();
+
+    /**
+     * @return 闸门打开返回true;否则返回false
+     */
+    boolean isGateOpen();
+
+    /**
+     * 关闭执行器，丢弃所有等待的任务，之后提交的任务抛出RejectedExecutionException。
+     */
+    void shutdown();
+}
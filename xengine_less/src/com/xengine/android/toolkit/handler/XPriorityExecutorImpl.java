@@ -0,0 +1,257 @@
+package com.xengine.android.toolkit.handler;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <pre>
+ * 实现XPriorityExecutor接口的执行器。
+ * 内部用优先级队列缓存任务，用哈希表按key去重。
+ * 真正执行任务的线程由外部的dispatcher决定：
+ *      1.传入Handler的post()，则在HandlerThread上执行(见XDeamonHandler)；
+ *      2.不传dispatcher，则自带一个后台线程执行(不依赖Looper，可直接在JVM中使用)。
+ * 同一时刻最多只有一个dispatch在执行，所以任务之间是顺序执行的。
+ * 每次dispatch最多执行DRAIN_BATCH个任务，还有剩余则重新分发，
+ * 避免长队列独占Handler线程，让其他消息有机会穿插处理。
+ * </pre>
+ */
+public class XPriorityExecutorImpl implements XPriorityExecutor {
+
+    private static final int DRAIN_BATCH = 16;// 每次分发最多执行的任务数
+
+    private final Executor mDispatcher;// 实际执行任务的分发器
+    private final ExecutorService mOwnThread;// 自带的后台线程(外部传入dispatcher时为null)
+    private final PriorityQueue<Entry> mQueue;// 等待执行的任务
+    private final HashMap<String, Entry> mPendingByKey;// 等待中带key的任务
+    private final Runnable mDrainRunnable;// 循环取出任务执行
+    private long mSequence;// 提交序号，保证同优先级内先进先出
+    private boolean mGateOpen;// 闸门是否打开
+    private boolean mDispatching;// 是否已经分发了mDrainRunnable
+    private volatile boolean mShutdown;// 是否已关闭
+
+    /**
+     * 自带一个后台线程的执行器。
+     * @param name 后台线程的名字
+     */
+    public XPriorityExecutorImpl(final String name) {
+        this(null, Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+    }
+
+    /**
+     * 由外部dispatcher执行任务的执行器。
+     * @param dispatcher 任务分发器，要求顺序执行提交给它的Runnable
+     */
+    public XPriorityExecutorImpl(Executor dispatcher) {
+        this(dispatcher, null);
+    }
+
+    private XPriorityExecutorImpl(Executor dispatcher, ExecutorService ownThread) {
+        mDispatcher = dispatcher != null ? dispatcher : ownThread;
+        mOwnThread = ownThread;
+        mQueue = new PriorityQueue<Entry>();
+        mPendingByKey = new HashMap<String, Entry>();
+        mGateOpen = true;
+        mDispatching = false;
+        mShutdown = false;
+        mDrainRunnable = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        execute(null, task, PRIORITY_NORMAL);
+    }
+
+    @Override
+    public boolean execute(Runnable task, int priority) {
+        return execute(null, task, priority);
+    }
+
+    @Override
+    public boolean execute(String key, Runnable task, int priority) {
+        if (task == null)
+            throw new NullPointerException("Task can not be null.");
+
+        synchronized (this) {
+            if (mShutdown)
+                throw new RejectedExecutionException("Executor has been shut down.");
+
+            if (key != null) {
+                Entry exist = mPendingByKey.get(key);
+                if (exist != null) {
+                    // 重复提交，只提升已排队任务的优先级
+                    if (priority < exist.priority) {
+                        mQueue.remove(exist);
+                        exist.priority = priority;
+                        mQueue.offer(exist);
+                    }
+                    return false;
+                }
+            }
+            Entry entry = new Entry(key, task, priority, mSequence++);
+            mQueue.offer(entry);
+            if (key != null)
+                mPendingByKey.put(key, entry);
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isPending(String key) {
+        return key != null && mPendingByKey.containsKey(key);
+    }
+
+    @Override
+    public synchronized boolean cancel(String key) {
+        if (key == null)
+            return false;
+
+        Entry entry = mPendingByKey.remove(key);
+        return entry != null && mQueue.remove(entry);
+    }
+
+    @Override
+    public synchronized int cancelPriority(int priority) {
+        int count = 0;
+        Iterator<Entry> it = mQueue.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.priority == priority) {
+                it.remove();
+                if (entry.key != null)
+                    mPendingByKey.remove(entry.key);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void cancelAll() {
+        mQueue.clear();
+        mPendingByKey.clear();
+    }
+
+    @Override
+    public synchronized int getPendingCount() {
+        return mQueue.size();
+    }
+
+    @Override
+    public void openGate() {
+        synchronized (this) {
+            if (mGateOpen)
+                return;
+            mGateOpen = true;
+        }
+        scheduleDrain();
+    }
+
+    @Override
+    public synchronized void closeGate() {
+        mGateOpen = false;
+    }
+
+    @Override
+    public synchronized boolean isGateOpen() {
+        return mGateOpen;
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            mShutdown = true;
+            mQueue.clear();
+            mPendingByKey.clear();
+        }
+        if (mOwnThread != null)
+            mOwnThread.shutdown();
+    }
+
+    /**
+     * 如果闸门打开且还没分发过，则分发一次mDrainRunnable。
+     */
+    private void scheduleDrain() {
+        synchronized (this) {
+            if (mShutdown || !mGateOpen || mDispatching || mQueue.isEmpty())
+                return;
+            mDispatching = true;
+        }
+        mDispatcher.execute(mDrainRunnable);
+    }
+
+    /**
+     * 按优先级循环取出任务执行，直到队列为空、闸门关闭或执行满一批。
+     * 每次都重新取队首，所以执行过程中新提交的高优先级任务可以插队。
+     * 闸门关闭时直接返回，不会阻塞执行线程。
+     * 无论怎样退出(包括任务抛出Error)都会清除分发标志，还有任务则重新分发。
+     */
+    private void drain() {
+        try {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                Entry entry;
+                synchronized (this) {
+                    if (mShutdown || !mGateOpen || mQueue.isEmpty())
+                        return;
+                    entry = mQueue.poll();
+                    if (entry.key != null)
+                        mPendingByKey.remove(entry.key);
+                }
+                try {
+                    entry.task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            synchronized (this) {
+                mDispatching = false;
+            }
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * 等待队列中的任务项。
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final String key;
+        final Runnable task;
+        final long sequence;
+        int priority;
+
+        Entry(String key, Runnable task, int priority, long sequence) {
+            this.key = key;
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry another) {
+            if (priority != another.priority)
+                return priority < another.priority ? -1 : 1;
+            if (sequence != another.sequence)
+                return sequence < another.sequence ? -1 : 1;
+            return 0;
+        }
+    }
+}
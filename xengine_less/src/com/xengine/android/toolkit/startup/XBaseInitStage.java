@@ -0,0 +1,42 @@
+package com.xengine.android.toolkit.startup;
+
+/**
+ * <pre>
+ * 实现XInitStage接口的抽象类。
+ * 子类只需实现run()方法即可。
+ * </pre>
+ */
+public abstract class XBaseInitStage implements XInitStage {
+
+    private final String mName;
+    private final boolean mUiThreadOnly;
+    private final String[] mDependencies;
+
+    /**
+     * @param name 阶段名称
+     * @param uiThreadOnly 是否只能在UI线程执行
+     * @param dependencies 依赖的阶段名称
+     */
+    public XBaseInitStage(String name, boolean uiThreadOnly, String... dependencies) {
+        if (name == null)
+            throw new NullPointerException("Stage name can not be null.");
+        mName = name;
+        mUiThreadOnly = uiThreadOnly;
+        mDependencies = dependencies == null ? new String[0] : dependencies;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public String[] getDependencies() {
+        return mDependencies;
+    }
+
+    @Override
+    public boolean isUiThreadOnly() {
+        return mUiThreadOnly;
+    }
+}
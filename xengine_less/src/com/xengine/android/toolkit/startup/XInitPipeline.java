@@ -0,0 +1,28 @@
+package com.xengine.android.toolkit.startup;
+
+/**
+ * <pre>
+ * 启动初始化流水线的接口。
+ * 按依赖关系并行执行各个初始化阶段：
+ *      1.后台阶段在线程池中并行执行；
+ *      2.UI阶段固定在调用execute()的线程上执行；
+ *      3.execute()在所有阶段完成后才返回，并返回各阶段的耗时报告。
+ * </pre>
+ */
+public interface XInitPipeline {
+
+    /**
+     * 添加初始化阶段。
+     * @param stage 初始化阶段
+     * @throws IllegalArgumentException 如果已存在同名的阶段
+     */
+    void addStage(XInitStage stage);
+
+    /**
+     * 按依赖关系执行所有阶段，阻塞直到全部完成。
+     * @return 返回各阶段的耗时报告
+     * @throws IllegalStateException 如果依赖不存在或存在循环依赖
+     * @throws RuntimeException 如果某个阶段执行失败(cause为该阶段抛出的异常)
+     */
+    XInitReport execute();
+}
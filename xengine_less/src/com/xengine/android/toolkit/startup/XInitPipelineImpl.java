@@ -0,0 +1,248 @@
+package com.xengine.android.toolkit.startup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <pre>
+ * 实现XInitPipeline接口的初始化流水线。
+ * 调度逻辑全部在调用execute()的线程中完成：
+ * 后台阶段执行完后，把完成事件投递回调用线程，
+ * 由调用线程更新依赖计数、派发新就绪的阶段，并执行UI阶段。
+ * 所以调度状态不需要加锁，后台阶段写入的结果在execute()返回后对调用线程可见。
+ * 没有传入执行器时，所有流水线共用一个线程池(线程数为CPU核数)，
+ * 不会每次execute()(如每个XBaseFrame的onCreate())都新建和销毁线程。
+ * </pre>
+ */
+public class XInitPipelineImpl implements XInitPipeline {
+
+    private static ExecutorService sDefaultPool;// 所有流水线共用的后台线程池
+
+    private static synchronized Executor getDefaultPool() {
+        if (sDefaultPool == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+            sDefaultPool = Executors.newFixedThreadPool(threads, new InitThreadFactory());
+        }
+        return sDefaultPool;
+    }
+
+    private final LinkedHashMap<String, XInitStage> mStages;// 所有阶段(按添加顺序)
+    private final Executor mBackgroundExecutor;// 外部传入的后台执行器
+
+    /**
+     * 使用共用线程池的流水线(线程数为CPU核数)。
+     */
+    public XInitPipelineImpl() {
+        this(null);
+    }
+
+    /**
+     * @param backgroundExecutor 执行后台阶段的执行器，为null则使用共用线程池
+     */
+    public XInitPipelineImpl(Executor backgroundExecutor) {
+        mStages = new LinkedHashMap<String, XInitStage>();
+        mBackgroundExecutor = backgroundExecutor;
+    }
+
+    @Override
+    public synchronized void addStage(XInitStage stage) {
+        if (mStages.containsKey(stage.getName()))
+            throw new IllegalArgumentException("Duplicate init stage: " + stage.getName());
+        mStages.put(stage.getName(), stage);
+    }
+
+    @Override
+    public XInitReport execute() {
+        List<XInitStage> stages;
+        synchronized (this) {
+            stages = new ArrayList<XInitStage>(mStages.values());
+        }
+        Execution execution = new Execution(stages);
+        execution.checkGraph();
+
+        Executor executor = mBackgroundExecutor;
+        if (executor == null && execution.hasBackgroundStage())
+            executor = getDefaultPool();
+        return execution.run(executor);
+    }
+
+    /**
+     * 一次execute()的执行状态。
+     * 除mCallerQueue外，所有字段只在调用线程中访问。
+     */
+    private static final class Execution {
+        private final List<XInitStage> mStageList;
+        private final Map<String, XInitStage> mStageMap;
+        private final Map<String, List<XInitStage>> mDependents;// 依赖该阶段的阶段
+        private final Map<String, Integer> mRemaining;// 每个阶段还未完成的依赖数
+        private final BlockingQueue<Runnable> mCallerQueue;// 需要在调用线程执行的事件
+        private final XInitReport mReport;
+        private Executor mExecutor;
+        private long mStartNanos;
+        private int mInFlight;// 已派发但未完成的阶段数
+        private String mFailedStage;
+        private Throwable mFailure;
+
+        Execution(List<XInitStage> stages) {
+            mStageList = stages;
+            mStageMap = new HashMap<String, XInitStage>();
+            mDependents = new HashMap<String, List<XInitStage>>();
+            mRemaining = new HashMap<String, Integer>();
+            mCallerQueue = new LinkedBlockingQueue<Runnable>();
+            mReport = new XInitReport();
+            for (XInitStage stage : stages) {
+                mStageMap.put(stage.getName(), stage);
+                mDependents.put(stage.getName(), new ArrayList<XInitStage>());
+            }
+        }
+
+        /**
+         * 检查依赖是否存在，是否有循环依赖；并建立反向依赖表。
+         */
+        void checkGraph() {
+            for (XInitStage stage : mStageList) {
+                String[] dependencies = stage.getDependencies();
+                for (String dependency : dependencies) {
+                    if (!mStageMap.containsKey(dependency))
+                        throw new IllegalStateException("Init stage " + stage.getName()
+                                + " depends on unknown stage " + dependency);
+                    mDependents.get(dependency).add(stage);
+                }
+                mRemaining.put(stage.getName(), dependencies.length);
+            }
+            // 拓扑排序，排不完说明有环
+            Map<String, Integer> remaining = new HashMap<String, Integer>(mRemaining);
+            LinkedList<XInitStage> ready = new LinkedList<XInitStage>();
+            for (XInitStage stage : mStageList) {
+                if (remaining.get(stage.getName()) == 0)
+                    ready.add(stage);
+            }
+            int sorted = 0;
+            while (!ready.isEmpty()) {
+                XInitStage stage = ready.poll();
+                sorted++;
+                for (XInitStage dependent : mDependents.get(stage.getName())) {
+                    int left = remaining.get(dependent.getName()) - 1;
+                    remaining.put(dependent.getName(), left);
+                    if (left == 0)
+                        ready.add(dependent);
+                }
+            }
+            if (sorted != mStageList.size())
+                throw new IllegalStateException("Init stages have circular dependencies.");
+        }
+
+        boolean hasBackgroundStage() {
+            for (XInitStage stage : mStageList) {
+                if (!stage.isUiThreadOnly())
+                    return true;
+            }
+            return false;
+        }
+
+        XInitReport run(Executor executor) {
+            mExecutor = executor;
+            mStartNanos = System.nanoTime();
+            for (XInitStage stage : mStageList) {
+                if (mRemaining.get(stage.getName()) == 0)
+                    dispatch(stage);
+            }
+            try {
+                while (mInFlight > 0)
+                    mCallerQueue.take().run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for init stages.", e);
+            }
+            mReport.setTotalNanos(System.nanoTime() - mStartNanos);
+            if (mFailure != null)
+                throw new RuntimeException("Init stage " + mFailedStage + " failed.", mFailure);
+            return mReport;
+        }
+
+        private void dispatch(final XInitStage stage) {
+            mInFlight++;
+            if (stage.isUiThreadOnly()) {
+                mCallerQueue.offer(new Runnable() {
+                    @Override
+                    public void run() {
+                        runStage(stage);
+                    }
+                });
+            } else {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runStage(stage);
+                    }
+                });
+            }
+        }
+
+        /**
+         * 执行阶段并记录耗时(可能在后台线程中)，完成事件投递回调用线程。
+         */
+        private void runStage(final XInitStage stage) {
+            final long start = System.nanoTime() - mStartNanos;
+            Throwable error = null;
+            try {
+                stage.run();
+            } catch (Throwable t) {
+                error = t;
+            }
+            final long end = System.nanoTime() - mStartNanos;
+            final String threadName = Thread.currentThread().getName();
+            final Throwable finalError = error;
+            mCallerQueue.offer(new Runnable() {
+                @Override
+                public void run() {
+                    onStageFinished(stage, threadName, start, end, finalError);
+                }
+            });
+        }
+
+        private void onStageFinished(XInitStage stage, String threadName,
+                                     long start, long end, Throwable error) {
+            mInFlight--;
+            mReport.addTiming(new XInitReport.StageTiming(stage, threadName, start, end));
+            if (error != null) {
+                // 记录第一个失败的阶段，之后不再派发新阶段，等待已派发的结束
+                if (mFailure == null) {
+                    mFailedStage = stage.getName();
+                    mFailure = error;
+                }
+                return;
+            }
+            if (mFailure != null)
+                return;
+            for (XInitStage dependent : mDependents.get(stage.getName())) {
+                int left = mRemaining.get(dependent.getName()) - 1;
+                mRemaining.put(dependent.getName(), left);
+                if (left == 0)
+                    dispatch(dependent);
+            }
+        }
+    }
+
+    private static final class InitThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "XInit-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.xengine.android.toolkit.startup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <pre>
+ * 启动初始化的耗时报告。
+ * 记录每个阶段的执行线程、开始和结束时间(相对流水线启动的时刻)，
+ * 并据此计算出关键路径：即决定总耗时的那条依赖链，
+ * 优化关键路径以外的阶段不会缩短启动时间。
+ * </pre>
+ */
+public class XInitReport {
+
+    private final Map<String, StageTiming> mTimings;// 按完成顺序记录
+    private long mTotalNanos;// 流水线总耗时
+
+    XInitReport() {
+        mTimings = new LinkedHashMap<String, StageTiming>();
+    }
+
+    void addTiming(StageTiming timing) {
+        mTimings.put(timing.getName(), timing);
+    }
+
+    void setTotalNanos(long totalNanos) {
+        mTotalNanos = totalNanos;
+    }
+
+    /**
+     * @return 返回所有阶段的耗时(按完成顺序)
+     */
+    public List<StageTiming> getStages() {
+        return new ArrayList<StageTiming>(mTimings.values());
+    }
+
+    /**
+     * @param name 阶段名称
+     * @return 返回指定阶段的耗时；不存在则返回null
+     */
+    public StageTiming getStage(String name) {
+        return mTimings.get(name);
+    }
+
+    /**
+     * @return 返回流水线从开始到全部完成的总耗时(毫秒)
+     */
+    public double getTotalMillis() {
+        return mTotalNanos / 1000000.0;
+    }
+
+    /**
+     * @return 返回所有阶段耗时之和(毫秒)，即串行执行时的理论耗时
+     */
+    public double getSerialMillis() {
+        long sum = 0;
+        for (StageTiming timing : mTimings.values())
+            sum += timing.getDurationNanos();
+        return sum / 1000000.0;
+    }
+
+    /**
+     * 计算关键路径。
+     * 从最晚结束的阶段开始，每次回溯到最晚结束的那个依赖阶段。
+     * @return 返回关键路径上的阶段(按执行顺序)
+     */
+    public List<StageTiming> getCriticalPath() {
+        List<StageTiming> path = new ArrayList<StageTiming>();
+        StageTiming current = null;
+        for (StageTiming timing : mTimings.values()) {
+            if (current == null || timing.getEndNanos() > current.getEndNanos())
+                current = timing;
+        }
+        while (current != null) {
+            path.add(current);
+            StageTiming latest = null;
+            for (String dependency : current.getDependencies()) {
+                StageTiming timing = mTimings.get(dependency);
+                if (timing != null &&
+                        (latest == null || timing.getEndNanos() > latest.getEndNanos()))
+                    latest = timing;
+            }
+            current = latest;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("total=").append(format(getTotalMillis()))
+                .append("ms, serial=").append(format(getSerialMillis()))
+                .append("ms, critical path: ");
+        List<StageTiming> path = getCriticalPath();
+        for (int i = 0; i < path.size(); i++) {
+            if (i > 0)
+                buf.append(" -> ");
+            StageTiming timing = path.get(i);
+            buf.append(timing.getName())
+                    .append("(").append(format(timing.getDurationMillis())).append("ms)");
+        }
+        for (StageTiming timing : mTimings.values())
+            buf.append("\n  ").append(timing);
+        return buf.toString();
+    }
+
+    private static String format(double millis) {
+        return String.valueOf(Math.round(millis * 10) / 10.0);
+    }
+
+    /**
+     * 单个阶段的耗时记录。
+     */
+    public static final class StageTiming {
+        private final String mName;
+        private final String[] mDependencies;
+        private final String mThreadName;
+        private final boolean mUiThread;
+        private final long mStartNanos;
+        private final long mEndNanos;
+
+        StageTiming(XInitStage stage, String threadName, long startNanos, long endNanos) {
+            mName = stage.getName();
+            mDependencies = stage.getDependencies();
+            mUiThread = stage.isUiThreadOnly();
+            mThreadName = threadName;
+            mStartNanos = startNanos;
+            mEndNanos = endNanos;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String[] getDependencies() {
+            return mDependencies;
+        }
+
+        public String getThreadName() {
+            return mThreadName;
+        }
+
+        public boolean isUiThread() {
+            return mUiThread;
+        }
+
+        /**
+         * @return 返回相对流水线启动时刻的开始时间(纳秒)
+         */
+        public long getStartNanos() {
+            return mStartNanos;
+        }
+
+        /**
+         * @return 返回相对流水线启动时刻的结束时间(纳秒)
+         */
+        public long getEndNanos() {
+            return mEndNanos;
+        }
+
+        public long getDurationNanos() {
+            return mEndNanos - mStartNanos;
+        }
+
+        public double getDurationMillis() {
+            return getDurationNanos() / 1000000.0;
+        }
+
+        @Override
+        public String toString() {
+            return mName + " [" + mThreadName + "] start=" + format(mStartNanos / 1000000.0)
+                    + "ms, cost=" + format(getDurationMillis()) + "ms";
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.xengine.android.toolkit.startup;
+
+/**
+ * <pre>
+ * 启动初始化阶段的接口。
+ * 每个阶段声明自己依赖的其他阶段，
+ * 所有依赖都完成后，该阶段才会被执行。
+ * </pre>
+ */
+public interface XInitStage {
+
+    /**
+     * @return 返回阶段的名称(在同一个XInitPipeline中唯一)
+     */
+    String getName();
+
+    /**
+     * @return 返回该阶段依赖的阶段名称，没有依赖则返回空数组
+     */
+    String[] getDependencies();
+
+    /**
+     * @return 如果该阶段只能在调用线程(一般是UI线程)执行，返回true；
+     * 否则返回false，该阶段会在后台线程池中执行
+     */
+    boolean isUiThreadOnly();
+
+    /**
+     * 执行初始化工作。
+     */
+    void run();
+}
@@ -0,0 +1,252 @@
+package com.xengine.android.toolkit.switcher;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <pre>
+ * 无锁实现的可等待开关。
+ * 开关状态和等待者列表合并在一个原子引用中：
+ *      1.引用指向打开节点(on为true)，表示开关打开，其next为等待关闭的回调栈；
+ *      2.否则引用指向等待打开的等待者栈(Treiber stack)的栈顶，为null表示没有等待者。
+ * isOn()只是一次volatile读，不需要获取任何监视器锁，适合大量延迟消费者频繁检查。
+ * 打开开关时一次性取走整个等待者栈，唤醒所有等待线程并执行所有回调；
+ * 每个在打开前注册的等待者都一定会被唤醒，即使开关随后又被关闭。
+ * 关闭开关时同样一次性取走并执行所有whenOff()回调，
+ * 需要跟随开关反复开关的使用者(如XLazyHandler)可以在两种回调中交替注册。
+ * 超时或被中断的等待者会立即从栈中摘掉(不限于栈顶)，不会在开关长期关闭时堆积。
+ * </pre>
+ */
+public final class XAtomicSwitcher implements XWaitableSwitcher {
+
+    private static final Node ON = new Node(null, null, null, true);// 开关打开且没有关闭回调
+
+    private final AtomicReference<Node> mState;
+
+    public XAtomicSwitcher(boolean on) {
+        mState = new AtomicReference<Node>(on ? ON : null);
+    }
+
+    @Override
+    public boolean isOn() {
+        Node head = mState.get();
+        return head != null && head.on;
+    }
+
+    /**
+     * 打开开关，唤醒所有等待者并执行所有回调。
+     * @return 如果开关由关变开，返回true；如果本来就是打开的，返回false
+     */
+    public boolean turnOn() {
+        while (true) {
+            Node head = mState.get();
+            if (head != null && head.on)
+                return false;
+            if (mState.compareAndSet(head, ON)) {
+                release(head);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 关闭开关，执行所有whenOff()回调。之后注册的等待者会继续等待下一次打开。
+     * @return 如果开关由开变关，返回true；如果本来就是关闭的，返回false
+     */
+    public boolean turnOff() {
+        while (true) {
+            Node head = mState.get();
+            if (head == null || !head.on)
+                return false;
+            if (mState.compareAndSet(head, null)) {
+                release(head.next);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void await() throws InterruptedException {
+        if (isOn())
+            return;
+        Node node = new Node(Thread.currentThread(), null, null, false);
+        if (!push(node))
+            return;
+        while (!node.released) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                if (node.released)
+                    return;
+                cancel(node);
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        if (isOn())
+            return true;
+        long nanos = unit.toNanos(timeout);
+        if (nanos <= 0)
+            return false;
+        final long deadline = System.nanoTime() + nanos;
+        Node node = new Node(Thread.currentThread(), null, null, false);
+        if (!push(node))
+            return true;
+        while (!node.released) {
+            if (nanos <= 0) {
+                cancel(node);
+                return node.released;
+            }
+            LockSupport.parkNanos(this, nanos);
+            if (Thread.interrupted()) {
+                if (node.released)
+                    return true;
+                cancel(node);
+                throw new InterruptedException();
+            }
+            nanos = deadline - System.nanoTime();
+        }
+        return true;
+    }
+
+    @Override
+    public void whenOn(Runnable callback) {
+        whenOn(callback, null);
+    }
+
+    @Override
+    public void whenOn(Runnable callback, Executor executor) {
+        if (callback == null)
+            throw new NullPointerException("Callback can not be null.");
+        Node node = new Node(null, callback, executor, false);
+        if (!push(node))
+            runCallback(node);
+    }
+
+    /**
+     * 开关关闭时回调(只回调一次)。
+     * 如果开关已经关闭，则在当前线程立即回调；
+     * 否则在调用关闭开关的线程中回调。
+     * @param callback 回调
+     */
+    public void whenOff(Runnable callback) {
+        whenOff(callback, null);
+    }
+
+    /**
+     * 开关关闭时，在指定的执行器中回调(只回调一次)。
+     * @param callback 回调
+     * @param executor 执行回调的执行器
+     */
+    public void whenOff(Runnable callback, Executor executor) {
+        if (callback == null)
+            throw new NullPointerException("Callback can not be null.");
+        Node node = new Node(null, callback, executor, false);
+        while (true) {
+            Node head = mState.get();
+            if (head == null || !head.on) {
+                runCallback(node);
+                return;
+            }
+            // 打开节点不可修改，换一个新的打开节点带上回调栈
+            Node on = new Node(null, null, null, true);
+            node.next = head.next;
+            on.next = node;
+            if (mState.compareAndSet(head, on))
+                return;
+        }
+    }
+
+    /**
+     * 把节点压入等待打开的等待者栈。
+     * @return 压栈成功返回true；开关已经打开则返回false
+     */
+    private boolean push(Node node) {
+        while (true) {
+            Node head = mState.get();
+            if (head != null && head.on)
+                return false;
+            node.next = head;
+            if (mState.compareAndSet(head, node))
+                return true;
+        }
+    }
+
+    /**
+     * 取消等待，并把栈中所有已取消的节点摘掉。
+     * 栈顶用CAS摘掉；栈中间的节点只会被摘掉已取消的后继，
+     * 取消是单向的，所以并发摘除最多让已取消的节点多留一会儿，不会摘掉有效节点。
+     */
+    private void cancel(Node node) {
+        node.cancelled = true;
+        Node pred = null;
+        Node current = mState.get();
+        while (current != null && !current.on) {
+            Node next = current.next;
+            if (!current.cancelled) {
+                pred = current;
+            } else if (pred != null) {
+                pred.next = next;
+            } else if (!mState.compareAndSet(current, next)) {
+                // 栈顶变了，从头再来
+                current = mState.get();
+                continue;
+            }
+            current = next;
+        }
+    }
+
+    /**
+     * 唤醒栈中所有等待线程，执行所有回调(按注册顺序)。
+     * 不修改节点的next，因为可能还有线程正在摘除已取消的节点。
+     */
+    private static void release(Node head) {
+        // 栈是后进先出的，倒过来就是注册顺序
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        for (Node node = head; node != null; node = node.next)
+            nodes.add(node);
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Node node = nodes.get(i);
+            if (node.thread != null) {
+                if (!node.cancelled) {
+                    node.released = true;
+                    LockSupport.unpark(node.thread);
+                }
+            } else {
+                runCallback(node);
+            }
+        }
+    }
+
+    private static void runCallback(Node node) {
+        if (node.executor != null)
+            node.executor.execute(node.callback);
+        else
+            node.callback.run();
+    }
+
+    /**
+     * 等待者节点：等待线程或回调二选一；或者是表示开关打开的打开节点。
+     */
+    private static final class Node {
+        final Thread thread;
+        final Runnable callback;
+        final Executor executor;
+        final boolean on;// 是否为打开节点
+        volatile Node next;
+        volatile boolean released;
+        volatile boolean cancelled;
+
+        Node(Thread thread, Runnable callback, Executor executor, boolean on) {
+            this.thread = thread;
+            this.callback = callback;
+            this.executor = executor;
+            this.on = on;
+        }
+    }
+}
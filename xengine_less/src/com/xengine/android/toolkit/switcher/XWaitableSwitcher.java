@@ -0,0 +1,43 @@
+package com.xengine.android.toolkit.switcher;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 可等待的开关接口。
+ * 在XSwitcher的基础上，支持阻塞等待开关打开，以及开关打开时的异步回调。
+ * </pre>
+ */
+public interface XWaitableSwitcher extends XSwitcher {
+
+    /**
+     * 阻塞等待，直到开关打开。
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    void await() throws InterruptedException;
+
+    /**
+     * 阻塞等待，直到开关打开或超时。
+     * @param timeout 超时时长
+     * @param unit 超时时长的单位
+     * @return 开关打开返回true；超时返回false
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * 开关打开时回调(只回调一次)。
+     * 如果开关已经打开，则在当前线程立即回调；
+     * 否则在调用打开开关的线程中回调。
+     * @param callback 回调
+     */
+    void whenOn(Runnable callback);
+
+    /**
+     * 开关打开时，在指定的执行器中回调(只回调一次)。
+     * @param callback 回调
+     * @param executor 执行回调的执行器
+     */
+    void whenOn(Runnable callback, Executor executor);
+}
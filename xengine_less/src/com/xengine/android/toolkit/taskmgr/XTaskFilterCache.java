@@ -0,0 +1,98 @@
+package com.xengine.android.toolkit.taskmgr;
+
+import com.xengine.android.toolkit.filter.XFilter;
+import com.xengine.android.toolkit.task.XTaskBean;
+
+import java.util.HashMap;
+
+/**
+ * <pre>
+ * 任务过滤结果的缓存。
+ * 任务管理器在start()、resume()、findNextTask()、notifyTaskFinished()中
+ * 会对同一个任务反复过滤，该类按任务Id缓存过滤结果：
+ * 1.缓存项记录了过滤时任务的状态，任务状态变化后自动失效；
+ * 2.重新设置过滤器时，所有缓存失效；
+ * 3.任务被删除时，应调用invalidate()清除对应的缓存。
+ * 注意：如果过滤器依赖外部条件(比如网络类型)，条件变化后需要调用invalidate()。
+ * </pre>
+ */
+public class XTaskFilterCache<B extends XTaskBean> {
+
+    private XFilter<B> mFilter;
+    private final HashMap<String, Entry> mResults;
+
+    public XTaskFilterCache() {
+        mResults = new HashMap<String, Entry>();
+    }
+
+    /**
+     * 设置过滤器，并清空所有缓存。
+     * @param filter 过滤器
+     */
+    public synchronized void setFilter(XFilter<B> filter) {
+        mFilter = filter;
+        mResults.clear();
+    }
+
+    public synchronized XFilter<B> getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * 判断任务是否通过过滤(没有设置过滤器则都通过)。
+     * @param bean 任务数据
+     * @return 通过返回true；被过滤掉返回false
+     */
+    public synchronized boolean accept(B bean) {
+        if (mFilter == null)
+            return true;
+
+        String id = bean.getId();
+        if (id == null)
+            return mFilter.doFilter(bean) != null;
+
+        int status = bean.getStatus();
+        Entry entry = mResults.get(id);
+        if (entry != null && entry.bean == bean && entry.status == status)
+            return entry.accepted;
+
+        boolean accepted = mFilter.doFilter(bean) != null;
+        if (entry == null) {
+            mResults.put(id, new Entry(bean, status, accepted));
+        } else {
+            entry.bean = bean;
+            entry.status = status;
+            entry.accepted = accepted;
+        }
+        return accepted;
+    }
+
+    /**
+     * 清除指定任务的缓存。
+     * @param id 任务Id
+     */
+    public synchronized void invalidate(String id) {
+        if (id != null)
+            mResults.remove(id);
+    }
+
+    /**
+     * 清除所有缓存，下次判断时用当前的过滤器重新过滤。
+     * 过滤器依赖的外部条件变化后调用。
+     */
+    public synchronized void invalidate() {
+        mResults.clear();
+    }
+
+    private static final class Entry {
+        XTaskBean bean;
+        int status;
+        boolean accepted;
+
+        Entry(XTaskBean bean, int status, boolean accepted) {
+            this.bean = bean;
+            this.status = status;
+            this.accepted = accepted;
+        }
+    }
+}
@@ -174,10 +174,18 @@ public interface XTaskMgr<T extends XMgrTaskExecutor<B>, B extends XTaskBean> {
 
     /**
      * 设置任务过滤器，过滤掉的任务不会被执行。
+     * 过滤结果会按任务缓存(任务状态变化时失效)，
+     * 如果过滤条件发生变化，需要调用invalidateTaskFilter()。
      * @param filter 任务过滤器
      */
     void setTaskFilter(XFilter<B> filter);
 
+    /**
+     * 清除缓存的过滤结果，下次判断时用当前的任务过滤器重新过滤。
+     * 过滤器依赖的外部条件(比如网络类型)变化后调用。
+     */
+    void invalidateTaskFilter();
+
     /**
      * 获取当前的TaskFilter
      * @return
@@ -6,6 +6,7 @@ import com.xengine.android.toolkit.speed.calc.DefaultSpeedCalculator;
 import com.xengine.android.toolkit.task.XTaskBean;
 import com.xengine.android.toolkit.task.XTaskListener;
 import com.xengine.android.toolkit.taskmgr.XMgrTaskExecutor;
+import com.xengine.android.toolkit.taskmgr.XTaskFilterCache;
 import com.xengine.android.toolkit.taskmgr.XTaskMgrListener;
 import com.xengine.android.toolkit.taskmgr.XTaskScheduler;
 
@@ -36,6 +37,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
     protected LinkedList<XMgrTaskExecutor<B>> mTobeExecuted;// 待执行的任务队列
     protected XTaskScheduler<B> mScheduler;// 任务排序器(外部设置)
     protected XFilter<B> mFilter;// 任务过滤器
+    protected XTaskFilterCache<B> mFilterCache;// 任务过滤结果的缓存
     protected InnerTaskComparator mInnerComparator;// 实际用来排序的比较器
     protected XSpeedMonitor<XMgrTaskExecutor<B>> mSpeedMonitor;// 速度监视器
     protected List<XTaskMgrListener<B>> mListeners;// 外部监听者
@@ -47,6 +49,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
         mCurrentExecuted = new LinkedList<XMgrTaskExecutor<B>>();
         mTobeExecuted = new LinkedList<XMgrTaskExecutor<B>>();
         mInnerComparator = new InnerTaskComparator();
+        mFilterCache = new XTaskFilterCache<B>();
         mListeners = new CopyOnWriteArrayList<XTaskMgrListener<B>>();
         mIsWorking = false;
         mAuto = true;
@@ -197,6 +200,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
             return;
 
         task.abort();// 终止当前任务
+        mFilterCache.invalidate(getTaskId(task));
         boolean isRemoved;
         if (mCurrentExecuted.contains(task)) {// 如果要删除的任务在执行队列中
             isRemoved = mCurrentExecuted.remove(task);
@@ -227,6 +231,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
             if (task == null)
                 continue;
             task.abort();// 终止任务
+            mFilterCache.invalidate(getTaskId(task));
             if (mCurrentExecuted.contains(task)) {// 如果要删除的任务在执行队列中
                 mCurrentExecuted.remove(task);
                 removed.add(task.getBean());
@@ -294,7 +299,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
             if (task == null)
                 break;
             // 如果下一个任务是被过滤掉的，说明已经没有可执行的任务了，退出循环
-            if (mFilter != null && mFilter.doFilter(task.getBean()) == null)
+            if (!mFilterCache.accept(task.getBean()))
                 break;
             mCurrentExecuted.offer(task);
         }
@@ -304,7 +309,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
         // 启动运行队列的所有任务
         for (XMgrTaskExecutor<B> task : mCurrentExecuted) {
             // 如果过滤掉，则直接启动下一个
-            if (mFilter != null && mFilter.doFilter(task.getBean()) == null)
+            if (!mFilterCache.accept(task.getBean()))
                 continue;
             mIsWorking = true;
             task.start();
@@ -322,7 +327,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
             return false;
 
         // 如果被过滤掉，则不启动
-        if (mFilter != null && mFilter.doFilter(task.getBean()) == null)
+        if (!mFilterCache.accept(task.getBean()))
             return false;
 
         // 先尝试启动指定任务
@@ -354,7 +359,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
 
         for (XMgrTaskExecutor<B> task : mCurrentExecuted) {
             // 如果过滤掉，则直接启动下一个
-            if (mFilter != null && mFilter.doFilter(task.getBean()) == null)
+            if (!mFilterCache.accept(task.getBean()))
                 continue;
             mIsWorking = true;
             task.start();
@@ -372,7 +377,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
             return false;
 
         // 如果被过滤掉，则不启动
-        if (mFilter != null && mFilter.doFilter(task.getBean()) == null)
+        if (!mFilterCache.accept(task.getBean()))
             return false;
 
         // 如果指定Id的任务存在，且在运行队列中，恢复该任务
@@ -435,7 +440,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
         setTaskFilter(filter);// 设置当前的任务过滤器
         List<XMgrTaskExecutor<B>> stopTasks = new ArrayList<XMgrTaskExecutor<B>>();
         for (XMgrTaskExecutor<B> task : mCurrentExecuted) {
-            if (filter != null && filter.doFilter(task.getBean()) == null) {
+            if (filter != null && !mFilterCache.accept(task.getBean())) {
                 if (task.pause())
                     stopTasks.add(task);
             }
@@ -497,7 +502,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
         setTaskFilter(filter);// 设置当前的任务过滤器
         List<XMgrTaskExecutor<B>> stopTasks = new ArrayList<XMgrTaskExecutor<B>>();
         for (XMgrTaskExecutor<B> task : mCurrentExecuted) {
-            if (filter != null && filter.doFilter(task.getBean()) == null) {
+            if (filter != null && !mFilterCache.accept(task.getBean())) {
                 if (task.pause())
                     stopTasks.add(task);
             }
@@ -524,6 +529,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
         mCurrentExecuted.clear();
         // 清空等待队列中的任务
         mTobeExecuted.clear();
+        mFilterCache.invalidate();
         // 停止速度监听
         if (mSpeedMonitor != null)
             mSpeedMonitor.stop();
@@ -540,6 +546,12 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
     @Override
     public void setTaskFilter(XFilter<B> filter) {
         mFilter = filter;
+        mFilterCache.setFilter(filter);
+    }
+
+    @Override
+    public void invalidateTaskFilter() {
+        mFilterCache.invalidate();
     }
 
     @Override
@@ -578,7 +590,6 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
         }
 
         // 用TaskFilter过滤，找到第一个是TODO状态的任务
-        final XFilter<B> finalFilter = mFilter;
         XMgrTaskExecutor<B> nextTask = null;// 最终的结果，下一个待执行任务
         XMgrTaskExecutor<B> filteredTask = null;// 第一个符合状态但被过滤掉的任务
         for (XMgrTaskExecutor<B> task : mTobeExecuted) {
@@ -586,7 +597,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
             if (task.getStatus() != XTaskBean.STATUS_TODO)
                 continue;
             // TODO状态，且没被过滤掉的任务
-            if ((finalFilter == null || finalFilter.doFilter(task.getBean()) != null)) {
+            if (mFilterCache.accept(task.getBean())) {
                 nextTask = task;
                 break;
             }
@@ -658,7 +669,7 @@ public class XParallelMgrImpl<B extends XTaskBean> implements XParallelMgr<B> {
 
         // 如果有下一个任务(没被过滤)，则继续执行任务
         if (nextTask != null &&
-                (mFilter == null || mFilter.doFilter(nextTask.getBean()) != null)) {
+                mFilterCache.accept(nextTask.getBean())) {
             nextTask.start();
             if (mSpeedMonitor != null)
                 mSpeedMonitor.start();
@@ -0,0 +1,327 @@
+package com.xengine.android.toolkit.taskmgr.serial;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * <pre>
+ * 线性执行引擎：等待队列、按id去重和唯一的执行位置。
+ * 任务怎么启动、怎么取消由Driver决定，引擎本身不创建线程：
+ * XSerialExecutor把Runnable交给普通的Executor执行，
+ * XSerialMgrImpl驱动XMgrTaskExecutor，XBaseSerialMgr(xengine_full)驱动AsyncTask。
+ * 1.等待队列用LinkedHashMap保存(按id，id为null时按任务本身)，
+ *   另用HashMap按id索引所有未结束的任务(包括正在执行的)，所以去重、按id查找和删除都是O(1)；
+ * 2.每个时刻最多只有一个任务占用执行位置，执行中的任务不在等待队列里；
+ * 3.删除或停止正在执行的任务时，立即cancel该任务并释放执行位置，马上启动下一个，
+ *   被cancel的任务之后再回调finished()会被忽略；
+ * 4.只有stop()和pause()会清除运行状态，队列空了不会清除，之后添加的任务调用tryStart()即可执行；
+ * 5.从没调用过start()/setWorking()时不会自动启动任务，调用者可以用setRunning()等方法自己调度。
+ * 所有方法都是同步的。Driver的方法在同步块中回调，不能阻塞。
+ * TIP 被cancel的任务如果不响应中断，可能与下一个任务同时执行一段时间
+ * </pre>
+ */
+public class XSerialEngine<T> {
+
+    /**
+     * 任务的启动和取消。
+     */
+    public interface Driver<T> {
+        /**
+         * @return 返回任务的唯一id;返回null则认为此任务唯一
+         */
+        String getId(T task);
+
+        /**
+         * 启动任务。任务结束后(包括被cancel)应回调XSerialEngine.finished()。
+         * @return 启动成功返回true;返回false表示任务不能执行(如已经执行过)，引擎丢弃它
+         */
+        boolean launch(T task);
+
+        /**
+         * 取消正在执行的任务。
+         */
+        void cancel(T task);
+    }
+
+    private final Driver<T> mDriver;// 任务的启动和取消
+    private LinkedHashMap<Object, T> mWaiting;// 等待执行的任务(按id或任务本身)
+    private final HashMap<String, T> mTaskById;// 按id索引的未结束任务(包括正在执行的)
+    private T mRunning;// 占用执行位置的任务
+    private boolean mIsWorking;// 标识运行状态
+    private boolean mScheduling;// 是否正在启动下一个任务(任务可能在launch()中同步结束)
+
+    public XSerialEngine(Driver<T> driver) {
+        mDriver = driver;
+        mWaiting = new LinkedHashMap<Object, T>();
+        mTaskById = new HashMap<String, T>();
+        mRunning = null;
+        mIsWorking = false;
+        mScheduling = false;
+    }
+
+    /**
+     * 添加任务到等待队列的末尾(不重复)。
+     * @return 如果任务已存在，则返回false；否则返回true
+     */
+    public synchronized boolean add(T task) {
+        if (task == null || !index(task))
+            return false;
+        mWaiting.put(keyOf(task), task);
+        return true;
+    }
+
+    /**
+     * 添加任务到等待队列的开头(不重复)，如被暂停的任务重新排队。
+     * @return 如果任务已存在，则返回false；否则返回true
+     */
+    public synchronized boolean addFirst(T task) {
+        if (task == null || !index(task))
+            return false;
+        LinkedHashMap<Object, T> waiting = new LinkedHashMap<Object, T>();
+        waiting.put(keyOf(task), task);
+        waiting.putAll(mWaiting);
+        mWaiting = waiting;
+        return true;
+    }
+
+    /**
+     * 删除任务。
+     * 如果是正在执行的任务，立即cancel并释放执行位置，处于运行状态时马上启动下一个。
+     * @return 任务存在并被删除返回true;否则返回false
+     */
+    public synchronized boolean remove(T task) {
+        if (task == null)
+            return false;
+        if (task == mRunning) {
+            mRunning = null;
+            unindex(task);
+            mDriver.cancel(task);
+            scheduleNext();
+            return true;
+        }
+        if (mWaiting.get(keyOf(task)) != task)
+            return false;
+        mWaiting.remove(keyOf(task));
+        unindex(task);
+        return true;
+    }
+
+    /**
+     * 根据id查找等待中或正在执行的任务。
+     * @return 返回指定id的任务;不存在返回null
+     */
+    public synchronized T get(String id) {
+        return id == null ? null : mTaskById.get(id);
+    }
+
+    /**
+     * @return 返回占用执行位置的任务;没有返回null
+     */
+    public synchronized T getRunning() {
+        return mRunning;
+    }
+
+    /**
+     * @return 返回等待队列中的第一个任务;没有返回null
+     */
+    public synchronized T peek() {
+        Iterator<T> it = mWaiting.values().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * @return 返回等待队列的副本(按队列顺序)
+     */
+    public synchronized List<T> getWaiting() {
+        return new ArrayList<T>(mWaiting.values());
+    }
+
+    /**
+     * @return 返回等待中的任务数量
+     */
+    public synchronized int getWaitingCount() {
+        return mWaiting.size();
+    }
+
+    /**
+     * @return 返回未结束的任务数量(包括正在执行的)
+     */
+    public synchronized int size() {
+        return mWaiting.size() + (mRunning == null ? 0 : 1);
+    }
+
+    /**
+     * 按指定的顺序重排等待队列(如排序后)。不在等待队列中的任务忽略。
+     */
+    public synchronized void reorder(List<T> order) {
+        LinkedHashMap<Object, T> waiting = new LinkedHashMap<Object, T>();
+        for (T task : order) {
+            Object key = keyOf(task);
+            if (mWaiting.get(key) == task)
+                waiting.put(key, task);
+        }
+        waiting.putAll(mWaiting);// 不在order中的任务保持原来的顺序排在后面
+        mWaiting = waiting;
+    }
+
+    /**
+     * 把任务放到执行位置，但不启动它(由调用者启动)。任务在等待队列中时从队列中移出。
+     * @return 执行位置已被占用，或同id的其他任务已存在时返回false
+     */
+    public synchronized boolean setRunning(T task) {
+        if (task == null || mRunning != null)
+            return false;
+        Object key = keyOf(task);
+        if (mWaiting.get(key) == task)
+            mWaiting.remove(key);
+        else if (!index(task))
+            return false;
+        mRunning = task;
+        return true;
+    }
+
+    /**
+     * 释放执行位置，但不cancel任务(如任务已被调用者暂停)，也不启动下一个。
+     * @return 返回原来占用执行位置的任务;没有返回null
+     */
+    public synchronized T releaseRunning() {
+        T task = mRunning;
+        if (task != null) {
+            mRunning = null;
+            unindex(task);
+        }
+        return task;
+    }
+
+    /**
+     * 标记为运行状态，并启动下一个任务(如果执行位置空闲)。
+     */
+    public synchronized void start() {
+        mIsWorking = true;
+        scheduleNext();
+    }
+
+    /**
+     * 标记为运行状态，但不启动任务。
+     * @see #tryStart()
+     */
+    public synchronized void setWorking() {
+        mIsWorking = true;
+    }
+
+    /**
+     * 根据当前标记，尝试启动。但不改变当前标记。
+     */
+    public synchronized void tryStart() {
+        scheduleNext();
+    }
+
+    /**
+     * 清除运行状态，正在执行的任务不会被cancel，结束后不再继续执行下一个。
+     */
+    public synchronized void pause() {
+        mIsWorking = false;
+    }
+
+    /**
+     * 清除运行状态，并cancel正在执行的任务(立即释放执行位置)。
+     */
+    public synchronized void stop() {
+        mIsWorking = false;
+        T task = releaseRunning();
+        if (task != null)
+            mDriver.cancel(task);
+    }
+
+    public synchronized boolean isWorking() {
+        return mIsWorking;
+    }
+
+    /**
+     * 清空等待队列(不影响正在执行的任务)。
+     * @return 返回被清空的任务，由调用者决定是否cancel
+     */
+    public synchronized List<T> clear() {
+        List<T> tasks = new ArrayList<T>(mWaiting.values());
+        mWaiting.clear();
+        for (T task : tasks)
+            unindex(task);
+        return tasks;
+    }
+
+    /**
+     * 任务结束时回调(正常结束或被cancel)。
+     * 如果是正在执行的任务，释放执行位置并启动下一个;
+     * 否则(如已经被删除、cancel的任务)只从等待队列中删除。
+     * @return 是正在执行的任务返回true;否则返回false
+     */
+    public synchronized boolean finished(T task) {
+        if (task == null)
+            return false;
+        if (task != mRunning) {
+            remove(task);
+            return false;
+        }
+        mRunning = null;
+        unindex(task);
+        scheduleNext();
+        return true;
+    }
+
+    /**
+     * 如果处于运行状态且执行位置空闲，则启动等待队列中的下一个任务。
+     * Driver启动失败的任务直接丢弃。
+     */
+    private void scheduleNext() {
+        if (!mIsWorking || mScheduling)
+            return;// 同步结束的任务由外层循环继续，避免递归
+        mScheduling = true;
+        try {
+            while (mIsWorking && mRunning == null) {
+                Iterator<T> it = mWaiting.values().iterator();
+                if (!it.hasNext())
+                    return;// 保持运行状态，等待新的任务
+                T next = it.next();
+                it.remove();
+                mRunning = next;
+                if (!mDriver.launch(next) && mRunning == next) {
+                    mRunning = null;
+                    unindex(next);
+                }
+            }
+        } finally {
+            mScheduling = false;
+        }
+    }
+
+    private Object keyOf(T task) {
+        String id = mDriver.getId(task);
+        return id == null ? task : id;
+    }
+
+    /**
+     * 把任务加入id索引。
+     * @return 同id的其他任务已存在时返回false
+     */
+    private boolean index(T task) {
+        String id = mDriver.getId(task);
+        if (id == null)
+            return mRunning != task && !mWaiting.containsKey(task);// id为null，则认为此task唯一
+        if (mTaskById.containsKey(id))
+            return false;
+        mTaskById.put(id, task);
+        return true;
+    }
+
+    /**
+     * 从id索引中删除任务(只删除映射到该任务本身的id)。
+     */
+    private void unindex(T task) {
+        String id = mDriver.getId(task);
+        if (id != null && mTaskById.get(id) == task)
+            mTaskById.remove(id);
+    }
+}
@@ -0,0 +1,145 @@
+package com.xengine.android.toolkit.taskmgr.serial;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <pre>
+ * 基于XSerialEngine的线性Executor：提交的Runnable按顺序一个一个地交给后台Executor执行。
+ * 与AsyncTask的线性执行不同，一个任务结束后在后台线程中直接启动下一个，
+ * 不需要先回到UI线程(onPostExecute())再execute()。
+ * 1.execute(id, command)按id去重(O(1))，id为null的任务都是唯一的；
+ * 2.cancel(id)立即中断正在执行的任务并释放执行位置，马上开始下一个；
+ * 3.pause()后当前任务执行完不再继续，start()恢复。创建后即处于运行状态。
+ * 任务抛出的异常只打印，不影响后面的任务。
+ * </pre>
+ */
+public class XSerialExecutor implements Executor {
+
+    private final Executor mExecutor;// 实际执行任务的Executor
+    private final XSerialEngine<Job> mEngine;// 线性执行引擎
+
+    /**
+     * @param executor 实际执行任务的Executor(如线程池)，本类保证同一时刻只交给它一个任务
+     */
+    public XSerialExecutor(Executor executor) {
+        mExecutor = executor;
+        mEngine = new XSerialEngine<Job>(new XSerialEngine.Driver<Job>() {
+            @Override
+            public String getId(Job task) {
+                return task.id;
+            }
+
+            @Override
+            public boolean launch(Job task) {
+                mExecutor.execute(task);
+                return true;
+            }
+
+            @Override
+            public void cancel(Job task) {
+                task.cancel(true);
+            }
+        });
+        mEngine.start();
+    }
+
+    /**
+     * 添加任务到队列末尾(id为null，不去重)。
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute(null, command);
+    }
+
+    /**
+     * 添加任务到队列末尾(不重复)。
+     * @param id 任务的唯一id;为null则认为此任务唯一
+     * @param command 任务
+     * @return 如果同id的任务还没结束，则返回false，添加失败；否则返回true
+     */
+    public boolean execute(String id, Runnable command) {
+        if (command == null)
+            throw new NullPointerException();
+        if (!mEngine.add(new Job(id, command)))
+            return false;
+        mEngine.tryStart();
+        return true;
+    }
+
+    /**
+     * 取消任务。等待中的任务直接删除，正在执行的任务被中断，并立即开始下一个。
+     * @param id 任务的唯一id
+     * @return 任务存在返回true;否则返回false
+     */
+    public boolean cancel(String id) {
+        Job job = mEngine.get(id);
+        return job != null && mEngine.remove(job);
+    }
+
+    /**
+     * 是否有指定id的任务还没结束(等待中或正在执行)。
+     */
+    public boolean contains(String id) {
+        return mEngine.get(id) != null;
+    }
+
+    /**
+     * 恢复执行。
+     */
+    public void start() {
+        mEngine.start();
+    }
+
+    /**
+     * 暂停执行，当前任务执行完后不再继续下一个。
+     */
+    public void pause() {
+        mEngine.pause();
+    }
+
+    /**
+     * 暂停执行并清空等待队列，中断正在执行的任务。
+     */
+    public void stopAndReset() {
+        mEngine.stop();
+        mEngine.clear();
+    }
+
+    /**
+     * @return 返回未结束的任务数量(包括正在执行的)
+     */
+    public int getTaskCount() {
+        return mEngine.size();
+    }
+
+    /**
+     * 队列中的任务。结束(包括被cancel)时通知引擎启动下一个。
+     */
+    private final class Job extends FutureTask<Void> {
+        final String id;
+
+        Job(String id, Runnable command) {
+            super(command, null);
+            this.id = id;
+        }
+
+        @Override
+        protected void done() {
+            if (!isCancelled()) {
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                } catch (CancellationException e) {
+                    // 已经被cancel
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            mEngine.finished(this);
+        }
+    }
+}
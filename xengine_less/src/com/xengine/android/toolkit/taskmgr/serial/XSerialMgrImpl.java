@@ -6,6 +6,7 @@ import com.xengine.android.toolkit.speed.calc.DefaultSpeedCalculator;
 import com.xengine.android.toolkit.task.XTaskBean;
 import com.xengine.android.toolkit.task.XTaskListener;
 import com.xengine.android.toolkit.taskmgr.XMgrTaskExecutor;
+import com.xengine.android.toolkit.taskmgr.XTaskFilterCache;
 import com.xengine.android.toolkit.taskmgr.XTaskMgrListener;
 import com.xengine.android.toolkit.taskmgr.XTaskScheduler;
 
@@ -24,6 +25,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
  *   会将该任务丢弃，继续执行下一个；
  * 4.如果任务从DOING到TODO，回调SerialMgr时，
  *   会将该任务重新添加进等待队列，不继续执行；
+ * 5.等待队列、执行位置和按id的索引由XSerialEngine管理(不自动启动，由本类调度)，
+ *   去重和按id查找都是O(1)。
  * User: tujun
  * Date: 13-8-1
  * Time: 下午3:35
@@ -33,19 +36,34 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
 
     protected volatile boolean mIsWorking;// 标识运行状态
     protected volatile boolean mAuto;// 标识是否自动执行
-    protected volatile XMgrTaskExecutor<B> mCurrentExecuted;// 当前正在运行的任务
-    protected LinkedList<XMgrTaskExecutor<B>> mTobeExecuted;// 待执行的任务队列
+    protected XSerialEngine<XMgrTaskExecutor<B>> mEngine;// 等待队列和当前正在运行的任务
     protected XTaskScheduler<B> mScheduler;// 任务排序器(外部设置)
     protected XFilter<B> mFilter;// 任务过滤器
+    protected XTaskFilterCache<B> mFilterCache;// 任务过滤结果的缓存
     protected Comparator<XMgrTaskExecutor<B>> mInnerComparator;// 实际用来排序的比较器
     protected XSpeedMonitor<XMgrTaskExecutor<B>> mSpeedMonitor;// 速度监视器
     protected List<XTaskMgrListener<B>> mListeners;// 外部监听者
     protected XTaskListener<B> mInnerTaskListener;// 内部管理器对每个Task的监听
 
     public XSerialMgrImpl() {
-        mCurrentExecuted = null;
-        mTobeExecuted = new LinkedList<XMgrTaskExecutor<B>>();
+        mEngine = new XSerialEngine<XMgrTaskExecutor<B>>(new XSerialEngine.Driver<XMgrTaskExecutor<B>>() {
+            @Override
+            public String getId(XMgrTaskExecutor<B> task) {
+                return getTaskId(task);
+            }
+
+            @Override
+            public boolean launch(XMgrTaskExecutor<B> task) {
+                return task.start();
+            }
+
+            @Override
+            public void cancel(XMgrTaskExecutor<B> task) {
+                task.abort();
+            }
+        });
         mInnerComparator = new InnerTaskComparator();
+        mFilterCache = new XTaskFilterCache<B>();
         mListeners = new CopyOnWriteArrayList<XTaskMgrListener<B>>();
         mIsWorking = false;
         mAuto = true;
@@ -100,22 +118,12 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
 
     @Override
     public XMgrTaskExecutor<B> getTaskById(String id) {
-        if (id == null)
-            return null;
-
-        if (mCurrentExecuted != null && id.equals(getTaskId(mCurrentExecuted)))
-            return mCurrentExecuted;
-
-        for (XMgrTaskExecutor<B> task : mTobeExecuted) {
-            if (id.equals(getTaskId(task)))
-                return task;
-        }
-        return null;
+        return mEngine.get(id);
     }
 
     @Override
     public synchronized boolean addTask(XMgrTaskExecutor<B> task) {
-        if (getTaskById(getTaskId(task)) != null)// 判断是否重复
+        if (!mEngine.add(task))// 判断是否重复
             return false;
 
         task.setTaskMgr(this);
@@ -123,7 +131,6 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
         task.setStatus(XTaskBean.STATUS_TODO);
         if (task.getSpeedCalculator() == null)
             task.setSpeedCalculator(new DefaultSpeedCalculator());
-        mTobeExecuted.offer(task);
         for (XTaskMgrListener<B> listener : mListeners)
             listener.onAdd(task.getBean());
 
@@ -139,7 +146,7 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
         for (XMgrTaskExecutor<B> task : tasks) {
             if (task == null)
                 continue;
-            if (getTaskById(getTaskId(task)) != null)// 判断是否重复
+            if (!mEngine.add(task))// 判断是否重复
                 continue;
             added.add(task.getBean());
             task.setTaskMgr(this);
@@ -147,7 +154,6 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
             task.setStatus(XTaskBean.STATUS_TODO);
             if (task.getSpeedCalculator() == null)
                 task.setSpeedCalculator(new DefaultSpeedCalculator());
-            mTobeExecuted.offer(task);
         }
         if (added.size() > 0)
             for (XTaskMgrListener<B> listener : mListeners)
@@ -160,14 +166,15 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
             return;
 
         task.abort();// 终止当前任务
+        mFilterCache.invalidate(getTaskId(task));
         boolean isRemoved;
-        if (mCurrentExecuted == task) {// 如果要删除的任务是当前的任务
-            mCurrentExecuted = null;
+        if (mEngine.getRunning() == task) {// 如果要删除的任务是当前的任务
+            mEngine.releaseRunning();
             isRemoved = true;
         } else {
-            isRemoved = mTobeExecuted.remove(task);
+            isRemoved = mEngine.remove(task);
         }
-        if (mCurrentExecuted == null) {// 如果当前没有任务运行，则标记结束
+        if (mEngine.getRunning() == null) {// 如果当前没有任务运行，则标记结束
             if (mSpeedMonitor != null)
                 mSpeedMonitor.stop();
             mIsWorking = false;
@@ -194,15 +201,16 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
             if (task == null)
                 continue;
             task.abort();// 终止当前任务
-            if (mCurrentExecuted == task) {// 如果要删除的任务是当前的任务
-                mCurrentExecuted = null;
+            mFilterCache.invalidate(getTaskId(task));
+            if (mEngine.getRunning() == task) {// 如果要删除的任务是当前的任务
+                mEngine.releaseRunning();
                 removed.add(task.getBean());
             } else {
-                if (mTobeExecuted.remove(task))// 如果删除成功，添加进列表
+                if (mEngine.remove(task))// 如果删除成功，添加进列表
                     removed.add(task.getBean());
             }
         }
-        if (mCurrentExecuted == null) {// 如果当前没有任务运行，则标记结束
+        if (mEngine.getRunning() == null) {// 如果当前没有任务运行，则标记结束
             if (mSpeedMonitor != null)
                 mSpeedMonitor.stop();
             mIsWorking = false;
@@ -231,41 +239,41 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
     @Override
     public synchronized void setRunningTask(String taskId) {
         XMgrTaskExecutor<B> task = getTaskById(taskId);
-        if (mCurrentExecuted == null && task != null) {
-            mTobeExecuted.remove(task);
-            mCurrentExecuted = task;
-        }
+        if (task != null)
+            mEngine.setRunning(task);// 当前有任务时什么都不做
     }
 
     @Override
     public XMgrTaskExecutor<B> getRunningTask() {
-        return mCurrentExecuted;
+        return mEngine.getRunning();
     }
 
+    /**
+     * @return 返回等待队列的副本(按队列顺序)
+     */
     @Override
     public List<XMgrTaskExecutor<B>> getWaitingTask() {
-//        return new ArrayList<XMgrTaskExecutor>(mTobeExecuted);
-        // 为了效率起见，牺牲安全性
-        return mTobeExecuted;
+        return mEngine.getWaiting();
     }
 
     @Override
     public synchronized boolean start() {
         // 如果当前任务为空，尝试从等待队列中选择一个任务
-        if (mCurrentExecuted == null) {
+        if (mEngine.getRunning() == null) {
             if (mSpeedMonitor != null)
                 mSpeedMonitor.stop();
-            mCurrentExecuted = findNextTask();
+            mEngine.setRunning(findNextTask());
         }
+        XMgrTaskExecutor<B> current = mEngine.getRunning();
         // 如果当前任务还是为空，则什么都不做
-        if (mCurrentExecuted == null)
+        if (current == null)
             return false;
         // 如果被过滤掉，则不启动
-        if (mFilter != null && mFilter.doFilter(mCurrentExecuted.getBean()) == null)
+        if (!mFilterCache.accept(current.getBean()))
             return false;
         mIsWorking = true;
         // 尝试启动任务。启动成功，则回调
-        if (mCurrentExecuted.start()) {
+        if (current.start()) {
             if (mSpeedMonitor != null)
                 mSpeedMonitor.start();
         }
@@ -280,7 +288,7 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
             return false;
 
         // 如果被过滤掉，则不启动
-        if (mFilter != null && mFilter.doFilter(task.getBean()) == null)
+        if (!mFilterCache.accept(task.getBean()))
             return false;
 
         // 先尝试启动指定任务
@@ -289,16 +297,17 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
 
         mIsWorking = true;
         // 如果当前任务不是指定id任务，暂停当前任务，再指定新的当前任务
-        if (mCurrentExecuted != task) {
+        XMgrTaskExecutor<B> current = mEngine.getRunning();
+        if (current != task) {
             // 暂停老的当前任务
-            if (mCurrentExecuted != null) {
-                mCurrentExecuted.pause();
+            if (current != null) {
+                current.pause();
                 // 添加回等待队列
-                mTobeExecuted.addFirst(mCurrentExecuted);
+                mEngine.releaseRunning();
+                mEngine.addFirst(current);
             }
-            // 指定新的当前任务
-            mTobeExecuted.remove(task);// 如果在等待队列中
-            mCurrentExecuted = task;
+            // 指定新的当前任务(如果在等待队列中，会被移出)
+            mEngine.setRunning(task);
         }
         if (mSpeedMonitor != null)
             mSpeedMonitor.start();
@@ -307,15 +316,16 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
 
     @Override
     public synchronized boolean resume() {
-        if (mCurrentExecuted == null)
+        XMgrTaskExecutor<B> current = mEngine.getRunning();
+        if (current == null)
             return false;
 
         // 如果被过滤掉，则不启动
-        if (mFilter != null && mFilter.doFilter(mCurrentExecuted.getBean()) == null)
+        if (!mFilterCache.accept(current.getBean()))
             return false;
 
         mIsWorking = true;
-        if (mCurrentExecuted.start()) {
+        if (current.start()) {
             if (mSpeedMonitor != null)
                 mSpeedMonitor.start();
         }
@@ -330,13 +340,14 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
             return false;
 
         // 如果被过滤掉，则不启动
-        if (mFilter != null && mFilter.doFilter(task.getBean()) == null)
+        if (!mFilterCache.accept(task.getBean()))
             return false;
 
         // 如果指定Id的任务存在，且在运行队列中，恢复该任务
-        if (mCurrentExecuted == task) {
+        XMgrTaskExecutor<B> current = mEngine.getRunning();
+        if (current == task) {
             mIsWorking = true;
-            if (mCurrentExecuted.start()) {
+            if (task.start()) {
                 if (mSpeedMonitor != null)
                     mSpeedMonitor.start();
             }
@@ -344,14 +355,13 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
         }
 
         // 如果指定Id的任务存在，且在等待队列中，运行队列已满，什么都不做
-        if (mCurrentExecuted != null)
+        if (current != null)
             return false;
 
         // 如果指定Id的任务存在，且在等待队列中，且运行队列未满，启动该任务
         mIsWorking = true;
-        mTobeExecuted.remove(task);
-        mCurrentExecuted = task;
-        if (mCurrentExecuted.start()) {
+        mEngine.setRunning(task);
+        if (task.start()) {
             if (mSpeedMonitor != null)
                 mSpeedMonitor.start();
         }
@@ -360,10 +370,11 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
 
     @Override
     public synchronized boolean pause() {
-        if (mCurrentExecuted == null)
+        XMgrTaskExecutor<B> current = mEngine.getRunning();
+        if (current == null)
             return false;
         // 尝试暂停任务
-        if (!mCurrentExecuted.pause())
+        if (!current.pause())
             return false;
         if (mSpeedMonitor != null)
             mSpeedMonitor.stop();
@@ -377,10 +388,10 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
     public synchronized boolean pause(String taskId) {
         XMgrTaskExecutor<B> task = getTaskById(taskId);
         // 如果指定Id的任务不存在，或不在执行队列中，则什么都不做，返回false
-        if (task == null || mCurrentExecuted != task)
+        if (task == null || mEngine.getRunning() != task)
             return false;
         // 如果指定Id的任务存在，且在运行队列中，暂停该任务
-        if (!mCurrentExecuted.pause())
+        if (!task.pause())
             return false;
         if (mSpeedMonitor != null)
             mSpeedMonitor.stop();
@@ -393,11 +404,12 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
     @Override
     public synchronized boolean pauseByFilter(XFilter<B> filter) {
         setTaskFilter(filter);// 设置当前的任务过滤器
-        if (mCurrentExecuted == null || filter == null ||
-                filter.doFilter(mCurrentExecuted.getBean()) != null)
+        XMgrTaskExecutor<B> current = mEngine.getRunning();
+        if (current == null || filter == null ||
+                mFilterCache.accept(current.getBean()))
             return false;
         // 尝试暂停任务
-        if (!mCurrentExecuted.pause())
+        if (!current.pause())
             return false;
         if (mSpeedMonitor != null)
             mSpeedMonitor.stop();
@@ -409,17 +421,17 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
 
     @Override
     public synchronized boolean stop() {
-        if (mCurrentExecuted == null)
+        XMgrTaskExecutor<B> current = mEngine.getRunning();
+        if (current == null)
             return false;
         // 尝试暂停任务
-        if (!mCurrentExecuted.pause())
+        if (!current.pause())
             return false;
         if (mSpeedMonitor != null)
             mSpeedMonitor.stop();
         mIsWorking = false;
         // 添加回等待队列
-        mTobeExecuted.addFirst(mCurrentExecuted);
-        mCurrentExecuted = null;
+        mEngine.addFirst(mEngine.releaseRunning());
         for (XTaskMgrListener<B> listener : mListeners)
             listener.onStopAll();
         return true;
@@ -429,17 +441,16 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
     public synchronized boolean stop(String taskId) {
         XMgrTaskExecutor<B> task = getTaskById(taskId);
         // 如果指定Id的任务不存在，或不在执行队列中，则什么都不做，返回false
-        if (task == null || mCurrentExecuted != task)
+        if (task == null || mEngine.getRunning() != task)
             return false;
         // 如果指定Id的任务存在，且在运行队列中，暂停该任务
-        if (!mCurrentExecuted.pause())
+        if (!task.pause())
             return false;
         if (mSpeedMonitor != null)
             mSpeedMonitor.stop();
         mIsWorking = false;
         // 添加回等待队列
-        mTobeExecuted.addFirst(mCurrentExecuted);
-        mCurrentExecuted = null;
+        mEngine.addFirst(mEngine.releaseRunning());
         for (XTaskMgrListener<B> listener : mListeners)
             listener.onStopAll();
         return true;
@@ -448,18 +459,18 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
     @Override
     public synchronized boolean stopByFilter(XFilter<B> filter) {
         setTaskFilter(filter);// 设置当前的任务过滤器
-        if (mCurrentExecuted == null || filter == null ||
-                filter.doFilter(mCurrentExecuted.getBean()) != null)
+        XMgrTaskExecutor<B> current = mEngine.getRunning();
+        if (current == null || filter == null ||
+                mFilterCache.accept(current.getBean()))
             return false;
         // 尝试暂停任务
-        if (!mCurrentExecuted.pause())
+        if (!current.pause())
             return false;
         if (mSpeedMonitor != null)
             mSpeedMonitor.stop();
         mIsWorking = false;
         // 添加回等待队列
-        mTobeExecuted.addFirst(mCurrentExecuted);
-        mCurrentExecuted = null;
+        mEngine.addFirst(mEngine.releaseRunning());
         for (XTaskMgrListener<B> listener : mListeners)
             listener.onStopAll();
         return true;
@@ -472,12 +483,12 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
         if (mSpeedMonitor != null)
             mSpeedMonitor.stop();
         // 结束并清空当前任务
-        if (mCurrentExecuted != null) {
-            mCurrentExecuted.pause();
-            mCurrentExecuted = null;
-        }
+        XMgrTaskExecutor<B> current = mEngine.releaseRunning();
+        if (current != null)
+            current.pause();
         // 清空等待队列中的任务
-        mTobeExecuted.clear();
+        mEngine.clear();
+        mFilterCache.invalidate();
         // 通知监听者
         for (XTaskMgrListener<B> listener : mListeners)
             listener.onStopAll();
@@ -491,6 +502,12 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
     @Override
     public void setTaskFilter(XFilter<B> filter) {
         mFilter = filter;
+        mFilterCache.setFilter(filter);
+    }
+
+    @Override
+    public void invalidateTaskFilter() {
+        mFilterCache.invalidate();
     }
 
     @Override
@@ -523,19 +540,21 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
      */
     protected XMgrTaskExecutor<B> findNextTask() {
         // 用TaskScheduler排序
-        if (mScheduler != null)
-            Collections.sort(mTobeExecuted, mInnerComparator);
+        List<XMgrTaskExecutor<B>> waiting = mEngine.getWaiting();
+        if (mScheduler != null) {
+            Collections.sort(waiting, mInnerComparator);
+            mEngine.reorder(waiting);
+        }
 
         // 用TaskFilter过滤，找到第一个是TODO状态的任务
-        final XFilter<B> finalFilter = mFilter;
         XMgrTaskExecutor<B> nextTask = null;// 最终的结果，下一个待执行任务
         XMgrTaskExecutor<B> filteredTask = null;// 第一个符合状态但被过滤掉的任务
-        for (XMgrTaskExecutor<B> task : mTobeExecuted) {
+        for (XMgrTaskExecutor<B> task : waiting) {
             // 不是TODO状态的任务，跳过
             if (task.getStatus() != XTaskBean.STATUS_TODO)
                 continue;
             // TODO状态，且没被过滤掉的任务
-            if ((finalFilter == null || finalFilter.doFilter(task.getBean()) != null)) {
+            if (mFilterCache.accept(task.getBean())) {
                 nextTask = task;
                 break;
             }
@@ -551,7 +570,7 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
         }
         // 如果找到下一个任务，则将其从等待队列中移除
         if (nextTask != null)
-            mTobeExecuted.remove(nextTask);
+            mEngine.remove(nextTask);
         return nextTask;
     }
 
@@ -561,13 +580,12 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
             return;
 
         // 如果不是当前正在执行的任务（可能是没执行就被外部pause或abort了）
-        if (task != mCurrentExecuted) {
+        if (task != mEngine.getRunning()) {
             // 如果是TODO状态添，且addBack为true，才能加回等待队列
             if (addBack && task.getStatus() == XTaskBean.STATUS_TODO) {
-                if (!mTobeExecuted.contains(task))
-                    mTobeExecuted.offer(task);
+                mEngine.add(task);// 已在队列中时不会重复添加
             } else {
-                mTobeExecuted.remove(task);// 否则，直接丢弃该任务
+                mEngine.remove(task);// 否则，直接丢弃该任务
             }
             return;
         }
@@ -579,16 +597,17 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
         // 如果是TODO结束的，ERROR结束的，或是DONE结束的，寻找下一个任务
         if (mSpeedMonitor != null)
             mSpeedMonitor.stop();
-        mCurrentExecuted = findNextTask();
+        mEngine.releaseRunning();
+        XMgrTaskExecutor<B> current = findNextTask();
+        mEngine.setRunning(current);
         // 下一个任务为空，但当前等待队列不为空，则说明等待队列中所有的任务都是异常状态
-        boolean allError = (mCurrentExecuted == null && mTobeExecuted.size() > 0);
-        // 如果是TODO或ERROR结束的，且addBack为true，添加回等待队列
-        if (addBack && task.getStatus() != XTaskBean.STATUS_DONE
-                && !mTobeExecuted.contains(task))
-            mTobeExecuted.offer(task);
+        boolean allError = (current == null && mEngine.getWaitingCount() > 0);
+        // 如果是TODO或ERROR结束的，且addBack为true，添加回等待队列(已在队列中时不会重复添加)
+        if (addBack && task.getStatus() != XTaskBean.STATUS_DONE)
+            mEngine.add(task);
         // 如果等待队列中所有的任务都是异常状态，则全部重置成TODO，方便下次全部自动执行
         if (allError) {
-            for (XMgrTaskExecutor<B> errorTask : mTobeExecuted)
+            for (XMgrTaskExecutor<B> errorTask : mEngine.getWaiting())
                 errorTask.setStatus(XTaskBean.STATUS_TODO);
         }
 
@@ -601,9 +620,9 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
         }
 
         // 如果有任务(没被过滤)，则继续执行任务
-        if (mCurrentExecuted != null &&
-                (mFilter == null || mFilter.doFilter(mCurrentExecuted.getBean()) != null)) {
-            if (mCurrentExecuted.start()) {
+        if (current != null &&
+                mFilterCache.accept(current.getBean())) {
+            if (current.start()) {
                 if (mSpeedMonitor != null)
                     mSpeedMonitor.start();
             }
@@ -611,7 +630,7 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
         // 没有任务，标记结束
         else {
             mIsWorking = false;
-            if (mTobeExecuted.size() == 0) {
+            if (mEngine.getWaitingCount() == 0) {
                 // 当前没有执行任务，等待队列也没任务，则回调onFinishAll()
                 for (XTaskMgrListener<B> listener : mListeners)
                     listener.onFinishAll();
@@ -640,14 +659,15 @@ public class XSerialMgrImpl<B extends XTaskBean> implements XSerialMgr<B> {
     }
 
     /**
-     * 内部Comparator<T>子类，用于对mTobeExecuted进行优先级排序。
+     * 内部Comparator<T>子类，用于对等待队列进行优先级排序。
      * 通过传入的TaskScheduler来实际进行排序比较。
      */
     private class InnerTaskComparator implements Comparator<XMgrTaskExecutor<B>> {
         @Override
         public int compare(XMgrTaskExecutor<B> lhs, XMgrTaskExecutor<B> rhs) {
+            XMgrTaskExecutor<B> current = mEngine.getRunning();
             return mScheduler.compare(lhs.getBean(), rhs.getBean(),
-                    mCurrentExecuted == null ? null : mCurrentExecuted.getBean());
+                    current == null ? null : current.getBean());
         }
     }
 }
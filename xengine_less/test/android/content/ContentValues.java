@@ -0,0 +1,86 @@
+package android.content;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 测试用的ContentValues(在JVM上代替android.jar中的实现)，按插入顺序保存键值。
+ */
+public final class ContentValues {
+
+    private final LinkedHashMap<String, Object> mValues;
+
+    public ContentValues() {
+        mValues = new LinkedHashMap<String, Object>();
+    }
+
+    public ContentValues(int size) {
+        mValues = new LinkedHashMap<String, Object>(Math.max(16, size * 2));
+    }
+
+    public void put(String key, String value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Integer value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Long value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Double value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Float value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Boolean value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, byte[] value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Short value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Byte value) {
+        mValues.put(key, value);
+    }
+
+    public void putNull(String key) {
+        mValues.put(key, null);
+    }
+
+    public Object get(String key) {
+        return mValues.get(key);
+    }
+
+    public int size() {
+        return mValues.size();
+    }
+
+    public Set<Map.Entry<String, Object>> valueSet() {
+        return mValues.entrySet();
+    }
+
+    public Set<String> keySet() {
+        return mValues.keySet();
+    }
+
+    public boolean containsKey(String key) {
+        return mValues.containsKey(key);
+    }
+
+    @Override
+    public String toString() {
+        return mValues.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+
+/**
+ * 测试用的DatabaseUtils(在JVM上代替android.jar中的实现)。
+ */
+public class DatabaseUtils {
+
+    public static long queryNumEntries(SQLiteDatabase db, String table) {
+        return longForQuery(db, "SELECT COUNT(*) FROM " + table, null);
+    }
+
+    public static long longForQuery(SQLiteDatabase db, String query, String[] selectionArgs) {
+        Cursor cur = db.rawQuery(query, selectionArgs);
+        try {
+            if (!cur.moveToFirst())
+                throw new SQLiteDoneException();
+            return cur.getLong(0);
+        } finally {
+            cur.close();
+        }
+    }
+
+    public static String stringForQuery(SQLiteDatabase db, String query, String[] selectionArgs) {
+        Cursor cur = db.rawQuery(query, selectionArgs);
+        try {
+            if (!cur.moveToFirst())
+                throw new SQLiteDoneException();
+            return cur.getString(0);
+        } finally {
+            cur.close();
+        }
+    }
+
+    public static String sqlEscapeString(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,118 @@
+package android.database.sqlite;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 测试用的内存SQLite(在JVM上代替android.jar中的数据库实现)。
+ * 同名的数据库在reset()之前一直保留(与设备上的数据库文件相同)，名字为null时每次打开都是新的数据库。
+ * 同时统计打开、提交、扫描的行数等，测试用这些计数验证数据库的访问次数。
+ */
+public final class InMemorySQLite {
+
+    static final AtomicLong OPENS = new AtomicLong();// 打开数据库连接的次数
+    static final AtomicLong CLOSES = new AtomicLong();// 关闭数据库连接的次数
+    static final AtomicLong COMMITS = new AtomicLong();// 有写操作的事务提交次数(含自动提交)
+    static final AtomicLong ROLLBACKS = new AtomicLong();// 事务回滚次数
+    static final AtomicLong STATEMENTS = new AtomicLong();// 执行的语句数
+    static final AtomicLong COMPILED = new AtomicLong();// compileStatement()的次数
+    static final AtomicLong ROWS_SCANNED = new AtomicLong();// 执行语句时检查过的行数
+    static final AtomicLong ROWS_READ = new AtomicLong();// 通过游标读到的行数
+    static final AtomicLong CURSORS_OPENED = new AtomicLong();// 创建的游标数
+    static final AtomicLong CURSORS_CLOSED = new AtomicLong();// 关闭的游标数
+
+    private static final HashMap<String, MemoryDatabase> sDatabases =
+            new HashMap<String, MemoryDatabase>();
+    private static volatile String sSqliteVersion = "3.28.0";
+
+    private InMemorySQLite() {}
+
+    static synchronized MemoryDatabase open(String name) {
+        OPENS.incrementAndGet();
+        if (name == null)
+            return new MemoryDatabase(null);
+        MemoryDatabase db = sDatabases.get(name);
+        if (db == null) {
+            db = new MemoryDatabase(name);
+            sDatabases.put(name, db);
+        }
+        return db;
+    }
+
+    /**
+     * 删除所有数据库并清空计数。
+     */
+    public static synchronized void reset() {
+        sDatabases.clear();
+        sSqliteVersion = "3.28.0";
+        resetCounters();
+    }
+
+    /**
+     * 只清空计数。
+     */
+    public static void resetCounters() {
+        for (AtomicLong counter : new AtomicLong[] {OPENS, CLOSES, COMMITS, ROLLBACKS, STATEMENTS,
+                COMPILED, ROWS_SCANNED, ROWS_READ, CURSORS_OPENED, CURSORS_CLOSED})
+            counter.set(0);
+    }
+
+    /**
+     * 设置sqlite_version()的返回值(默认3.28.0)。
+     */
+    public static void setSqliteVersion(String version) {
+        sSqliteVersion = version;
+    }
+
+    public static String getSqliteVersion() {
+        return sSqliteVersion;
+    }
+
+    /**
+     * @return 数据表的行数，没有这个数据库或表时返回-1(不计入扫描的行数)
+     */
+    public static synchronized int rowCount(String database, String table) {
+        MemoryDatabase db = sDatabases.get(database);
+        return db == null ? -1 : db.rowCount(table);
+    }
+
+    public static long getOpenCount() {
+        return OPENS.get();
+    }
+
+    public static long getCloseCount() {
+        return CLOSES.get();
+    }
+
+    public static long getCommitCount() {
+        return COMMITS.get();
+    }
+
+    public static long getRollbackCount() {
+        return ROLLBACKS.get();
+    }
+
+    public static long getStatementCount() {
+        return STATEMENTS.get();
+    }
+
+    public static long getCompiledStatementCount() {
+        return COMPILED.get();
+    }
+
+    public static long getRowsScanned() {
+        return ROWS_SCANNED.get();
+    }
+
+    public static long getRowsRead() {
+        return ROWS_READ.get();
+    }
+
+    public static long getCursorsOpened() {
+        return CURSORS_OPENED.get();
+    }
+
+    public static long getCursorsClosed() {
+        return CURSORS_CLOSED.get();
+    }
+}
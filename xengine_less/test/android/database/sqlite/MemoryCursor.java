@@ -0,0 +1,218 @@
+package android.database.sqlite;
+
+import android.database.Cursor;
+
+import java.util.List;
+
+/**
+ * 内存SQLite的游标。与Android的SQLiteCursor一样，第一次访问数据时才执行查询。
+ */
+final class MemoryCursor implements Cursor {
+
+    private final MemoryDatabase mDatabase;
+    private final Sql.Stmt mStatement;
+    private final Object[] mArgs;
+    private MemoryDatabase.Result mResult;// 查询结果(第一次访问时执行)
+    private int mPosition = -1;
+    private int mMaxRead = -1;// 已经读到的最大位置(统计读取的行数)
+    private boolean mClosed;
+
+    MemoryCursor(MemoryDatabase database, Sql.Stmt statement, Object[] args) {
+        mDatabase = database;
+        mStatement = statement;
+        mArgs = args;
+        InMemorySQLite.CURSORS_OPENED.incrementAndGet();
+    }
+
+    private MemoryDatabase.Result result() {
+        if (mClosed)
+            throw new IllegalStateException("attempt to re-open an already-closed object");
+        if (mResult == null)
+            mResult = mDatabase.execute(mStatement, mArgs);
+        return mResult;
+    }
+
+    private List<Object[]> rows() {
+        return result().rows;
+    }
+
+    private Object value(int column) {
+        List<Object[]> rows = rows();
+        if (mPosition < 0 || mPosition >= rows.size())
+            throw new IllegalStateException("Index " + mPosition + " requested, with a size of "
+                    + rows.size());
+        Object[] row = rows.get(mPosition);
+        if (column < 0 || column >= row.length)
+            throw new IllegalStateException("Couldn't read row " + mPosition + ", col " + column);
+        return row[column];
+    }
+
+    @Override
+    public int getCount() {
+        return rows().size();
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(mPosition + offset);
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        int count = getCount();
+        if (position >= count) {
+            mPosition = count;
+            return false;
+        }
+        if (position < 0) {
+            mPosition = -1;
+            return false;
+        }
+        mPosition = position;
+        if (position > mMaxRead) {
+            InMemorySQLite.ROWS_READ.addAndGet(position - mMaxRead);
+            mMaxRead = position;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(getCount() - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(mPosition - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return mPosition == 0 && getCount() != 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        int count = getCount();
+        return mPosition == count - 1 && count != 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return getCount() == 0 || mPosition == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        int count = getCount();
+        return count == 0 || mPosition == count;
+    }
+
+    @Override
+    public int getColumnIndex(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot != -1)
+            name = name.substring(dot + 1);
+        String[] columns = getColumnNames();
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equalsIgnoreCase(name))
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String name) {
+        int index = getColumnIndex(name);
+        if (index < 0)
+            throw new IllegalArgumentException("column '" + name + "' does not exist");
+        return index;
+    }
+
+    @Override
+    public String getColumnName(int index) {
+        return getColumnNames()[index];
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return result().columns;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return getColumnNames().length;
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        Object v = value(column);
+        if (v == null || v instanceof byte[])
+            return (byte[]) v;
+        return SqlValues.toText(v).getBytes();
+    }
+
+    @Override
+    public String getString(int column) {
+        return SqlValues.toText(value(column));
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return SqlValues.toLong(value(column));
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return SqlValues.toDouble(value(column));
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return value(column) == null;
+    }
+
+    @Override
+    public void close() {
+        if (mClosed)
+            return;
+        mClosed = true;
+        mResult = null;
+        InMemorySQLite.CURSORS_CLOSED.incrementAndGet();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return mClosed;
+    }
+}
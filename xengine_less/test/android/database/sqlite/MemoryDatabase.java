@@ -0,0 +1,1533 @@
+package android.database.sqlite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * 内存SQLite的一个数据库：数据表、唯一索引、事务和语句的执行。
+ * 与Android的SQLiteDatabase一样，事务期间连接被开启事务的线程独占，其他线程的语句等待事务结束。
+ * 事务用撤销日志实现：回滚时逆序撤销记录的修改，提交的开销与修改的行数成正比。
+ * 语句出错时只撤销该语句的修改(与SQLite的ABORT相同)。
+ */
+final class MemoryDatabase {
+
+    final String name;
+    final ReentrantLock lock = new ReentrantLock();
+    int version;// user_version
+
+    private final LinkedHashMap<String, Table> mTables;// 小写表名 -> 表
+    private final LinkedHashMap<String, Index> mIndexes;// 小写索引名 -> 索引
+    private final LinkedHashMap<String, Sql.Stmt> mParsed;// 解析过的语句(LRU)
+
+    private int mDepth;// 事务嵌套层数
+    private boolean mFailed;// 有嵌套事务没有调用setTransactionSuccessful()
+    private final ArrayList<Boolean> mSuccessful;// 每层事务是否成功
+    private final ArrayList<Undo> mUndo;// 当前事务(或语句)的撤销日志
+
+    MemoryDatabase(String name) {
+        this.name = name;
+        mTables = new LinkedHashMap<String, Table>();
+        mIndexes = new LinkedHashMap<String, Index>();
+        mParsed = new LinkedHashMap<String, Sql.Stmt>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Sql.Stmt> eldest) {
+                return size() > 200;
+            }
+        };
+        mSuccessful = new ArrayList<Boolean>();
+        mUndo = new ArrayList<Undo>();
+    }
+
+    // ---------------- 事务 ----------------
+
+    void beginTransaction() {
+        lock.lock();
+        mDepth++;
+        mSuccessful.add(Boolean.FALSE);
+        if (mDepth == 1) {
+            mFailed = false;
+            mUndo.clear();
+        }
+    }
+
+    void setTransactionSuccessful() {
+        checkTransaction();
+        mSuccessful.set(mSuccessful.size() - 1, Boolean.TRUE);
+    }
+
+    void endTransaction() {
+        checkTransaction();
+        try {
+            if (!mSuccessful.remove(mSuccessful.size() - 1))
+                mFailed = true;
+            mDepth--;
+            if (mDepth == 0) {
+                if (mFailed) {
+                    rollbackTo(0);
+                    InMemorySQLite.ROLLBACKS.incrementAndGet();
+                } else if (!mUndo.isEmpty()) {
+                    InMemorySQLite.COMMITS.incrementAndGet();
+                }
+                mUndo.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean inTransaction() {
+        return lock.isHeldByCurrentThread() && mDepth > 0;
+    }
+
+    /**
+     * 有其他线程在等待时，提交当前事务并让出连接，再开启新的事务。
+     */
+    boolean yieldIfContended() {
+        checkTransaction();
+        if (mDepth != 1 || !lock.hasQueuedThreads())
+            return false;
+        if (mFailed)
+            return false;
+        if (!mUndo.isEmpty())
+            InMemorySQLite.COMMITS.incrementAndGet();
+        mUndo.clear();
+        int holds = lock.getHoldCount();
+        for (int i = 0; i < holds; i++)
+            lock.unlock();
+        Thread.yield();
+        for (int i = 0; i < holds; i++)
+            lock.lock();
+        return true;
+    }
+
+    private void checkTransaction() {
+        if (!lock.isHeldByCurrentThread() || mDepth == 0)
+            throw new IllegalStateException("no transaction pending");
+    }
+
+    // ---------------- 执行 ----------------
+
+    Sql.Stmt parse(String sql) {
+        lock.lock();
+        try {
+            Sql.Stmt stmt = mParsed.get(sql);
+            if (stmt == null) {
+                stmt = Sql.parse(sql);
+                mParsed.put(sql, stmt);
+            }
+            return stmt;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 执行一条语句。不在事务中时自动提交，出错时撤销该语句的修改。
+     */
+    Result execute(Sql.Stmt stmt, Object[] args) {
+        lock.lock();
+        try {
+            InMemorySQLite.STATEMENTS.incrementAndGet();
+            int mark = mUndo.size();
+            Result result;
+            try {
+                result = run(stmt, args);
+            } catch (RuntimeException e) {
+                rollbackTo(mark);
+                throw e;
+            }
+            if (mDepth == 0) {
+                if (!mUndo.isEmpty())
+                    InMemorySQLite.COMMITS.incrementAndGet();
+                mUndo.clear();
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Result run(Sql.Stmt stmt, Object[] args) {
+        if (args.length < stmt.paramCount)
+            throw new SQLiteException("Cannot bind argument at index " + (args.length + 1)
+                    + " because the index is out of range. The statement has "
+                    + stmt.paramCount + " parameters.");
+        if (stmt instanceof Sql.Select)
+            return select((Sql.Select) stmt, new Ctx(args), 0);
+        if (stmt instanceof Sql.Insert)
+            return insert((Sql.Insert) stmt, args);
+        if (stmt instanceof Sql.Update)
+            return update((Sql.Update) stmt, args);
+        if (stmt instanceof Sql.Delete)
+            return delete((Sql.Delete) stmt, args);
+        if (stmt instanceof Sql.CreateTable)
+            return createTable((Sql.CreateTable) stmt);
+        if (stmt instanceof Sql.CreateIndex)
+            return createIndex((Sql.CreateIndex) stmt);
+        if (stmt instanceof Sql.Drop)
+            return drop((Sql.Drop) stmt);
+        if (stmt instanceof Sql.Alter)
+            return alter((Sql.Alter) stmt);
+        if (stmt instanceof Sql.Pragma)
+            return pragma((Sql.Pragma) stmt);
+        if (stmt instanceof Sql.Explain)
+            return explain((Sql.Explain) stmt, args);
+        throw new SQLiteException("unsupported statement: " + stmt.sql);
+    }
+
+    /**
+     * 语句的执行结果。
+     */
+    static final class Result {
+        String[] columns = new String[0];
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        int changes;// 修改的行数
+        long lastInsertRowid = -1;
+    }
+
+    // ---------------- SELECT ----------------
+
+    private Result select(Sql.Select s, Ctx ctx, int stopAfter) {
+        Result result = new Result();
+        Table table = s.from == null ? null : readTable(s.from);
+        ctx = ctx.child(table);
+
+        boolean aggregate = false;
+        List<String> names = new ArrayList<String>();
+        List<Sql.Expr> exprs = new ArrayList<Sql.Expr>();
+        for (int i = 0; i < s.columns.size(); i++) {
+            Sql.Expr expr = s.columns.get(i);
+            if (expr == null) {
+                if (table == null)
+                    throw new SQLiteException("no tables specified");
+                for (int c = 0; c < table.columns.size(); c++) {
+                    Sql.Column column = new Sql.Column(null, table.columns.get(c).name);
+                    names.add(table.columns.get(c).name);
+                    exprs.add(column);
+                }
+            } else {
+                aggregate |= expr.isAggregate();
+                names.add(s.aliases.get(i));
+                exprs.add(expr);
+            }
+        }
+        result.columns = names.toArray(new String[names.size()]);
+
+        long limit = s.limit == null ? -1 : SqlValues.toLong(eval(s.limit, ctx));
+        long offset = s.offset == null ? 0 : SqlValues.toLong(eval(s.offset, ctx));
+        if (stopAfter > 0 && (limit < 0 || limit > stopAfter))
+            limit = stopAfter;
+
+        if (table == null) {
+            if (limit != 0 && offset == 0)
+                result.rows.add(project(exprs, ctx, aggregate ? new ArrayList<Object[]>() : null));
+            return result;
+        }
+
+        // 没有排序和聚合时，找够行数就停止扫描
+        boolean streaming = s.orderBy.isEmpty() && !aggregate && !s.distinct;
+        long needed = limit < 0 ? Long.MAX_VALUE : limit + offset;
+        List<long[]> matchedIds = new ArrayList<long[]>();
+        List<Object[]> matched = new ArrayList<Object[]>();
+        Iterable<Map.Entry<Long, Object[]>> candidates = candidates(table, s.where, ctx);
+        for (Map.Entry<Long, Object[]> entry : candidates) {
+            InMemorySQLite.ROWS_SCANNED.incrementAndGet();
+            ctx.row = entry.getValue();
+            ctx.rowid = entry.getKey();
+            if (s.where != null && !SqlValues.isTrue(eval(s.where, ctx)))
+                continue;
+            matched.add(entry.getValue());
+            matchedIds.add(new long[] {entry.getKey()});
+            if (streaming && matched.size() >= needed)
+                break;
+        }
+
+        if (aggregate) {
+            ctx.row = matched.isEmpty() ? null : matched.get(matched.size() - 1);
+            ctx.rowid = matched.isEmpty() ? 0 : matchedIds.get(matchedIds.size() - 1)[0];
+            if (limit != 0 && offset == 0)
+                result.rows.add(project(exprs, ctx, matched));
+            return result;
+        }
+
+        Integer[] order = new Integer[matched.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        if (!s.orderBy.isEmpty())
+            sort(order, s, result.columns, exprs, matched, matchedIds, ctx);
+
+        HashSet<List<Object>> seen = s.distinct ? new HashSet<List<Object>>() : null;
+        long skipped = 0;
+        for (Integer i : order) {
+            if (limit >= 0 && result.rows.size() >= limit)
+                break;
+            ctx.row = matched.get(i);
+            ctx.rowid = matchedIds.get(i)[0];
+            Object[] row = project(exprs, ctx, null);
+            if (seen != null && !seen.add(keyOf(row)))
+                continue;
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            result.rows.add(row);
+        }
+        return result;
+    }
+
+    private void sort(Integer[] order, Sql.Select s, String[] names, List<Sql.Expr> exprs,
+                      final List<Object[]> rows, final List<long[]> ids, final Ctx ctx) {
+        final List<Sql.Expr> terms = new ArrayList<Sql.Expr>();
+        for (Sql.Expr term : s.orderBy) {
+            Sql.Expr resolved = term;
+            if (term instanceof Sql.Literal && ((Sql.Literal) term).value instanceof Long) {
+                resolved = exprs.get((int) (long) (Long) ((Sql.Literal) term).value - 1);
+            } else if (term instanceof Sql.Column && ((Sql.Column) term).qualifier == null) {
+                for (int i = 0; i < names.length; i++) {
+                    if (names[i].equalsIgnoreCase(((Sql.Column) term).name)
+                            && !(exprs.get(i) instanceof Sql.Column)) {
+                        resolved = exprs.get(i);
+                        break;
+                    }
+                }
+            }
+            terms.add(resolved);
+        }
+        final Object[][] keys = new Object[rows.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            ctx.row = rows.get(i);
+            ctx.rowid = ids.get(i)[0];
+            keys[i] = new Object[terms.size()];
+            for (int t = 0; t < terms.size(); t++)
+                keys[i][t] = eval(terms.get(t), ctx);
+        }
+        final List<Boolean> descending = s.descending;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                for (int t = 0; t < terms.size(); t++) {
+                    int c = SqlValues.compare(keys[a][t], keys[b][t]);
+                    if (c != 0)
+                        return descending.get(t) ? -c : c;
+                }
+                return 0;
+            }
+        });
+    }
+
+    private Object[] project(List<Sql.Expr> exprs, Ctx ctx, List<Object[]> group) {
+        ctx.group = group;
+        Object[] row = new Object[exprs.size()];
+        for (int i = 0; i < row.length; i++)
+            row[i] = eval(exprs.get(i), ctx);
+        ctx.group = null;
+        return row;
+    }
+
+    /**
+     * 按WHERE中的等值条件使用主键或唯一索引，否则扫描全表(按rowid顺序)。
+     */
+    private Iterable<Map.Entry<Long, Object[]>> candidates(Table table, Sql.Expr where, Ctx ctx) {
+        Long rowid = lookup(table, where, ctx);
+        if (rowid == null)
+            return new ArrayList<Map.Entry<Long, Object[]>>(table.rows.entrySet());
+        List<Map.Entry<Long, Object[]>> result = new ArrayList<Map.Entry<Long, Object[]>>(1);
+        if (rowid >= 0 && table.rows.containsKey(rowid))
+            result.add(new java.util.AbstractMap.SimpleEntry<Long, Object[]>(rowid,
+                    table.rows.get(rowid)));
+        return result;
+    }
+
+    /**
+     * @return 能用索引定位时返回rowid(找不到返回-1);不能用索引时返回null
+     */
+    private Long lookup(Table table, Sql.Expr where, Ctx ctx) {
+        Map<Integer, Object> equalities = equalities(table, where, ctx);
+        if (equalities.isEmpty())
+            return null;
+        Object rowid = equalities.get(Table.ROWID);
+        if (rowid == null && table.rowidColumn >= 0)
+            rowid = equalities.get(table.rowidColumn);
+        if (rowid != null)
+            return rowid instanceof Long ? (Long) rowid : -1L;
+        for (Key key : table.keys) {
+            Object[] values = new Object[table.columns.size()];
+            boolean covered = true;
+            for (int column : key.columns) {
+                if (!equalities.containsKey(column)) {
+                    covered = false;
+                    break;
+                }
+                values[column] = equalities.get(column);
+            }
+            if (covered) {
+                Long found = key.find(values);
+                return found == null ? -1L : found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 取出WHERE中"字段 = 常量"形式的条件(只看AND连接的部分)。
+     */
+    private Map<Integer, Object> equalities(Table table, Sql.Expr where, Ctx ctx) {
+        Map<Integer, Object> result = new HashMap<Integer, Object>();
+        List<Sql.Expr> conjuncts = new ArrayList<Sql.Expr>();
+        collectConjuncts(where, conjuncts);
+        for (Sql.Expr conjunct : conjuncts) {
+            if (!(conjunct instanceof Sql.Binary) || !((Sql.Binary) conjunct).op.equals("="))
+                continue;
+            Sql.Binary binary = (Sql.Binary) conjunct;
+            Sql.Expr column = binary.left;
+            Sql.Expr value = binary.right;
+            if (!(column instanceof Sql.Column)) {
+                column = binary.right;
+                value = binary.left;
+            }
+            if (!(column instanceof Sql.Column) || !isConstant(value))
+                continue;
+            int index = table.indexOf(((Sql.Column) column).name);
+            if (index == Table.NONE)
+                continue;
+            Object v = eval(value, ctx);
+            if (v == null)
+                continue;
+            int affinity = index == Table.ROWID ? SqlValues.AFFINITY_INTEGER
+                    : table.columns.get(index).affinity;
+            result.put(index, SqlValues.applyAffinity(v, affinity));
+        }
+        return result;
+    }
+
+    private static void collectConjuncts(Sql.Expr expr, List<Sql.Expr> out) {
+        if (expr instanceof Sql.Binary && ((Sql.Binary) expr).op.equals("AND")) {
+            collectConjuncts(((Sql.Binary) expr).left, out);
+            collectConjuncts(((Sql.Binary) expr).right, out);
+        } else if (expr != null) {
+            out.add(expr);
+        }
+    }
+
+    private static boolean isConstant(Sql.Expr expr) {
+        if (expr instanceof Sql.Literal || expr instanceof Sql.Param)
+            return true;
+        if (expr instanceof Sql.Unary)
+            return isConstant(((Sql.Unary) expr).operand);
+        return false;
+    }
+
+    // ---------------- INSERT / UPDATE / DELETE ----------------
+
+    private Result insert(Sql.Insert s, Object[] args) {
+        Table table = requireTable(s.table);
+        Result result = new Result();
+        int[] targets;
+        if (s.columns == null) {
+            targets = new int[table.columns.size()];
+            for (int i = 0; i < targets.length; i++)
+                targets[i] = i;
+        } else {
+            targets = new int[s.columns.size()];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = table.indexOf(s.columns.get(i));
+                if (targets[i] == Table.NONE)
+                    throw new SQLiteException("table " + table.name + " has no column named "
+                            + s.columns.get(i));
+            }
+        }
+        List<Object[]> tuples = new ArrayList<Object[]>();
+        Ctx ctx = new Ctx(args);
+        if (s.select != null) {
+            tuples.addAll(select(s.select, ctx, 0).rows);
+        } else {
+            for (List<Sql.Expr> exprs : s.values) {
+                Object[] tuple = new Object[exprs.size()];
+                for (int i = 0; i < tuple.length; i++)
+                    tuple[i] = eval(exprs.get(i), ctx);
+                tuples.add(tuple);
+            }
+        }
+        Key target = s.upsert ? upsertTarget(table, s.upsertTarget) : null;
+        for (Object[] tuple : tuples) {
+            if (tuple.length != targets.length && !(tuple.length == 0 && s.values.size() == 1))
+                throw new SQLiteException(tuple.length + " values for " + targets.length
+                        + " columns");
+            Object[] values = new Object[table.columns.size()];
+            for (int c = 0; c < values.length; c++) {
+                Sql.Expr defaultValue = table.columns.get(c).defaultValue;
+                values[c] = defaultValue == null ? null : table.store(c, eval(defaultValue, ctx));
+            }
+            Long explicitRowid = null;
+            for (int i = 0; i < tuple.length; i++) {
+                if (targets[i] == Table.ROWID) {
+                    explicitRowid = tuple[i] == null ? null : SqlValues.toLong(tuple[i]);
+                    continue;
+                }
+                values[targets[i]] = table.store(targets[i], tuple[i]);
+            }
+            if (table.rowidColumn >= 0 && values[table.rowidColumn] != null) {
+                if (!(values[table.rowidColumn] instanceof Long))
+                    throw new SQLiteException("datatype mismatch");
+                explicitRowid = (Long) values[table.rowidColumn];
+            }
+
+            // 冲突检查
+            List<Long> conflicts = new ArrayList<Long>();
+            Long targetConflict = null;
+            if (explicitRowid != null && table.rows.containsKey(explicitRowid)) {
+                conflicts.add(explicitRowid);
+                if (s.upsert && (target == null || target == Table.ROWID_KEY))
+                    targetConflict = explicitRowid;
+            }
+            for (Key key : table.keys) {
+                Long found = key.find(values);
+                if (found != null && !conflicts.contains(found)) {
+                    conflicts.add(found);
+                    if (s.upsert && targetConflict == null && (target == null || target == key))
+                        targetConflict = found;
+                } else if (found != null && s.upsert && targetConflict == null
+                        && (target == null || target == key)) {
+                    targetConflict = found;
+                }
+            }
+            if (targetConflict != null) {
+                if (!s.setColumns.isEmpty()) {
+                    Ctx update = ctx.child(table);
+                    update.row = table.rows.get(targetConflict);
+                    update.rowid = targetConflict;
+                    update.excluded = values;
+                    updateRow(table, targetConflict, s.setColumns, s.setValues, update, "ABORT");
+                    result.changes++;
+                }
+                continue;
+            }
+            checkNotNull(table, values, s.conflict);
+            if (!conflicts.isEmpty()) {
+                if (s.conflict.equals("IGNORE"))
+                    continue;
+                if (!s.conflict.equals("REPLACE"))
+                    throw uniqueFailed(table, values, explicitRowid);
+                for (Long conflict : conflicts)
+                    deleteRow(table, conflict);
+            }
+            long rowid = explicitRowid != null ? explicitRowid : table.nextRowid();
+            if (table.rowidColumn >= 0)
+                values[table.rowidColumn] = rowid;
+            putRow(table, rowid, values);
+            result.changes++;
+            result.lastInsertRowid = rowid;
+        }
+        return result;
+    }
+
+    private Key upsertTarget(Table table, List<String> columns) {
+        if (columns == null)
+            return null;
+        HashSet<Integer> wanted = new HashSet<Integer>();
+        for (String column : columns) {
+            int index = table.indexOf(column);
+            if (index == Table.NONE)
+                throw new SQLiteException("no such column: " + column);
+            wanted.add(index);
+        }
+        if (wanted.size() == 1 && (wanted.contains(Table.ROWID) || wanted.contains(table.rowidColumn)))
+            return Table.ROWID_KEY;
+        for (Key key : table.keys) {
+            HashSet<Integer> have = new HashSet<Integer>();
+            for (int column : key.columns)
+                have.add(column);
+            if (have.equals(wanted))
+                return key;
+        }
+        throw new SQLiteException("ON CONFLICT clause does not match any PRIMARY KEY or UNIQUE constraint");
+    }
+
+    private Result update(Sql.Update s, Object[] args) {
+        Table table = requireTable(s.table);
+        Result result = new Result();
+        Ctx ctx = new Ctx(args).child(table);
+        List<Long> matched = new ArrayList<Long>();
+        for (Map.Entry<Long, Object[]> entry : candidates(table, s.where, ctx)) {
+            InMemorySQLite.ROWS_SCANNED.incrementAndGet();
+            ctx.row = entry.getValue();
+            ctx.rowid = entry.getKey();
+            if (s.where == null || SqlValues.isTrue(eval(s.where, ctx)))
+                matched.add(entry.getKey());
+        }
+        for (Long rowid : matched) {
+            Object[] row = table.rows.get(rowid);
+            if (row == null)
+                continue;// 被REPLACE删除了
+            ctx.row = row;
+            ctx.rowid = rowid;
+            updateRow(table, rowid, s.setColumns, s.setValues, ctx, s.conflict);
+            result.changes++;
+        }
+        return result;
+    }
+
+    private void updateRow(Table table, long rowid, List<String> columns, List<Sql.Expr> exprs,
+                           Ctx ctx, String conflict) {
+        Object[] before = table.rows.get(rowid);
+        Object[] values = before.clone();
+        long newRowid = rowid;
+        for (int i = 0; i < columns.size(); i++) {
+            int index = table.indexOf(columns.get(i));
+            if (index == Table.NONE)
+                throw new SQLiteException("no such column: " + columns.get(i));
+            Object value = eval(exprs.get(i), ctx);
+            if (index == Table.ROWID) {
+                newRowid = SqlValues.toLong(value);
+                continue;
+            }
+            values[index] = table.store(index, value);
+        }
+        if (table.rowidColumn >= 0) {
+            if (!(values[table.rowidColumn] instanceof Long))
+                throw new SQLiteException("datatype mismatch");
+            newRowid = (Long) values[table.rowidColumn];
+        }
+        checkNotNull(table, values, conflict);
+        List<Long> conflicts = new ArrayList<Long>();
+        if (newRowid != rowid && table.rows.containsKey(newRowid))
+            conflicts.add(newRowid);
+        for (Key key : table.keys) {
+            Long found = key.find(values);
+            if (found != null && found != rowid && !conflicts.contains(found))
+                conflicts.add(found);
+        }
+        if (!conflicts.isEmpty()) {
+            if (!conflict.equals("REPLACE"))
+                throw uniqueFailed(table, values, newRowid);
+            for (Long found : conflicts)
+                deleteRow(table, found);
+        }
+        table.remove(rowid);
+        table.put(newRowid, values);
+        mUndo.add(new RowUndo(table, rowid, before, newRowid));
+    }
+
+    private Result delete(Sql.Delete s, Object[] args) {
+        Table table = requireTable(s.table);
+        Result result = new Result();
+        Ctx ctx = new Ctx(args).child(table);
+        List<Long> matched = new ArrayList<Long>();
+        for (Map.Entry<Long, Object[]> entry : candidates(table, s.where, ctx)) {
+            InMemorySQLite.ROWS_SCANNED.incrementAndGet();
+            ctx.row = entry.getValue();
+            ctx.rowid = entry.getKey();
+            if (s.where == null || SqlValues.isTrue(eval(s.where, ctx)))
+                matched.add(entry.getKey());
+        }
+        for (Long rowid : matched) {
+            deleteRow(table, rowid);
+            result.changes++;
+        }
+        return result;
+    }
+
+    private void putRow(Table table, long rowid, Object[] values) {
+        table.put(rowid, values);
+        mUndo.add(new RowUndo(table, rowid, null, rowid));
+    }
+
+    private void deleteRow(Table table, long rowid) {
+        Object[] before = table.remove(rowid);
+        if (before != null)
+            mUndo.add(new RowUndo(table, rowid, before, Long.MIN_VALUE));
+    }
+
+    private static void checkNotNull(Table table, Object[] values, String conflict) {
+        for (int c = 0; c < values.length; c++) {
+            if (values[c] == null && table.columns.get(c).notNull && c != table.rowidColumn)
+                throw new SQLiteConstraintException("NOT NULL constraint failed: " + table.name
+                        + "." + table.columns.get(c).name);
+        }
+    }
+
+    private static SQLiteConstraintException uniqueFailed(Table table, Object[] values, Long rowid) {
+        for (Key key : table.keys) {
+            Long found = key.find(values);
+            if (found != null && !found.equals(rowid)) {
+                StringBuilder columns = new StringBuilder();
+                for (int column : key.columns) {
+                    if (columns.length() > 0)
+                        columns.append(", ");
+                    columns.append(table.name).append('.').append(table.columns.get(column).name);
+                }
+                return new SQLiteConstraintException("UNIQUE constraint failed: " + columns);
+            }
+        }
+        String column = table.rowidColumn >= 0 ? table.columns.get(table.rowidColumn).name : "rowid";
+        return new SQLiteConstraintException("UNIQUE constraint failed: " + table.name + "." + column);
+    }
+
+    // ---------------- DDL ----------------
+
+    private Result createTable(Sql.CreateTable s) {
+        String key = s.name.toLowerCase(Locale.US);
+        if (mTables.containsKey(key) || key.equals("sqlite_master")) {
+            if (s.ifNotExists)
+                return new Result();
+            throw new SQLiteException("table " + s.name + " already exists");
+        }
+        final Table table = new Table(s.name, s.sql);
+        table.withoutRowid = s.withoutRowid;
+        for (int i = 0; i < s.columns.size(); i++) {
+            Sql.ColumnDef def = s.columns.get(i);
+            table.columns.add(new ColumnInfo(def.name, def.type, def.notNull, def.defaultValue));
+        }
+        for (int i = 0; i < s.columns.size(); i++) {
+            Sql.ColumnDef def = s.columns.get(i);
+            if (def.primaryKey) {
+                if (s.primaryKey != null)
+                    throw new SQLiteException("table \"" + s.name + "\" has more than one primary key");
+                if (def.type.equalsIgnoreCase("INTEGER") && !s.withoutRowid)
+                    table.rowidColumn = i;
+                else
+                    table.keys.add(new Key("sqlite_autoindex_" + s.name + "_pk", new int[] {i}));
+            }
+            if (def.unique)
+                table.keys.add(new Key("sqlite_autoindex_" + s.name + "_" + def.name, new int[] {i}));
+        }
+        if (s.primaryKey != null) {
+            table.keys.add(new Key("sqlite_autoindex_" + s.name + "_pk", table.indexesOf(s.primaryKey)));
+        }
+        for (List<String> unique : s.uniques)
+            table.keys.add(new Key("sqlite_autoindex_" + s.name + "_u", table.indexesOf(unique)));
+        if (s.withoutRowid && s.primaryKey == null && table.keys.isEmpty())
+            throw new SQLiteException("PRIMARY KEY missing on table " + s.name);
+        mTables.put(key, table);
+        mUndo.add(new Undo() {
+            @Override
+            void undo() {
+                mTables.remove(table.name.toLowerCase(Locale.US));
+            }
+        });
+        return new Result();
+    }
+
+    private Result createIndex(Sql.CreateIndex s) {
+        String key = s.name.toLowerCase(Locale.US);
+        if (mIndexes.containsKey(key)) {
+            if (s.ifNotExists)
+                return new Result();
+            throw new SQLiteException("index " + s.name + " already exists");
+        }
+        Table table = requireTable(s.table);
+        final Index index = new Index(s.name, table.name, s.columns, s.unique, s.sql);
+        if (s.unique) {
+            Key unique = new Key(s.name, table.indexesOf(s.columns));
+            for (Map.Entry<Long, Object[]> row : table.rows.entrySet()) {
+                if (unique.find(row.getValue()) != null)
+                    throw new SQLiteConstraintException("UNIQUE constraint failed: index " + s.name);
+                unique.add(row.getValue(), row.getKey());
+            }
+            table.keys.add(unique);
+        }
+        mIndexes.put(key, index);
+        final Table owner = table;
+        mUndo.add(new Undo() {
+            @Override
+            void undo() {
+                removeIndex(owner, index);
+            }
+        });
+        return new Result();
+    }
+
+    private void removeIndex(Table table, Index index) {
+        mIndexes.remove(index.name.toLowerCase(Locale.US));
+        for (int i = 0; i < table.keys.size(); i++) {
+            if (table.keys.get(i).name.equalsIgnoreCase(index.name)) {
+                table.keys.remove(i);
+                break;
+            }
+        }
+    }
+
+    private Result drop(Sql.Drop s) {
+        String key = s.name.toLowerCase(Locale.US);
+        if (s.index) {
+            final Index index = mIndexes.get(key);
+            if (index == null) {
+                if (s.ifExists)
+                    return new Result();
+                throw new SQLiteException("no such index: " + s.name);
+            }
+            final Table table = mTables.get(index.table.toLowerCase(Locale.US));
+            final Key removed = table.key(index.name);
+            removeIndex(table, index);
+            mUndo.add(new Undo() {
+                @Override
+                void undo() {
+                    mIndexes.put(index.name.toLowerCase(Locale.US), index);
+                    if (removed != null)
+                        table.keys.add(removed);
+                }
+            });
+            return new Result();
+        }
+        final Table table = mTables.get(key);
+        if (table == null) {
+            if (s.ifExists)
+                return new Result();
+            throw new SQLiteException("no such table: " + s.name);
+        }
+        mTables.remove(key);
+        final List<Index> indexes = new ArrayList<Index>();
+        for (Index index : new ArrayList<Index>(mIndexes.values())) {
+            if (index.table.equalsIgnoreCase(table.name)) {
+                indexes.add(index);
+                mIndexes.remove(index.name.toLowerCase(Locale.US));
+            }
+        }
+        mUndo.add(new Undo() {
+            @Override
+            void undo() {
+                mTables.put(table.name.toLowerCase(Locale.US), table);
+                for (Index index : indexes)
+                    mIndexes.put(index.name.toLowerCase(Locale.US), index);
+            }
+        });
+        return new Result();
+    }
+
+    private Result alter(Sql.Alter s) {
+        final Table table = requireTable(s.table);
+        final Table backup = table.copy();
+        final String oldKey = table.name.toLowerCase(Locale.US);
+        if (s.addColumn != null) {
+            if (table.indexOf(s.addColumn.name) >= 0)
+                throw new SQLiteException("duplicate column name: " + s.addColumn.name);
+            table.columns.add(new ColumnInfo(s.addColumn.name, s.addColumn.type,
+                    s.addColumn.notNull, s.addColumn.defaultValue));
+            Object defaultValue = s.addColumn.defaultValue == null ? null
+                    : table.store(table.columns.size() - 1, eval(s.addColumn.defaultValue, new Ctx(new Object[0])));
+            for (Map.Entry<Long, Object[]> row : table.rows.entrySet()) {
+                Object[] values = Arrays.copyOf(row.getValue(), table.columns.size());
+                values[values.length - 1] = defaultValue;
+                row.setValue(values);
+            }
+            table.sql = table.sql.substring(0, table.sql.lastIndexOf(')')) + ", "
+                    + s.addColumn.name + " " + s.addColumn.type + ")";
+        } else {
+            String newKey = s.renameTo.toLowerCase(Locale.US);
+            if (mTables.containsKey(newKey))
+                throw new SQLiteException("there is already another table or index with this name: "
+                        + s.renameTo);
+            mTables.remove(oldKey);
+            for (Index index : mIndexes.values()) {
+                if (index.table.equalsIgnoreCase(table.name))
+                    index.table = s.renameTo;
+            }
+            table.name = s.renameTo;
+            mTables.put(newKey, table);
+        }
+        final String renamedTo = s.renameTo;
+        mUndo.add(new Undo() {
+            @Override
+            void undo() {
+                if (renamedTo != null) {
+                    mTables.remove(renamedTo.toLowerCase(Locale.US));
+                    for (Index index : mIndexes.values()) {
+                        if (index.table.equalsIgnoreCase(renamedTo))
+                            index.table = backup.name;
+                    }
+                }
+                mTables.put(oldKey, backup);
+            }
+        });
+        return new Result();
+    }
+
+    private Result pragma(Sql.Pragma s) {
+        Result result = new Result();
+        if (s.name.equals("table_info")) {
+            result.columns = new String[] {"cid", "name", "type", "notnull", "dflt_value", "pk"};
+            Table table = mTables.get(s.argument.toLowerCase(Locale.US));
+            if (table == null)
+                return result;
+            for (int i = 0; i < table.columns.size(); i++) {
+                ColumnInfo column = table.columns.get(i);
+                long pk = i == table.rowidColumn ? 1 : 0;
+                for (Key key : table.keys) {
+                    if (key.name.endsWith("_pk")) {
+                        for (int k = 0; k < key.columns.length; k++) {
+                            if (key.columns[k] == i)
+                                pk = k + 1;
+                        }
+                    }
+                }
+                result.rows.add(new Object[] {(long) i, column.name, column.type,
+                        column.notNull ? 1L : 0L, null, pk});
+            }
+        } else if (s.name.equals("user_version")) {
+            result.columns = new String[] {"user_version"};
+            result.rows.add(new Object[] {(long) version});
+        }
+        return result;
+    }
+
+    private Result explain(Sql.Explain s, Object[] args) {
+        Result result = new Result();
+        result.columns = new String[] {"id", "parent", "notused", "detail"};
+        if (!(s.statement instanceof Sql.Select) || ((Sql.Select) s.statement).from == null)
+            return result;
+        Sql.Select select = (Sql.Select) s.statement;
+        Table table = readTable(select.from);
+        Ctx ctx = new Ctx(args).child(table);
+        String detail = "SCAN TABLE " + table.name;
+        Map<Integer, Object> equalities = equalities(table, select.where, ctx);
+        if (equalities.containsKey(Table.ROWID) || (table.rowidColumn >= 0
+                && equalities.containsKey(table.rowidColumn))) {
+            detail = "SEARCH TABLE " + table.name + " USING INTEGER PRIMARY KEY (rowid=?)";
+        } else {
+            for (Index index : mIndexes.values()) {
+                if (!index.table.equalsIgnoreCase(table.name))
+                    continue;
+                int first = table.indexOf(index.columns.get(0));
+                if (equalities.containsKey(first)) {
+                    detail = "SEARCH TABLE " + table.name + " USING INDEX " + index.name
+                            + " (" + index.columns.get(0) + "=?)";
+                    break;
+                }
+            }
+            for (Key key : table.keys) {
+                if (key.name.startsWith("sqlite_autoindex") && equalities.containsKey(key.columns[0])) {
+                    detail = "SEARCH TABLE " + table.name + " USING INDEX " + key.name
+                            + " (" + table.columns.get(key.columns[0]).name + "=?)";
+                    break;
+                }
+            }
+        }
+        result.rows.add(new Object[] {2L, 0L, 0L, detail});
+        return result;
+    }
+
+    private Table requireTable(String name) {
+        Table table = mTables.get(name.toLowerCase(Locale.US));
+        if (table == null)
+            throw new SQLiteException("no such table: " + name);
+        return table;
+    }
+
+    /**
+     * 查询用的表(sqlite_master由当前的表和索引生成)。
+     */
+    private Table readTable(String name) {
+        if (!name.equalsIgnoreCase("sqlite_master"))
+            return requireTable(name);
+        Table master = new Table("sqlite_master", null);
+        for (String column : new String[] {"type", "name", "tbl_name", "rootpage", "sql"})
+            master.columns.add(new ColumnInfo(column, column.equals("rootpage") ? "INTEGER" : "TEXT",
+                    false, null));
+        long rowid = 1;
+        long page = 2;
+        for (Table table : mTables.values())
+            master.put(rowid++, new Object[] {"table", table.name, table.name, page++, table.sql});
+        for (Index index : mIndexes.values())
+            master.put(rowid++, new Object[] {"index", index.name, index.table, page++, index.sql});
+        return master;
+    }
+
+    // ---------------- 撤销 ----------------
+
+    private void rollbackTo(int mark) {
+        for (int i = mUndo.size() - 1; i >= mark; i--)
+            mUndo.remove(i).undo();
+    }
+
+    abstract static class Undo {
+        abstract void undo();
+    }
+
+    /**
+     * 一行的修改：before为null表示插入，after为Long.MIN_VALUE表示删除。
+     */
+    private static final class RowUndo extends Undo {
+        final Table table;
+        final long rowid;
+        final Object[] before;
+        final long after;
+
+        RowUndo(Table table, long rowid, Object[] before, long after) {
+            this.table = table;
+            this.rowid = rowid;
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        void undo() {
+            if (after != Long.MIN_VALUE)
+                table.remove(after);
+            if (before != null)
+                table.put(rowid, before);
+        }
+    }
+
+    // ---------------- 表达式求值 ----------------
+
+    /**
+     * 求值的上下文：当前表和行、绑定的参数、聚合的行、ON CONFLICT中待插入的行。
+     */
+    static final class Ctx {
+        final Object[] args;
+        final Ctx parent;
+        Table table;
+        Object[] row;
+        long rowid;
+        Object[] excluded;
+        List<Object[]> group;
+
+        Ctx(Object[] args) {
+            this(args, null);
+        }
+
+        private Ctx(Object[] args, Ctx parent) {
+            this.args = args;
+            this.parent = parent;
+        }
+
+        Ctx child(Table table) {
+            Ctx child = new Ctx(args, this);
+            child.table = table;
+            return child;
+        }
+    }
+
+    Object eval(Sql.Expr e, Ctx ctx) {
+        if (e instanceof Sql.Literal)
+            return ((Sql.Literal) e).value;
+        if (e instanceof Sql.Param) {
+            int index = ((Sql.Param) e).index;
+            return index < ctx.args.length ? SqlValues.normalize(ctx.args[index]) : null;
+        }
+        if (e instanceof Sql.Column)
+            return column((Sql.Column) e, ctx);
+        if (e instanceof Sql.Unary) {
+            Sql.Unary u = (Sql.Unary) e;
+            Object v = eval(u.operand, ctx);
+            if (v == null)
+                return null;
+            if (u.op.equals("NOT"))
+                return SqlValues.isTrue(v) ? 0L : 1L;
+            if (u.op.equals("-")) {
+                Object n = SqlValues.applyAffinity(v, SqlValues.AFFINITY_NUMERIC);
+                if (n instanceof Long)
+                    return -(Long) n;
+                return -SqlValues.toDouble(n);
+            }
+            return v;
+        }
+        if (e instanceof Sql.Binary)
+            return binary((Sql.Binary) e, ctx);
+        if (e instanceof Sql.IsNull) {
+            Sql.IsNull n = (Sql.IsNull) e;
+            boolean isNull = eval(n.operand, ctx) == null;
+            return isNull != n.not ? 1L : 0L;
+        }
+        if (e instanceof Sql.In) {
+            Sql.In in = (Sql.In) e;
+            Object v = eval(in.operand, ctx);
+            if (v == null)
+                return null;
+            int affinity = affinity(in.operand, ctx);
+            boolean found = false;
+            for (Sql.Expr item : in.list) {
+                Object w = eval(item, ctx);
+                if (w != null && SqlValues.compare(v, SqlValues.applyAffinity(w, affinity)) == 0) {
+                    found = true;
+                    break;
+                }
+            }
+            return found != in.not ? 1L : 0L;
+        }
+        if (e instanceof Sql.Between) {
+            Sql.Between b = (Sql.Between) e;
+            Object v = eval(b.operand, ctx);
+            Object low = eval(b.low, ctx);
+            Object high = eval(b.high, ctx);
+            if (v == null || low == null || high == null)
+                return null;
+            int affinity = affinity(b.operand, ctx);
+            boolean inside = SqlValues.compare(v, SqlValues.applyAffinity(low, affinity)) >= 0
+                    && SqlValues.compare(v, SqlValues.applyAffinity(high, affinity)) <= 0;
+            return inside != b.not ? 1L : 0L;
+        }
+        if (e instanceof Sql.Function)
+            return function((Sql.Function) e, ctx);
+        if (e instanceof Sql.Exists) {
+            Result result = select(((Sql.Exists) e).select, ctx, 1);
+            return result.rows.isEmpty() ? 0L : 1L;
+        }
+        if (e instanceof Sql.Subquery) {
+            Result result = select(((Sql.Subquery) e).select, ctx, 1);
+            return result.rows.isEmpty() ? null : result.rows.get(0)[0];
+        }
+        throw new SQLiteException("unsupported expression");
+    }
+
+    private Object column(Sql.Column c, Ctx ctx) {
+        if (c.qualifier != null && c.qualifier.equalsIgnoreCase("excluded")) {
+            Ctx owner = ctx;
+            while (owner != null && owner.excluded == null)
+                owner = owner.parent;
+            if (owner == null)
+                throw new SQLiteException("no such column: excluded." + c.name);
+            int index = owner.table.indexOf(c.name);
+            if (index < 0)
+                throw new SQLiteException("no such column: excluded." + c.name);
+            return owner.excluded[index];
+        }
+        for (Ctx owner = ctx; owner != null; owner = owner.parent) {
+            Table table = owner.table;
+            if (table == null)
+                continue;
+            if (c.qualifier != null && !c.qualifier.equalsIgnoreCase(table.name))
+                continue;
+            if (c.resolvedFor != table) {
+                c.index = table.indexOf(c.name);
+                c.resolvedFor = table;
+            }
+            if (c.index == Table.NONE)
+                continue;
+            if (owner.row == null)
+                return null;
+            return c.index == Table.ROWID ? (Object) owner.rowid : owner.row[c.index];
+        }
+        throw new SQLiteException("no such column: " + c.name);
+    }
+
+    private int affinity(Sql.Expr e, Ctx ctx) {
+        if (!(e instanceof Sql.Column))
+            return SqlValues.AFFINITY_NONE;
+        Sql.Column c = (Sql.Column) e;
+        for (Ctx owner = ctx; owner != null; owner = owner.parent) {
+            if (owner.table == null)
+                continue;
+            int index = owner.table.indexOf(c.name);
+            if (index == Table.ROWID)
+                return SqlValues.AFFINITY_INTEGER;
+            if (index >= 0)
+                return owner.table.columns.get(index).affinity;
+        }
+        return SqlValues.AFFINITY_NONE;
+    }
+
+    private Object binary(Sql.Binary b, Ctx ctx) {
+        String op = b.op;
+        if (op.equals("AND")) {
+            Object l = eval(b.left, ctx);
+            if (l != null && !SqlValues.isTrue(l))
+                return 0L;
+            Object r = eval(b.right, ctx);
+            if (r != null && !SqlValues.isTrue(r))
+                return 0L;
+            return l == null || r == null ? null : (Object) 1L;
+        }
+        if (op.equals("OR")) {
+            Object l = eval(b.left, ctx);
+            if (l != null && SqlValues.isTrue(l))
+                return 1L;
+            Object r = eval(b.right, ctx);
+            if (r != null && SqlValues.isTrue(r))
+                return 1L;
+            return l == null || r == null ? null : (Object) 0L;
+        }
+        Object l = eval(b.left, ctx);
+        Object r = eval(b.right, ctx);
+        if (op.equals("IS") || op.equals("IS NOT")) {
+            boolean same = l == null || r == null ? l == r : compare(b, l, r, ctx) == 0;
+            return same == op.equals("IS") ? 1L : 0L;
+        }
+        if (l == null || r == null)
+            return null;
+        if (op.equals("||"))
+            return SqlValues.toText(l) + SqlValues.toText(r);
+        if (op.equals("LIKE"))
+            return like(SqlValues.toText(l), SqlValues.toText(r)) ? 1L : 0L;
+        if (op.equals("+") || op.equals("-") || op.equals("*") || op.equals("/") || op.equals("%"))
+            return arithmetic(op, SqlValues.applyAffinity(l, SqlValues.AFFINITY_NUMERIC),
+                    SqlValues.applyAffinity(r, SqlValues.AFFINITY_NUMERIC));
+        int c = compare(b, l, r, ctx);
+        if (op.equals("="))
+            return c == 0 ? 1L : 0L;
+        if (op.equals("!="))
+            return c != 0 ? 1L : 0L;
+        if (op.equals("<"))
+            return c < 0 ? 1L : 0L;
+        if (op.equals("<="))
+            return c <= 0 ? 1L : 0L;
+        if (op.equals(">"))
+            return c > 0 ? 1L : 0L;
+        if (op.equals(">="))
+            return c >= 0 ? 1L : 0L;
+        throw new SQLiteException("unsupported operator " + op);
+    }
+
+    /**
+     * 按SQLite的规则在比较前转换操作数：数字亲和性的字段与其他值比较时，另一边转为数字;
+     * 文本亲和性的字段与没有亲和性的值比较时，另一边转为文本。
+     */
+    private int compare(Sql.Binary b, Object l, Object r, Ctx ctx) {
+        int la = affinity(b.left, ctx);
+        int ra = affinity(b.right, ctx);
+        if (isNumericAffinity(la) && !isNumericAffinity(ra))
+            r = SqlValues.applyAffinity(r, SqlValues.AFFINITY_NUMERIC);
+        else if (isNumericAffinity(ra) && !isNumericAffinity(la))
+            l = SqlValues.applyAffinity(l, SqlValues.AFFINITY_NUMERIC);
+        else if (la == SqlValues.AFFINITY_TEXT && ra == SqlValues.AFFINITY_NONE)
+            r = SqlValues.applyAffinity(r, SqlValues.AFFINITY_TEXT);
+        else if (ra == SqlValues.AFFINITY_TEXT && la == SqlValues.AFFINITY_NONE)
+            l = SqlValues.applyAffinity(l, SqlValues.AFFINITY_TEXT);
+        return SqlValues.compare(l, r);
+    }
+
+    private static boolean isNumericAffinity(int affinity) {
+        return affinity == SqlValues.AFFINITY_INTEGER || affinity == SqlValues.AFFINITY_REAL
+                || affinity == SqlValues.AFFINITY_NUMERIC;
+    }
+
+    private static Object arithmetic(String op, Object l, Object r) {
+        if (l instanceof Long && r instanceof Long) {
+            long a = (Long) l;
+            long b = (Long) r;
+            if (op.equals("+"))
+                return a + b;
+            if (op.equals("-"))
+                return a - b;
+            if (op.equals("*"))
+                return a * b;
+            if (b == 0)
+                return null;
+            return op.equals("/") ? a / b : a % b;
+        }
+        double a = SqlValues.toDouble(l);
+        double b = SqlValues.toDouble(r);
+        if (op.equals("+"))
+            return a + b;
+        if (op.equals("-"))
+            return a - b;
+        if (op.equals("*"))
+            return a * b;
+        if (b == 0)
+            return null;
+        return op.equals("/") ? a / b : a % b;
+    }
+
+    private static boolean like(String text, String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '%')
+                regex.append(".*");
+            else if (c == '_')
+                regex.append('.');
+            else
+                regex.append(Pattern.quote(String.valueOf(c)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL)
+                .matcher(text).matches();
+    }
+
+    private Object function(Sql.Function f, Ctx ctx) {
+        String name = f.name;
+        if (f.isAggregateFunction()) {
+            if (ctx.group == null)
+                throw new SQLiteException("misuse of aggregate function " + name + "()");
+            return aggregate(f, ctx);
+        }
+        List<Object> args = new ArrayList<Object>(f.args.size());
+        for (Sql.Expr arg : f.args)
+            args.add(eval(arg, ctx));
+        if (name.equals("IFNULL") || name.equals("COALESCE")) {
+            for (Object arg : args) {
+                if (arg != null)
+                    return arg;
+            }
+            return null;
+        }
+        if (name.equals("SQLITE_VERSION"))
+            return InMemorySQLite.getSqliteVersion();
+        if (name.equals("LENGTH"))
+            return args.get(0) == null ? null : (Object) (long) SqlValues.toText(args.get(0)).length();
+        if (name.equals("LOWER"))
+            return args.get(0) == null ? null : SqlValues.toText(args.get(0)).toLowerCase(Locale.US);
+        if (name.equals("UPPER"))
+            return args.get(0) == null ? null : SqlValues.toText(args.get(0)).toUpperCase(Locale.US);
+        if (name.equals("ABS")) {
+            Object v = SqlValues.applyAffinity(args.get(0), SqlValues.AFFINITY_NUMERIC);
+            if (v == null)
+                return null;
+            return v instanceof Long ? (Object) Math.abs((Long) v) : (Object) Math.abs(SqlValues.toDouble(v));
+        }
+        if (name.equals("TYPEOF")) {
+            Object v = args.get(0);
+            return v == null ? "null" : v instanceof Long ? "integer" : v instanceof Double ? "real"
+                    : v instanceof String ? "text" : "blob";
+        }
+        if (name.equals("MAX") || name.equals("MIN")) {
+            Object best = null;
+            for (Object arg : args) {
+                if (arg == null)
+                    return null;
+                if (best == null || (name.equals("MAX") ? SqlValues.compare(arg, best) > 0
+                        : SqlValues.compare(arg, best) < 0))
+                    best = arg;
+            }
+            return best;
+        }
+        throw new SQLiteException("no such function: " + name);
+    }
+
+    private Object aggregate(Sql.Function f, Ctx ctx) {
+        List<Object[]> group = ctx.group;
+        String name = f.name;
+        if (name.equals("COUNT") && f.star)
+            return (long) group.size();
+        Object[] savedRow = ctx.row;
+        ctx.group = null;
+        try {
+            long count = 0;
+            boolean integer = true;
+            long longSum = 0;
+            double sum = 0;
+            Object best = null;
+            for (Object[] row : group) {
+                ctx.row = row;
+                Object v = eval(f.args.get(0), ctx);
+                if (v == null)
+                    continue;
+                count++;
+                if (name.equals("MAX") || name.equals("MIN")) {
+                    if (best == null || (name.equals("MAX") ? SqlValues.compare(v, best) > 0
+                            : SqlValues.compare(v, best) < 0))
+                        best = v;
+                } else if (!name.equals("COUNT")) {
+                    Object n = SqlValues.applyAffinity(v, SqlValues.AFFINITY_NUMERIC);
+                    if (n instanceof Long)
+                        longSum += (Long) n;
+                    else
+                        integer = false;
+                    sum += SqlValues.toDouble(n);
+                }
+            }
+            if (name.equals("COUNT"))
+                return count;
+            if (name.equals("MAX") || name.equals("MIN"))
+                return best;
+            if (name.equals("TOTAL"))
+                return sum;
+            if (count == 0)
+                return null;
+            if (name.equals("AVG"))
+                return sum / count;
+            return integer ? (Object) longSum : (Object) sum;
+        } finally {
+            ctx.row = savedRow;
+            ctx.group = group;
+        }
+    }
+
+    private static List<Object> keyOf(Object[] row) {
+        List<Object> key = new ArrayList<Object>(row.length);
+        for (Object value : row)
+            key.add(SqlValues.keyOf(value));
+        return key;
+    }
+
+    // ---------------- 表结构 ----------------
+
+    static final class ColumnInfo {
+        final String name;
+        final String type;
+        final int affinity;
+        final boolean notNull;
+        final Sql.Expr defaultValue;
+
+        ColumnInfo(String name, String type, boolean notNull, Sql.Expr defaultValue) {
+            this.name = name;
+            this.type = type;
+            this.affinity = SqlValues.affinityOf(type);
+            this.notNull = notNull;
+            this.defaultValue = defaultValue;
+        }
+    }
+
+    /**
+     * 主键或唯一约束：键值 -> rowid。含NULL的键不参与唯一性检查(与SQLite相同)。
+     */
+    static final class Key {
+        final String name;
+        final int[] columns;
+        final HashMap<List<Object>, Long> rows;
+
+        Key(String name, int[] columns) {
+            this.name = name;
+            this.columns = columns;
+            this.rows = new HashMap<List<Object>, Long>();
+        }
+
+        private List<Object> keyOf(Object[] values) {
+            List<Object> key = new ArrayList<Object>(columns.length);
+            for (int column : columns) {
+                if (values[column] == null)
+                    return null;
+                key.add(SqlValues.keyOf(values[column]));
+            }
+            return key;
+        }
+
+        Long find(Object[] values) {
+            List<Object> key = keyOf(values);
+            return key == null ? null : rows.get(key);
+        }
+
+        void add(Object[] values, long rowid) {
+            List<Object> key = keyOf(values);
+            if (key != null)
+                rows.put(key, rowid);
+        }
+
+        void remove(Object[] values, long rowid) {
+            List<Object> key = keyOf(values);
+            if (key != null && Long.valueOf(rowid).equals(rows.get(key)))
+                rows.remove(key);
+        }
+
+        Key copy() {
+            Key copy = new Key(name, columns);
+            copy.rows.putAll(rows);
+            return copy;
+        }
+    }
+
+    static final class Index {
+        final String name;
+        String table;
+        final List<String> columns;
+        final boolean unique;
+        final String sql;
+
+        Index(String name, String table, List<String> columns, boolean unique, String sql) {
+            this.name = name;
+            this.table = table;
+            this.columns = columns;
+            this.unique = unique;
+            this.sql = sql;
+        }
+    }
+
+    static final class Table {
+        static final int NONE = -1;// 没有这个字段
+        static final int ROWID = -2;// rowid(没有同名的字段时)
+        static final Key ROWID_KEY = new Key("rowid", new int[0]);
+
+        String name;
+        String sql;
+        final List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
+        final List<Key> keys = new ArrayList<Key>();
+        final TreeMap<Long, Object[]> rows = new TreeMap<Long, Object[]>();
+        int rowidColumn = -1;// INTEGER PRIMARY KEY字段(rowid的别名)
+        boolean withoutRowid;
+
+        Table(String name, String sql) {
+            this.name = name;
+            this.sql = sql;
+        }
+
+        int indexOf(String column) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).name.equalsIgnoreCase(column))
+                    return i;
+            }
+            if (column.equalsIgnoreCase("rowid") || column.equalsIgnoreCase("_rowid_")
+                    || column.equalsIgnoreCase("oid"))
+                return ROWID;
+            return NONE;
+        }
+
+        int[] indexesOf(List<String> names) {
+            int[] result = new int[names.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = indexOf(names.get(i));
+                if (result[i] < 0)
+                    throw new SQLiteException("no such column: " + names.get(i));
+            }
+            return result;
+        }
+
+        Key key(String keyName) {
+            for (Key key : keys) {
+                if (key.name.equalsIgnoreCase(keyName))
+                    return key;
+            }
+            return null;
+        }
+
+        /**
+         * 按字段的亲和性转换要存入的值。
+         */
+        Object store(int column, Object value) {
+            return SqlValues.applyAffinity(SqlValues.normalize(value), columns.get(column).affinity);
+        }
+
+        long nextRowid() {
+            return rows.isEmpty() ? 1 : rows.lastKey() + 1;
+        }
+
+        void put(long rowid, Object[] values) {
+            rows.put(rowid, values);
+            for (Key key : keys)
+                key.add(values, rowid);
+        }
+
+        Object[] remove(long rowid) {
+            Object[] values = rows.remove(rowid);
+            if (values != null) {
+                for (Key key : keys)
+                    key.remove(values, rowid);
+            }
+            return values;
+        }
+
+        Table copy() {
+            Table copy = new Table(name, sql);
+            copy.columns.addAll(columns);
+            for (Key key : keys)
+                copy.keys.add(key.copy());
+            copy.rows.putAll(rows);
+            copy.rowidColumn = rowidColumn;
+            copy.withoutRowid = withoutRowid;
+            return copy;
+        }
+    }
+
+    /**
+     * 返回数据表的行数(测试用，不计入扫描的行数)。
+     */
+    int rowCount(String tableName) {
+        lock.lock();
+        try {
+            Table table = mTables.get(tableName.toLowerCase(Locale.US));
+            return table == null ? -1 : table.rows.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static final List<Object[]> EMPTY = Collections.emptyList();
+}
@@ -0,0 +1,14 @@
+package android.database.sqlite;
+
+/**
+ * 测试用的SQLiteConstraintException(在JVM上代替android.jar中的实现)。
+ */
+public class SQLiteConstraintException extends SQLiteException {
+
+    public SQLiteConstraintException() {
+    }
+
+    public SQLiteConstraintException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,243 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 测试用的SQLiteDatabase，在JVM上用内存数据库执行SQL(见{@link InMemorySQLite})。
+ * 接口和出错时的行为与Android的实现相同：insert()/replace()出错时返回-1，
+ * insertWithOnConflict()、update()、delete()和execSQL()出错时抛出SQLException。
+ */
+public final class SQLiteDatabase extends SQLiteClosable {
+
+    public static final int CONFLICT_NONE = 0;
+    public static final int CONFLICT_ROLLBACK = 1;
+    public static final int CONFLICT_ABORT = 2;
+    public static final int CONFLICT_FAIL = 3;
+    public static final int CONFLICT_IGNORE = 4;
+    public static final int CONFLICT_REPLACE = 5;
+    public static final int OPEN_READWRITE = 0;
+    public static final int OPEN_READONLY = 1;
+    public static final int CREATE_IF_NECESSARY = 0x10000000;
+
+    private static final String[] CONFLICT_VALUES =
+            {"", " OR ROLLBACK", " OR ABORT", " OR FAIL", " OR IGNORE", " OR REPLACE"};
+
+    private final MemoryDatabase mDatabase;
+    private final boolean mReadOnly;
+    private volatile boolean mOpen = true;
+
+    SQLiteDatabase(MemoryDatabase database, boolean readOnly) {
+        mDatabase = database;
+        mReadOnly = readOnly;
+    }
+
+    public static SQLiteDatabase openDatabase(String path, Object factory, int flags) {
+        return new SQLiteDatabase(InMemorySQLite.open(path), (flags & OPEN_READONLY) != 0);
+    }
+
+    MemoryDatabase.Result execute(String sql, Object[] args) {
+        checkOpen();
+        Sql.Stmt stmt = mDatabase.parse(sql);
+        if (mReadOnly && !(stmt instanceof Sql.Select) && !(stmt instanceof Sql.Pragma)
+                && !(stmt instanceof Sql.Explain))
+            throw new SQLiteException("attempt to write a readonly database");
+        return mDatabase.execute(stmt, args == null ? new Object[0] : args);
+    }
+
+    MemoryDatabase database() {
+        return mDatabase;
+    }
+
+    private void checkOpen() {
+        if (!mOpen)
+            throw new IllegalStateException("attempt to re-open an already-closed object: "
+                    + getPath());
+    }
+
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        try {
+            return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_NONE);
+        } catch (SQLException e) {
+            System.err.println("Error inserting " + values + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    public long replace(String table, String nullColumnHack, ContentValues values) {
+        try {
+            return insertWithOnConflict(table, nullColumnHack, values, CONFLICT_REPLACE);
+        } catch (SQLException e) {
+            System.err.println("Error inserting " + values + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    public long insertWithOnConflict(String table, String nullColumnHack,
+                                     ContentValues values, int conflictAlgorithm) {
+        StringBuilder sql = new StringBuilder("INSERT");
+        sql.append(CONFLICT_VALUES[conflictAlgorithm]).append(" INTO ").append(table).append('(');
+        List<Object> args = new ArrayList<Object>();
+        if (values == null || values.size() == 0) {
+            sql.append(nullColumnHack).append(") VALUES (NULL)");
+        } else {
+            StringBuilder marks = new StringBuilder();
+            for (Map.Entry<String, Object> entry : values.valueSet()) {
+                if (!args.isEmpty()) {
+                    sql.append(',');
+                    marks.append(',');
+                }
+                sql.append(entry.getKey());
+                marks.append('?');
+                args.add(entry.getValue());
+            }
+            sql.append(") VALUES (").append(marks).append(')');
+        }
+        MemoryDatabase.Result result = execute(sql.toString(), args.toArray());
+        return result.changes == 0 ? -1 : result.lastInsertRowid;
+    }
+
+    public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        if (values == null || values.size() == 0)
+            throw new IllegalArgumentException("Empty values");
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        List<Object> args = new ArrayList<Object>();
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            if (!args.isEmpty())
+                sql.append(',');
+            sql.append(entry.getKey()).append("=?");
+            args.add(entry.getValue());
+        }
+        if (whereClause != null && whereClause.length() > 0)
+            sql.append(" WHERE ").append(whereClause);
+        if (whereArgs != null) {
+            for (String arg : whereArgs)
+                args.add(arg);
+        }
+        return execute(sql.toString(), args.toArray()).changes;
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        String sql = "DELETE FROM " + table;
+        if (whereClause != null && whereClause.length() > 0)
+            sql += " WHERE " + whereClause;
+        return execute(sql, whereArgs).changes;
+    }
+
+    public void execSQL(String sql) {
+        execute(sql, null);
+    }
+
+    public void execSQL(String sql, Object[] bindArgs) {
+        if (bindArgs == null)
+            throw new IllegalArgumentException("Empty bindArgs");
+        execute(sql, bindArgs);
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        checkOpen();
+        Sql.Stmt stmt = mDatabase.parse(sql);
+        return new MemoryCursor(mDatabase, stmt,
+                selectionArgs == null ? new Object[0] : selectionArgs);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy) {
+        return query(table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy, String limit) {
+        if (groupBy != null && groupBy.length() > 0)
+            throw new UnsupportedOperationException("GROUP BY is not supported");
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (columns == null || columns.length == 0) {
+            sql.append('*');
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0)
+                    sql.append(", ");
+                sql.append(columns[i]);
+            }
+        }
+        sql.append(" FROM ").append(table);
+        if (selection != null && selection.length() > 0)
+            sql.append(" WHERE ").append(selection);
+        if (orderBy != null && orderBy.length() > 0)
+            sql.append(" ORDER BY ").append(orderBy);
+        if (limit != null && limit.length() > 0)
+            sql.append(" LIMIT ").append(limit);
+        return rawQuery(sql.toString(), selectionArgs);
+    }
+
+    public void beginTransaction() {
+        checkOpen();
+        mDatabase.beginTransaction();
+    }
+
+    public void beginTransactionNonExclusive() {
+        beginTransaction();
+    }
+
+    public void setTransactionSuccessful() {
+        mDatabase.setTransactionSuccessful();
+    }
+
+    public void endTransaction() {
+        mDatabase.endTransaction();
+    }
+
+    public boolean inTransaction() {
+        return mDatabase.inTransaction();
+    }
+
+    public boolean yieldIfContendedSafely() {
+        return mDatabase.yieldIfContended();
+    }
+
+    public SQLiteStatement compileStatement(String sql) {
+        checkOpen();
+        InMemorySQLite.COMPILED.incrementAndGet();
+        return new SQLiteStatement(this, mDatabase.parse(sql));
+    }
+
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    public boolean isReadOnly() {
+        return mReadOnly;
+    }
+
+    public int getVersion() {
+        return mDatabase.version;
+    }
+
+    public void setVersion(int version) {
+        mDatabase.version = version;
+    }
+
+    public String getPath() {
+        return mDatabase.name;
+    }
+
+    public boolean enableWriteAheadLogging() {
+        return true;
+    }
+
+    public void setLockingEnabled(boolean lockingEnabled) {
+    }
+
+    @Override
+    public void close() {
+        if (!mOpen)
+            return;
+        mOpen = false;
+        InMemorySQLite.CLOSES.incrementAndGet();
+    }
+}
@@ -0,0 +1,14 @@
+package android.database.sqlite;
+
+/**
+ * 测试用的SQLiteDoneException：查询没有返回任何行。
+ */
+public class SQLiteDoneException extends SQLiteException {
+
+    public SQLiteDoneException() {
+    }
+
+    public SQLiteDoneException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,92 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * 测试用的SQLiteOpenHelper：第一次打开时按版本号调用onCreate()/onUpgrade()，然后调用onOpen()。
+ * 数据库保存在{@link InMemorySQLite}中，同名的数据库在reset()之前一直存在。
+ */
+public abstract class SQLiteOpenHelper {
+
+    private final String mName;
+    private final int mNewVersion;
+    private SQLiteDatabase mDatabase;
+    private boolean mIsInitializing;
+
+    public SQLiteOpenHelper(Context context, String name, Object factory, int version) {
+        if (version < 1)
+            throw new IllegalArgumentException("Version must be >= 1, was " + version);
+        mName = name;
+        mNewVersion = version;
+    }
+
+    public String getDatabaseName() {
+        return mName;
+    }
+
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        return getDatabaseLocked();
+    }
+
+    public synchronized SQLiteDatabase getReadableDatabase() {
+        return getDatabaseLocked();
+    }
+
+    private SQLiteDatabase getDatabaseLocked() {
+        if (mDatabase != null && mDatabase.isOpen())
+            return mDatabase;
+        if (mIsInitializing)
+            throw new IllegalStateException("getDatabase called recursively");
+        mIsInitializing = true;
+        try {
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(mName, null,
+                    SQLiteDatabase.CREATE_IF_NECESSARY);
+            onConfigure(db);
+            int version = db.getVersion();
+            if (version != mNewVersion) {
+                db.beginTransaction();
+                try {
+                    if (version == 0)
+                        onCreate(db);
+                    else if (version > mNewVersion)
+                        onDowngrade(db, version, mNewVersion);
+                    else
+                        onUpgrade(db, version, mNewVersion);
+                    db.setVersion(mNewVersion);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            onOpen(db);
+            mDatabase = db;
+            return db;
+        } finally {
+            mIsInitializing = false;
+        }
+    }
+
+    public synchronized void close() {
+        if (mIsInitializing)
+            throw new IllegalStateException("Closed during initialization");
+        if (mDatabase != null && mDatabase.isOpen()) {
+            mDatabase.close();
+            mDatabase = null;
+        }
+    }
+
+    public void onConfigure(SQLiteDatabase db) {
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        throw new SQLiteException("Can't downgrade database from version "
+                + oldVersion + " to " + newVersion);
+    }
+
+    public void onOpen(SQLiteDatabase db) {
+    }
+}
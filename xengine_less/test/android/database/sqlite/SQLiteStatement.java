@@ -0,0 +1,104 @@
+package android.database.sqlite;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 测试用的SQLiteStatement：预编译的语句和绑定的参数(参数序号从1开始)。
+ */
+public final class SQLiteStatement extends SQLiteClosable {
+
+    private final SQLiteDatabase mDatabase;
+    private final Sql.Stmt mStatement;
+    private final Object[] mArgs;
+    private boolean mClosed;
+
+    SQLiteStatement(SQLiteDatabase database, Sql.Stmt statement) {
+        mDatabase = database;
+        mStatement = statement;
+        mArgs = new Object[statement.paramCount];
+    }
+
+    private void bind(int index, Object value) {
+        if (index < 1 || index > mArgs.length)
+            throw new IllegalArgumentException("Cannot bind argument at index " + index
+                    + " because the index is out of range. The statement has "
+                    + mArgs.length + " parameters.");
+        mArgs[index - 1] = value;
+    }
+
+    public void bindNull(int index) {
+        bind(index, null);
+    }
+
+    public void bindLong(int index, long value) {
+        bind(index, value);
+    }
+
+    public void bindDouble(int index, double value) {
+        bind(index, value);
+    }
+
+    public void bindString(int index, String value) {
+        if (value == null)
+            throw new IllegalArgumentException("the bind value at index " + index + " is null");
+        bind(index, value);
+    }
+
+    public void bindBlob(int index, byte[] value) {
+        if (value == null)
+            throw new IllegalArgumentException("the bind value at index " + index + " is null");
+        bind(index, value);
+    }
+
+    public void clearBindings() {
+        Arrays.fill(mArgs, null);
+    }
+
+    private MemoryDatabase.Result run() {
+        if (mClosed)
+            throw new IllegalStateException("attempt to re-open an already-closed object: "
+                    + mStatement.sql);
+        if (!mDatabase.isOpen())
+            throw new IllegalStateException("database " + mDatabase.getPath() + " already closed");
+        return mDatabase.database().execute(mStatement, mArgs.clone());
+    }
+
+    public void execute() {
+        run();
+    }
+
+    public int executeUpdateDelete() {
+        return run().changes;
+    }
+
+    public long executeInsert() {
+        MemoryDatabase.Result result = run();
+        return result.changes == 0 ? -1 : result.lastInsertRowid;
+    }
+
+    public long simpleQueryForLong() {
+        return SqlValues.toLong(firstValue());
+    }
+
+    public String simpleQueryForString() {
+        return SqlValues.toText(firstValue());
+    }
+
+    private Object firstValue() {
+        List<Object[]> rows = run().rows;
+        if (rows.isEmpty())
+            throw new SQLiteDoneException("expected 1 row from this query but query returned no data");
+        return rows.get(0)[0];
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+    }
+
+    @Override
+    public String toString() {
+        return "SQLiteProgram: " + mStatement.sql;
+    }
+}
@@ -0,0 +1,997 @@
+package android.database.sqlite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 内存SQLite的语法分析：把SQL语句解析成语法树(只支持本项目用到的SQLite语法子集)。
+ * 支持CREATE TABLE/INDEX、DROP、ALTER TABLE、INSERT(OR REPLACE/IGNORE、ON CONFLICT DO UPDATE)、
+ * UPDATE、DELETE、SELECT(WHERE、ORDER BY、LIMIT、聚合函数、EXISTS子查询)、
+ * PRAGMA table_info和EXPLAIN QUERY PLAN。不支持的语法抛出SQLiteException。
+ */
+final class Sql {
+
+    private final String mSql;
+    private final List<String> mTokens;// 词法单元
+    private final List<Integer> mTypes;// 词法单元的类型
+    private int mPos;// 当前的词法单元
+    private int mParamCount;// 已经读到的?个数
+
+    private static final int T_WORD = 0;// 关键字或标识符
+    private static final int T_QUOTED = 1;// 带引号的标识符
+    private static final int T_NUMBER = 2;
+    private static final int T_STRING = 3;
+    private static final int T_BLOB = 4;
+    private static final int T_PARAM = 5;
+    private static final int T_OP = 6;
+    private static final int T_EOF = 7;
+
+    private Sql(String sql) {
+        mSql = sql;
+        mTokens = new ArrayList<String>();
+        mTypes = new ArrayList<Integer>();
+        tokenize();
+    }
+
+    /**
+     * 解析一条SQL语句。
+     * @throws SQLiteException 语法错误或不支持的语法
+     */
+    static Stmt parse(String sql) {
+        Sql parser = new Sql(sql);
+        Stmt stmt = parser.statement();
+        parser.accept(";");
+        if (parser.type() != T_EOF)
+            throw parser.error("unexpected \"" + parser.text() + "\"");
+        stmt.sql = sql;
+        stmt.paramCount = parser.mParamCount;
+        return stmt;
+    }
+
+    // ---------------- 语法树 ----------------
+
+    abstract static class Stmt {
+        String sql;
+        int paramCount;
+    }
+
+    static final class Select extends Stmt {
+        boolean distinct;
+        final List<Expr> columns = new ArrayList<Expr>();// null表示*
+        final List<String> aliases = new ArrayList<String>();
+        String from;
+        Expr where;
+        final List<Expr> orderBy = new ArrayList<Expr>();
+        final List<Boolean> descending = new ArrayList<Boolean>();
+        Expr limit;
+        Expr offset;
+    }
+
+    static final class Insert extends Stmt {
+        String conflict = "ABORT";// ABORT、REPLACE、IGNORE
+        String table;
+        List<String> columns;// null表示所有字段
+        final List<List<Expr>> values = new ArrayList<List<Expr>>();
+        Select select;// INSERT ... SELECT
+        List<String> upsertTarget;// ON CONFLICT (...)
+        boolean upsert;// 有ON CONFLICT子句
+        final List<String> setColumns = new ArrayList<String>();// DO UPDATE SET(为空时为DO NOTHING)
+        final List<Expr> setValues = new ArrayList<Expr>();
+    }
+
+    static final class Update extends Stmt {
+        String conflict = "ABORT";
+        String table;
+        final List<String> setColumns = new ArrayList<String>();
+        final List<Expr> setValues = new ArrayList<Expr>();
+        Expr where;
+    }
+
+    static final class Delete extends Stmt {
+        String table;
+        Expr where;
+    }
+
+    static final class ColumnDef {
+        String name;
+        String type = "";
+        boolean primaryKey;
+        boolean notNull;
+        boolean unique;
+        Expr defaultValue;
+    }
+
+    static final class CreateTable extends Stmt {
+        boolean ifNotExists;
+        String name;
+        final List<ColumnDef> columns = new ArrayList<ColumnDef>();
+        List<String> primaryKey;// 表级PRIMARY KEY (...)
+        final List<List<String>> uniques = new ArrayList<List<String>>();
+        boolean withoutRowid;
+    }
+
+    static final class CreateIndex extends Stmt {
+        boolean unique;
+        boolean ifNotExists;
+        String name;
+        String table;
+        final List<String> columns = new ArrayList<String>();
+    }
+
+    static final class Drop extends Stmt {
+        boolean index;// DROP INDEX，否则DROP TABLE
+        boolean ifExists;
+        String name;
+    }
+
+    static final class Alter extends Stmt {
+        String table;
+        ColumnDef addColumn;// ADD COLUMN
+        String renameTo;// RENAME TO
+    }
+
+    static final class Pragma extends Stmt {
+        String name;
+        String argument;
+    }
+
+    static final class Explain extends Stmt {
+        Stmt statement;
+    }
+
+    abstract static class Expr {
+        boolean isAggregate() {
+            return false;
+        }
+    }
+
+    static final class Literal extends Expr {
+        final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+    }
+
+    static final class Param extends Expr {
+        final int index;// 从0开始
+
+        Param(int index) {
+            this.index = index;
+        }
+    }
+
+    static final class Column extends Expr {
+        final String qualifier;// 表名(excluded表示ON CONFLICT中待插入的行)，可为null
+        final String name;
+        Object resolvedFor;// 解析时的表(表结构变化后重新解析)
+        int index;// 字段的下标，-1表示rowid
+
+        Column(String qualifier, String name) {
+            this.qualifier = qualifier;
+            this.name = name;
+        }
+    }
+
+    static final class Unary extends Expr {
+        final String op;// NOT、-、+
+        final Expr operand;
+
+        Unary(String op, Expr operand) {
+            this.op = op;
+            this.operand = operand;
+        }
+
+        @Override
+        boolean isAggregate() {
+            return operand.isAggregate();
+        }
+    }
+
+    static final class Binary extends Expr {
+        final String op;
+        final Expr left;
+        final Expr right;
+
+        Binary(String op, Expr left, Expr right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean isAggregate() {
+            return left.isAggregate() || right.isAggregate();
+        }
+    }
+
+    static final class IsNull extends Expr {
+        final Expr operand;
+        final boolean not;
+
+        IsNull(Expr operand, boolean not) {
+            this.operand = operand;
+            this.not = not;
+        }
+    }
+
+    static final class In extends Expr {
+        final Expr operand;
+        final List<Expr> list;
+        final boolean not;
+
+        In(Expr operand, List<Expr> list, boolean not) {
+            this.operand = operand;
+            this.list = list;
+            this.not = not;
+        }
+    }
+
+    static final class Between extends Expr {
+        final Expr operand;
+        final Expr low;
+        final Expr high;
+        final boolean not;
+
+        Between(Expr operand, Expr low, Expr high, boolean not) {
+            this.operand = operand;
+            this.low = low;
+            this.high = high;
+            this.not = not;
+        }
+    }
+
+    static final class Function extends Expr {
+        final String name;// 大写
+        final List<Expr> args;
+        final boolean star;// COUNT(*)
+
+        Function(String name, List<Expr> args, boolean star) {
+            this.name = name;
+            this.args = args;
+            this.star = star;
+        }
+
+        /**
+         * 包含聚合(本身是聚合函数，或参数中有聚合，如IFNULL(MAX(x), 0))
+         */
+        @Override
+        boolean isAggregate() {
+            return isAggregateFunction() || hasAggregateArgument();
+        }
+
+        /**
+         * 本身是聚合函数
+         */
+        boolean isAggregateFunction() {
+            if (name.equals("COUNT") || name.equals("SUM") || name.equals("TOTAL")
+                    || name.equals("AVG"))
+                return true;
+            return (name.equals("MAX") || name.equals("MIN")) && args.size() == 1;
+        }
+
+        boolean hasAggregateArgument() {
+            for (Expr arg : args) {
+                if (arg.isAggregate())
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    static final class Exists extends Expr {
+        final Select select;
+
+        Exists(Select select) {
+            this.select = select;
+        }
+    }
+
+    static final class Subquery extends Expr {
+        final Select select;
+
+        Subquery(Select select) {
+            this.select = select;
+        }
+    }
+
+    // ---------------- 语句 ----------------
+
+    private Stmt statement() {
+        if (acceptWord("EXPLAIN")) {
+            expectWord("QUERY");
+            expectWord("PLAN");
+            Explain explain = new Explain();
+            explain.statement = statement();
+            return explain;
+        }
+        if (peekWord("SELECT"))
+            return select();
+        if (acceptWord("INSERT"))
+            return insert(acceptWord("OR") ? word().toUpperCase(Locale.US) : "ABORT");
+        if (acceptWord("REPLACE"))
+            return insert("REPLACE");
+        if (acceptWord("UPDATE"))
+            return update();
+        if (acceptWord("DELETE"))
+            return delete();
+        if (acceptWord("CREATE"))
+            return create();
+        if (acceptWord("DROP"))
+            return drop();
+        if (acceptWord("ALTER"))
+            return alter();
+        if (acceptWord("PRAGMA"))
+            return pragma();
+        throw error("unsupported statement");
+    }
+
+    private Select select() {
+        expectWord("SELECT");
+        Select select = new Select();
+        select.distinct = acceptWord("DISTINCT");
+        acceptWord("ALL");
+        do {
+            if (accept("*")) {
+                select.columns.add(null);
+                select.aliases.add(null);
+                continue;
+            }
+            int start = mPos;
+            Expr expr = expression();
+            String alias = null;
+            if (acceptWord("AS"))
+                alias = name();
+            else if ((type() == T_WORD && !isReserved(text())) || type() == T_QUOTED)
+                alias = name();
+            if (alias == null)
+                alias = expr instanceof Column ? ((Column) expr).name : source(start, mPos);
+            select.columns.add(expr);
+            select.aliases.add(alias);
+        } while (accept(","));
+        if (acceptWord("FROM")) {
+            select.from = name();
+            if (accept(".")) {
+                select.from = name();// 忽略数据库名(main.table)
+            }
+            if (acceptWord("AS") || (type() == T_WORD && !isReserved(text())))
+                name();// 表的别名(只支持单表，忽略)
+        }
+        if (acceptWord("WHERE"))
+            select.where = expression();
+        if (acceptWord("ORDER")) {
+            expectWord("BY");
+            do {
+                select.orderBy.add(expression());
+                if (acceptWord("COLLATE"))
+                    name();
+                boolean desc = acceptWord("DESC");
+                if (!desc)
+                    acceptWord("ASC");
+                select.descending.add(desc);
+            } while (accept(","));
+        }
+        if (acceptWord("LIMIT")) {
+            Expr first = expression();
+            if (acceptWord("OFFSET")) {
+                select.limit = first;
+                select.offset = expression();
+            } else if (accept(",")) {
+                select.offset = first;
+                select.limit = expression();
+            } else {
+                select.limit = first;
+            }
+        }
+        return select;
+    }
+
+    private Insert insert(String conflict) {
+        Insert insert = new Insert();
+        insert.conflict = conflict;
+        expectWord("INTO");
+        insert.table = name();
+        if (accept("(")) {
+            insert.columns = nameList();
+        }
+        if (peekWord("SELECT")) {
+            insert.select = select();
+        } else if (acceptWord("DEFAULT")) {
+            expectWord("VALUES");
+            insert.values.add(new ArrayList<Expr>());
+        } else {
+            expectWord("VALUES");
+            do {
+                expect("(");
+                List<Expr> row = new ArrayList<Expr>();
+                do {
+                    row.add(expression());
+                } while (accept(","));
+                expect(")");
+                insert.values.add(row);
+            } while (accept(","));
+        }
+        if (acceptWord("ON")) {
+            expectWord("CONFLICT");
+            insert.upsert = true;
+            if (accept("("))
+                insert.upsertTarget = nameList();
+            expectWord("DO");
+            if (!acceptWord("NOTHING")) {
+                expectWord("UPDATE");
+                expectWord("SET");
+                do {
+                    insert.setColumns.add(name());
+                    expect("=");
+                    insert.setValues.add(expression());
+                } while (accept(","));
+            }
+        }
+        return insert;
+    }
+
+    private Update update() {
+        Update update = new Update();
+        if (acceptWord("OR"))
+            update.conflict = word().toUpperCase(Locale.US);
+        update.table = name();
+        expectWord("SET");
+        do {
+            update.setColumns.add(name());
+            expect("=");
+            update.setValues.add(expression());
+        } while (accept(","));
+        if (acceptWord("WHERE"))
+            update.where = expression();
+        return update;
+    }
+
+    private Delete delete() {
+        Delete delete = new Delete();
+        expectWord("FROM");
+        delete.table = name();
+        if (acceptWord("WHERE"))
+            delete.where = expression();
+        return delete;
+    }
+
+    private Stmt create() {
+        boolean unique = acceptWord("UNIQUE");
+        if (acceptWord("INDEX")) {
+            CreateIndex index = new CreateIndex();
+            index.unique = unique;
+            index.ifNotExists = ifNotExists();
+            index.name = name();
+            expectWord("ON");
+            index.table = name();
+            expect("(");
+            do {
+                index.columns.add(name());
+                if (!acceptWord("ASC"))
+                    acceptWord("DESC");
+            } while (accept(","));
+            expect(")");
+            return index;
+        }
+        if (unique)
+            throw error("expected INDEX");
+        acceptWord("TEMP");
+        acceptWord("TEMPORARY");
+        expectWord("TABLE");
+        CreateTable table = new CreateTable();
+        table.ifNotExists = ifNotExists();
+        table.name = name();
+        expect("(");
+        do {
+            if (acceptWord("PRIMARY")) {
+                expectWord("KEY");
+                expect("(");
+                table.primaryKey = nameList();
+            } else if (acceptWord("UNIQUE")) {
+                expect("(");
+                table.uniques.add(nameList());
+            } else if (acceptWord("CONSTRAINT")) {
+                name();
+                throw error("named constraints are not supported");
+            } else {
+                table.columns.add(columnDef());
+            }
+        } while (accept(","));
+        expect(")");
+        if (acceptWord("WITHOUT")) {
+            expectWord("ROWID");
+            table.withoutRowid = true;
+        }
+        return table;
+    }
+
+    private ColumnDef columnDef() {
+        ColumnDef column = new ColumnDef();
+        column.name = name();
+        StringBuilder type = new StringBuilder();
+        while (type() == T_WORD && !isConstraintWord(text())) {
+            if (type.length() > 0)
+                type.append(' ');
+            type.append(word());
+            if (accept("(")) {// VARCHAR(20)
+                while (!accept(")"))
+                    mPos++;
+            }
+        }
+        column.type = type.toString();
+        while (true) {
+            if (acceptWord("PRIMARY")) {
+                expectWord("KEY");
+                column.primaryKey = true;
+                if (!acceptWord("ASC"))
+                    acceptWord("DESC");
+                acceptWord("AUTOINCREMENT");
+            } else if (acceptWord("NOT")) {
+                expectWord("NULL");
+                column.notNull = true;
+            } else if (acceptWord("NULL")) {
+                column.notNull = false;
+            } else if (acceptWord("UNIQUE")) {
+                column.unique = true;
+            } else if (acceptWord("DEFAULT")) {
+                if (accept("(")) {
+                    column.defaultValue = expression();
+                    expect(")");
+                } else {
+                    column.defaultValue = primary();
+                }
+            } else if (acceptWord("COLLATE")) {
+                name();
+            } else {
+                return column;
+            }
+        }
+    }
+
+    private Drop drop() {
+        Drop drop = new Drop();
+        if (acceptWord("INDEX"))
+            drop.index = true;
+        else
+            expectWord("TABLE");
+        if (acceptWord("IF")) {
+            expectWord("EXISTS");
+            drop.ifExists = true;
+        }
+        drop.name = name();
+        return drop;
+    }
+
+    private Alter alter() {
+        expectWord("TABLE");
+        Alter alter = new Alter();
+        alter.table = name();
+        if (acceptWord("ADD")) {
+            acceptWord("COLUMN");
+            alter.addColumn = columnDef();
+        } else {
+            expectWord("RENAME");
+            expectWord("TO");
+            alter.renameTo = name();
+        }
+        return alter;
+    }
+
+    private Pragma pragma() {
+        Pragma pragma = new Pragma();
+        pragma.name = name().toLowerCase(Locale.US);
+        if (accept("(")) {
+            pragma.argument = name();
+            expect(")");
+        } else if (accept("=")) {
+            pragma.argument = text();
+            mPos++;
+        }
+        return pragma;
+    }
+
+    private boolean ifNotExists() {
+        if (!acceptWord("IF"))
+            return false;
+        expectWord("NOT");
+        expectWord("EXISTS");
+        return true;
+    }
+
+    private List<String> nameList() {
+        List<String> names = new ArrayList<String>();
+        do {
+            names.add(name());
+            if (!acceptWord("ASC"))
+                acceptWord("DESC");
+        } while (accept(","));
+        expect(")");
+        return names;
+    }
+
+    // ---------------- 表达式 ----------------
+
+    private Expr expression() {
+        return or();
+    }
+
+    private Expr or() {
+        Expr left = and();
+        while (acceptWord("OR"))
+            left = new Binary("OR", left, and());
+        return left;
+    }
+
+    private Expr and() {
+        Expr left = not();
+        while (acceptWord("AND"))
+            left = new Binary("AND", left, not());
+        return left;
+    }
+
+    private Expr not() {
+        if (acceptWord("NOT"))
+            return new Unary("NOT", not());
+        return comparison();
+    }
+
+    private Expr comparison() {
+        Expr left = concat();
+        while (true) {
+            String op = text();
+            if (type() == T_OP && (op.equals("=") || op.equals("==") || op.equals("!=")
+                    || op.equals("<>") || op.equals("<") || op.equals("<=") || op.equals(">")
+                    || op.equals(">="))) {
+                mPos++;
+                if (op.equals("=="))
+                    op = "=";
+                if (op.equals("<>"))
+                    op = "!=";
+                left = new Binary(op, left, concat());
+            } else if (acceptWord("IS")) {
+                boolean not = acceptWord("NOT");
+                if (acceptWord("NULL"))
+                    left = new IsNull(left, not);
+                else
+                    left = new Binary(not ? "IS NOT" : "IS", left, concat());
+            } else if (acceptWord("ISNULL")) {
+                left = new IsNull(left, false);
+            } else if (acceptWord("NOTNULL")) {
+                left = new IsNull(left, true);
+            } else if (peekWord("NOT") || peekWord("IN") || peekWord("LIKE")
+                    || peekWord("BETWEEN")) {
+                int mark = mPos;
+                boolean not = acceptWord("NOT");
+                if (acceptWord("NULL")) {
+                    left = new IsNull(left, true);
+                } else if (acceptWord("IN")) {
+                    expect("(");
+                    List<Expr> list = new ArrayList<Expr>();
+                    if (!accept(")")) {
+                        do {
+                            list.add(expression());
+                        } while (accept(","));
+                        expect(")");
+                    }
+                    left = new In(left, list, not);
+                } else if (acceptWord("LIKE")) {
+                    Expr like = new Binary("LIKE", left, concat());
+                    left = not ? new Unary("NOT", like) : like;
+                } else if (acceptWord("BETWEEN")) {
+                    Expr low = concat();
+                    expectWord("AND");
+                    left = new Between(left, low, concat(), not);
+                } else {
+                    mPos = mark;
+                    return left;
+                }
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Expr concat() {
+        Expr left = additive();
+        while (accept("||"))
+            left = new Binary("||", left, additive());
+        return left;
+    }
+
+    private Expr additive() {
+        Expr left = multiplicative();
+        while (true) {
+            if (accept("+"))
+                left = new Binary("+", left, multiplicative());
+            else if (accept("-"))
+                left = new Binary("-", left, multiplicative());
+            else
+                return left;
+        }
+    }
+
+    private Expr multiplicative() {
+        Expr left = unary();
+        while (true) {
+            if (accept("*"))
+                left = new Binary("*", left, unary());
+            else if (accept("/"))
+                left = new Binary("/", left, unary());
+            else if (accept("%"))
+                left = new Binary("%", left, unary());
+            else
+                return left;
+        }
+    }
+
+    private Expr unary() {
+        if (accept("-"))
+            return new Unary("-", unary());
+        if (accept("+"))
+            return unary();
+        return primary();
+    }
+
+    private Expr primary() {
+        int type = type();
+        String text = text();
+        switch (type) {
+            case T_NUMBER:
+                mPos++;
+                if (text.startsWith("0x") || text.startsWith("0X"))
+                    return new Literal(Long.parseLong(text.substring(2), 16));
+                if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0)
+                    return new Literal(Long.parseLong(text));
+                return new Literal(Double.parseDouble(text));
+            case T_STRING:
+                mPos++;
+                return new Literal(text);
+            case T_BLOB:
+                mPos++;
+                byte[] blob = new byte[text.length() / 2];
+                for (int i = 0; i < blob.length; i++)
+                    blob[i] = (byte) Integer.parseInt(text.substring(i * 2, i * 2 + 2), 16);
+                return new Literal(blob);
+            case T_PARAM:
+                mPos++;
+                return new Param(mParamCount++);
+            case T_OP:
+                if (accept("(")) {
+                    if (peekWord("SELECT")) {
+                        Select select = select();
+                        expect(")");
+                        return new Subquery(select);
+                    }
+                    Expr expr = expression();
+                    expect(")");
+                    return expr;
+                }
+                throw error("unexpected \"" + text + "\"");
+            case T_WORD:
+            case T_QUOTED:
+                if (type == T_WORD) {
+                    String upper = text.toUpperCase(Locale.US);
+                    if (upper.equals("NULL")) {
+                        mPos++;
+                        return new Literal(null);
+                    }
+                    if (upper.equals("CURRENT_TIMESTAMP")) {
+                        mPos++;
+                        return new Literal(String.valueOf(System.currentTimeMillis()));
+                    }
+                    if (upper.equals("EXISTS")) {
+                        mPos++;
+                        expect("(");
+                        Select select = select();
+                        expect(")");
+                        return new Exists(select);
+                    }
+                    if (upper.equals("CASE") || upper.equals("CAST") || upper.equals("SELECT"))
+                        throw error(upper + " is not supported");
+                }
+                String name = name();
+                if (type == T_WORD && accept("(")) {
+                    String function = name.toUpperCase(Locale.US);
+                    List<Expr> args = new ArrayList<Expr>();
+                    boolean star = false;
+                    if (accept("*")) {
+                        star = true;
+                        expect(")");
+                    } else if (!accept(")")) {
+                        acceptWord("DISTINCT");
+                        do {
+                            args.add(expression());
+                        } while (accept(","));
+                        expect(")");
+                    }
+                    return new Function(function, args, star);
+                }
+                if (accept(".")) {
+                    return new Column(name, name());
+                }
+                return new Column(null, name);
+            default:
+                throw error("unexpected end of statement");
+        }
+    }
+
+    // ---------------- 词法 ----------------
+
+    private void tokenize() {
+        String s = mSql;
+        int i = 0;
+        int n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < n && s.charAt(i + 1) == '-') {
+                while (i < n && s.charAt(i) != '\n')
+                    i++;
+            } else if ((c == 'x' || c == 'X') && i + 1 < n && s.charAt(i + 1) == '\'') {
+                int end = s.indexOf('\'', i + 2);
+                add(T_BLOB, s.substring(i + 2, end));
+                i = end + 1;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(s.charAt(i)) || s.charAt(i) == '_'
+                        || s.charAt(i) == '$'))
+                    i++;
+                add(T_WORD, s.substring(start, i));
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < n
+                    && Character.isDigit(s.charAt(i + 1)))) {
+                int start = i;
+                if (c == '0' && i + 1 < n && (s.charAt(i + 1) == 'x' || s.charAt(i + 1) == 'X')) {
+                    i += 2;
+                    while (i < n && Character.digit(s.charAt(i), 16) >= 0)
+                        i++;
+                } else {
+                    while (i < n && (Character.isDigit(s.charAt(i)) || s.charAt(i) == '.'))
+                        i++;
+                    if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+                        i++;
+                        if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-'))
+                            i++;
+                        while (i < n && Character.isDigit(s.charAt(i)))
+                            i++;
+                    }
+                }
+                add(T_NUMBER, s.substring(start, i));
+            } else if (c == '\'') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= n)
+                        throw new SQLiteException("unterminated string in \"" + mSql + "\"");
+                    char d = s.charAt(i++);
+                    if (d == '\'') {
+                        if (i < n && s.charAt(i) == '\'') {
+                            value.append('\'');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        value.append(d);
+                    }
+                }
+                add(T_STRING, value.toString());
+            } else if (c == '"' || c == '`' || c == '[') {
+                char close = c == '[' ? ']' : c;
+                int end = s.indexOf(close, i + 1);
+                if (end < 0)
+                    throw new SQLiteException("unterminated identifier in \"" + mSql + "\"");
+                add(T_QUOTED, s.substring(i + 1, end));
+                i = end + 1;
+            } else if (c == '?' || c == ':' || c == '@' || c == '$') {
+                i++;
+                while (i < n && Character.isLetterOrDigit(s.charAt(i)))
+                    i++;
+                add(T_PARAM, "?");
+            } else {
+                String two = i + 1 < n ? s.substring(i, i + 2) : "";
+                if (two.equals("||") || two.equals("<=") || two.equals(">=") || two.equals("==")
+                        || two.equals("!=") || two.equals("<>")) {
+                    add(T_OP, two);
+                    i += 2;
+                } else if ("(),;*=<>+-/%.".indexOf(c) >= 0) {
+                    add(T_OP, String.valueOf(c));
+                    i++;
+                } else {
+                    throw new SQLiteException("unrecognized token \"" + c + "\" in \"" + mSql + "\"");
+                }
+            }
+        }
+        add(T_EOF, "");
+    }
+
+    private void add(int type, String text) {
+        mTypes.add(type);
+        mTokens.add(text);
+    }
+
+    private int type() {
+        return mTypes.get(mPos);
+    }
+
+    private String text() {
+        return mTokens.get(mPos);
+    }
+
+    private boolean accept(String op) {
+        if (type() == T_OP && text().equals(op)) {
+            mPos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String op) {
+        if (!accept(op))
+            throw error("expected \"" + op + "\"");
+    }
+
+    private boolean peekWord(String word) {
+        return type() == T_WORD && text().equalsIgnoreCase(word);
+    }
+
+    private boolean acceptWord(String word) {
+        if (peekWord(word)) {
+            mPos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expectWord(String word) {
+        if (!acceptWord(word))
+            throw error("expected " + word);
+    }
+
+    private String word() {
+        if (type() != T_WORD)
+            throw error("expected a keyword");
+        return mTokens.get(mPos++);
+    }
+
+    private String name() {
+        if (type() != T_WORD && type() != T_QUOTED && type() != T_STRING)
+            throw error("expected a name");
+        return mTokens.get(mPos++);
+    }
+
+    /**
+     * 返回[from, to)之间的词法单元拼成的原文(用作没有别名的结果字段的名称)。
+     */
+    private String source(int from, int to) {
+        StringBuilder result = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            String token = mTokens.get(i);
+            boolean tight = mTypes.get(i) == T_OP && !token.equals("=") && !token.equals(",");
+            if (result.length() > 0 && !tight && !result.toString().endsWith("("))
+                result.append(' ');
+            result.append(mTypes.get(i) == T_STRING ? "'" + token + "'" : token);
+        }
+        return result.toString();
+    }
+
+    private static boolean isReserved(String word) {
+        String upper = word.toUpperCase(Locale.US);
+        return upper.equals("FROM") || upper.equals("WHERE") || upper.equals("ORDER")
+                || upper.equals("LIMIT") || upper.equals("GROUP") || upper.equals("AS")
+                || upper.equals("ON") || upper.equals("AND") || upper.equals("OR")
+                || upper.equals("UNION") || upper.equals("OFFSET");
+    }
+
+    private static boolean isConstraintWord(String word) {
+        String upper = word.toUpperCase(Locale.US);
+        return upper.equals("PRIMARY") || upper.equals("NOT") || upper.equals("NULL")
+                || upper.equals("UNIQUE") || upper.equals("DEFAULT") || upper.equals("COLLATE")
+                || upper.equals("CHECK") || upper.equals("REFERENCES") || upper.equals("CONSTRAINT");
+    }
+
+    private SQLiteException error(String message) {
+        return new SQLiteException(message + " near token " + mPos + " in \"" + mSql + "\"");
+    }
+}
@@ -0,0 +1,216 @@
+package android.database.sqlite;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 内存SQLite的值：null、Long、Double、String、byte[]，以及SQLite的类型亲和性和比较规则。
+ */
+final class SqlValues {
+
+    static final int AFFINITY_NONE = 0;// BLOB或没有声明类型
+    static final int AFFINITY_TEXT = 1;
+    static final int AFFINITY_NUMERIC = 2;
+    static final int AFFINITY_INTEGER = 3;
+    static final int AFFINITY_REAL = 4;
+
+    private SqlValues() {}
+
+    /**
+     * 按声明的类型计算亲和性(与SQLite的规则相同)。
+     */
+    static int affinityOf(String type) {
+        if (type == null || type.length() == 0)
+            return AFFINITY_NONE;
+        String upper = type.toUpperCase(Locale.US);
+        if (upper.contains("INT"))
+            return AFFINITY_INTEGER;
+        if (upper.contains("CHAR") || upper.contains("CLOB") || upper.contains("TEXT"))
+            return AFFINITY_TEXT;
+        if (upper.contains("BLOB"))
+            return AFFINITY_NONE;
+        if (upper.contains("REAL") || upper.contains("FLOA") || upper.contains("DOUB"))
+            return AFFINITY_REAL;
+        return AFFINITY_NUMERIC;
+    }
+
+    /**
+     * 把Java对象转为SQL值(Integer、Boolean等转为Long)。
+     */
+    static Object normalize(Object value) {
+        if (value == null || value instanceof Long || value instanceof String
+                || value instanceof byte[] || value instanceof Double)
+            return value;
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+            return ((Number) value).longValue();
+        if (value instanceof Float)
+            return ((Float) value).doubleValue();
+        if (value instanceof Boolean)
+            return (Boolean) value ? 1L : 0L;
+        if (value instanceof Number)
+            return ((Number) value).doubleValue();
+        return value.toString();
+    }
+
+    /**
+     * 按亲和性转换要存入或比较的值。
+     */
+    static Object applyAffinity(Object value, int affinity) {
+        if (value == null || value instanceof byte[])
+            return value;
+        switch (affinity) {
+            case AFFINITY_TEXT:
+                if (value instanceof Long || value instanceof Double)
+                    return toText(value);
+                return value;
+            case AFFINITY_INTEGER:
+            case AFFINITY_NUMERIC: {
+                Object number = value instanceof String ? parseNumber((String) value) : value;
+                if (number instanceof Double) {
+                    double d = (Double) number;
+                    if (d == Math.rint(d) && Math.abs(d) < 9.2e18)
+                        return (long) d;
+                }
+                return number;
+            }
+            case AFFINITY_REAL: {
+                Object number = value instanceof String ? parseNumber((String) value) : value;
+                if (number instanceof Long)
+                    return ((Long) number).doubleValue();
+                return number;
+            }
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * 文本是合法的数字时返回Long或Double，否则返回原文本。
+     */
+    private static Object parseNumber(String text) {
+        String trimmed = text.trim();
+        if (trimmed.length() == 0)
+            return text;
+        try {
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException e) {
+            // 不是整数
+        }
+        try {
+            char last = trimmed.charAt(trimmed.length() - 1);
+            if (Character.isDigit(last) || last == '.')
+                return Double.parseDouble(trimmed);
+        } catch (NumberFormatException e) {
+            // 不是数字
+        }
+        return text;
+    }
+
+    static boolean isNumeric(Object value) {
+        return value instanceof Long || value instanceof Double;
+    }
+
+    static long toLong(Object value) {
+        if (value == null)
+            return 0;
+        if (value instanceof Long)
+            return (Long) value;
+        if (value instanceof Double)
+            return (long) (double) (Double) value;
+        if (value instanceof byte[])
+            return 0;
+        Object number = parseNumber((String) value);
+        if (number instanceof Long)
+            return (Long) number;
+        if (number instanceof Double)
+            return (long) (double) (Double) number;
+        return 0;
+    }
+
+    static double toDouble(Object value) {
+        if (value == null)
+            return 0;
+        if (value instanceof Long)
+            return (Long) value;
+        if (value instanceof Double)
+            return (Double) value;
+        if (value instanceof byte[])
+            return 0;
+        Object number = parseNumber((String) value);
+        return isNumeric(number) ? ((Number) number).doubleValue() : 0;
+    }
+
+    static String toText(Object value) {
+        if (value == null)
+            return null;
+        if (value instanceof byte[])
+            return new String((byte[]) value);
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (d == Math.rint(d) && Math.abs(d) < 1e15)
+                return (long) d + ".0";
+        }
+        return value.toString();
+    }
+
+    /**
+     * WHERE等条件的真假：null和0为假。
+     */
+    static boolean isTrue(Object value) {
+        if (value == null)
+            return false;
+        return toDouble(value) != 0;
+    }
+
+    /**
+     * 按SQLite的排序规则比较两个值：NULL < 数字 < 文本 < BLOB。
+     */
+    static int compare(Object a, Object b) {
+        int ra = rank(a);
+        int rb = rank(b);
+        if (ra != rb)
+            return ra < rb ? -1 : 1;
+        switch (ra) {
+            case 0:
+                return 0;
+            case 1:
+                if (a instanceof Long && b instanceof Long)
+                    return ((Long) a).compareTo((Long) b);
+                return Double.compare(toDouble(a), toDouble(b));
+            case 2:
+                return ((String) a).compareTo((String) b);
+            default:
+                byte[] x = (byte[]) a;
+                byte[] y = (byte[]) b;
+                for (int i = 0; i < Math.min(x.length, y.length); i++) {
+                    if (x[i] != y[i])
+                        return (x[i] & 0xff) - (y[i] & 0xff);
+                }
+                return x.length - y.length;
+        }
+    }
+
+    private static int rank(Object value) {
+        if (value == null)
+            return 0;
+        if (isNumeric(value))
+            return 1;
+        if (value instanceof String)
+            return 2;
+        return 3;
+    }
+
+    /**
+     * 唯一索引中使用的键(相等的值得到相等的键)。
+     */
+    static Object keyOf(Object value) {
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (d == Math.rint(d) && Math.abs(d) < 9.2e18)
+                return (long) d;
+        }
+        if (value instanceof byte[])
+            return Arrays.toString((byte[]) value);
+        return value;
+    }
+}
@@ -0,0 +1,127 @@
+package android.os;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试用的AsyncTask(在JVM上代替android.jar中的实现)。
+ * 按API 8的实现：doInBackground()在5~128个线程的线程池中执行，
+ * onPostExecute()/onCancelled()/onProgressUpdate()投递到一个模拟主线程的单线程中执行。
+ */
+public abstract class AsyncTask<Params, Progress, Result> {
+
+    public enum Status {PENDING, RUNNING, FINISHED}
+
+    public static final Executor THREAD_POOL_EXECUTOR = new ThreadPoolExecutor(5, 128, 1,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(10), daemon("AsyncTask"));
+
+    private static final ExecutorService MAIN_THREAD =
+            Executors.newSingleThreadExecutor(daemon("main"));
+
+    private volatile Status mStatus = Status.PENDING;
+    private volatile Params[] mParams;
+    private final FutureTask<Result> mFuture;
+
+    public AsyncTask() {
+        mFuture = new FutureTask<Result>(new Callable<Result>() {
+            @Override
+            public Result call() throws Exception {
+                return doInBackground(mParams);
+            }
+        }) {
+            @Override
+            protected void done() {
+                Result result = null;
+                try {
+                    result = get();
+                } catch (CancellationException e) {
+                    // 被cancel，回调onCancelled()
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("An error occured while executing doInBackground()",
+                            e.getCause());
+                }
+                final Result posted = result;
+                MAIN_THREAD.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isCancelled())
+                            onCancelled();
+                        else
+                            onPostExecute(posted);
+                        mStatus = Status.FINISHED;
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * 在模拟的主线程中执行(用于在"主线程"上启动任务)。
+     */
+    public static void runOnMainThread(Runnable runnable) {
+        MAIN_THREAD.execute(runnable);
+    }
+
+    protected abstract Result doInBackground(Params... params);
+
+    protected void onPreExecute() {}
+
+    protected void onPostExecute(Result result) {}
+
+    protected void onProgressUpdate(Progress... values) {}
+
+    protected void onCancelled() {}
+
+    public final Status getStatus() {
+        return mStatus;
+    }
+
+    public final boolean isCancelled() {
+        return mFuture.isCancelled();
+    }
+
+    public final boolean cancel(boolean mayInterruptIfRunning) {
+        return mFuture.cancel(mayInterruptIfRunning);
+    }
+
+    public final AsyncTask<Params, Progress, Result> execute(Params... params) {
+        if (mStatus != Status.PENDING)
+            throw new IllegalStateException("Cannot execute task: the task is " + mStatus + ".");
+        mStatus = Status.RUNNING;
+        onPreExecute();
+        mParams = params;
+        THREAD_POOL_EXECUTOR.execute(mFuture);
+        return this;
+    }
+
+    protected final void publishProgress(final Progress... values) {
+        MAIN_THREAD.execute(new Runnable() {
+            @Override
+            public void run() {
+                onProgressUpdate(values);
+            }
+        });
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
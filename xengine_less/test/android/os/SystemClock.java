@@ -0,0 +1,25 @@
+package android.os;
+
+/**
+ * 测试用的SystemClock(在JVM上代替android.jar中的实现)。
+ */
+public final class SystemClock {
+
+    private SystemClock() {}
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.xengine.android.data.cache;
+
+import android.database.Cursor;
+import android.database.sqlite.InMemorySQLite;
+import com.xengine.android.data.db.XSQLiteHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * XBaseAdapterIdDBDataSource的持久化测试(在内存SQLite上运行)：
+ * 写入失败不能丢失还没写入的变化，游标在出错时也要关闭，
+ * 同步变更日志时只读写变化的行。
+ */
+public class XBaseAdapterIdDBDataSourceTest {
+
+    private static final String DB_NAME = "XBaseAdapterIdDBDataSourceTest";
+    private static final long NEVER = 60 * 60 * 1000;// 不让后台写线程参与测试
+
+    private XSQLiteHelper mHelper;
+    private XTestItemSource mSource;
+
+    @Before
+    public void setUp() {
+        InMemorySQLite.reset();
+        XSQLiteHelper.initiate(null, DB_NAME, 1);
+        mHelper = XSQLiteHelper.getInstance();
+        mSource = new XTestItemSource();
+        mSource.setWriteBehind(true, NEVER);
+    }
+
+    @After
+    public void tearDown() {
+        mSource.setWriteBehind(false);
+        mHelper.close();
+        InMemorySQLite.reset();
+    }
+
+    @Test
+    public void constraintViolationFailsBatchAndKeepsChange() {
+        mSource.add(new XTestItemSource.Item("a", "x", 1));
+        mSource.add(new XTestItemSource.Item("b", null, 2));// 违反NOT NULL
+        assertFalse(mSource.flush());
+        // 整个批次回滚，两条变化都还在
+        assertEquals(0, InMemorySQLite.rowCount(DB_NAME, "item"));
+        assertFalse(mSource.flush());
+
+        mSource.add(new XTestItemSource.Item("b", "fixed", 2));
+        assertTrue(mSource.flush());
+        assertEquals(2, InMemorySQLite.rowCount(DB_NAME, "item"));
+    }
+
+    @Test
+    public void failedSaveKeepsPendingChanges() {
+        mSource.add(new XTestItemSource.Item("a", "x", 1));
+        mSource.add(new XTestItemSource.Item("b", null, 2));
+        assertFalse(mSource.saveToDatabase());
+        assertEquals(0, InMemorySQLite.rowCount(DB_NAME, "item"));
+
+        mSource.add(new XTestItemSource.Item("b", "fixed", 2));
+        assertTrue(mSource.flush());
+        assertEquals(2, InMemorySQLite.rowCount(DB_NAME, "item"));
+    }
+
+    @Test
+    public void successfulSaveDropsPendingChanges() {
+        mSource.addAll(XTestItemSource.items(100));
+        assertTrue(mSource.saveToDatabase());
+        assertEquals(100, InMemorySQLite.rowCount(DB_NAME, "item"));
+
+        InMemorySQLite.resetCounters();
+        assertTrue(mSource.flush());
+        assertEquals(0, InMemorySQLite.getStatementCount());
+    }
+
+    @Test
+    public void loadClosesCursorOnError() {
+        mSource.addAll(XTestItemSource.items(10));
+        assertTrue(mSource.saveToDatabase());
+
+        XTestItemSource failing = new XTestItemSource(new XTestItemSource.Table("item") {
+            @Override
+            public XTestItemSource.Item getFilledInstance(Cursor cursor) {
+                throw new IllegalStateException("expected by test");
+            }
+        });
+        InMemorySQLite.resetCounters();
+        try {
+            failing.loadFromDatabase();
+            fail("getFilledInstance() error should be thrown");
+        } catch (IllegalStateException e) {
+            // 预期的异常
+        }
+        assertEquals(1, InMemorySQLite.getCursorsOpened());
+        assertEquals(1, InMemorySQLite.getCursorsClosed());
+
+        XTestItemSource loaded = new XTestItemSource();
+        assertTrue(loaded.loadFromDatabase());
+        assertEquals(10, loaded.size());
+        assertEquals(2, InMemorySQLite.getCursorsClosed());
+    }
+
+    @Test
+    public void applyRemoteChangesWritesOnlyDeltaRows() {
+        mSource.addAll(XTestItemSource.items(10000));
+        assertTrue(mSource.saveToDatabase());
+        mSource.setChangeLogEnabled(true);
+
+        List<XDataChange<XTestItemSource.Item>> changes = new ArrayList<XDataChange<XTestItemSource.Item>>();
+        changes.add(new XDataChange<XTestItemSource.Item>(1, XDataChange.OP_UPSERT, null, "i5",
+                new XTestItemSource.Item("i5", "remote", 5)));
+        changes.add(new XDataChange<XTestItemSource.Item>(2, XDataChange.OP_UPSERT, null, "n1",
+                new XTestItemSource.Item("n1", "new", -1)));
+        changes.add(new XDataChange<XTestItemSource.Item>(3, XDataChange.OP_DELETE, null, "i7", null));
+        InMemorySQLite.resetCounters();
+        assertEquals(3, mSource.applyRemoteChanges(changes));
+        // 一个事务，只检查变化的键所在的行
+        assertEquals(1, InMemorySQLite.getCommitCount());
+        assertTrue(InMemorySQLite.getRowsScanned() <= 10);
+        assertEquals(10000, InMemorySQLite.rowCount(DB_NAME, "item"));
+        assertEquals("remote", mSource.getById("i5").name);
+        assertNull(mSource.getById("i7"));
+        assertEquals(3, mSource.getRemoteSeq());
+        // 服务器的变化不需要延迟写入，也不会记入本地日志
+        InMemorySQLite.resetCounters();
+        assertTrue(mSource.flush());
+        assertEquals(0, InMemorySQLite.getStatementCount());
+        assertTrue(mSource.getChangesSince(0).isEmpty());
+
+        // 重复应用不会再写数据库
+        InMemorySQLite.resetCounters();
+        assertEquals(0, mSource.applyRemoteChanges(changes));
+        assertEquals(0, InMemorySQLite.getCommitCount());
+
+        XTestItemSource loaded = new XTestItemSource();
+        loaded.setChangeLogEnabled(true);
+        assertEquals(3, loaded.getRemoteSeq());
+        assertTrue(loaded.loadFromDatabase());
+        assertEquals("remote", loaded.getById("i5").name);
+        assertEquals("new", loaded.getById("n1").name);
+        assertNull(loaded.getById("i7"));
+    }
+
+    @Test
+    public void spilledSourceSyncsWithoutLoading() {
+        mSource.setWriteBehind(false);
+        mSource.addAll(XTestItemSource.items(10000));
+        assertTrue(mSource.saveToDatabase());
+        mSource.setChangeLogEnabled(true);
+        mSource.add(new XTestItemSource.Item("i3", "local", 3));
+        assertTrue(mSource.spill());
+
+        InMemorySQLite.resetCounters();
+        List<XDataChange<XTestItemSource.Item>> local = mSource.getChangesSince(0);
+        assertEquals(1, local.size());
+        assertEquals("local", local.get(0).item.name);
+        assertTrue(InMemorySQLite.getRowsRead() <= 2);
+
+        List<XDataChange<XTestItemSource.Item>> remote = new ArrayList<XDataChange<XTestItemSource.Item>>();
+        remote.add(new XDataChange<XTestItemSource.Item>(1, XDataChange.OP_DELETE, null, "i4", null));
+        assertEquals(1, mSource.applyRemoteChanges(remote));
+        assertTrue(mSource.isSpilled());
+        assertEquals(0, mSource.size());
+        assertTrue(InMemorySQLite.getRowsRead() <= 2);
+        assertEquals(9999, InMemorySQLite.rowCount(DB_NAME, "item"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void changeLogNeedsKeyColumns() {
+        new XTestItemSource() {
+            @Override
+            protected String getIdColumn() {
+                return null;
+            }
+        }.setChangeLogEnabled(true);
+    }
+}
@@ -0,0 +1,102 @@
+package com.xengine.android.data.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * XBaseAdapterIdDataSource的耗时基准(不是单元测试，直接运行main())。
+ * 数据量从1000到500000，分别统计add、addAll、getById、deleteAllById，
+ * 以及删除中间元素后立即按id查找(检验删除不会引起索引重建)的平均耗时。
+ * 用法：java com.xengine.android.data.cache.XBaseAdapterIdDataSourceBenchmark [count...]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多
+ */
+public class XBaseAdapterIdDataSourceBenchmark {
+
+    private static final int[] DEFAULT_COUNTS = {1000, 10000, 100000, 500000};
+    private static final int LOOKUPS = 100000;// getById的次数
+    private static final int DELETES = 1000;// 删除后查找的次数
+    private static final int WARM_UP = 2;// 预热的轮数
+
+    public static void main(String[] args) {
+        int[] counts = DEFAULT_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+        for (int round = 0; round <= WARM_UP; round++) {
+            boolean report = round == WARM_UP;
+            for (int count : counts)
+                run(count, report);
+        }
+    }
+
+    private static void run(int count, boolean report) {
+        Random random = new Random(count);
+        List<String> items = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+            items.add("item" + i);
+
+        Source source = new Source();
+        long begin = System.nanoTime();
+        for (String item : items)
+            source.add(item);
+        long add = System.nanoTime() - begin;
+
+        Source bulk = new Source();
+        begin = System.nanoTime();
+        bulk.addAll(items);
+        long addAll = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        int hits = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (source.getById("item" + random.nextInt(count)) != null)
+                hits++;
+        }
+        long lookup = System.nanoTime() - begin;
+
+        // 删除中间的元素后马上查找、追加
+        int deletes = Math.min(DELETES, count / 2);
+        begin = System.nanoTime();
+        for (int i = 0; i < deletes; i++) {
+            source.deleteById("item" + (i * 2));
+            source.add("extra" + i);
+            if (source.getById("item" + (count - 1 - i)) != null)
+                hits++;
+        }
+        long deleteThenLookup = System.nanoTime() - begin;
+
+        List<String> ids = new ArrayList<String>(count / 10);
+        for (int i = 0; i < count / 10; i++)
+            ids.add("item" + random.nextInt(count));
+        begin = System.nanoTime();
+        bulk.deleteAllById(ids);
+        long deleteAll = System.nanoTime() - begin;
+
+        if (report) {
+            System.out.printf("%7d items  add %7.1f ns/op  addAll %7.1f ns/op  getById %7.1f ns/op"
+                            + "  delete+getById %9.1f ns/op  deleteAllById(%d) %8.2f ms  (hits %d)%n",
+                    count, (double) add / count, (double) addAll / count,
+                    (double) lookup / LOOKUPS, (double) deleteThenLookup / deletes,
+                    ids.size(), deleteAll / 1e6, hits);
+        }
+    }
+
+    private static final class Source extends XBaseAdapterIdDataSource<String> {
+        Source() {
+            setAutoNotifyListeners(false);
+        }
+
+        @Override
+        public String getId(String item) {
+            return item;
+        }
+
+        @Override
+        public String getSourceName() {
+            return "benchmark";
+        }
+    }
+}
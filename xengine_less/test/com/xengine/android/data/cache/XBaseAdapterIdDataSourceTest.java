@@ -0,0 +1,211 @@
+package com.xengine.android.data.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * XBaseAdapterIdDataSource的测试：随机操作后按id查找的结果必须与线性查找一致，
+ * 删除不能让下一次查找重建整个索引。
+ */
+public class XBaseAdapterIdDataSourceTest {
+
+    private Source mSource;
+
+    @Before
+    public void setUp() {
+        mSource = new Source();
+    }
+
+    @Test
+    public void randomOperationsAgreeWithLinearScan() {
+        Random random = new Random(31);
+        List<Item> model = new ArrayList<Item>();
+        for (int step = 0; step < 20000; step++) {
+            int op = random.nextInt(10);
+            String id = "i" + random.nextInt(300);
+            if (op < 4) {
+                Item item = new Item(id, step);
+                mSource.add(item);
+                int index = linearIndexOf(model, id);
+                if (index == -1)
+                    model.add(item);
+                else
+                    model.set(index, item);
+            } else if (op < 6) {
+                mSource.deleteById(id);
+                int index = linearIndexOf(model, id);
+                if (index != -1)
+                    model.remove(index);
+            } else if (op < 7 && !model.isEmpty()) {
+                int index = random.nextInt(model.size());
+                mSource.delete(index);
+                model.remove(index);
+            } else if (op < 8) {
+                List<String> ids = new ArrayList<String>();
+                for (int i = 0; i < 5; i++)
+                    ids.add("i" + random.nextInt(300));
+                mSource.deleteAllById(ids);
+                for (String deleted : ids) {
+                    int index = linearIndexOf(model, deleted);
+                    if (index != -1)
+                        model.remove(index);
+                }
+            } else if (op < 9 && !model.isEmpty()) {
+                // 替换成另一个id
+                int index = random.nextInt(model.size());
+                Item item = new Item(id, step);
+                if (linearIndexOf(model, id) == -1) {
+                    mSource.replace(index, item);
+                    model.set(index, item);
+                }
+            } else if (random.nextInt(50) == 0) {
+                mSource.sort(BY_VALUE);
+                Collections.sort(model, BY_VALUE);
+            }
+            if (step % 97 == 0)
+                assertAgrees(model);
+        }
+        assertAgrees(model);
+    }
+
+    @Test
+    public void deleteDoesNotRebuildTheIndex() {
+        int size = 10000;
+        for (int i = 0; i < size; i++)
+            mSource.add(new Item("i" + i, i));
+        assertEquals(size / 2, mSource.getIndexById("i" + size / 2));
+
+        mSource.getIdCalls = 0;
+        for (int i = 0; i < 100; i++) {
+            mSource.deleteById("i" + (i * 37));// 删除中间的元素
+            mSource.add(new Item("n" + i, i));
+            assertEquals(size - 1, mSource.getIndexById("n" + i));
+        }
+        assertEquals(size - 50 - 100, mSource.getIndexById("i" + (size - 50)));
+        assertTrue("getId calls: " + mSource.getIdCalls, mSource.getIdCalls < 100 * 10);
+    }
+
+    @Test
+    public void deleteAllRemovesEveryEqualOccurrence() {
+        Item a = new Item("a", 1);
+        Item b = new Item("b", 2);
+        mSource.add(a);
+        mSource.add(b);
+        // 绕过判重追加重复的元素(如从数据库加载)
+        mSource.appendItem(new Item("a", 1));
+        mSource.appendItem(new Item("c", 3));
+        mSource.deleteAll(Arrays.asList(new Item("a", 1), new Item("b", 99)));
+        assertEquals(2, mSource.size());
+        assertSame(b, mSource.get(0));
+        assertEquals("c", mSource.get(1).id);
+        assertEquals(-1, mSource.getIndexById("a"));
+        assertEquals(1, mSource.getIndexById("c"));
+    }
+
+    @Test
+    public void duplicateIdsFallBackToTheNextOccurrence() {
+        mSource.appendItem(new Item("a", 1));
+        mSource.appendItem(new Item("x", 2));
+        mSource.appendItem(new Item("a", 3));
+        assertEquals(0, mSource.getIndexById("a"));
+        mSource.delete(0);
+        assertEquals(1, mSource.getIndexById("a"));
+        assertEquals(3, mSource.getById("a").value);
+    }
+
+    @Test
+    public void lookupsDoNotChangeTheVersion() {
+        for (int i = 0; i < 10; i++)
+            mSource.add(new Item("i" + i, i));
+        mSource.delete(3);
+        mSource.mItemList.set(5, new Item("z", 0));// 子类绕过索引修改了列表
+        long version = mSource.getVersion();
+        XDataSnapshot<Item> snapshot = mSource.getSnapshot();
+        assertNull(mSource.getById("i6"));// 发现不一致，修复索引
+        assertEquals(5, mSource.getIndexById("z"));
+        assertEquals(version, mSource.getVersion());
+        assertSame(snapshot, mSource.getSnapshot());
+    }
+
+    private void assertAgrees(List<Item> model) {
+        assertEquals(model.size(), mSource.size());
+        for (int i = 0; i < model.size(); i++) {
+            assertSame(model.get(i), mSource.get(i));
+            assertEquals(i, mSource.getIndexById(model.get(i).id));
+        }
+        for (int i = 0; i < 300; i++) {
+            String id = "i" + i;
+            assertEquals(id, linearIndexOf(model, id), mSource.getIndexById(id));
+        }
+    }
+
+    private static int linearIndexOf(List<Item> items, String id) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).id.equals(id))
+                return i;
+        }
+        return -1;
+    }
+
+    private static final Comparator<Item> BY_VALUE = new Comparator<Item>() {
+        @Override
+        public int compare(Item a, Item b) {
+            return a.value < b.value ? -1 : (a.value == b.value ? 0 : 1);
+        }
+    };
+
+    static final class Item {
+        final String id;
+        final int value;
+
+        Item(String id, int value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Item))
+                return false;
+            Item other = (Item) o;
+            return id.equals(other.id) && value == other.value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id.hashCode() + value;
+        }
+
+        @Override
+        public String toString() {
+            return id + "=" + value;
+        }
+    }
+
+    static final class Source extends XBaseAdapterIdDataSource<Item> {
+        int getIdCalls;// getId()被调用的次数
+
+        @Override
+        public String getId(Item item) {
+            getIdCalls++;
+            return item.id;
+        }
+
+        @Override
+        public String getSourceName() {
+            return "test";
+        }
+    }
+}
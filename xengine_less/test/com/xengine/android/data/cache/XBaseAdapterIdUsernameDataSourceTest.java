@@ -0,0 +1,175 @@
+package com.xengine.android.data.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * XBaseAdapterIdUsernameDataSource的测试：分区索引在随机操作后必须与线性查找一致，
+ * 按用户名删除只更新被删除的元素，不重建索引。
+ */
+public class XBaseAdapterIdUsernameDataSourceTest {
+
+    private static final String[] USERS = {"alice", "bob", "carol", null};
+
+    private Source mSource;
+
+    @Before
+    public void setUp() {
+        mSource = new Source();
+    }
+
+    @Test
+    public void randomOperationsAgreeWithLinearScan() {
+        Random random = new Random(32);
+        List<Item> model = new ArrayList<Item>();
+        for (int step = 0; step < 20000; step++) {
+            int op = random.nextInt(10);
+            String user = USERS[random.nextInt(USERS.length)];
+            String id = "i" + random.nextInt(100);// 不同用户下的id会重复
+            if (op < 5) {
+                Item item = new Item(user, id, step);
+                mSource.add(item);
+                int index = linearIndexOf(model, user, id);
+                if (index == -1)
+                    model.add(item);
+                else
+                    model.set(index, item);
+            } else if (op < 7) {
+                mSource.deleteByUsernameId(user, id);
+                int index = linearIndexOf(model, user, id);
+                if (index != -1)
+                    model.remove(index);
+            } else if (op < 8 && !model.isEmpty()) {
+                int index = random.nextInt(model.size());
+                mSource.delete(index);
+                model.remove(index);
+            } else if (op < 9 && random.nextInt(10) == 0) {
+                mSource.deleteByUsername(user);
+                for (int i = model.size() - 1; i >= 0; i--) {
+                    if (equals(user, model.get(i).user))
+                        model.remove(i);
+                }
+            } else if (!model.isEmpty()) {
+                // 替换成另一个用户的元素
+                int index = random.nextInt(model.size());
+                Item item = new Item(user, id, step);
+                if (linearIndexOf(model, user, id) == -1) {
+                    mSource.replace(index, item);
+                    model.set(index, item);
+                }
+            }
+            if (step % 97 == 0)
+                assertAgrees(model);
+        }
+        assertAgrees(model);
+    }
+
+    @Test
+    public void deleteByUsernameDoesNotRebuildTheIndex() {
+        int size = 10000;
+        for (int i = 0; i < size; i++)
+            mSource.add(new Item(USERS[i % 3], "i" + i, i));
+        assertEquals(size / 2, mSource.getIndexByUsernameId(USERS[size / 2 % 3], "i" + size / 2));
+
+        mSource.getIdCalls = 0;
+        mSource.deleteByUsername("bob");
+        int remaining = size - size / 3;
+        assertEquals(remaining, mSource.size());
+        // 被删除的k个元素各调用几次，其余的元素不应再调用
+        assertTrue("getId calls: " + mSource.getIdCalls, mSource.getIdCalls < size / 3 * 4);
+        mSource.getIdCalls = 0;
+        assertEquals(remaining - 1, mSource.getIndexByUsernameId(USERS[(size - 1) % 3], "i" + (size - 1)));
+        assertEquals(0, mSource.getByUsername("bob").size());
+        assertEquals(size / 3 + 1, mSource.getByUsername("alice").size());
+        assertTrue("getId calls: " + mSource.getIdCalls, mSource.getIdCalls < 100);
+    }
+
+    @Test
+    public void sameIdUnderDifferentUsers() {
+        Item a = new Item("alice", "x", 1);
+        Item b = new Item("bob", "x", 2);
+        mSource.add(a);
+        mSource.add(b);
+        assertEquals(2, mSource.size());
+        assertSame(b, mSource.getByUsernameId("bob", "x"));
+        mSource.deleteByUsernameId("alice", "x");
+        assertEquals(0, mSource.getIndexById("x"));
+        assertSame(b, mSource.getById("x"));
+        assertNull(mSource.getByUsernameId("alice", "x"));
+    }
+
+    private void assertAgrees(List<Item> model) {
+        assertEquals(model.size(), mSource.size());
+        for (int i = 0; i < model.size(); i++) {
+            Item item = model.get(i);
+            assertSame(item, mSource.get(i));
+            assertEquals(i, mSource.getIndexByUsernameId(item.user, item.id));
+        }
+        for (String user : USERS) {
+            List<Item> expected = new ArrayList<Item>();
+            for (Item item : model) {
+                if (equals(user, item.user))
+                    expected.add(item);
+            }
+            assertEquals(expected, mSource.getByUsername(user));
+        }
+    }
+
+    private static int linearIndexOf(List<Item> items, String user, String id) {
+        for (int i = 0; i < items.size(); i++) {
+            if (equals(items.get(i).user, user) && items.get(i).id.equals(id))
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    static final class Item {
+        final String user;
+        final String id;
+        final int value;
+
+        Item(String user, String id, int value) {
+            this.user = user;
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return user + "/" + id + "=" + value;
+        }
+    }
+
+    static final class Source extends XBaseAdapterIdUsernameDataSource<Item> {
+        int getIdCalls;// getId()被调用的次数
+
+        @Override
+        public String getId(Item item) {
+            getIdCalls++;
+            return item.id;
+        }
+
+        @Override
+        public String getUsername(Item item) {
+            return item.user;
+        }
+
+        @Override
+        public String getSourceName() {
+            return "test";
+        }
+    }
+}
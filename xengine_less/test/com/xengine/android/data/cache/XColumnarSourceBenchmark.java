@@ -0,0 +1,197 @@
+package com.xengine.android.data.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 按列存储和按行存储的数据源的内存和排序耗时基准(不是单元测试，直接运行main())。
+ * 生成count条商品数据，分别放入XBaseAdapterDataSource(每行一个对象)和XBaseColumnarDataSource，统计：
+ * 1.heap：数据源占用的堆内存(生成数据前和建好数据源后GC后的差值，只有数据源引用的对象还在);
+ * 2.sort：按销量排序的耗时，按行是Collections.sort()，按列分别是sortBy()和sort(Comparator);
+ * 3.get：按顺序get()所有数据的耗时(按列存储时需要还原对象)。
+ * 用法：java com.xengine.android.data.cache.XColumnarSourceBenchmark [count...]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多;
+ * heap只是估算，和JVM的对象布局有关
+ */
+public class XColumnarSourceBenchmark {
+
+    private static final int[] DEFAULT_COUNTS = {10000, 100000, 500000};
+    private static final int CATEGORIES = 50;// 不同分类的个数(字符串列的重复值)
+    private static final int WARM_UP = 2;// 预热的轮数
+
+    private static final Comparator<Product> BY_SALES = new Comparator<Product>() {
+        @Override
+        public int compare(Product lhs, Product rhs) {
+            return lhs.sales < rhs.sales ? -1 : (lhs.sales == rhs.sales ? 0 : 1);
+        }
+    };
+
+    private static Object sKeep;// 测内存时保持数据源可达
+    private static volatile long sSink;// 防止读取被优化掉
+
+    public static void main(String[] args) {
+        int[] counts = DEFAULT_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+        for (int count : counts) {
+            System.out.printf("%7d items  heap  row %8.2f MB  columnar %8.2f MB%n",
+                    count, heapOf(count, false) / 1048576.0, heapOf(count, true) / 1048576.0);
+        }
+        for (int round = 0; round <= WARM_UP; round++) {
+            boolean report = round == WARM_UP;
+            for (int count : counts)
+                runTimes(count, report);
+        }
+    }
+
+    /**
+     * @return 返回数据源占用的堆内存(字节)
+     */
+    private static long heapOf(int count, boolean columnar) {
+        long before = usedMemory();
+        List<Product> products = products(count);
+        if (columnar) {
+            ProductColumns source = new ProductColumns();
+            source.addAll(products);
+            sKeep = source;
+        } else {
+            ProductRows source = new ProductRows();
+            source.addAll(products);
+            sKeep = source;
+        }
+        products = null;// 按列存储时原始对象在这之后可以回收
+        long after = usedMemory();
+        sKeep = null;
+        return after - before;
+    }
+
+    private static void runTimes(int count, boolean report) {
+        List<Product> products = products(count);
+        ProductRows rows = new ProductRows();
+        rows.addAll(products);
+        ProductColumns columns = new ProductColumns();
+        columns.addAll(products);
+        ProductColumns columns2 = new ProductColumns();
+        columns2.addAll(products);
+        products = null;
+
+        long begin = System.nanoTime();
+        rows.sort(BY_SALES);
+        long rowSort = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        columns.sortBy(columns.mSales, true);
+        long columnSortBy = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        columns2.sort(BY_SALES);
+        long columnSort = System.nanoTime() - begin;
+
+        begin = System.nanoTime();
+        long sum = 0;
+        for (int i = 0; i < rows.size(); i++)
+            sum += rows.get(i).sales;
+        long rowGet = System.nanoTime() - begin;
+        begin = System.nanoTime();
+        for (int i = 0; i < columns.size(); i++)
+            sum += columns.get(i).sales;
+        long columnGet = System.nanoTime() - begin;
+        sSink += sum;
+
+        if (report) {
+            System.out.printf("%7d items  sort  row %8.2f ms  columnar sortBy %8.2f ms  sort(Comparator) %8.2f ms%n",
+                    count, rowSort / 1e6, columnSortBy / 1e6, columnSort / 1e6);
+            System.out.printf("%7d items  get   row %8.2f ms  columnar %8.2f ms%n",
+                    count, rowGet / 1e6, columnGet / 1e6);
+        }
+    }
+
+    private static List<Product> products(int count) {
+        Random random = new Random(2015);
+        List<Product> products = new ArrayList<Product>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(new Product("p" + i, "category" + random.nextInt(CATEGORIES),
+                    random.nextInt(100000) / 100.0, random.nextInt(count),
+                    1400000000000L + random.nextInt(Integer.MAX_VALUE)));
+        }
+        return products;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static final class Product {
+        final String id;
+        final String category;
+        final double price;
+        final int sales;
+        final long updateTime;
+
+        Product(String id, String category, double price, int sales, long updateTime) {
+            this.id = id;
+            this.category = category;
+            this.price = price;
+            this.sales = sales;
+            this.updateTime = updateTime;
+        }
+    }
+
+    private static final class ProductRows extends XBaseAdapterDataSource<Product> {
+        @Override
+        public String getSourceName() {
+            return "rows";
+        }
+    }
+
+    private static final class ProductColumns extends XBaseColumnarDataSource<Product> {
+        int mId;
+        int mCategory;
+        int mPrice;
+        int mSales;
+        int mUpdateTime;
+
+        @Override
+        protected void initiateColumns() {
+            mId = addStringColumn(false);// id几乎不重复，不用字典
+            mCategory = addStringColumn();
+            mPrice = addDoubleColumn();
+            mSales = addIntColumn();
+            mUpdateTime = addLongColumn();
+        }
+
+        @Override
+        protected void writeColumns(Product item, Row row) {
+            row.setString(mId, item.id);
+            row.setString(mCategory, item.category);
+            row.setDouble(mPrice, item.price);
+            row.setInt(mSales, item.sales);
+            row.setLong(mUpdateTime, item.updateTime);
+        }
+
+        @Override
+        protected Product readColumns(Row row) {
+            return new Product(row.getString(mId), row.getString(mCategory),
+                    row.getDouble(mPrice), row.getInt(mSales), row.getLong(mUpdateTime));
+        }
+
+        @Override
+        public String getSourceName() {
+            return "columns";
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.xengine.android.data.cache;
+
+import android.database.sqlite.InMemorySQLite;
+import com.xengine.android.data.db.XSQLiteHelper;
+
+import java.util.List;
+
+/**
+ * 带数据库支持的数据源的持久化耗时基准(不是单元测试，直接运行main())。
+ * 在内存SQLite上对count行的数据源分别统计：
+ * 1.saveToDatabase()整表写入;
+ * 2.开启延迟写入后修改CHANGES条数据，flush()只写入这些变化;
+ * 3.loadFromDatabase()整表加载。
+ * 用法：java com.xengine.android.data.cache.XDBDataSourceBenchmark [count...]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多。
+ * 内存数据库没有磁盘同步的开销，设备上增量写入和整表写入的差别更大
+ */
+public class XDBDataSourceBenchmark {
+
+    private static final int[] DEFAULT_COUNTS = {1000, 10000, 100000};
+    private static final int CHANGES = 100;// 延迟写入前修改的条数
+    private static final int WARM_UP = 2;// 预热的轮数
+
+    public static void main(String[] args) {
+        int[] counts = DEFAULT_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+        for (int round = 0; round <= WARM_UP; round++) {
+            boolean report = round == WARM_UP;
+            for (int count : counts)
+                run(count, report);
+        }
+    }
+
+    private static void run(int count, boolean report) {
+        InMemorySQLite.reset();
+        XSQLiteHelper.initiate(null, "XDBDataSourceBenchmark", 1);
+        XSQLiteHelper helper = XSQLiteHelper.getInstance();
+        XTestItemSource source = new XTestItemSource();
+        source.addAll(XTestItemSource.items(count));
+        helper.createIfNotExist(source.getDatabaseTable());
+
+        InMemorySQLite.resetCounters();
+        long begin = System.nanoTime();
+        source.saveToDatabase();
+        long save = System.nanoTime() - begin;
+        long saveCommits = InMemorySQLite.getCommitCount();
+        long saveStatements = InMemorySQLite.getStatementCount();
+
+        source.setWriteBehind(true, 60 * 60 * 1000);// 只在flush()时写入
+        int step = Math.max(1, count / CHANGES);
+        for (int i = 0; i < count && i / step < CHANGES; i += step) {
+            if (i % (2 * step) == 0)
+                source.add(new XTestItemSource.Item("i" + i, "changed" + i, i));
+            else
+                source.deleteById("i" + i);
+        }
+        InMemorySQLite.resetCounters();
+        begin = System.nanoTime();
+        source.flush();
+        long flush = System.nanoTime() - begin;
+        long flushCommits = InMemorySQLite.getCommitCount();
+        long flushStatements = InMemorySQLite.getStatementCount();
+        source.setWriteBehind(false);
+
+        XTestItemSource loaded = new XTestItemSource();
+        InMemorySQLite.resetCounters();
+        begin = System.nanoTime();
+        loaded.loadFromDatabase();
+        long load = System.nanoTime() - begin;
+        List<XTestItemSource.Item> items = loaded.copyAll();
+        helper.close();
+
+        if (report) {
+            System.out.printf("%7d rows  saveToDatabase %9.2f ms  commits %d  statements %d%n",
+                    count, save / 1e6, saveCommits, saveStatements);
+            System.out.printf("%7d rows  flush %3d changes %9.2f ms  commits %d  statements %d%n",
+                    count, CHANGES, flush / 1e6, flushCommits, flushStatements);
+            System.out.printf("%7d rows  loadFromDatabase %9.2f ms  rows loaded %d  rows read %d%n",
+                    count, load / 1e6, items.size(), InMemorySQLite.getRowsRead());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.xengine.android.data.cache;
+
+import com.xengine.android.toolkit.filter.XBaseFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * XBaseFilteredAdapterIdSource边输入边搜索的耗时基准(不是单元测试，直接运行main())。
+ * 生成count条按rank排序的数据，模拟用户输入一个搜索词再逐个删除字符：
+ * 1.setFilter：每次按键都重新检查所有元素并重建过滤结果;
+ * 2.narrow/widen：输入字符时narrowFilter()，删除字符时widenFilter()，只修改结果变化的元素。
+ * 输入字符和删除字符分开统计(第一个字符两种方式相同，不统计)。
+ * 另外统计过滤器生效时逐个add()新数据的耗时(有序过滤结果中二分插入)。
+ * 用法：java com.xengine.android.data.cache.XFilteredSourceBenchmark [count...]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多
+ */
+public class XFilteredSourceBenchmark {
+
+    private static final int[] DEFAULT_COUNTS = {10000, 100000};
+    private static final int QUERIES = 20;// 模拟的搜索词个数
+    private static final int ADDS = 2000;// 过滤器生效时add()的次数
+    private static final int WARM_UP = 2;// 预热的轮数
+
+    private static final Comparator<Item> BY_RANK = new Comparator<Item>() {
+        @Override
+        public int compare(Item lhs, Item rhs) {
+            return lhs.rank < rhs.rank ? -1 : (lhs.rank == rhs.rank ? 0 : 1);
+        }
+    };
+
+    public static void main(String[] args) {
+        int[] counts = DEFAULT_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+        for (int round = 0; round <= WARM_UP; round++) {
+            boolean report = round == WARM_UP;
+            for (int count : counts)
+                run(count, report);
+        }
+    }
+
+    private static void run(int count, boolean report) {
+        Random random = new Random(2015);
+        List<Item> items = new ArrayList<Item>(count);
+        for (int i = 0; i < count; i++)
+            items.add(new Item(String.valueOf(i), randomName(random), random.nextInt(count)));
+        String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String name = items.get(random.nextInt(count)).name;
+            queries[i] = name.substring(0, Math.min(name.length(), 6));
+        }
+
+        Source full = newSource(items);
+        Source incremental = newSource(items);
+        List<Long> fullTyped = new ArrayList<Long>();// 输入字符时setFilter()的耗时
+        List<Long> fullDeleted = new ArrayList<Long>();// 删除字符时setFilter()的耗时
+        List<Long> narrowTimes = new ArrayList<Long>();
+        List<Long> widenTimes = new ArrayList<Long>();
+        for (String query : queries) {
+            // 逐个输入字符，再逐个删除
+            List<String> keys = new ArrayList<String>();
+            for (int i = 1; i <= query.length(); i++)
+                keys.add(query.substring(0, i));
+            for (int i = query.length() - 1; i >= 1; i--)
+                keys.add(query.substring(0, i));
+            String previous = null;
+            for (String key : keys) {
+                long begin = System.nanoTime();
+                full.setFilter(new Contains(key));
+                long fullTime = System.nanoTime() - begin;
+
+                begin = System.nanoTime();
+                if (previous == null) {
+                    incremental.setFilter(new Contains(key));// 第一个字符，两种方式相同
+                } else if (key.length() > previous.length()) {
+                    incremental.narrowFilter(new Contains(key));
+                    narrowTimes.add(System.nanoTime() - begin);
+                    fullTyped.add(fullTime);
+                } else {
+                    incremental.widenFilter(new Contains(key));
+                    widenTimes.add(System.nanoTime() - begin);
+                    fullDeleted.add(fullTime);
+                }
+                previous = key;
+
+                if (full.size() != incremental.size())
+                    throw new IllegalStateException("results differ for " + key);
+            }
+        }
+
+        incremental.setFilter(new Contains("a"));
+        long begin = System.nanoTime();
+        for (int i = 0; i < ADDS; i++)
+            incremental.add(new Item("new" + i, randomName(random), random.nextInt(count)));
+        long adds = System.nanoTime() - begin;
+
+        if (report) {
+            print(count, "type setFilter", fullTyped);
+            print(count, "type narrow", narrowTimes);
+            print(count, "del setFilter", fullDeleted);
+            print(count, "del widen", widenTimes);
+            System.out.printf("%7d items  %-14s %9.2f us/add%n", count, "add(filtered)",
+                    adds / 1e3 / ADDS);
+        }
+    }
+
+    private static void print(int count, String name, List<Long> times) {
+        long[] sorted = new long[times.size()];
+        for (int i = 0; i < sorted.length; i++)
+            sorted[i] = times.get(i);
+        Arrays.sort(sorted);
+        System.out.printf("%7d items  %-14s median %8.3f ms  p99 %8.3f ms  max %8.3f ms per key%n",
+                count, name, sorted[sorted.length / 2] / 1e6,
+                sorted[sorted.length * 99 / 100] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static Source newSource(List<Item> items) {
+        Source source = new Source();
+        source.setAutoNotifyListeners(false);
+        source.addAll(items);
+        source.sort(BY_RANK);
+        source.sortOrigin(BY_RANK);
+        return source;
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        int length = 6 + random.nextInt(10);
+        for (int i = 0; i < length; i++)
+            name.append((char) ('a' + random.nextInt(8)));// 字母少一些，短搜索词能匹配到很多数据
+        return name.toString();
+    }
+
+    private static final class Item {
+        final String id;
+        final String name;
+        final int rank;
+
+        Item(String id, String name, int rank) {
+            this.id = id;
+            this.name = name;
+            this.rank = rank;
+        }
+    }
+
+    private static final class Contains extends XBaseFilter<Item> {
+        private final String mKey;
+
+        Contains(String key) {
+            mKey = key;
+        }
+
+        @Override
+        public Item doFilter(Item source) {
+            return source.name.contains(mKey) ? source : null;
+        }
+    }
+
+    private static final class Source extends XBaseFilteredAdapterIdSource<Item> {
+        @Override
+        public String getId(Item item) {
+            return item.id;
+        }
+
+        @Override
+        public String getSourceName() {
+            return "benchmark";
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.xengine.android.data.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * XListDiff的测试：把计算出的操作依次作用到旧列表上，结果应与新列表一致。
+ */
+public class XListDiffTest {
+
+    @Test
+    public void identicalListsProduceNoOps() {
+        String[] ids = {"a", "b", "c"};
+        XDataChangeSet changes = diff(ids, ids, null);
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void insertAndRemoveAreMinimal() {
+        XDataChangeSet changes = diff(new String[] {"a", "b", "c", "d"},
+                new String[] {"a", "x", "b", "d"}, null);
+        assertEquals(2, changes.getOpCount());
+        assertEquals(XDataChangeSet.TYPE_INSERT, changes.getType(0));
+        assertEquals(1, changes.getPosition(0));
+        assertEquals(XDataChangeSet.TYPE_REMOVE, changes.getType(1));
+        assertEquals(3, changes.getPosition(1));
+    }
+
+    @Test
+    public void contentChangeIsReportedInPlace() {
+        Map<String, String> changed = new HashMap<String, String>();
+        changed.put("b", "b2");
+        XDataChangeSet changes = diff(new String[] {"a", "b", "c"},
+                new String[] {"a", "b", "c"}, changed);
+        assertEquals(1, changes.getOpCount());
+        assertEquals(XDataChangeSet.TYPE_CHANGE, changes.getType(0));
+        assertEquals(1, changes.getPosition(0));
+        assertEquals(1, changes.getItemCount(0));
+    }
+
+    @Test
+    public void randomEditsReplayToNewList() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> oldList = new ArrayList<String>();
+            int size = random.nextInt(60);
+            for (int i = 0; i < size; i++)
+                oldList.add("o" + i);
+            List<String> newList = new ArrayList<String>(oldList);
+            int edits = random.nextInt(10);
+            for (int i = 0; i < edits; i++) {
+                if (!newList.isEmpty() && random.nextBoolean())
+                    newList.remove(random.nextInt(newList.size()));
+                else
+                    newList.add(random.nextInt(newList.size() + 1), "n" + round + "_" + i);
+            }
+            Map<String, String> changed = new HashMap<String, String>();
+            for (String id : newList) {
+                if (random.nextInt(8) == 0)
+                    changed.put(id, id + "'");
+            }
+            String[] oldIds = oldList.toArray(new String[oldList.size()]);
+            String[] newIds = newList.toArray(new String[newList.size()]);
+            XDataChangeSet changes = diff(oldIds, newIds, changed);
+            assertFalse(changes.isReset());
+            assertReplays(oldIds, newIds, changed, changes);
+        }
+    }
+
+    @Test
+    public void tooManyEditsGiveUp() {
+        int size = XListDiff.MAX_EDIT_DISTANCE + 1;
+        String[] oldIds = new String[size];
+        String[] newIds = new String[size];
+        for (int i = 0; i < size; i++) {
+            oldIds[i] = "o" + i;
+            newIds[i] = "n" + i;
+        }
+        assertFalse(XListDiff.diff(oldIds, newIds, sameContent(oldIds, newIds, null),
+                new XDataChangeSet.Builder()));
+    }
+
+    @Test
+    public void movesReplayToNewOrder() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            int size = 1 + random.nextInt(100);
+            List<Integer> order = new ArrayList<Integer>();
+            for (int i = 0; i < size; i++)
+                order.add(i);
+            int moves = random.nextInt(5);
+            for (int i = 0; i < moves; i++)
+                order.add(random.nextInt(size), order.remove(random.nextInt(size)));
+            int[] oldPositions = new int[size];
+            for (int i = 0; i < size; i++)
+                oldPositions[i] = order.get(i);
+
+            XDataChangeSet.Builder builder = new XDataChangeSet.Builder();
+            assertTrue(XListDiff.moves(oldPositions, builder));
+            XDataChangeSet changes = builder.build(0, 1);
+            assertTrue(changes.getOpCount() <= moves);
+
+            List<Integer> current = new ArrayList<Integer>();
+            for (int i = 0; i < size; i++)
+                current.add(i);
+            for (int i = 0; i < changes.getOpCount(); i++) {
+                assertEquals(XDataChangeSet.TYPE_MOVE, changes.getType(i));
+                Integer item = current.remove(changes.getPosition(i));
+                current.add(changes.getToPosition(i), item);
+            }
+            assertEquals(order, current);
+        }
+    }
+
+    @Test
+    public void tooManyMovesGiveUp() {
+        int size = 4 * XListDiff.MAX_MOVES;
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++)
+            order.add(i);
+        Collections.shuffle(order, new Random(1));
+        int[] oldPositions = new int[size];
+        for (int i = 0; i < size; i++)
+            oldPositions[i] = order.get(i);
+        assertFalse(XListDiff.moves(oldPositions, new XDataChangeSet.Builder()));
+    }
+
+    /**
+     * @param changed 内容有变化的数据(新列表中的id -> 新内容)，可为null
+     */
+    private static XDataChangeSet diff(String[] oldIds, String[] newIds,
+                                       Map<String, String> changed) {
+        XDataChangeSet.Builder builder = new XDataChangeSet.Builder();
+        assertTrue(XListDiff.diff(oldIds, newIds, sameContent(oldIds, newIds, changed), builder));
+        return builder.build(0, 1);
+    }
+
+    private static XListDiff.ContentComparator sameContent(final String[] oldIds,
+                                                           final String[] newIds,
+                                                           final Map<String, String> changed) {
+        return new XListDiff.ContentComparator() {
+            @Override
+            public boolean isSameContent(int oldPosition, int newPosition) {
+                assertEquals(oldIds[oldPosition], newIds[newPosition]);
+                return changed == null || !changed.containsKey(newIds[newPosition]);
+            }
+        };
+    }
+
+    /**
+     * 把操作作用到旧列表上：插入的位置放null，变化的位置打上标记，
+     * 最后非null的数据应与新列表一一对应，且恰好是内容变化的数据被标记。
+     */
+    private static void assertReplays(String[] oldIds, String[] newIds,
+                                      Map<String, String> changed, XDataChangeSet changes) {
+        List<String> current = new ArrayList<String>();
+        List<Boolean> marked = new ArrayList<Boolean>();
+        for (String id : oldIds) {
+            current.add(id);
+            marked.add(false);
+        }
+        for (int i = 0; i < changes.getOpCount(); i++) {
+            int position = changes.getPosition(i);
+            int count = changes.getItemCount(i);
+            switch (changes.getType(i)) {
+                case XDataChangeSet.TYPE_INSERT:
+                    for (int j = 0; j < count; j++) {
+                        current.add(position, null);
+                        marked.add(position, false);
+                    }
+                    break;
+                case XDataChangeSet.TYPE_REMOVE:
+                    for (int j = 0; j < count; j++) {
+                        current.remove(position);
+                        marked.remove(position);
+                    }
+                    break;
+                case XDataChangeSet.TYPE_CHANGE:
+                    for (int j = 0; j < count; j++)
+                        marked.set(position + j, true);
+                    break;
+                default:
+                    throw new AssertionError("unexpected op " + changes.getType(i));
+            }
+        }
+        assertEquals(newIds.length, current.size());
+        for (int i = 0; i < newIds.length; i++) {
+            String id = current.get(i);
+            if (id == null) {
+                assertFalse("inserted item should not be marked", marked.get(i));
+                continue;
+            }
+            assertEquals(newIds[i], id);
+            assertEquals(changed.containsKey(id), marked.get(i));
+        }
+        int inserted = 0;
+        for (String id : current) {
+            if (id == null)
+                inserted++;
+        }
+        int added = 0;
+        for (String id : newIds) {
+            if (!contains(oldIds, id))
+                added++;
+        }
+        assertEquals(added, inserted);
+    }
+
+    private static boolean contains(String[] ids, String id) {
+        for (String other : ids) {
+            if (other.equals(id))
+                return true;
+        }
+        return false;
+    }
+}
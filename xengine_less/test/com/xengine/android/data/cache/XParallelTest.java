@@ -0,0 +1,200 @@
+package com.xengine.android.data.cache;
+
+import com.xengine.android.toolkit.filter.XBulkFilter;
+import com.xengine.android.toolkit.filter.XFilter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * XParallel的测试：并行排序/过滤的结果必须与顺序执行一致。
+ */
+public class XParallelTest {
+
+    private static final Comparator<int[]> BY_KEY = new Comparator<int[]>() {
+        @Override
+        public int compare(int[] a, int[] b) {
+            return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+        }
+    };
+
+    private static final XFilter<Integer> EVEN = new XFilter<Integer>() {
+        @Override
+        public Integer doFilter(Integer source) {
+            return source % 2 == 0 ? source : null;
+        }
+
+        @Override
+        public List<Integer> doFilter(List<Integer> source) {
+            List<Integer> result = new ArrayList<Integer>();
+            for (Integer item : source) {
+                if (doFilter(item) != null)
+                    result.add(item);
+            }
+            return result;
+        }
+    };
+
+    @Test
+    public void parallelSortIsStableAndMatchesCollectionsSort() {
+        for (int size : new int[] {0, 1, 2, 3, 17, 1000, 20001}) {
+            List<int[]> items = randomItems(size, size / 4 + 1);
+            List<int[]> expected = new ArrayList<int[]>(items);
+            Collections.sort(expected, BY_KEY);
+
+            Object[] array = items.toArray();
+            XParallel.sort(array, BY_KEY, 2, null);
+            assertEquals(expected.size(), array.length);
+            for (int i = 0; i < array.length; i++)
+                assertSame("size=" + size + " index=" + i, expected.get(i), array[i]);
+        }
+    }
+
+    @Test
+    public void belowThresholdSortsSequentially() {
+        List<int[]> items = randomItems(500, 50);
+        List<int[]> expected = new ArrayList<int[]>(items);
+        Collections.sort(expected, BY_KEY);
+
+        Object[] array = items.toArray();
+        XParallel.sort(array, BY_KEY, XParallel.DEFAULT_THRESHOLD, null);
+        for (int i = 0; i < array.length; i++)
+            assertSame(expected.get(i), array[i]);
+    }
+
+    @Test
+    public void parallelFilterKeepsPositions() {
+        List<Integer> items = new ArrayList<Integer>();
+        for (int i = 0; i < 10007; i++)
+            items.add(i);
+        Object[] out = new Object[items.size()];
+        XParallel.filter(items, EVEN, out, 2, null);
+        for (int i = 0; i < out.length; i++) {
+            if (i % 2 == 0)
+                assertEquals(i, out[i]);
+            else
+                assertNull(out[i]);
+        }
+    }
+
+    @Test
+    public void nullFilterPassesEverything() {
+        List<Integer> items = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++)
+            items.add(i);
+        Object[] out = new Object[items.size()];
+        XParallel.filter(items, null, out, 2, null);
+        for (int i = 0; i < out.length; i++)
+            assertEquals(i, out[i]);
+    }
+
+    @Test
+    public void bulkFilterIsUsedPerChunk() {
+        final AtomicInteger bulkCalls = new AtomicInteger();
+        XBulkFilter<Integer> filter = new XBulkFilter<Integer>() {
+            @Override
+            public int doFilter(List<Integer> source, List<Integer> out) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int doFilter(List<Integer> source, BitSet out) {
+                bulkCalls.incrementAndGet();
+                int count = 0;
+                for (int i = 0; i < source.size(); i++) {
+                    if (source.get(i) % 3 == 0) {
+                        out.set(i);
+                        count++;
+                    }
+                }
+                return count;
+            }
+
+            @Override
+            public List<Integer> doFilter(List<Integer> source) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Integer doFilter(Integer source) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        List<Integer> items = new ArrayList<Integer>();
+        for (int i = 0; i < 999; i++)
+            items.add(i);
+        Object[] out = new Object[items.size()];
+        XParallel.filter(items, filter, out, 2, null);
+        assertTrue(bulkCalls.get() >= 1);
+        for (int i = 0; i < out.length; i++)
+            assertEquals(i % 3 == 0 ? Integer.valueOf(i) : null, out[i]);
+    }
+
+    @Test
+    public void newerRequestCancelsOlderOne() {
+        AtomicInteger counter = new AtomicInteger();
+        XParallel.Request first = XParallel.Request.next(counter);
+        assertFalse(first.isCancelled());
+        XParallel.Request second = XParallel.Request.next(counter);
+        assertTrue(first.isCancelled());
+        assertFalse(second.isCancelled());
+
+        Object[] array = randomItems(50000, 1000).toArray();
+        try {
+            XParallel.sort(array, BY_KEY, 2, first);
+            fail("cancelled sort should throw");
+        } catch (CancellationException e) {
+            // 预期
+        }
+        List<Integer> items = new ArrayList<Integer>();
+        for (int i = 0; i < 50000; i++)
+            items.add(i);
+        try {
+            XParallel.filter(items, EVEN, new Object[items.size()], 2, first);
+            fail("cancelled filter should throw");
+        } catch (CancellationException e) {
+            // 预期
+        }
+    }
+
+    @Test
+    public void comparatorExceptionIsRethrown() {
+        Comparator<int[]> failing = new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                throw new IllegalStateException("expected by test");
+            }
+        };
+        try {
+            XParallel.sort(randomItems(1000, 10).toArray(), failing, 2, null);
+            fail("comparator exception should propagate");
+        } catch (IllegalStateException e) {
+            assertEquals("expected by test", e.getMessage());
+        }
+    }
+
+    /**
+     * 生成随机数据：[0]为排序的键(有大量重复)，[1]为原始坐标(用于检查稳定性)。
+     */
+    private static List<int[]> randomItems(int size, int keyRange) {
+        Random random = new Random(size);
+        List<int[]> items = new ArrayList<int[]>(size);
+        for (int i = 0; i < size; i++)
+            items.add(new int[] {random.nextInt(keyRange), i});
+        return items;
+    }
+}
@@ -0,0 +1,109 @@
+package com.xengine.android.data.cache;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import com.xengine.android.data.db.XBaseDBTable;
+import com.xengine.android.data.db.XSQLiteConstraint;
+import com.xengine.android.data.db.XSQLiteDataType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试用的带数据库支持的数据源，数据表：id(唯一索引)、name(NOT NULL)、value。
+ */
+class XTestItemSource extends XBaseAdapterIdDBDataSource<XTestItemSource.Item> {
+
+    static final String ID = "id";
+    static final String NAME = "name";
+    static final String VALUE = "value";
+
+    static final class Item {
+        final String id;
+        final String name;
+        final long value;
+
+        Item(String id, String name, long value) {
+            this.id = id;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    static class Table extends XBaseDBTable<Item> {
+        private final String mName;
+
+        Table(String name) {
+            mName = name;
+            addIndex(name + "_id", new String[] {ID}, true);
+        }
+
+        @Override
+        public void initiateColumns() {
+            addColumn(ID, XSQLiteDataType.TEXT, XSQLiteConstraint.NOT_NULL);
+            addColumn(NAME, XSQLiteDataType.TEXT, XSQLiteConstraint.NOT_NULL);
+            addColumn(VALUE, XSQLiteDataType.INTEGER, null);
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public ContentValues getContentValues(Item instance) {
+            ContentValues values = new ContentValues();
+            values.put(ID, instance.id);
+            values.put(NAME, instance.name);
+            values.put(VALUE, instance.value);
+            return values;
+        }
+
+        @Override
+        public Item getFilledInstance(Cursor cursor) {
+            return new Item(cursor.getString(cursor.getColumnIndex(ID)),
+                    cursor.getString(cursor.getColumnIndex(NAME)),
+                    cursor.getLong(cursor.getColumnIndex(VALUE)));
+        }
+    }
+
+    private final Table mTable;
+
+    XTestItemSource() {
+        this(new Table("item"));
+    }
+
+    XTestItemSource(Table table) {
+        mTable = table;
+    }
+
+    @Override
+    public String getId(Item item) {
+        return item.id;
+    }
+
+    @Override
+    public String getSourceName() {
+        return mTable.getName();
+    }
+
+    @Override
+    public Table getDatabaseTable() {
+        return mTable;
+    }
+
+    @Override
+    protected String getIdColumn() {
+        return ID;
+    }
+
+    /**
+     * 生成id为"i0".."i(n-1)"、value为0..n-1的数据。
+     */
+    static List<Item> items(int n) {
+        List<Item> items = new ArrayList<Item>(n);
+        for (int i = 0; i < n; i++)
+            items.add(new Item("i" + i, "name" + i, i));
+        return items;
+    }
+}
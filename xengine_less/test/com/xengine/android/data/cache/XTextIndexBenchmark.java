@@ -0,0 +1,91 @@
+package com.xengine.android.data.cache;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * XTextIndex的查询耗时基准(不是单元测试，直接运行main())。
+ * 生成count条数据(默认200000)，每条3~8个词，词频近似Zipf分布；
+ * 按查询类型分别统计每次查询的耗时中位数、p99和最大值。
+ * 用法：java com.xengine.android.data.cache.XTextIndexBenchmark [count]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多
+ */
+public class XTextIndexBenchmark {
+
+    private static final int VOCABULARY = 20000;// 词表大小
+    private static final int QUERIES = 300;// 每种查询的次数
+    private static final int WARM_UP = 3;// 预热的轮数
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Random random = new Random(2015);
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < words.length; i++)
+            words[i] = randomWord(random);
+
+        XTextIndex<String> index = new XTextIndex<String>(new XTextIndex.TextFields<String>() {
+            @Override
+            public String[] getTexts(String item) {
+                return new String[] {item};
+            }
+        });
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = 3 + random.nextInt(6);
+            for (int j = 0; j < length; j++)
+                text.append(words[zipf(random)]).append(' ');
+            texts[i] = text.toString();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++)
+            index.put(String.valueOf(i), texts[i]);
+        System.out.printf("indexed %d items in %d ms%n", count, (System.nanoTime() - start) / 1000000);
+
+        String[][] queries = new String[5][QUERIES];
+        String[] names = {"rare word", "common word", "word prefix", "two words", "one letter"};
+        for (int i = 0; i < QUERIES; i++) {
+            queries[0][i] = words[VOCABULARY / 2 + random.nextInt(VOCABULARY / 2)];
+            queries[1][i] = words[random.nextInt(20)];
+            String word = words[zipf(random)];
+            queries[2][i] = word.substring(0, Math.min(word.length(), 3));
+            String[] item = texts[random.nextInt(count)].split(" ");
+            queries[3][i] = item[0] + " " + item[item.length - 1];// 同一条数据中的两个词
+            queries[4][i] = String.valueOf((char) ('a' + random.nextInt(26)));
+        }
+        for (int round = 0; round <= WARM_UP; round++) {
+            boolean report = round == WARM_UP;
+            for (int type = 0; type < queries.length; type++) {
+                long[] times = new long[QUERIES];
+                long hits = 0;
+                for (int i = 0; i < QUERIES; i++) {
+                    long begin = System.nanoTime();
+                    hits += index.search(queries[type][i]).size();
+                    times[i] = System.nanoTime() - begin;
+                }
+                if (report) {
+                    Arrays.sort(times);
+                    System.out.printf("%-14s avg hits %7d  median %7.3f ms  p99 %7.3f ms  max %7.3f ms%n",
+                            names[type], hits / QUERIES, times[QUERIES / 2] / 1e6,
+                            times[QUERIES * 99 / 100] / 1e6, times[QUERIES - 1] / 1e6);
+                }
+            }
+        }
+    }
+
+    /**
+     * 近似Zipf分布的词序号：序号越小越常见。
+     */
+    private static int zipf(Random random) {
+        double value = Math.pow(VOCABULARY, random.nextDouble()) - 1;
+        return Math.min(VOCABULARY - 1, (int) value);
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        int length = 3 + random.nextInt(6);
+        for (int i = 0; i < length; i++)
+            word.append((char) ('a' + random.nextInt(26)));
+        return word.toString();
+    }
+}
@@ -0,0 +1,182 @@
+package com.xengine.android.data.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * XTextIndex的测试。
+ */
+public class XTextIndexTest {
+
+    private static final XTextIndex.TextFields<String[]> FIELDS = new XTextIndex.TextFields<String[]>() {
+        @Override
+        public String[] getTexts(String[] item) {
+            return item;
+        }
+    };
+
+    private XTextIndex<String[]> mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new XTextIndex<String[]>(FIELDS);
+    }
+
+    @Test
+    public void tokenizesWordsAndIdeographs() {
+        assertEquals(Arrays.asList("hello", "world", "42"), XTextIndex.tokenize("Hello, World 42!"));
+        assertEquals(Arrays.asList("中", "中国", "国", "abc"), XTextIndex.tokenize("中国abc"));
+        assertTrue(XTextIndex.tokenize(null).isEmpty());
+        assertTrue(XTextIndex.tokenize(" ,. ").isEmpty());
+    }
+
+    @Test
+    public void allQueryTokensMustMatchByPrefix() {
+        mIndex.put("1", new String[] {"Hello world"});
+        mIndex.put("2", new String[] {"hello there"});
+        mIndex.put("3", new String[] {"goodbye", "world"});
+
+        assertEquals(set("1", "2"), set(mIndex.search("hel")));
+        assertEquals(set("1", "3"), set(mIndex.search("WORLD")));
+        assertEquals(set("1"), set(mIndex.search("hello wor")));
+        assertTrue(mIndex.search("ell").isEmpty());// 只按前缀匹配
+        assertTrue(mIndex.search("hello missing").isEmpty());
+        assertTrue(mIndex.search("  ").isEmpty());
+    }
+
+    @Test
+    public void matchesCjkText() {
+        mIndex.put("1", new String[] {"中华人民共和国"});
+        mIndex.put("2", new String[] {"人民日报"});
+        assertEquals(set("1", "2"), set(mIndex.search("人民")));
+        assertEquals(set("1"), set(mIndex.search("共和")));
+        assertTrue(mIndex.search("日本").isEmpty());
+    }
+
+    @Test
+    public void ranksExactAndRareMatchesFirst() {
+        mIndex.put("prefix", new String[] {"cats"});
+        mIndex.put("exact", new String[] {"cat"});
+        mIndex.put("twice", new String[] {"cat cat"});
+        assertEquals(Arrays.asList("twice", "exact", "prefix"), mIndex.search("cat"));
+
+        // 前缀匹配到的词越少见，得分越高
+        XTextIndex<String[]> index = new XTextIndex<String[]>(FIELDS);
+        for (int i = 0; i < 10; i++)
+            index.put("common" + i, new String[] {"bar"});
+        index.put("rare", new String[] {"banana"});
+        List<String> result = index.search("ba");
+        assertEquals(11, result.size());
+        assertEquals("rare", result.get(0));
+    }
+
+    @Test
+    public void sameScoreKeepsIndexOrder() {
+        for (int i = 0; i < 5; i++)
+            mIndex.put("" + i, new String[] {"same text"});
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4"), mIndex.search("same"));
+    }
+
+    @Test
+    public void putReplacesAndRemoveDeletes() {
+        mIndex.put("1", new String[] {"alpha"});
+        mIndex.put("1", new String[] {"beta"});
+        assertTrue(mIndex.search("alpha").isEmpty());
+        assertEquals(Arrays.asList("1"), mIndex.search("beta"));
+        assertEquals(1, mIndex.size());
+
+        mIndex.remove("1");
+        assertTrue(mIndex.search("beta").isEmpty());
+        assertEquals(0, mIndex.size());
+    }
+
+    @Test
+    public void compactionKeepsResults() {
+        int count = 3000;
+        for (int i = 0; i < count; i++)
+            mIndex.put("" + i, new String[] {"item" + i, i % 2 == 0 ? "even" : "odd"});
+        for (int i = 0; i < count; i += 2) {
+            if (i % 3 != 0)
+                mIndex.remove("" + i);// 删除的足够多，触发压缩
+        }
+        List<String> even = mIndex.search("even");
+        for (String id : even)
+            assertEquals(0, Integer.parseInt(id) % 6);
+        assertEquals(count / 6, even.size());
+        assertEquals(count / 2, mIndex.search("odd").size());
+        assertEquals(Arrays.asList("3"), mIndex.search("item3 odd").subList(0, 1));
+    }
+
+    @Test
+    public void searchAgreesWithMatches() {
+        Random random = new Random(3);
+        String[] words = new String[200];
+        for (int i = 0; i < words.length; i++)
+            words[i] = randomWord(random);
+        List<String[]> items = new ArrayList<String[]>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 1 + random.nextInt(6); j++)
+                text.append(words[random.nextInt(words.length)]).append(' ');
+            String[] item = {text.toString()};
+            items.add(item);
+            mIndex.put("" + i, item);
+        }
+        for (int i = 0; i < 2000; i += 7)
+            mIndex.remove("" + i);
+
+        for (int q = 0; q < 200; q++) {
+            StringBuilder query = new StringBuilder();
+            for (int j = 0; j < 1 + random.nextInt(3); j++) {
+                String word = words[random.nextInt(words.length)];
+                query.append(word.substring(0, 1 + random.nextInt(word.length()))).append(' ');
+            }
+            HashSet<String> expected = new HashSet<String>();
+            for (int i = 0; i < items.size(); i++) {
+                if (i % 7 != 0 && mIndex.matches(items.get(i), query.toString()))
+                    expected.add("" + i);
+            }
+            List<String> result = mIndex.search(query.toString());
+            assertEquals(query.toString(), expected, set(result));
+            assertEquals("no duplicates", result.size(), expected.size());
+        }
+    }
+
+    @Test
+    public void filterAgreesWithMatches() {
+        String[] item = {"Quick brown fox"};
+        assertTrue(mIndex.matches(item, "qui fox"));
+        assertFalse(mIndex.matches(item, "qui dog"));
+        assertTrue(mIndex.matches(item, ""));
+        assertSame(item, mIndex.newFilter("brown").doFilter(item));
+        assertNull(mIndex.newFilter("red").doFilter(item));
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        int length = 2 + random.nextInt(5);
+        for (int i = 0; i < length; i++)
+            word.append((char) ('a' + random.nextInt(6)));
+        return word.toString();
+    }
+
+    private static HashSet<String> set(String... ids) {
+        return new HashSet<String>(Arrays.asList(ids));
+    }
+
+    private static HashSet<String> set(List<String> ids) {
+        return new HashSet<String>(ids);
+    }
+}
@@ -0,0 +1,177 @@
+package com.xengine.android.data.db;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * XQueryCache的测试(不需要数据库，直接模拟XSQLiteHelper的调用顺序)。
+ */
+public class XQueryCacheTest {
+
+    private static final String[] USERS = {"user"};
+    private static final String[] ORDERS = {"orders"};
+    private static final String[] JOINED = {"user", "orders"};
+
+    private XQueryCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new XQueryCache();
+    }
+
+    @Test
+    public void cachesResultByStatementAndArgs() {
+        XQueryCache.Key key = key("SELECT * FROM user WHERE id = ?", "1");
+        assertNull(mCache.get(key));
+        List<String> result = rows(3);
+        query(key, USERS, result);
+
+        assertSame(result, mCache.get(key("SELECT * FROM user WHERE id = ?", "1")));
+        assertNull(mCache.get(key("SELECT * FROM user WHERE id = ?", "2")));
+        assertNull(mCache.get(key("SELECT * FROM user WHERE id = ? ", "1")));
+
+        XQueryCache.Stats stats = mCache.getStats();
+        assertEquals(1, stats.hitCount);
+        assertEquals(3, stats.missCount);
+        assertEquals(1, stats.putCount);
+        assertEquals(1, stats.entryCount);
+        assertEquals(0.25f, stats.getHitRate(), 0.0001f);
+    }
+
+    @Test
+    public void writeInvalidatesOnlyReadersOfThatTable() {
+        XQueryCache.Key users = key("SELECT * FROM user");
+        XQueryCache.Key orders = key("SELECT * FROM orders");
+        XQueryCache.Key joined = key("SELECT * FROM user JOIN orders");
+        query(users, USERS, rows(1));
+        query(orders, ORDERS, rows(1));
+        query(joined, JOINED, rows(1));
+
+        mCache.beginWrite("orders");
+        mCache.endWrite("orders");
+        assertNotNull(mCache.get(users));
+        assertNull(mCache.get(orders));
+        assertNull(mCache.get(joined));
+        assertEquals(2, mCache.getStats().invalidationCount);
+    }
+
+    @Test
+    public void resultsAreNotCachedWhileTableIsBeingWritten() {
+        XQueryCache.Key key = key("SELECT * FROM user");
+        mCache.beginWrite("user");
+        assertEquals(-1, mCache.stamp(USERS));
+        query(key, USERS, rows(1));
+        assertNull(mCache.get(key));
+
+        mCache.endWrite("user");
+        query(key, USERS, rows(1));
+        assertNotNull(mCache.get(key));
+    }
+
+    @Test
+    public void resultsReadAcrossAWriteAreDropped() {
+        XQueryCache.Key key = key("SELECT * FROM user");
+        long stamp = mCache.stamp(USERS);
+        // 查询期间有写入完成
+        mCache.beginWrite("user");
+        mCache.endWrite("user");
+        mCache.put(key, USERS, stamp, rows(1));
+        assertNull(mCache.get(key));
+        assertEquals(0, mCache.getStats().putCount);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() {
+        XQueryCache.Key a = key("a");
+        XQueryCache.Key b = key("b");
+        XQueryCache.Key c = key("c");
+        // 每个结果约 64 + 2 + 10 * 256 字节，上限能放下两个
+        mCache.setBudget(2 * (64 + 2 + 10 * XQueryCache.DEFAULT_ROW_SIZE));
+        query(a, USERS, rows(10));
+        query(b, USERS, rows(10));
+        assertNotNull(mCache.get(a));// a变成最近使用的
+        query(c, USERS, rows(10));
+
+        assertNotNull(mCache.get(a));
+        assertNull(mCache.get(b));
+        assertNotNull(mCache.get(c));
+        assertEquals(1, mCache.getStats().evictionCount);
+        assertTrue(mCache.getStats().size <= mCache.getBudget());
+    }
+
+    @Test
+    public void resultLargerThanBudgetIsNotCached() {
+        mCache.setBudget(1000);
+        XQueryCache.Key key = key("SELECT * FROM user");
+        query(key, USERS, rows(100));
+        assertNull(mCache.get(key));
+        assertEquals(0, mCache.getStats().size);
+    }
+
+    @Test
+    public void zeroBudgetDisablesAndClearKeepsStats() {
+        XQueryCache.Key key = key("SELECT * FROM user");
+        query(key, USERS, rows(1));
+        mCache.get(key);
+        mCache.setBudget(0);
+        assertNull(mCache.get(key));
+        query(key, USERS, rows(1));
+        assertNull(mCache.get(key));
+
+        mCache.setBudget(XQueryCache.DEFAULT_BUDGET);
+        query(key, USERS, rows(1));
+        mCache.clear();
+        assertNull(mCache.get(key));
+        XQueryCache.Stats stats = mCache.getStats();
+        assertEquals(0, stats.entryCount);
+        assertEquals(0, stats.size);
+        assertEquals(1, stats.hitCount);
+
+        mCache.resetStats();
+        assertEquals(0, mCache.getStats().hitCount);
+    }
+
+    @Test
+    public void resultWithoutTablesIsNotCached() {
+        XQueryCache.Key key = key("SELECT 1");
+        query(key, new String[0], rows(1));
+        assertNull(mCache.get(key));
+        assertEquals(0, mCache.getStats().putCount);
+    }
+
+    @Test
+    public void keyCopiesArgs() {
+        String[] args = {"1"};
+        XQueryCache.Key key = new XQueryCache.Key("SELECT ?", args, null);
+        args[0] = "2";
+        assertEquals(new XQueryCache.Key("SELECT ?", new String[] {"1"}, null), key);
+        assertEquals(new XQueryCache.Key("SELECT 1", new String[0], null),
+                new XQueryCache.Key("SELECT 1", null, null));
+    }
+
+    /**
+     * 模拟XSQLiteHelper的一次查询：查询前stamp()，查询后put()。
+     */
+    private void query(XQueryCache.Key key, String[] tables, List<String> result) {
+        long stamp = mCache.stamp(tables);
+        mCache.put(key, tables, stamp, result);
+    }
+
+    private static XQueryCache.Key key(String sql, String... args) {
+        return new XQueryCache.Key(sql, args, null);
+    }
+
+    private static List<String> rows(int count) {
+        return Collections.unmodifiableList(new ArrayList<String>(Collections.nCopies(count, "row")));
+    }
+}
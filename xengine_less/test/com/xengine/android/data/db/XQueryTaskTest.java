@@ -0,0 +1,215 @@
+package com.xengine.android.data.db;
+
+import android.database.Cursor;
+import android.database.sqlite.InMemorySQLite;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * XQueryTask和XCursorBatchIterator的测试(在内存SQLite上运行)。
+ */
+public class XQueryTaskTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private XSQLiteHelper mHelper;
+    private XTestItemTable mTable;
+
+    @Before
+    public void setUp() {
+        InMemorySQLite.reset();
+        XSQLiteHelper.initiate(null, "XQueryTaskTest", 1);
+        mHelper = XSQLiteHelper.getInstance();
+        mTable = new XTestItemTable();
+        XTestItemTable.insert(mHelper, mTable, XTestItemTable.items(250));
+        InMemorySQLite.resetCounters();
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        InMemorySQLite.reset();
+    }
+
+    @Test
+    public void deliversRowsInBatchesAndClosesCursor() {
+        Recorder recorder = new Recorder();
+        XQueryTask<XTestItemTable.Item> task = new XQueryTask<XTestItemTable.Item>(mHelper, mTable,
+                XTestItemTable.VALUE + " >= ?", new String[] {"10"}, XTestItemTable.VALUE,
+                100, recorder, DIRECT);
+        task.run();
+
+        assertEquals(3, recorder.batches.size());
+        assertEquals(100, recorder.batches.get(0).size());
+        assertEquals(100, recorder.batches.get(1).size());
+        assertEquals(40, recorder.batches.get(2).size());
+        long expected = 10;
+        for (List<XTestItemTable.Item> batch : recorder.batches) {
+            for (XTestItemTable.Item item : batch)
+                assertEquals(expected++, item.value);
+        }
+        assertNotNull(recorder.stats);
+        assertEquals(240, recorder.stats.rowCount);
+        assertEquals(3, recorder.stats.batchCount);
+        assertNull(recorder.error);
+        assertEquals(1, InMemorySQLite.getCursorsOpened());
+        assertEquals(1, InMemorySQLite.getCursorsClosed());
+    }
+
+    @Test
+    public void cancelBetweenBatchesStopsReadingAndClosesCursor() {
+        final List<XQueryTask<XTestItemTable.Item>> holder =
+                new ArrayList<XQueryTask<XTestItemTable.Item>>();
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onBatch(List<XTestItemTable.Item> batch) {
+                super.onBatch(batch);
+                holder.get(0).cancel();
+            }
+        };
+        XQueryTask<XTestItemTable.Item> task = new XQueryTask<XTestItemTable.Item>(mHelper, mTable,
+                null, null, XTestItemTable.VALUE, 50, recorder, DIRECT);
+        holder.add(task);
+        task.run();
+
+        assertTrue(task.isCancelled());
+        assertEquals(1, recorder.batches.size());
+        assertEquals(50, recorder.batches.get(0).size());
+        assertNull(recorder.stats);
+        assertNull(recorder.error);
+        // 只读了第一批和探测下一批的一行，没有读完整个结果集
+        assertEquals(51, InMemorySQLite.getRowsRead());
+        assertEquals(1, InMemorySQLite.getCursorsClosed());
+    }
+
+    @Test
+    public void cancelledCallbacksAreDropped() {
+        final List<Runnable> pending = new ArrayList<Runnable>();
+        Executor queued = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pending.add(command);
+            }
+        };
+        Recorder recorder = new Recorder();
+        XQueryTask<XTestItemTable.Item> task = new XQueryTask<XTestItemTable.Item>(mHelper, mTable,
+                null, null, null, 100, recorder, queued);
+        task.run();
+        assertEquals(4, pending.size());
+
+        task.cancel();
+        for (Runnable runnable : pending)
+            runnable.run();
+        assertTrue(recorder.batches.isEmpty());
+        assertNull(recorder.stats);
+    }
+
+    @Test
+    public void errorMidStreamClosesCursor() {
+        XTestItemTable failing = new XTestItemTable() {
+            private int mRead;
+
+            @Override
+            public XTestItemTable.Item getFilledInstance(Cursor cursor) {
+                if (++mRead > 120)
+                    throw new IllegalStateException("expected by test");
+                return super.getFilledInstance(cursor);
+            }
+        };
+        Recorder recorder = new Recorder();
+        new XQueryTask<XTestItemTable.Item>(mHelper, failing, null, null, null,
+                100, recorder, DIRECT).run();
+
+        assertEquals(1, recorder.batches.size());
+        assertNull(recorder.stats);
+        assertTrue(recorder.error instanceof IllegalStateException);
+        assertEquals(1, InMemorySQLite.getCursorsOpened());
+        assertEquals(1, InMemorySQLite.getCursorsClosed());
+    }
+
+    @Test
+    public void queryAsyncRunsOnQueryThread() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onBatch(List<XTestItemTable.Item> batch) {
+                super.onBatch(batch);
+                threads.add(Thread.currentThread());
+            }
+
+            @Override
+            public void onComplete(XQueryTask.Stats stats) {
+                super.onComplete(stats);
+                done.countDown();
+            }
+        };
+        mHelper.setQueryDispatcher(DIRECT);
+        mHelper.queryAsync(mTable, XTestItemTable.ID + " = ?", new String[] {"i42"},
+                null, 10, recorder);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, recorder.batches.size());
+        assertEquals("i42", recorder.batches.get(0).get(0).id);
+        assertEquals(1, recorder.stats.rowCount);
+        assertFalse(threads.get(0) == Thread.currentThread());
+    }
+
+    @Test
+    public void iteratorReadsOnlyRequestedBatches() {
+        Cursor cursor = mHelper.acquireDatabase().query(mTable.getName(), null, null, null,
+                null, null, null);
+        try {
+            XCursorBatchIterator<XTestItemTable.Item> iterator =
+                    new XCursorBatchIterator<XTestItemTable.Item>(cursor, mTable, 30);
+            assertTrue(iterator.hasNext());
+            assertEquals(30, iterator.next().size());
+            assertEquals(30, iterator.getRowCount());
+            assertEquals(31, InMemorySQLite.getRowsRead());
+            iterator.close();
+            assertFalse(iterator.hasNext());
+            assertTrue(cursor.isClosed());
+        } finally {
+            mHelper.releaseDatabase();
+        }
+    }
+
+    private static class Recorder implements XQueryCallback<XTestItemTable.Item> {
+        final List<List<XTestItemTable.Item>> batches = new ArrayList<List<XTestItemTable.Item>>();
+        XQueryTask.Stats stats;
+        Exception error;
+
+        @Override
+        public void onBatch(List<XTestItemTable.Item> batch) {
+            batches.add(batch);
+        }
+
+        @Override
+        public void onComplete(XQueryTask.Stats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void onError(Exception e) {
+            error = e;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.xengine.android.data.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.InMemorySQLite;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 行映射(getContentValues()/getFilledInstance())的耗时基准(不是单元测试，直接运行main())。
+ * 同一张8个字段的表，分别用三种XDBTable实现映射count行：
+ * 1.reflect：用反射按属性名读写，每行每个字段都按名字查找位置;
+ * 2.hand-written：手写映射，每行每个字段都调用getColumnIndex()(项目中多数表的写法);
+ * 3.bound：XBaseBoundDBTable，字段位置按cursor缓存，属性通过XColumnBinding直接读写。
+ * read统计遍历cursor并还原对象的耗时，write统计生成ContentValues的耗时，都取REPEAT次中最快的一次；
+ * cursor only是按预先查好的位置读出所有字段、不还原对象的耗时，即read中cursor本身的开销。
+ * 用法：java com.xengine.android.data.db.XRowMapperBenchmark [count...]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多。
+ * 内存数据库的getColumnIndex()是线性查找，与设备上SQLiteCursor的实现不同
+ */
+public class XRowMapperBenchmark {
+
+    private static final int[] DEFAULT_COUNTS = {1000, 10000, 100000};
+    private static final int WARM_UP = 2;// 预热的轮数
+    private static final int REPEAT = 5;// 每种实现重复的次数
+    private static final String TABLE = "record";
+
+    private static volatile long sSink;// 防止映射被优化掉
+
+    public static void main(String[] args) throws Exception {
+        int[] counts = DEFAULT_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+        XDBTable<Record> reflect = new ReflectTable();
+        XDBTable<Record> handWritten = new HandWrittenTable();
+        XDBTable<Record> bound = new BoundTable();
+        for (int round = 0; round <= WARM_UP; round++) {
+            boolean report = round == WARM_UP;
+            for (int count : counts) {
+                List<Record> records = records(count);
+                InMemorySQLite.reset();
+                XSQLiteHelper.initiate(null, "XRowMapperBenchmark", 1);
+                XSQLiteHelper helper = XSQLiteHelper.getInstance();
+                helper.createIfNotExist(bound);
+                helper.upsert(bound, records, new String[] {Record.ID});
+
+                run("reflect", helper, reflect, records, report);
+                run("hand-written", helper, handWritten, records, report);
+                run("bound", helper, bound, records, report);
+                run("cursor only", helper, null, records, report);
+                helper.close();
+            }
+        }
+    }
+
+    /**
+     * @param table 为null时只统计cursor本身的开销
+     */
+    private static void run(String name, XSQLiteHelper helper, XDBTable<Record> table,
+                            List<Record> records, boolean report) {
+        int count = records.size();
+        long read = Long.MAX_VALUE;
+        long write = Long.MAX_VALUE;
+        long sum = 0;
+        for (int repeat = 0; repeat < REPEAT; repeat++) {
+            long begin = System.nanoTime();
+            if (table != null) {
+                for (Record record : records)
+                    sum += table.getContentValues(record).size();
+            }
+            write = Math.min(write, System.nanoTime() - begin);
+
+            SQLiteDatabase db = helper.acquireDatabase();
+            try {
+                begin = System.nanoTime();
+                Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE, null);
+                try {
+                    int[] indexes = table != null ? null : columnIndexes(cursor);
+                    while (cursor.moveToNext())
+                        sum += table != null ? table.getFilledInstance(cursor).count : readAll(cursor, indexes);
+                } finally {
+                    cursor.close();
+                }
+                read = Math.min(read, System.nanoTime() - begin);
+            } finally {
+                helper.releaseDatabase();
+            }
+        }
+        sSink += sum;
+        if (!report)
+            return;
+        if (table == null)
+            System.out.printf("%7d rows  %-13s read %8.2f ms %6.0f ns/row%n",
+                    count, name, read / 1e6, read / (double) count);
+        else
+            System.out.printf("%7d rows  %-13s read %8.2f ms %6.0f ns/row   write %8.2f ms %6.0f ns/row%n",
+                    count, name, read / 1e6, read / (double) count, write / 1e6, write / (double) count);
+    }
+
+    private static int[] columnIndexes(Cursor cursor) {
+        String[] columns = {Record.ID, Record.TITLE, Record.AUTHOR, Record.URL,
+                Record.SIZE, Record.TIME, Record.COUNT, Record.SCORE};
+        int[] indexes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++)
+            indexes[i] = cursor.getColumnIndex(columns[i]);
+        return indexes;
+    }
+
+    /**
+     * 读出当前行的所有字段(indexes与columnIndexes()中字段的顺序相同)。
+     */
+    private static long readAll(Cursor cursor, int[] indexes) {
+        long sum = 0;
+        for (int i = 0; i < 4; i++)
+            sum += cursor.getString(indexes[i]).length();
+        sum += cursor.getLong(indexes[4]) + cursor.getLong(indexes[5]) + cursor.getInt(indexes[6]);
+        sum += (long) cursor.getDouble(indexes[7]);
+        return sum;
+    }
+
+    private static List<Record> records(int count) {
+        List<Record> records = new ArrayList<Record>(count);
+        for (int i = 0; i < count; i++) {
+            Record record = new Record();
+            record.id = "r" + i;
+            record.title = "title " + i;
+            record.author = "author " + (i % 100);
+            record.url = "http://example.com/" + i;
+            record.size = i * 1024L;
+            record.time = 1400000000000L + i;
+            record.count = i % 1000;
+            record.score = i / 7.0;
+            records.add(record);
+        }
+        return records;
+    }
+
+    public static final class Record {
+        static final String ID = "id";
+        static final String TITLE = "title";
+        static final String AUTHOR = "author";
+        static final String URL = "url";
+        static final String SIZE = "size";
+        static final String TIME = "time";
+        static final String COUNT = "count";
+        static final String SCORE = "score";
+
+        String id;
+        String title;
+        String author;
+        String url;
+        long size;
+        long time;
+        int count;
+        double score;
+    }
+
+    private static void addColumns(XBaseDBTable<Record> table) {
+        table.addColumn(Record.ID, XSQLiteDataType.TEXT, XSQLiteConstraint.NOT_NULL);
+        table.addColumn(Record.TITLE, XSQLiteDataType.TEXT, null);
+        table.addColumn(Record.AUTHOR, XSQLiteDataType.TEXT, null);
+        table.addColumn(Record.URL, XSQLiteDataType.TEXT, null);
+        table.addColumn(Record.SIZE, XSQLiteDataType.LONG, null);
+        table.addColumn(Record.TIME, XSQLiteDataType.LONG, null);
+        table.addColumn(Record.COUNT, XSQLiteDataType.INTEGER, null);
+        table.addColumn(Record.SCORE, XSQLiteDataType.REAL, null);
+    }
+
+    /**
+     * 用反射按属性名映射(属性名与字段名相同)。
+     */
+    private static final class ReflectTable extends XBaseDBTable<Record> {
+        private Field[] mFields;
+
+        @Override
+        public void initiateColumns() {
+            addColumns(this);
+        }
+
+        @Override
+        public String getName() {
+            return TABLE;
+        }
+
+        private Field[] fields() {
+            if (mFields == null) {
+                String[] columns = getColumns();
+                Field[] fields = new Field[columns.length];
+                try {
+                    for (int i = 0; i < columns.length; i++) {
+                        fields[i] = Record.class.getDeclaredField(columns[i]);
+                        fields[i].setAccessible(true);
+                    }
+                } catch (NoSuchFieldException e) {
+                    throw new IllegalStateException(e);
+                }
+                mFields = fields;
+            }
+            return mFields;
+        }
+
+        @Override
+        public ContentValues getContentValues(Record instance) {
+            ContentValues values = new ContentValues();
+            try {
+                for (Field field : fields()) {
+                    Class<?> type = field.getType();
+                    if (type == String.class)
+                        values.put(field.getName(), (String) field.get(instance));
+                    else if (type == long.class)
+                        values.put(field.getName(), field.getLong(instance));
+                    else if (type == int.class)
+                        values.put(field.getName(), field.getInt(instance));
+                    else if (type == double.class)
+                        values.put(field.getName(), field.getDouble(instance));
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            return values;
+        }
+
+        @Override
+        public Record getFilledInstance(Cursor cursor) {
+            Record record = new Record();
+            try {
+                for (Field field : fields()) {
+                    int index = cursor.getColumnIndex(field.getName());
+                    Class<?> type = field.getType();
+                    if (type == String.class)
+                        field.set(record, cursor.getString(index));
+                    else if (type == long.class)
+                        field.setLong(record, cursor.getLong(index));
+                    else if (type == int.class)
+                        field.setInt(record, cursor.getInt(index));
+                    else if (type == double.class)
+                        field.setDouble(record, cursor.getDouble(index));
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            return record;
+        }
+    }
+
+    private static final class HandWrittenTable extends XBaseDBTable<Record> {
+        @Override
+        public void initiateColumns() {
+            addColumns(this);
+        }
+
+        @Override
+        public String getName() {
+            return TABLE;
+        }
+
+        @Override
+        public ContentValues getContentValues(Record instance) {
+            ContentValues values = new ContentValues();
+            values.put(Record.ID, instance.id);
+            values.put(Record.TITLE, instance.title);
+            values.put(Record.AUTHOR, instance.author);
+            values.put(Record.URL, instance.url);
+            values.put(Record.SIZE, instance.size);
+            values.put(Record.TIME, instance.time);
+            values.put(Record.COUNT, instance.count);
+            values.put(Record.SCORE, instance.score);
+            return values;
+        }
+
+        @Override
+        public Record getFilledInstance(Cursor cursor) {
+            Record record = new Record();
+            record.id = cursor.getString(cursor.getColumnIndex(Record.ID));
+            record.title = cursor.getString(cursor.getColumnIndex(Record.TITLE));
+            record.author = cursor.getString(cursor.getColumnIndex(Record.AUTHOR));
+            record.url = cursor.getString(cursor.getColumnIndex(Record.URL));
+            record.size = cursor.getLong(cursor.getColumnIndex(Record.SIZE));
+            record.time = cursor.getLong(cursor.getColumnIndex(Record.TIME));
+            record.count = cursor.getInt(cursor.getColumnIndex(Record.COUNT));
+            record.score = cursor.getDouble(cursor.getColumnIndex(Record.SCORE));
+            return record;
+        }
+    }
+
+    private static final class BoundTable extends XBaseBoundDBTable<Record> {
+        BoundTable() {
+            addIndex(TABLE + "_id", new String[] {Record.ID}, true);
+        }
+
+        @Override
+        public void initiateColumns() {
+            bindColumn(Record.ID, XSQLiteDataType.TEXT, XSQLiteConstraint.NOT_NULL,
+                    new XColumnBinding.TextBinding<Record>() {
+                        public String get(Record instance) { return instance.id; }
+                        public void set(Record instance, String value) { instance.id = value; }
+                    });
+            bindColumn(Record.TITLE, XSQLiteDataType.TEXT, null,
+                    new XColumnBinding.TextBinding<Record>() {
+                        public String get(Record instance) { return instance.title; }
+                        public void set(Record instance, String value) { instance.title = value; }
+                    });
+            bindColumn(Record.AUTHOR, XSQLiteDataType.TEXT, null,
+                    new XColumnBinding.TextBinding<Record>() {
+                        public String get(Record instance) { return instance.author; }
+                        public void set(Record instance, String value) { instance.author = value; }
+                    });
+            bindColumn(Record.URL, XSQLiteDataType.TEXT, null,
+                    new XColumnBinding.TextBinding<Record>() {
+                        public String get(Record instance) { return instance.url; }
+                        public void set(Record instance, String value) { instance.url = value; }
+                    });
+            bindColumn(Record.SIZE, XSQLiteDataType.LONG, null,
+                    new XColumnBinding.LongBinding<Record>() {
+                        public long get(Record instance) { return instance.size; }
+                        public void set(Record instance, long value) { instance.size = value; }
+                    });
+            bindColumn(Record.TIME, XSQLiteDataType.LONG, null,
+                    new XColumnBinding.LongBinding<Record>() {
+                        public long get(Record instance) { return instance.time; }
+                        public void set(Record instance, long value) { instance.time = value; }
+                    });
+            bindColumn(Record.COUNT, XSQLiteDataType.INTEGER, null,
+                    new XColumnBinding.IntBinding<Record>() {
+                        public int get(Record instance) { return instance.count; }
+                        public void set(Record instance, int value) { instance.count = value; }
+                    });
+            bindColumn(Record.SCORE, XSQLiteDataType.REAL, null,
+                    new XColumnBinding.DoubleBinding<Record>() {
+                        public double get(Record instance) { return instance.score; }
+                        public void set(Record instance, double value) { instance.score = value; }
+                    });
+        }
+
+        @Override
+        public String getName() {
+            return TABLE;
+        }
+
+        @Override
+        protected Record newInstance() {
+            return new Record();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.xengine.android.data.db;
+
+import android.database.SQLException;
+import android.database.sqlite.InMemorySQLite;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * XSQLiteHelper的测试(在内存SQLite上运行)。
+ */
+public class XSQLiteHelperTest {
+
+    private static final String DB_NAME = "XSQLiteHelperTest";
+
+    private XSQLiteHelper mHelper;
+    private XTestItemTable mTable;
+
+    @Before
+    public void setUp() {
+        InMemorySQLite.reset();
+        XSQLiteHelper.initiate(null, DB_NAME, 1);
+        mHelper = XSQLiteHelper.getInstance();
+        mTable = new XTestItemTable();
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        InMemorySQLite.reset();
+    }
+
+    @Test
+    public void upsertInsertsAndUpdatesInChunks() {
+        List<XTestItemTable.Item> items = XTestItemTable.items(1000);
+        mHelper.createIfNotExist(mTable);
+        InMemorySQLite.resetCounters();
+        assertEquals(1000, mHelper.upsert(mTable, items, new String[] {XTestItemTable.ID}, 300));
+        assertEquals(1000, InMemorySQLite.rowCount(DB_NAME, mTable.getName()));
+        assertEquals(4, InMemorySQLite.getCommitCount());
+        assertEquals(1, InMemorySQLite.getCompiledStatementCount());
+
+        items.set(7, new XTestItemTable.Item("i7", "changed", 7));
+        mHelper.upsert(mTable, items, new String[] {XTestItemTable.ID});
+        assertEquals(1000, InMemorySQLite.rowCount(DB_NAME, mTable.getName()));
+        List<XTestItemTable.Item> found = mHelper.query(mTable, XTestItemTable.ID + " = ?",
+                new String[] {"i7"}, null);
+        assertEquals(1, found.size());
+        assertEquals("changed", found.get(0).name);
+    }
+
+    @Test
+    public void upsertFailureThrowsAndKeepsCommittedChunks() {
+        List<XTestItemTable.Item> items = XTestItemTable.items(1000);
+        items.set(450, new XTestItemTable.Item(null, "broken", 450));// 违反NOT NULL
+        try {
+            mHelper.upsert(mTable, items, new String[] {XTestItemTable.ID}, 300);
+            fail("constraint violation should be thrown");
+        } catch (SQLException e) {
+            // 预期的异常
+        }
+        // 第一个事务已提交，出错的事务整体回滚，之后的数据没有写入
+        assertEquals(300, InMemorySQLite.rowCount(DB_NAME, mTable.getName()));
+        assertTrue(InMemorySQLite.getRollbackCount() >= 1);
+
+        // 修正后重试整个批次
+        items.set(450, new XTestItemTable.Item("i450", "fixed", 450));
+        mHelper.upsert(mTable, items, new String[] {XTestItemTable.ID}, 300);
+        assertEquals(1000, InMemorySQLite.rowCount(DB_NAME, mTable.getName()));
+    }
+
+    @Test
+    public void upsertFallsBackToReplaceOnOldSqlite() {
+        InMemorySQLite.setSqliteVersion("3.8.10");
+        mHelper.upsert(mTable, XTestItemTable.items(10), new String[] {XTestItemTable.ID});
+        mHelper.upsert(mTable, XTestItemTable.items(10), new String[] {XTestItemTable.ID});
+        assertEquals(10, InMemorySQLite.rowCount(DB_NAME, mTable.getName()));
+    }
+
+    @Test
+    public void existsProbeCostDoesNotDependOnTableSize() {
+        for (int size : new int[] {10, 10000}) {
+            XTestItemTable table = new XTestItemTable("item" + size);
+            XTestItemTable.insert(mHelper, table, XTestItemTable.items(size));
+
+            InMemorySQLite.resetCounters();
+            assertFalse(mHelper.isTableEmpty(table));
+            assertTrue(mHelper.exists(table, null, null));
+            assertTrue(mHelper.exists(table, XTestItemTable.ID + " = ?", new String[] {"i" + (size - 1)}));
+            assertFalse(mHelper.exists(table, XTestItemTable.ID + " = ?", new String[] {"missing"}));
+            // 每次探测最多检查一行，只返回一行结果
+            assertTrue("size " + size, InMemorySQLite.getRowsScanned() <= 3);
+            assertEquals(4, InMemorySQLite.getRowsRead());
+        }
+    }
+
+    @Test
+    public void countReturnsOneRowRegardlessOfTableSize() {
+        for (int size : new int[] {10, 10000}) {
+            XTestItemTable table = new XTestItemTable("item" + size);
+            XTestItemTable.insert(mHelper, table, XTestItemTable.items(size));
+
+            InMemorySQLite.resetCounters();
+            assertEquals(size, mHelper.count(table, null, null));
+            // COUNT(*)在数据库内部计数，不把行读到Java中
+            assertEquals(1, InMemorySQLite.getRowsRead());
+
+            InMemorySQLite.resetCounters();
+            assertEquals(1, mHelper.count(table, XTestItemTable.ID + " = ?", new String[] {"i3"}));
+            // 唯一索引上的条件只检查一行
+            assertEquals(1, InMemorySQLite.getRowsScanned());
+            assertEquals(1, InMemorySQLite.getRowsRead());
+        }
+    }
+
+    @Test
+    public void tableExistenceIsAnsweredFromSchemaCache() {
+        mHelper.createIfNotExist(mTable);
+        InMemorySQLite.resetCounters();
+        for (int i = 0; i < 100; i++)
+            assertTrue(mHelper.isTableExist(mTable));
+        assertEquals(0, InMemorySQLite.getStatementCount());
+
+        mHelper.dropTable(mTable);
+        assertFalse(mHelper.isTableExist(mTable));
+
+        // 重新打开数据库时从sqlite_master加载
+        mHelper.createIfNotExist(mTable);
+        mHelper.close();
+        XSQLiteHelper.initiate(null, DB_NAME, 1);
+        mHelper = XSQLiteHelper.getInstance();
+        mHelper.acquireDatabase();
+        mHelper.releaseDatabase();
+        InMemorySQLite.resetCounters();
+        assertTrue(mHelper.isTableExist(mTable));
+        assertEquals(0, InMemorySQLite.getStatementCount());
+    }
+
+    @Test
+    public void operationsReuseOneConnection() {
+        InMemorySQLite.resetCounters();
+        mHelper.createIfNotExist(mTable);
+        for (int i = 0; i < 50; i++) {
+            mHelper.isTableExist(mTable);
+            mHelper.upsert(mTable, XTestItemTable.items(20), new String[] {XTestItemTable.ID});
+            mHelper.exists(mTable, XTestItemTable.ID + " = ?", new String[] {"i" + i});
+            mHelper.count(mTable, null, null);
+            mHelper.query(mTable, XTestItemTable.VALUE + " > ?", new String[] {String.valueOf(i)}, null);
+            mHelper.isTableEmpty(mTable);
+        }
+        assertEquals(1, InMemorySQLite.getOpenCount());
+        assertEquals(0, InMemorySQLite.getCloseCount());
+    }
+
+    @Test
+    public void closeIsDeferredUntilLastLeaseIsReleased() {
+        mHelper.acquireDatabase();
+        mHelper.acquireDatabase();
+        mHelper.close();
+        mHelper.releaseDatabase();
+        assertEquals(0, InMemorySQLite.getCloseCount());
+        mHelper.releaseDatabase();
+        assertEquals(1, InMemorySQLite.getCloseCount());
+
+        // 关闭后再次使用时重新打开
+        assertTrue(mHelper.acquireDatabase().isOpen());
+        mHelper.releaseDatabase();
+        assertEquals(2, InMemorySQLite.getOpenCount());
+    }
+}
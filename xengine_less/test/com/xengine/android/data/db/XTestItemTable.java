@@ -0,0 +1,99 @@
+package com.xengine.android.data.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试用的数据表：id(唯一索引)、name、value。
+ */
+class XTestItemTable extends XBaseDBTable<XTestItemTable.Item> {
+
+    static final String ID = "id";
+    static final String NAME = "name";
+    static final String VALUE = "value";
+
+    static final class Item {
+        final String id;
+        final String name;
+        final long value;
+
+        Item(String id, String name, long value) {
+            this.id = id;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    private final String mName;
+
+    XTestItemTable() {
+        this("item");
+    }
+
+    XTestItemTable(String name) {
+        mName = name;
+        addIndex(name + "_id", new String[] {ID}, true);
+    }
+
+    @Override
+    public void initiateColumns() {
+        addColumn(ID, XSQLiteDataType.TEXT, XSQLiteConstraint.NOT_NULL);
+        addColumn(NAME, XSQLiteDataType.TEXT, null);
+        addColumn(VALUE, XSQLiteDataType.INTEGER, null);
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public ContentValues getContentValues(Item instance) {
+        ContentValues values = new ContentValues();
+        values.put(ID, instance.id);
+        values.put(NAME, instance.name);
+        values.put(VALUE, instance.value);
+        return values;
+    }
+
+    @Override
+    public Item getFilledInstance(Cursor cursor) {
+        return new Item(cursor.getString(cursor.getColumnIndex(ID)),
+                cursor.getString(cursor.getColumnIndex(NAME)),
+                cursor.getLong(cursor.getColumnIndex(VALUE)));
+    }
+
+    /**
+     * 生成id为"i0".."i(n-1)"、value为0..n-1的数据。
+     */
+    static List<Item> items(int n) {
+        List<Item> items = new ArrayList<Item>(n);
+        for (int i = 0; i < n; i++)
+            items.add(new Item("i" + i, "name" + i, i));
+        return items;
+    }
+
+    /**
+     * 逐行插入数据(一个事务)。
+     */
+    static void insert(XSQLiteHelper helper, XTestItemTable table, List<Item> items) {
+        helper.createIfNotExist(table);
+        SQLiteDatabase db = helper.acquireDatabase();
+        try {
+            db.beginTransaction();
+            try {
+                for (Item item : items)
+                    db.insert(table.getName(), null, table.getContentValues(item));
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            helper.releaseDatabase();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.xengine.android.data.db;
+
+import android.database.sqlite.InMemorySQLite;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.List;
+
+/**
+ * 批量upsert与逐行写入的耗时基准(不是单元测试，直接运行main())。
+ * 在内存SQLite上分别统计三种写法写入count行(先插入再整体更新一遍)的耗时和提交次数：
+ * 1.逐行replace()，每行自动提交一个事务;
+ * 2.逐行replace()，整批在一个事务中;
+ * 3.XSQLiteHelper.upsert()，只编译一条语句，每DEFAULT_UPSERT_CHUNK行一个事务。
+ * 用法：java com.xengine.android.data.db.XUpsertBenchmark [count...]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多。
+ * 内存数据库没有磁盘同步的开销，设备上每次提交都要同步日志文件，提交次数的差别影响更大
+ */
+public class XUpsertBenchmark {
+
+    private static final int[] DEFAULT_COUNTS = {1000, 10000, 100000};
+    private static final int WARM_UP = 2;// 预热的轮数
+
+    public static void main(String[] args) {
+        int[] counts = DEFAULT_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+        for (int round = 0; round <= WARM_UP; round++) {
+            boolean report = round == WARM_UP;
+            for (int count : counts) {
+                List<XTestItemTable.Item> items = XTestItemTable.items(count);
+                run("replace, autocommit", count, items, 0, report);
+                run("replace, one tx", count, items, 1, report);
+                run("bulk upsert", count, items, 2, report);
+            }
+        }
+    }
+
+    private static void run(String name, int count, List<XTestItemTable.Item> items, int mode,
+                            boolean report) {
+        InMemorySQLite.reset();
+        XSQLiteHelper.initiate(null, "XUpsertBenchmark", 1);
+        XSQLiteHelper helper = XSQLiteHelper.getInstance();
+        XTestItemTable table = new XTestItemTable();
+        helper.createIfNotExist(table);
+        InMemorySQLite.resetCounters();
+
+        long begin = System.nanoTime();
+        for (int pass = 0; pass < 2; pass++) {// 第一遍插入，第二遍更新
+            if (mode == 2) {
+                helper.upsert(table, items, new String[] {XTestItemTable.ID});
+                continue;
+            }
+            SQLiteDatabase db = helper.acquireDatabase();
+            try {
+                if (mode == 1)
+                    db.beginTransaction();
+                try {
+                    for (XTestItemTable.Item item : items)
+                        db.replace(table.getName(), null, table.getContentValues(item));
+                    if (mode == 1)
+                        db.setTransactionSuccessful();
+                } finally {
+                    if (mode == 1)
+                        db.endTransaction();
+                }
+            } finally {
+                helper.releaseDatabase();
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+        helper.close();
+        if (report)
+            System.out.printf("%7d rows  %-20s %9.2f ms  %7.0f ns/row  commits %7d  statements compiled %d%n",
+                    count, name, elapsed / 1e6, elapsed / (2.0 * count),
+                    InMemorySQLite.getCommitCount(), InMemorySQLite.getCompiledStatementCount());
+    }
+}
@@ -0,0 +1,77 @@
+package com.xengine.android.toolkit.filter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * XAndFilter的测试：子过滤器的输出要传给下一个子过滤器，单项和批量过滤的结果一致。
+ */
+public class XAndFilterTest {
+
+    /**
+     * 把数据加一的过滤器(不过滤掉任何数据)
+     */
+    private static final XFilter<Integer> INCREMENT = new XBaseFilter<Integer>() {
+        @Override
+        public Integer doFilter(Integer source) {
+            return source + 1;
+        }
+    };
+
+    /**
+     * 只保留偶数的过滤器
+     */
+    private static final XFilter<Integer> EVEN = new XBaseFilter<Integer>() {
+        @Override
+        public Integer doFilter(Integer source) {
+            return source % 2 == 0 ? source : null;
+        }
+    };
+
+    @Test
+    public void chainsOutputs() {
+        XAndFilter<Integer> filter = new XAndFilter<Integer>(INCREMENT, EVEN);
+        assertEquals(Integer.valueOf(2), filter.doFilter(1));
+        assertNull(filter.doFilter(2));
+        // 嵌套的XAndFilter展开后顺序不变
+        XAndFilter<Integer> twice = new XAndFilter<Integer>(filter, INCREMENT);
+        assertEquals(Integer.valueOf(3), twice.doFilter(1));
+    }
+
+    @Test
+    public void bulkAgreesWithSingleItems() {
+        List<XFilter<Integer>> filters = new ArrayList<XFilter<Integer>>();
+        filters.add(INCREMENT);
+        filters.add(null);
+        filters.add(EVEN);
+        filters.add(INCREMENT);
+        XAndFilter<Integer> filter = new XAndFilter<Integer>(filters);
+        List<Integer> source = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++)
+            source.add(i);
+
+        List<Integer> expected = new ArrayList<Integer>();
+        BitSet expectedBits = new BitSet();
+        for (int i = 0; i < source.size(); i++) {
+            Integer value = filter.doFilter(source.get(i));
+            if (value != null) {
+                expected.add(value);
+                expectedBits.set(i);
+            }
+        }
+        assertEquals(expected, filter.doFilter(source));
+        assertEquals(expected, filter.doFilter(new LinkedList<Integer>(source)));
+        BitSet bits = new BitSet();
+        assertEquals(expected.size(), filter.doFilter(source, bits));
+        assertEquals(expectedBits, bits);
+        assertEquals(Arrays.asList(3, 5, 7), filter.doFilter(source.subList(0, 7)));
+    }
+}
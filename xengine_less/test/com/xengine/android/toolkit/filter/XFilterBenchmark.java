@@ -0,0 +1,88 @@
+package com.xengine.android.toolkit.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 组合过滤器的耗时基准(不是单元测试，直接运行main())。
+ * 对count个数据(默认100000)用三个条件过滤，比较：
+ * 依次调用三个过滤器的doFilter(List)(每次生成中间列表)、XAndFilter.doFilter(List)、
+ * XAndFilter批量写入BitSet，以及XOrFilter和XNotFilter的批量过滤。
+ * 用法：java com.xengine.android.toolkit.filter.XFilterBenchmark [count]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多
+ */
+public class XFilterBenchmark {
+
+    private static final int ROUNDS = 50;// 每种方式的次数
+    private static final int WARM_UP = 3;// 预热的轮数
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Random random = new Random(2015);
+        List<Integer> source = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++)
+            source.add(random.nextInt(1000000));
+
+        XFilter<Integer> even = new Remainder(2);
+        XFilter<Integer> third = new Remainder(3);
+        XFilter<Integer> fifth = new Remainder(5);
+        XAndFilter<Integer> and = new XAndFilter<Integer>(Arrays.asList(even, third, fifth));
+        XOrFilter<Integer> or = new XOrFilter<Integer>(Arrays.asList(even, third, fifth));
+        XNotFilter<Integer> not = new XNotFilter<Integer>(and);
+
+        String[] names = {"chained lists", "and list", "and bitset", "or bitset", "not bitset"};
+        for (int round = 0; round <= WARM_UP; round++) {
+            boolean report = round == WARM_UP;
+            for (int type = 0; type < names.length; type++) {
+                long[] times = new long[ROUNDS];
+                int hits = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    long begin = System.nanoTime();
+                    switch (type) {
+                        case 0:
+                            hits = fifth.doFilter(third.doFilter(even.doFilter(source))).size();
+                            break;
+                        case 1:
+                            hits = and.doFilter(source).size();
+                            break;
+                        case 2:
+                            hits = and.doFilter(source, new BitSet(count));
+                            break;
+                        case 3:
+                            hits = or.doFilter(source, new BitSet(count));
+                            break;
+                        default:
+                            hits = not.doFilter(source, new BitSet(count));
+                            break;
+                    }
+                    times[i] = System.nanoTime() - begin;
+                }
+                if (report) {
+                    Arrays.sort(times);
+                    System.out.printf("%-14s hits %7d  median %7.3f ms  p99 %7.3f ms  max %7.3f ms%n",
+                            names[type], hits, times[ROUNDS / 2] / 1e6,
+                            times[ROUNDS * 99 / 100] / 1e6, times[ROUNDS - 1] / 1e6);
+                }
+            }
+        }
+    }
+
+    /**
+     * 只保留能被divisor整除的数据
+     */
+    private static final class Remainder extends XBaseFilter<Integer> {
+        private final int mDivisor;
+
+        Remainder(int divisor) {
+            mDivisor = divisor;
+        }
+
+        @Override
+        public Integer doFilter(Integer source) {
+            return source % mDivisor == 0 ? source : null;
+        }
+    }
+}
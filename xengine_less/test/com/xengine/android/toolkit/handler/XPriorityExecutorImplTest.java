@@ -0,0 +1,200 @@
+package com.xengine.android.toolkit.handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * XPriorityExecutorImpl自带后台线程模式的测试(不依赖Looper)。
+ */
+public class XPriorityExecutorImplTest {
+
+    private static final long TIMEOUT = 5;// 秒
+
+    private XPriorityExecutorImpl mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = new XPriorityExecutorImpl("XPriorityExecutorImplTest");
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void runsByPriorityThenSubmissionOrder() throws Exception {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        mExecutor.closeGate();
+        mExecutor.execute(record(order, "prefetch"), XPriorityExecutor.PRIORITY_PREFETCH);
+        mExecutor.execute(record(order, "normal1"), XPriorityExecutor.PRIORITY_NORMAL);
+        mExecutor.execute(record(order, "critical"), XPriorityExecutor.PRIORITY_CRITICAL);
+        mExecutor.execute(record(order, "normal2"), XPriorityExecutor.PRIORITY_NORMAL);
+        assertEquals(4, mExecutor.getPendingCount());
+
+        mExecutor.openGate();
+        awaitIdle();
+        assertEquals(4, order.size());
+        assertEquals("critical", order.get(0));
+        assertEquals("normal1", order.get(1));
+        assertEquals("normal2", order.get(2));
+        assertEquals("prefetch", order.get(3));
+    }
+
+    @Test
+    public void closedGateHoldsTasks() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        mExecutor.closeGate();
+        for (int i = 0; i < 3; i++)
+            mExecutor.execute(increment(count));
+        Thread.sleep(100);
+        assertEquals(0, count.get());
+        assertFalse(mExecutor.isGateOpen());
+
+        mExecutor.openGate();
+        awaitIdle();
+        assertEquals(3, count.get());
+    }
+
+    @Test
+    public void duplicateKeyIsQueuedOnceAndBoosted() throws Exception {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        mExecutor.closeGate();
+        assertTrue(mExecutor.execute("a", record(order, "a"), XPriorityExecutor.PRIORITY_PREFETCH));
+        assertTrue(mExecutor.execute("b", record(order, "b"), XPriorityExecutor.PRIORITY_NORMAL));
+        assertFalse(mExecutor.execute("a", record(order, "a2"), XPriorityExecutor.PRIORITY_CRITICAL));
+        assertTrue(mExecutor.isPending("a"));
+        assertEquals(2, mExecutor.getPendingCount());
+
+        mExecutor.openGate();
+        awaitIdle();
+        assertEquals(2, order.size());
+        assertEquals("a", order.get(0));// 提升为关键任务，但执行的是第一次提交的任务
+        assertEquals("b", order.get(1));
+        assertFalse(mExecutor.isPending("a"));
+    }
+
+    @Test
+    public void cancelRemovesPendingTasks() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        mExecutor.closeGate();
+        mExecutor.execute("key", increment(count), XPriorityExecutor.PRIORITY_NORMAL);
+        mExecutor.execute(increment(count), XPriorityExecutor.PRIORITY_PREFETCH);
+        mExecutor.execute(increment(count), XPriorityExecutor.PRIORITY_PREFETCH);
+        mExecutor.execute(increment(count), XPriorityExecutor.PRIORITY_CRITICAL);
+        assertTrue(mExecutor.cancel("key"));
+        assertFalse(mExecutor.cancel("key"));
+        assertEquals(2, mExecutor.cancelPriority(XPriorityExecutor.PRIORITY_PREFETCH));
+
+        mExecutor.openGate();
+        awaitIdle();
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void drainsMoreTasksThanOneBatch() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        mExecutor.closeGate();
+        for (int i = 0; i < 1000; i++)
+            mExecutor.execute(increment(count));
+        mExecutor.openGate();
+        awaitIdle();
+        assertEquals(1000, count.get());
+    }
+
+    @Test
+    public void failingTasksDoNotStopTheExecutor() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        mExecutor.closeGate();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("expected by test");
+            }
+        });
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new AssertionError("expected by test");
+            }
+        });
+        mExecutor.execute(increment(count));
+        mExecutor.openGate();
+        awaitIdle();
+        assertEquals(1, count.get());
+
+        // 抛出Error之后仍然能继续分发
+        mExecutor.execute(increment(count));
+        awaitIdle();
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void shutdownRejectsNewTasks() {
+        mExecutor.closeGate();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        mExecutor.shutdown();
+        assertEquals(0, mExecutor.getPendingCount());
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }, XPriorityExecutor.PRIORITY_CRITICAL);
+            fail("task submitted after shutdown should be rejected");
+        } catch (RejectedExecutionException e) {
+            // 预期
+        }
+        assertEquals(0, mExecutor.getPendingCount());
+    }
+
+    /**
+     * 提交一个最低优先级的任务，等它执行完，说明之前的任务都执行完了。
+     */
+    private void awaitIdle() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, Integer.MAX_VALUE);
+        assertTrue(latch.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    private static Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+
+    private static Runnable increment(final AtomicInteger count) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+    }
+}
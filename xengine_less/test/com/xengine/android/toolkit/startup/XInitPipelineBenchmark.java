@@ -0,0 +1,119 @@
+package com.xengine.android.toolkit.startup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 冷启动初始化的耗时基准(不是单元测试，直接运行main())。
+ * 用与XBaseFrame.onCreate()相同的阶段和依赖关系，每个阶段用固定的耗时模拟：
+ * CPU型的阶段空转，IO型的阶段(file)sleep。分别统计：
+ * 1.按声明顺序在调用线程中依次执行(原来onCreate()的做法);
+ * 2.XInitPipelineImpl按依赖关系并行执行，并输出关键路径。
+ * 第一次execute()需要创建共用的线程池，单独统计为cold。
+ * 默认使用共用的线程池(线程数为CPU核数)，指定threads时使用该大小的线程池。
+ * 用法：java com.xengine.android.toolkit.startup.XInitPipelineBenchmark [runs] [threads]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多
+ */
+public class XInitPipelineBenchmark {
+
+    private static final String[] NAMES = {"screen", "graphics", "audio", "file", "imageProcessor", "mobile"};
+    private static final boolean[] UI_ONLY = {true, false, false, false, false, true};
+    private static final boolean[] IO = {false, false, false, true, false, false};
+    private static final double[] COST_MS = {2, 8, 6, 5, 3, 2};// 每个阶段模拟的耗时
+    private static final String[][] DEPENDENCIES = {{}, {}, {}, {}, {"screen", "file"}, {"file"}};
+    private static final int WARM_UP = 2;// 预热的轮数
+
+    private static volatile long sSink;// 防止空转被优化掉
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        ExecutorService pool = args.length > 1
+                ? Executors.newFixedThreadPool(Integer.parseInt(args[1])) : null;
+        try {
+            run(runs, pool);
+        } finally {
+            if (pool != null)
+                pool.shutdown();
+        }
+    }
+
+    private static void run(int runs, ExecutorService pool) {
+        XInitReport cold = newPipeline(pool).execute();
+        System.out.printf("%-10s %7.2f ms  (%s)%n", "cold", cold.getTotalMillis(), firstLine(cold));
+
+        for (int round = 0; round <= WARM_UP; round++) {
+            boolean report = round == WARM_UP;
+            long[] serial = new long[runs];
+            long[] parallel = new long[runs];
+            List<XInitReport> reports = new ArrayList<XInitReport>();
+            for (int i = 0; i < runs; i++) {
+                long begin = System.nanoTime();
+                for (int stage = 0; stage < NAMES.length; stage++)
+                    work(stage);
+                serial[i] = System.nanoTime() - begin;
+
+                begin = System.nanoTime();
+                reports.add(newPipeline(pool).execute());
+                parallel[i] = System.nanoTime() - begin;
+            }
+            if (report) {
+                long[] sorted = parallel.clone();
+                Arrays.sort(sorted);
+                XInitReport median = null;
+                for (int i = 0; i < runs && median == null; i++) {
+                    if (parallel[i] == sorted[runs / 2])
+                        median = reports.get(i);
+                }
+                Arrays.sort(serial);
+                System.out.printf("%-10s %7.2f ms  (median of %d runs, max %.2f ms)%n",
+                        "serial", serial[runs / 2] / 1e6, runs, serial[runs - 1] / 1e6);
+                System.out.printf("%-10s %7.2f ms  (median of %d runs, max %.2f ms)%n",
+                        "pipeline", sorted[runs / 2] / 1e6, runs, sorted[runs - 1] / 1e6);
+                System.out.println("median pipeline run: " + median);
+            }
+        }
+    }
+
+    private static XInitPipeline newPipeline(ExecutorService pool) {
+        XInitPipeline pipeline = pool == null ? new XInitPipelineImpl() : new XInitPipelineImpl(pool);
+        for (int i = 0; i < NAMES.length; i++) {
+            final int stage = i;
+            pipeline.addStage(new XBaseInitStage(NAMES[i], UI_ONLY[i], DEPENDENCIES[i]) {
+                @Override
+                public void run() {
+                    work(stage);
+                }
+            });
+        }
+        return pipeline;
+    }
+
+    /**
+     * 模拟一个阶段的工作。
+     */
+    private static void work(int stage) {
+        long nanos = (long) (COST_MS[stage] * 1000000);
+        if (IO[stage]) {
+            try {
+                Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        long end = System.nanoTime() + nanos;
+        long x = 0;
+        while (System.nanoTime() < end)
+            x = x * 31 + stage;
+        sSink += x;
+    }
+
+    private static String firstLine(XInitReport report) {
+        String text = report.toString();
+        int end = text.indexOf('\n');
+        return end < 0 ? text : text.substring(0, end);
+    }
+}
@@ -0,0 +1,213 @@
+package com.xengine.android.toolkit.switcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * XAtomicSwitcher的测试。
+ */
+public class XAtomicSwitcherTest {
+
+    private static final long TIMEOUT = 5;// 秒
+
+    @Test
+    public void turnOnAndOffReportStateChanges() {
+        XAtomicSwitcher switcher = new XAtomicSwitcher(false);
+        assertFalse(switcher.isOn());
+        assertFalse(switcher.turnOff());
+        assertTrue(switcher.turnOn());
+        assertTrue(switcher.isOn());
+        assertFalse(switcher.turnOn());
+        assertTrue(switcher.turnOff());
+        assertFalse(switcher.isOn());
+    }
+
+    @Test
+    public void whenOnRunsOnceInRegistrationOrder() {
+        XAtomicSwitcher switcher = new XAtomicSwitcher(false);
+        List<String> order = new ArrayList<String>();
+        switcher.whenOn(record(order, "a"));
+        switcher.whenOn(record(order, "b"));
+        assertTrue(order.isEmpty());
+
+        switcher.turnOn();
+        assertEquals(2, order.size());
+        assertEquals("a", order.get(0));
+        assertEquals("b", order.get(1));
+
+        // 已经打开时立即回调；之前的回调不会再被调用
+        switcher.whenOn(record(order, "c"));
+        switcher.turnOff();
+        switcher.turnOn();
+        assertEquals(3, order.size());
+        assertEquals("c", order.get(2));
+    }
+
+    @Test
+    public void whenOffRunsOnTurnOff() {
+        XAtomicSwitcher switcher = new XAtomicSwitcher(true);
+        List<String> order = new ArrayList<String>();
+        switcher.whenOff(record(order, "a"));
+        switcher.whenOff(record(order, "b"));
+        assertTrue(order.isEmpty());
+        assertTrue(switcher.isOn());
+
+        switcher.turnOff();
+        assertEquals(2, order.size());
+        assertEquals("a", order.get(0));
+        assertEquals("b", order.get(1));
+
+        // 已经关闭时立即回调
+        switcher.whenOff(record(order, "c"));
+        assertEquals(3, order.size());
+    }
+
+    @Test
+    public void alternatingCallbacksFollowEveryCycle() {
+        final XAtomicSwitcher switcher = new XAtomicSwitcher(false);
+        final AtomicInteger ons = new AtomicInteger();
+        final AtomicInteger offs = new AtomicInteger();
+        final Runnable[] callbacks = new Runnable[2];
+        callbacks[0] = new Runnable() {
+            @Override
+            public void run() {
+                ons.incrementAndGet();
+                switcher.whenOff(callbacks[1]);
+            }
+        };
+        callbacks[1] = new Runnable() {
+            @Override
+            public void run() {
+                offs.incrementAndGet();
+                switcher.whenOn(callbacks[0]);
+            }
+        };
+        switcher.whenOff(callbacks[1]);
+        for (int i = 0; i < 5; i++) {
+            switcher.turnOn();
+            switcher.turnOff();
+        }
+        assertEquals(5, ons.get());
+        assertEquals(6, offs.get());// 注册时已经关闭，立即回调了一次
+    }
+
+    @Test
+    public void whenOnUsesGivenExecutor() {
+        XAtomicSwitcher switcher = new XAtomicSwitcher(false);
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        List<String> order = new ArrayList<String>();
+        switcher.whenOn(record(order, "a"), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        });
+        switcher.turnOn();
+        assertTrue(order.isEmpty());
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        assertEquals(1, order.size());
+    }
+
+    @Test
+    public void awaitReturnsWhenTurnedOn() throws Exception {
+        final XAtomicSwitcher switcher = new XAtomicSwitcher(false);
+        final int threads = 4;
+        final CountDownLatch released = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        switcher.await();
+                        released.countDown();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }).start();
+        }
+        assertFalse(released.await(100, TimeUnit.MILLISECONDS));
+        switcher.turnOn();
+        assertTrue(released.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void timedAwaitTimesOut() throws Exception {
+        XAtomicSwitcher switcher = new XAtomicSwitcher(false);
+        assertFalse(switcher.await(20, TimeUnit.MILLISECONDS));
+        switcher.turnOn();
+        assertTrue(switcher.await(20, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void awaitIsInterruptible() throws Exception {
+        final XAtomicSwitcher switcher = new XAtomicSwitcher(false);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    switcher.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        });
+        thread.start();
+        Thread.sleep(50);
+        thread.interrupt();
+        assertTrue(interrupted.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancelledWaitersDoNotBlockLiveOnes() throws Exception {
+        final XAtomicSwitcher switcher = new XAtomicSwitcher(false);
+        final int threads = 4;
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch released = new CountDownLatch(threads);
+        List<String> order = new ArrayList<String>();
+        switcher.whenOn(record(order, "callback"));// 压在所有已取消节点的下面
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // 反复超时，在栈中间留下大量已取消的节点
+                        for (int j = 0; j < 500; j++)
+                            switcher.await(10, TimeUnit.MICROSECONDS);
+                        ready.countDown();
+                        if (switcher.await(TIMEOUT, TimeUnit.SECONDS))
+                            released.countDown();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }).start();
+        }
+        assertTrue(ready.await(TIMEOUT, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        switcher.turnOn();
+        assertTrue(released.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(1, order.size());
+    }
+
+    private static Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+}
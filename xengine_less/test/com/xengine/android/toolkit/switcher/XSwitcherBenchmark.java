@@ -0,0 +1,198 @@
+package com.xengine.android.toolkit.switcher;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * 开关在多线程竞争下的耗时基准(不是单元测试，直接运行main())。
+ * 分别比较原来XLazyHandler的用法(XBooleanSwitcher加synchronized/wait/notifyAll)和XAtomicSwitcher：
+ * 1.gate：开关打开时，threads个线程各检查CHECKS次开关(每次检查都要获取监视器 vs 一次volatile读)；
+ * 2.wake：threads个线程等待关闭的开关，统计从打开开关到所有线程被唤醒的耗时(CYCLES次的平均)。
+ * 用法：java com.xengine.android.toolkit.switcher.XSwitcherBenchmark [threads...]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多
+ */
+public class XSwitcherBenchmark {
+
+    private static final int[] DEFAULT_THREADS = {1, 2, 4, 8};
+    private static final int CHECKS = 2000000;// 每个线程检查开关的次数
+    private static final int CYCLES = 200;// 唤醒测试的开关次数
+    private static final int WARM_UP = 2;// 预热的轮数
+
+    private static volatile long sSink;// 防止检查被优化掉
+
+    public static void main(String[] args) throws Exception {
+        int[] threads = DEFAULT_THREADS;
+        if (args.length > 0) {
+            threads = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                threads[i] = Integer.parseInt(args[i]);
+        }
+        for (int round = 0; round <= WARM_UP; round++) {
+            boolean report = round == WARM_UP;
+            for (int count : threads) {
+                long monitor = gateMonitor(count);
+                long atomic = gateAtomic(count);
+                if (report)
+                    System.out.printf("gate  %2d threads  monitor %8.2f ns/check  atomic %8.2f ns/check%n",
+                            count, monitor / (double) CHECKS, atomic / (double) CHECKS);
+            }
+            for (int count : threads) {
+                long monitor = wakeMonitor(count);
+                long atomic = wakeAtomic(count);
+                if (report)
+                    System.out.printf("wake  %2d threads  monitor %8.2f us/cycle  atomic %8.2f us/cycle%n",
+                            count, monitor / 1e3 / CYCLES, atomic / 1e3 / CYCLES);
+            }
+        }
+    }
+
+    /**
+     * @return 返回所有线程完成检查的耗时(纳秒)
+     */
+    private static long gateMonitor(int threads) throws Exception {
+        final XBooleanSwitcher switcher = new XBooleanSwitcher(true);
+        return runAll(threads, new Runnable() {
+            @Override
+            public void run() {
+                long passed = 0;
+                for (int i = 0; i < CHECKS; i++) {
+                    synchronized (switcher) {
+                        while (!switcher.isOn()) {
+                            try {
+                                switcher.wait();
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                    }
+                    passed++;
+                }
+                sSink += passed;
+            }
+        });
+    }
+
+    private static long gateAtomic(int threads) throws Exception {
+        final XAtomicSwitcher switcher = new XAtomicSwitcher(true);
+        return runAll(threads, new Runnable() {
+            @Override
+            public void run() {
+                long passed = 0;
+                for (int i = 0; i < CHECKS; i++) {
+                    if (!switcher.isOn()) {
+                        try {
+                            switcher.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    passed++;
+                }
+                sSink += passed;
+            }
+        });
+    }
+
+    /**
+     * @return 返回CYCLES次从打开开关到所有线程被唤醒的总耗时(纳秒)
+     */
+    private static long wakeMonitor(int threads) throws Exception {
+        final XBooleanSwitcher switcher = new XBooleanSwitcher(false);
+        long total = 0;
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            final CountDownLatch woken = new CountDownLatch(threads);
+            Thread[] waiters = startWaiters(threads, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        synchronized (switcher) {
+                            while (!switcher.isOn())
+                                switcher.wait();
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    woken.countDown();
+                }
+            });
+            awaitParked(waiters);
+            long begin = System.nanoTime();
+            synchronized (switcher) {
+                switcher.turnOn();
+                switcher.notifyAll();
+            }
+            woken.await();
+            total += System.nanoTime() - begin;
+            switcher.turnOff();
+        }
+        return total;
+    }
+
+    private static long wakeAtomic(int threads) throws Exception {
+        final XAtomicSwitcher switcher = new XAtomicSwitcher(false);
+        long total = 0;
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            final CountDownLatch woken = new CountDownLatch(threads);
+            Thread[] waiters = startWaiters(threads, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        switcher.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    woken.countDown();
+                }
+            });
+            awaitParked(waiters);
+            long begin = System.nanoTime();
+            switcher.turnOn();
+            woken.await();
+            total += System.nanoTime() - begin;
+            switcher.turnOff();
+        }
+        return total;
+    }
+
+    private static Thread[] startWaiters(int threads, Runnable task) {
+        Thread[] waiters = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            waiters[i] = new Thread(task);
+            waiters[i].start();
+        }
+        return waiters;
+    }
+
+    /**
+     * 等待所有线程都进入等待状态(wait()或park())，再开始计时。
+     */
+    private static void awaitParked(Thread[] waiters) {
+        for (Thread waiter : waiters) {
+            while (waiter.getState() != Thread.State.WAITING)
+                Thread.yield();
+        }
+    }
+
+    private static long runAll(int threads, final Runnable task) throws Exception {
+        final CyclicBarrier start = new CyclicBarrier(threads + 1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (Exception e) {
+                        return;
+                    }
+                    task.run();
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.await();
+        long begin = System.nanoTime();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+}
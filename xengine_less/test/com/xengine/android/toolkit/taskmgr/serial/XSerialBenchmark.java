@@ -0,0 +1,145 @@
+package com.xengine.android.toolkit.taskmgr.serial;
+
+import android.os.AsyncTask;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线性执行的吞吐量基准(不是单元测试，直接运行main())。
+ * 分别用两种方式线性执行count个任务，统计总耗时和每个任务的平均开销：
+ * 1.AsyncTask：与XBaseSerialMgr相同，每个任务结束后先回到主线程(onPostExecute())，再execute()下一个;
+ * 2.XSerialExecutor：任务结束后在后台线程中直接启动下一个(单线程池和缓存线程池各一次)。
+ * 每种方式分别测空任务(只有调度开销)和带WORK次计算的任务。
+ * 用法：java com.xengine.android.toolkit.taskmgr.serial.XSerialBenchmark [count...]
+ * TIP 在JVM上的结果只能用于比较不同实现，设备上的绝对耗时会高得多。
+ * AsyncTask使用的是模拟API 8行为的测试实现，主线程空闲时的结果，主线程忙时AsyncTask方式会更慢
+ */
+public class XSerialBenchmark {
+
+    private static final int[] DEFAULT_COUNTS = {1000, 10000, 50000};
+    private static final int WORK = 2000;// 每个任务的计算量
+    private static final int WARM_UP = 2;// 预热的轮数
+
+    private static volatile long sSink;// 防止计算被优化掉
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] counts = DEFAULT_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                counts[i] = Integer.parseInt(args[i]);
+        }
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        ExecutorService cached = Executors.newCachedThreadPool();
+        try {
+            for (int round = 0; round <= WARM_UP; round++) {
+                boolean report = round == WARM_UP;
+                for (int count : counts) {
+                    for (int work : new int[] {0, WORK}) {
+                        report(report, "AsyncTask", count, work, runAsyncTask(count, work));
+                        report(report, "XSerialExecutor single", count, work,
+                                runExecutor(single, count, work));
+                        report(report, "XSerialExecutor cached", count, work,
+                                runExecutor(cached, count, work));
+                    }
+                }
+            }
+        } finally {
+            single.shutdown();
+            cached.shutdown();
+        }
+    }
+
+    private static void report(boolean report, String name, int count, int work, long elapsed) {
+        if (report)
+            System.out.printf("%6d tasks  work %5d  %-24s %9.2f ms  %8.2f us/task  %9.0f tasks/s%n",
+                    count, work, name, elapsed / 1e6, elapsed / (1e3 * count),
+                    count / (elapsed / 1e9));
+    }
+
+    /**
+     * 与XBaseSerialMgr相同的驱动方式：引擎启动AsyncTask，onPostExecute()里回调finished()。
+     */
+    private static long runAsyncTask(int count, final int work) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(count);
+        final XSerialEngine<AsyncTask> engine = new XSerialEngine<AsyncTask>(
+                new XSerialEngine.Driver<AsyncTask>() {
+                    @Override
+                    public String getId(AsyncTask task) {
+                        return null;
+                    }
+
+                    @Override
+                    public boolean launch(AsyncTask task) {
+                        if (task.getStatus() != AsyncTask.Status.PENDING)
+                            return false;
+                        task.execute((Object[]) null);// 与XBaseSerialMgr相同
+                        return true;
+                    }
+
+                    @Override
+                    public void cancel(AsyncTask task) {
+                        task.cancel(true);
+                    }
+                });
+        for (int i = 0; i < count; i++) {
+            engine.add(new AsyncTask<Void, Void, Void>() {
+                @Override
+                protected Void doInBackground(Void... params) {
+                    compute(work);
+                    return null;
+                }
+
+                @Override
+                protected void onPostExecute(Void result) {
+                    done.countDown();
+                    engine.finished(this);
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        AsyncTask.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                engine.start();// AsyncTask必须在主线程中execute()
+            }
+        });
+        await(done);
+        return System.nanoTime() - begin;
+    }
+
+    private static long runExecutor(ExecutorService pool, int count, final int work)
+            throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(count);
+        XSerialExecutor executor = new XSerialExecutor(pool);
+        executor.pause();
+        for (int i = 0; i < count; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compute(work);
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        executor.start();
+        await(done);
+        return System.nanoTime() - begin;
+    }
+
+    private static void compute(int work) {
+        long x = 0;
+        for (int i = 0; i < work; i++)
+            x = x * 31 + i;
+        sSink += x;
+    }
+
+    private static void await(CountDownLatch done) throws InterruptedException {
+        if (!done.await(5, TimeUnit.MINUTES))
+            throw new IllegalStateException("benchmark timed out");
+    }
+}
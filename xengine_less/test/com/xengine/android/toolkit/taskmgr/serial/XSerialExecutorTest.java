@@ -0,0 +1,186 @@
+package com.xengine.android.toolkit.taskmgr.serial;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * XSerialExecutor和XSerialEngine的测试：按顺序一次只执行一个任务，
+ * 按id去重，cancel正在执行的任务时立即开始下一个。
+ */
+public class XSerialExecutorTest {
+
+    private ExecutorService mPool;
+
+    @Before
+    public void setUp() {
+        mPool = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdownNow();
+    }
+
+    @Test
+    public void runsTasksOneAtATimeInOrder() throws Exception {
+        XSerialExecutor executor = new XSerialExecutor(mPool);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 200; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int now = running.incrementAndGet();
+                    maxRunning.set(Math.max(maxRunning.get(), now));
+                    order.add(index);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < 200; i++)
+            assertEquals(i, (int) order.get(i));
+    }
+
+    @Test
+    public void duplicateIdIsRejectedUntilFinished() throws Exception {
+        XSerialExecutor executor = new XSerialExecutor(mPool);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        assertTrue(executor.execute("a", new Blocking(release, done)));
+        assertFalse(executor.execute("a", new Blocking(release, done)));
+        assertTrue(executor.contains("a"));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        waitUntilEmpty(executor);
+        assertFalse(executor.contains("a"));
+        assertTrue(executor.execute("a", new Blocking(release, new CountDownLatch(1))));
+    }
+
+    @Test
+    public void cancelFreesSlotImmediately() throws Exception {
+        XSerialExecutor executor = new XSerialExecutor(mPool);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        executor.execute("slow", new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(60 * 1000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        });
+        final CountDownLatch next = new CountDownLatch(1);
+        executor.execute("next", new Runnable() {
+            @Override
+            public void run() {
+                next.countDown();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.cancel("slow"));
+        // 不用等被cancel的任务结束，下一个马上开始
+        assertTrue(next.await(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertFalse(executor.cancel("slow"));
+    }
+
+    @Test
+    public void engineIgnoresLateFinishOfCancelledTask() {
+        final List<String> launched = new ArrayList<String>();
+        final List<String> cancelled = new ArrayList<String>();
+        XSerialEngine<String> engine = new XSerialEngine<String>(new XSerialEngine.Driver<String>() {
+            @Override
+            public String getId(String task) {
+                return task;
+            }
+
+            @Override
+            public boolean launch(String task) {
+                launched.add(task);
+                return true;
+            }
+
+            @Override
+            public void cancel(String task) {
+                cancelled.add(task);
+            }
+        });
+        engine.add("a");
+        engine.add("b");
+        engine.add("c");
+        assertFalse(engine.add("b"));
+        engine.start();
+        assertEquals("a", engine.getRunning());
+
+        engine.remove("a");
+        assertEquals(Collections.singletonList("a"), cancelled);
+        assertEquals("b", engine.getRunning());
+        assertFalse(engine.finished("a"));// 被cancel的任务之后才回调
+        assertEquals("b", engine.getRunning());
+
+        assertTrue(engine.finished("b"));
+        assertEquals("c", engine.getRunning());
+        assertSame("c", engine.get("c"));
+        assertTrue(engine.finished("c"));
+        assertNull(engine.getRunning());
+        assertEquals(0, engine.size());
+        assertEquals(3, launched.size());
+
+        // 队列空了仍处于运行状态，新任务马上执行
+        engine.add("d");
+        engine.tryStart();
+        assertEquals("d", engine.getRunning());
+    }
+
+    private static void waitUntilEmpty(XSerialExecutor executor) throws InterruptedException {
+        for (int i = 0; i < 500 && executor.getTaskCount() > 0; i++)
+            Thread.sleep(10);
+        assertEquals(0, executor.getTaskCount());
+    }
+
+    private static class Blocking implements Runnable {
+        private final CountDownLatch mRelease;
+        private final CountDownLatch mDone;
+
+        Blocking(CountDownLatch release, CountDownLatch done) {
+            mRelease = release;
+            mDone = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mDone.countDown();
+        }
+    }
+}